@@ -0,0 +1,254 @@
+/*
+ * CardboardAssetLoader.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.content.res.AssetManager;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads assets without stalling the renderer.
+ *
+ * <p>A {@link Request} is loaded in two stages. File I/O, parsing and any vertex processing run in
+ * {@link Request#load()} on a background thread. The result is then handed to the GL thread, which
+ * uploads it in small steps at the start of each frame, spending at most the upload budget per
+ * frame. Only when the upload is complete does {@link Request#onLoaded(Object)} run, on the GL
+ * thread, so objects keep drawing a placeholder, or nothing, until their resources are ready.
+ *
+ * <p>Requests are loaded one at a time, in the order they were made, on a single low-priority
+ * thread, so that loading doesn't compete with the GL thread for the CPU.
+ */
+public class CardboardAssetLoader {
+    private static final String TAG = "CardboardAssetLoader";
+
+    /** The default time spent on uploads per frame, in nanoseconds. */
+    public static final long DEFAULT_UPLOAD_BUDGET_NANOS = 2000000L;
+
+    // The most bytes copied by one upload step. Small enough that a step never blows the budget.
+    private static final int UPLOAD_STEP_BYTES = 256 * 1024;
+
+    /**
+     * An asset to load.
+     *
+     * @param <T> The type of the loaded asset.
+     */
+    public abstract static class Request<T> {
+        private T mResult;
+        private Exception mError;
+
+        /**
+         * Loads the asset. Runs on the loader's background thread and must not make GL calls.
+         */
+        protected abstract T load() throws Exception;
+
+        /**
+         * Uploads part of the asset to the GPU. Runs on the GL thread, once or more per frame
+         * until it returns true. The default does nothing.
+         *
+         * @param maxBytes Roughly how many bytes to upload in this call.
+         * @return Whether the upload is complete.
+         */
+        protected boolean upload(T result, int maxBytes) {
+            return true;
+        }
+
+        /**
+         * Called on the GL thread when the EGL context was lost in the middle of the upload. The
+         * next call to {@link #upload(Object, int)} must start again from scratch.
+         */
+        protected void onContextLost(T result) {
+        }
+
+        /**
+         * Called on the GL thread once the asset is loaded and uploaded.
+         */
+        protected abstract void onLoaded(T result);
+
+        /**
+         * Called on the GL thread if the asset couldn't be loaded. The default logs the error.
+         */
+        protected void onFailed(Exception error) {
+            Log.e(TAG, "Could not load " + this, error);
+        }
+
+        void run() {
+            try {
+                mResult = load();
+            } catch (Exception e) {
+                mError = e;
+            }
+        }
+
+        boolean uploadStep(int maxBytes) {
+            return upload(mResult, maxBytes);
+        }
+
+        void contextLost() {
+            onContextLost(mResult);
+        }
+
+        void deliver() {
+            if (mError != null) {
+                onFailed(mError);
+            } else {
+                onLoaded(mResult);
+            }
+        }
+    }
+
+    /**
+     * Loads a mesh asset in the binary mesh format, see {@link CardboardMeshLoader}.
+     */
+    public abstract static class MeshRequest extends Request<CardboardMesh> {
+        private final AssetManager mAssets;
+        private final String mPath;
+
+        public MeshRequest(AssetManager assets, String path) {
+            mAssets = assets;
+            mPath = path;
+        }
+
+        @Override
+        protected CardboardMesh load() throws Exception {
+            return CardboardMeshLoader.loadAsset(mAssets, mPath);
+        }
+
+        @Override
+        protected boolean upload(CardboardMesh mesh, int maxBytes) {
+            return mesh.uploadPart(maxBytes);
+        }
+
+        @Override
+        protected void onContextLost(CardboardMesh mesh) {
+            mesh.discard();
+        }
+
+        @Override
+        public String toString() {
+            return mPath;
+        }
+    }
+
+    private ExecutorService mExecutor;
+    private final AtomicInteger mPendingCount = new AtomicInteger();
+
+    // Requests whose background stage is done, handed from the loader thread to the GL thread.
+    private final Queue<Request<?>> mLoaded = new ConcurrentLinkedQueue<Request<?>>();
+    // Requests being uploaded. Only touched on the GL thread.
+    private final ArrayDeque<Request<?>> mUploads = new ArrayDeque<Request<?>>();
+
+    private long mUploadBudgetNanos = DEFAULT_UPLOAD_BUDGET_NANOS;
+
+    /**
+     * Starts loading an asset. May be called from any thread.
+     */
+    public synchronized void load(final Request<?> request) {
+        if (mExecutor == null) {
+            mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        mPendingCount.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                request.run();
+                // A request interrupted by shutdown() is dropped.
+                if (!Thread.currentThread().isInterrupted()) {
+                    mLoaded.add(request);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the most time spent uploading per frame. At least one upload step is made per frame
+     * while uploads are pending, so that loading always makes progress.
+     */
+    public void setUploadBudgetNanos(long budget) {
+        mUploadBudgetNanos = budget;
+    }
+
+    public long getUploadBudgetNanos() {
+        return mUploadBudgetNanos;
+    }
+
+    /**
+     * Returns the number of requests that haven't been delivered yet.
+     */
+    public int getPendingCount() {
+        return mPendingCount.get();
+    }
+
+    /**
+     * Uploads loaded assets until the frame's budget is spent, and delivers the ones that are
+     * complete. Called on the GL thread at the start of each frame. Uploads bind buffers directly,
+     * so the scene's {@link CardboardGLState} must be invalidated afterwards.
+     */
+    public void onNewFrame() {
+        Request<?> request;
+        while ((request = mLoaded.poll()) != null) {
+            mUploads.add(request);
+        }
+        if (mUploads.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        do {
+            request = mUploads.peek();
+            if (request.mError != null || request.uploadStep(UPLOAD_STEP_BYTES)) {
+                mUploads.poll();
+                mPendingCount.decrementAndGet();
+                request.deliver();
+            }
+        } while (!mUploads.isEmpty() && System.nanoTime() - start < mUploadBudgetNanos);
+    }
+
+    /**
+     * Restarts the uploads in progress, whose buffers died with the old EGL context.
+     */
+    public void onSurfaceCreated() {
+        for (Request<?> request : mUploads) {
+            if (request.mError == null) {
+                request.contextLost();
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread and drops every pending request.
+     */
+    public synchronized void shutdown() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+        mLoaded.clear();
+        mUploads.clear();
+        mPendingCount.set(0);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * CardboardAssetTextureSource.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Loads a texture from an asset: ETC1 or ETC2 from .pkm and .ktx files, anything else through
+ * Android's image decoders as uncompressed RGBA.
+ *
+ * <p>Prefer compressed assets for large textures. A decoded image is held in memory twice while
+ * it is loaded, as a bitmap and as the pixels handed to GL, and takes four times the GPU memory
+ * of ETC1 once uploaded.
+ */
+public class CardboardAssetTextureSource implements CardboardTexture.Source {
+    private final AssetManager mAssets;
+    private final String mPath;
+
+    public CardboardAssetTextureSource(AssetManager assets, String path) {
+        mAssets = assets;
+        mPath = path;
+    }
+
+    @Override
+    public CardboardTextureData load() throws IOException {
+        InputStream in = mAssets.open(mPath);
+        try {
+            if (mPath.endsWith(".pkm")) {
+                return CardboardTextureData.readPkm(in);
+            } else if (mPath.endsWith(".ktx")) {
+                return CardboardTextureData.readKtx(in);
+            }
+            return decode(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private CardboardTextureData decode(InputStream in) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        // Scaling for the screen density only makes sense for UI images.
+        options.inScaled = false;
+        Bitmap bitmap = BitmapFactory.decodeStream(in, null, options);
+        if (bitmap == null) {
+            throw new IOException("Could not decode " + mPath);
+        }
+        try {
+            // ARGB_8888 bitmaps hold their pixels as RGBA bytes.
+            ByteBuffer pixels = ByteBuffer.allocateDirect(bitmap.getByteCount())
+                    .order(ByteOrder.nativeOrder());
+            bitmap.copyPixelsToBuffer(pixels);
+            pixels.position(0);
+            return CardboardTextureData.fromRgba(bitmap.getWidth(), bitmap.getHeight(), pixels);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mPath;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * CardboardAtlasPacker.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+/**
+ * Finds room for rectangles in a fixed-size square, e.g. images in a texture atlas.
+ *
+ * <p>Uses the skyline bottom-left heuristic: the packed area is described by its top edge, a list
+ * of horizontal segments, and each rectangle goes where its top ends up lowest, ties broken by
+ * the narrower segment. It wastes the space under overhangs, but is fast and packs images of
+ * similar heights well, which is the common case for the small textures atlases are made of.
+ * Rectangles can't be removed; {@link #reset()} starts over.
+ *
+ * <p>The packer is plain Java and makes no GL calls.
+ */
+public class CardboardAtlasPacker {
+    private final int mWidth;
+    private final int mHeight;
+
+    // The skyline, as segments from left to right: each starts at an x, is so wide, and is
+    // filled up to a y.
+    private int[] mX = new int[16];
+    private int[] mY = new int[16];
+    private int[] mSegmentWidth = new int[16];
+    private int mSegmentCount;
+
+    private long mUsedArea;
+
+    public CardboardAtlasPacker(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        reset();
+    }
+
+    /**
+     * Empties the packer.
+     */
+    public void reset() {
+        mX[0] = 0;
+        mY[0] = 0;
+        mSegmentWidth[0] = mWidth;
+        mSegmentCount = 1;
+        mUsedArea = 0;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns the fraction of the area taken by packed rectangles.
+     */
+    public float getOccupancy() {
+        return (float) mUsedArea / ((long) mWidth * mHeight);
+    }
+
+    /**
+     * Finds room for a rectangle and takes it.
+     *
+     * @param position Receives the x and y of the rectangle's corner.
+     * @return Whether there was room.
+     */
+    public boolean pack(int width, int height, int[] position) {
+        if (width <= 0 || height <= 0 || width > mWidth || height > mHeight) {
+            return false;
+        }
+        int best = -1;
+        int bestY = Integer.MAX_VALUE;
+        int bestWidth = Integer.MAX_VALUE;
+        for (int i = 0; i < mSegmentCount; i++) {
+            int y = fit(i, width, height);
+            if (y >= 0 && (y < bestY || (y == bestY && mSegmentWidth[i] < bestWidth))) {
+                best = i;
+                bestY = y;
+                bestWidth = mSegmentWidth[i];
+            }
+        }
+        if (best < 0) {
+            return false;
+        }
+        position[0] = mX[best];
+        position[1] = bestY;
+        addSegment(best, mX[best], bestY + height, width);
+        mUsedArea += (long) width * height;
+        return true;
+    }
+
+    /**
+     * Returns the y at which a rectangle fits with its left edge on a segment, or -1 if it
+     * doesn't.
+     */
+    private int fit(int index, int width, int height) {
+        int x = mX[index];
+        if (x + width > mWidth) {
+            return -1;
+        }
+        // The rectangle rests on the highest segment it spans.
+        int y = 0;
+        int remaining = width;
+        for (int i = index; remaining > 0; i++) {
+            y = Math.max(y, mY[i]);
+            if (y + height > mHeight) {
+                return -1;
+            }
+            remaining -= mSegmentWidth[i];
+        }
+        return y;
+    }
+
+    /**
+     * Inserts the top of a packed rectangle into the skyline, trimming or removing the segments
+     * it covers, and merges it with neighbours at the same height.
+     */
+    private void addSegment(int index, int x, int y, int width) {
+        insert(index, x, y, width);
+        int right = x + width;
+        for (int i = index + 1; i < mSegmentCount; ) {
+            int end = mX[i] + mSegmentWidth[i];
+            if (mX[i] >= right) {
+                break;
+            }
+            if (end <= right) {
+                remove(i);
+            } else {
+                mSegmentWidth[i] = end - right;
+                mX[i] = right;
+                break;
+            }
+        }
+        for (int i = 0; i < mSegmentCount - 1; ) {
+            if (mY[i] == mY[i + 1]) {
+                mSegmentWidth[i] += mSegmentWidth[i + 1];
+                remove(i + 1);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private void insert(int index, int x, int y, int width) {
+        if (mSegmentCount == mX.length) {
+            mX = grow(mX);
+            mY = grow(mY);
+            mSegmentWidth = grow(mSegmentWidth);
+        }
+        int tail = mSegmentCount - index;
+        System.arraycopy(mX, index, mX, index + 1, tail);
+        System.arraycopy(mY, index, mY, index + 1, tail);
+        System.arraycopy(mSegmentWidth, index, mSegmentWidth, index + 1, tail);
+        mX[index] = x;
+        mY[index] = y;
+        mSegmentWidth[index] = width;
+        mSegmentCount++;
+    }
+
+    private void remove(int index) {
+        int tail = mSegmentCount - index - 1;
+        System.arraycopy(mX, index + 1, mX, index, tail);
+        System.arraycopy(mY, index + 1, mY, index, tail);
+        System.arraycopy(mSegmentWidth, index + 1, mSegmentWidth, index, tail);
+        mSegmentCount--;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
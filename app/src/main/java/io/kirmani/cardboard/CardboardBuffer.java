@@ -0,0 +1,190 @@
+/*
+ * CardboardBuffer.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A GPU buffer object backed by a client-side copy of its data.
+ *
+ * <p>The client copy is kept so that the buffer can be uploaded again after the EGL context has
+ * been lost, in which case every handle created in the old context is gone.
+ */
+public class CardboardBuffer {
+    private final int mTarget;
+    private final Buffer mData;
+    private final int mSizeInBytes;
+
+    private int mUsage = GLES20.GL_STATIC_DRAW;
+    private int mHandle;
+    private int mUploadedBytes;
+
+    /**
+     * @param target The binding target, e.g. GL_ARRAY_BUFFER.
+     * @param data The data to upload. Its position must be 0.
+     * @param sizeInBytes The size of the data in bytes.
+     */
+    public CardboardBuffer(int target, Buffer data, int sizeInBytes) {
+        mTarget = target;
+        mData = data;
+        mSizeInBytes = sizeInBytes;
+    }
+
+    /**
+     * Creates a GL_ARRAY_BUFFER from an array of floats.
+     */
+    public static CardboardBuffer fromFloats(float[] data) {
+        return new CardboardBuffer(GLES20.GL_ARRAY_BUFFER, toFloatBuffer(data), data.length * 4);
+    }
+
+    /**
+     * Copies an array of floats into a direct buffer in native byte order.
+     */
+    public static FloatBuffer toFloatBuffer(float[] data) {
+        ByteBuffer bb = ByteBuffer.allocateDirect(data.length * 4);
+        bb.order(ByteOrder.nativeOrder());
+        FloatBuffer buffer = bb.asFloatBuffer();
+        buffer.put(data);
+        buffer.position(0);
+        return buffer;
+    }
+
+    /**
+     * Sets the usage hint passed to glBufferData, e.g. GL_DYNAMIC_DRAW for data that is rewritten
+     * with {@link #update(CardboardGLState, int)}. Takes effect on the next upload.
+     */
+    public void setUsage(int usage) {
+        mUsage = usage;
+    }
+
+    /**
+     * Uploads the data to a new buffer object. Must be called from onSurfaceCreated, on the GL
+     * thread. Any handle from a previous context is discarded rather than deleted, since it is no
+     * longer valid. This binds the buffer directly, so the scene's {@link CardboardGLState} must be
+     * invalidated before the next draw.
+     */
+    public void upload() {
+        CardboardGL gl = CardboardGLContext.get();
+        final int[] handles = new int[1];
+        gl.glGenBuffers(1, handles, 0);
+        mHandle = handles[0];
+        gl.glBindBuffer(mTarget, mHandle);
+        gl.glBufferData(mTarget, mSizeInBytes, mData, mUsage);
+        gl.glBindBuffer(mTarget, 0);
+        mUploadedBytes = mSizeInBytes;
+    }
+
+    /**
+     * Uploads the next part of the data, so that a large buffer can be uploaded over several
+     * frames. The first call creates the buffer object. Like {@link #upload()}, this binds the
+     * buffer directly.
+     *
+     * @param maxBytes The most bytes to copy in this call.
+     * @return Whether the whole buffer has been uploaded.
+     */
+    public boolean uploadPart(int maxBytes) {
+        CardboardGL gl = CardboardGLContext.get();
+        if (mHandle == 0) {
+            final int[] handles = new int[1];
+            gl.glGenBuffers(1, handles, 0);
+            mHandle = handles[0];
+            mUploadedBytes = 0;
+            gl.glBindBuffer(mTarget, mHandle);
+            gl.glBufferData(mTarget, mSizeInBytes, null, mUsage);
+        } else {
+            gl.glBindBuffer(mTarget, mHandle);
+        }
+        // Whole elements only, whatever the type of the data.
+        int length = Math.min(Math.max(maxBytes & ~3, 4), mSizeInBytes - mUploadedBytes);
+        if (length > 0) {
+            int elementSize = elementSize();
+            mData.position(mUploadedBytes / elementSize);
+            gl.glBufferSubData(mTarget, mUploadedBytes, length, mData);
+            mData.position(0);
+            mUploadedBytes += length;
+        }
+        gl.glBindBuffer(mTarget, 0);
+        return isUploaded();
+    }
+
+    /**
+     * Returns whether the buffer object exists and holds all of the data.
+     */
+    public boolean isUploaded() {
+        return mHandle != 0 && mUploadedBytes == mSizeInBytes;
+    }
+
+    /**
+     * Forgets the buffer object without deleting it, because the EGL context it belonged to is
+     * gone. The next upload starts from scratch.
+     */
+    public void discard() {
+        mHandle = 0;
+        mUploadedBytes = 0;
+    }
+
+    /**
+     * Deletes the buffer object. The client copy is kept so that it can be uploaded again.
+     */
+    public void release() {
+        if (mHandle != 0) {
+            CardboardGLContext.get().glDeleteBuffers(1, new int[] { mHandle }, 0);
+            mHandle = 0;
+        }
+        mUploadedBytes = 0;
+    }
+
+    public void bind(CardboardGLState state) {
+        state.bindBuffer(mTarget, mHandle);
+    }
+
+    /**
+     * Copies the start of the client data, after it has been modified, into the existing buffer
+     * object. Leaves the buffer bound.
+     *
+     * @param sizeInBytes The number of bytes to copy from the start of the data.
+     */
+    public void update(CardboardGLState state, int sizeInBytes) {
+        bind(state);
+        CardboardGLContext.get().glBufferSubData(mTarget, 0, sizeInBytes, mData);
+    }
+
+    /**
+     * Returns the client-side copy of the data.
+     */
+    public Buffer getData() {
+        return mData;
+    }
+
+    public int getTarget() {
+        return mTarget;
+    }
+
+    public int getHandle() {
+        return mHandle;
+    }
+
+    public int getSizeInBytes() {
+        return mSizeInBytes;
+    }
+
+    private int elementSize() {
+        if (mData instanceof ByteBuffer) {
+            return 1;
+        } else if (mData instanceof ShortBuffer) {
+            return 2;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * CardboardBvh.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import io.kirmani.cardboard.math.BoundingBox;
+import io.kirmani.cardboard.math.Vec3;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy over object bounds, used to find the object under the gaze
+ * without testing every object.
+ *
+ * <p>This is an incrementally balanced AABB tree in the style of Box2D's dynamic tree. Leaves store
+ * "fat" boxes, the object's bounds grown by a margin, so an object that moves a little stays in its
+ * leaf and updating it costs a containment test. Only when it leaves its fat box is it removed and
+ * reinserted, which touches O(log n) nodes. Nodes live in parallel arrays with a free list, and
+ * queries use a preallocated stack, so steady-state updates and queries don't allocate.
+ */
+public class CardboardBvh {
+    public static final int NULL_NODE = -1;
+
+    // Fraction of the bounds' size, plus a constant, by which leaf boxes are fattened.
+    private static final float MARGIN_SCALE = 0.1f;
+    private static final float MARGIN = 0.1f;
+
+    private int mRoot = NULL_NODE;
+    private int mCapacity;
+    private int mFreeList = NULL_NODE;
+    private int mLeafCount;
+
+    // Per node: min x, y, z then max x, y, z.
+    private float[] mBounds;
+    private int[] mParent;
+    private int[] mChild1;
+    private int[] mChild2;
+    private int[] mHeight;
+    private CardboardObject[] mObjects;
+
+    private int[] mStack = new int[64];
+
+    private CardboardObject mHit;
+    private float mHitDistance;
+
+    public CardboardBvh() {
+        allocate(16);
+    }
+
+    /**
+     * Adds an object with the given world bounds.
+     *
+     * @return The proxy identifying the object's leaf.
+     */
+    public int insert(CardboardObject object, BoundingBox bounds) {
+        int leaf = allocateNode();
+        setFatBounds(leaf, bounds);
+        mObjects[leaf] = object;
+        mHeight[leaf] = 0;
+        insertLeaf(leaf);
+        mLeafCount++;
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+        mLeafCount--;
+    }
+
+    /**
+     * Updates the bounds of an object after it moved.
+     *
+     * @return Whether the tree had to be restructured.
+     */
+    public boolean update(int proxy, BoundingBox bounds) {
+        int o = proxy * 6;
+        if (mBounds[o] <= bounds.min.x && mBounds[o + 1] <= bounds.min.y
+                && mBounds[o + 2] <= bounds.min.z && mBounds[o + 3] >= bounds.max.x
+                && mBounds[o + 4] >= bounds.max.y && mBounds[o + 5] >= bounds.max.z) {
+            return false;
+        }
+        removeLeaf(proxy);
+        setFatBounds(proxy, bounds);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    public int size() {
+        return mLeafCount;
+    }
+
+    /**
+     * Returns the height of the tree, for diagnostics.
+     */
+    public int getHeight() {
+        return mRoot == NULL_NODE ? 0 : mHeight[mRoot];
+    }
+
+    /**
+     * Finds the nearest visible object hit by a ray. Leaves whose box the ray hits are tested
+     * precisely with {@link CardboardObject#intersectRay(Vec3, Vec3)}.
+     *
+     * @param origin The start of the ray.
+     * @param direction The normalized direction of the ray.
+     * @param maxDistance Hits further than this are ignored.
+     * @return The object hit, or null. The distance is then {@link #getHitDistance()}.
+     */
+    public CardboardObject raycast(Vec3 origin, Vec3 direction, float maxDistance) {
+        mHit = null;
+        mHitDistance = maxDistance;
+        if (mRoot == NULL_NODE) {
+            return null;
+        }
+        float invX = 1.0f / direction.x;
+        float invY = 1.0f / direction.y;
+        float invZ = 1.0f / direction.z;
+
+        int top = 0;
+        mStack[top++] = mRoot;
+        while (top > 0) {
+            int node = mStack[--top];
+            if (slab(node, origin, invX, invY, invZ) >= mHitDistance) {
+                continue;
+            }
+            if (mChild1[node] == NULL_NODE) {
+                CardboardObject object = mObjects[node];
+                if (!object.isVisible()) {
+                    continue;
+                }
+                float distance = object.intersectRay(origin, direction);
+                if (distance >= 0.0f && distance < mHitDistance) {
+                    mHit = object;
+                    mHitDistance = distance;
+                }
+            } else {
+                if (top + 2 > mStack.length) {
+                    mStack = Arrays.copyOf(mStack, mStack.length * 2);
+                }
+                mStack[top++] = mChild1[node];
+                mStack[top++] = mChild2[node];
+            }
+        }
+        return mHit;
+    }
+
+    public CardboardObject getHit() {
+        return mHit;
+    }
+
+    public float getHitDistance() {
+        return mHitDistance;
+    }
+
+    /**
+     * Returns the distance along the ray at which it enters a node's box, or infinity if it
+     * misses.
+     */
+    private float slab(int node, Vec3 origin, float invX, float invY, float invZ) {
+        int o = node * 6;
+        float near = 0.0f;
+        float far = Float.POSITIVE_INFINITY;
+        float t1 = (mBounds[o] - origin.x) * invX;
+        float t2 = (mBounds[o + 3] - origin.x) * invX;
+        near = max(near, Math.min(t1, t2));
+        far = min(far, Math.max(t1, t2));
+        t1 = (mBounds[o + 1] - origin.y) * invY;
+        t2 = (mBounds[o + 4] - origin.y) * invY;
+        near = max(near, Math.min(t1, t2));
+        far = min(far, Math.max(t1, t2));
+        t1 = (mBounds[o + 2] - origin.z) * invZ;
+        t2 = (mBounds[o + 5] - origin.z) * invZ;
+        near = max(near, Math.min(t1, t2));
+        far = min(far, Math.max(t1, t2));
+        return near <= far ? near : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Like Math.max, but ignores a NaN in b, which comes from a ray parallel to a slab that starts
+     * on its boundary.
+     */
+    private static float max(float a, float b) {
+        return b > a ? b : a;
+    }
+
+    private static float min(float a, float b) {
+        return b < a ? b : a;
+    }
+
+    private void setFatBounds(int node, BoundingBox bounds) {
+        int o = node * 6;
+        float mx = MARGIN + MARGIN_SCALE * (bounds.max.x - bounds.min.x);
+        float my = MARGIN + MARGIN_SCALE * (bounds.max.y - bounds.min.y);
+        float mz = MARGIN + MARGIN_SCALE * (bounds.max.z - bounds.min.z);
+        mBounds[o] = bounds.min.x - mx;
+        mBounds[o + 1] = bounds.min.y - my;
+        mBounds[o + 2] = bounds.min.z - mz;
+        mBounds[o + 3] = bounds.max.x + mx;
+        mBounds[o + 4] = bounds.max.y + my;
+        mBounds[o + 5] = bounds.max.z + mz;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (mRoot == NULL_NODE) {
+            mRoot = leaf;
+            mParent[leaf] = NULL_NODE;
+            return;
+        }
+
+        // Descend to the sibling that minimizes the total surface area added to the tree.
+        int l = leaf * 6;
+        int index = mRoot;
+        while (mChild1[index] != NULL_NODE) {
+            int child1 = mChild1[index];
+            int child2 = mChild2[index];
+            float area = area(index);
+            float combinedArea = unionArea(index, l);
+            // Cost of creating a new parent for this node and the leaf.
+            float cost = 2.0f * combinedArea;
+            // Minimum cost of pushing the leaf further down the tree.
+            float inheritanceCost = 2.0f * (combinedArea - area);
+            float cost1 = descendCost(child1, l) + inheritanceCost;
+            float cost2 = descendCost(child2, l) + inheritanceCost;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? child1 : child2;
+        }
+        int sibling = index;
+
+        int oldParent = mParent[sibling];
+        int newParent = allocateNode();
+        mParent[newParent] = oldParent;
+        mObjects[newParent] = null;
+        unionBounds(newParent, sibling, leaf);
+        mHeight[newParent] = mHeight[sibling] + 1;
+        mChild1[newParent] = sibling;
+        mChild2[newParent] = leaf;
+        mParent[sibling] = newParent;
+        mParent[leaf] = newParent;
+        if (oldParent == NULL_NODE) {
+            mRoot = newParent;
+        } else if (mChild1[oldParent] == sibling) {
+            mChild1[oldParent] = newParent;
+        } else {
+            mChild2[oldParent] = newParent;
+        }
+
+        refit(mParent[leaf]);
+    }
+
+    private float descendCost(int child, int leafOffset) {
+        if (mChild1[child] == NULL_NODE) {
+            return unionArea(child, leafOffset);
+        }
+        return unionArea(child, leafOffset) - area(child);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == mRoot) {
+            mRoot = NULL_NODE;
+            return;
+        }
+        int parent = mParent[leaf];
+        int grandParent = mParent[parent];
+        int sibling = mChild1[parent] == leaf ? mChild2[parent] : mChild1[parent];
+        if (grandParent == NULL_NODE) {
+            mRoot = sibling;
+            mParent[sibling] = NULL_NODE;
+            freeNode(parent);
+            return;
+        }
+        if (mChild1[grandParent] == parent) {
+            mChild1[grandParent] = sibling;
+        } else {
+            mChild2[grandParent] = sibling;
+        }
+        mParent[sibling] = grandParent;
+        freeNode(parent);
+        refit(grandParent);
+    }
+
+    /**
+     * Walks up from a node, rebalancing and recomputing bounds and heights.
+     */
+    private void refit(int index) {
+        while (index != NULL_NODE) {
+            index = balance(index);
+            int child1 = mChild1[index];
+            int child2 = mChild2[index];
+            mHeight[index] = 1 + Math.max(mHeight[child1], mHeight[child2]);
+            unionBounds(index, child1, child2);
+            index = mParent[index];
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if node a is imbalanced.
+     *
+     * @return The new root of the subtree.
+     */
+    private int balance(int a) {
+        if (mChild1[a] == NULL_NODE || mHeight[a] < 2) {
+            return a;
+        }
+        int b = mChild1[a];
+        int c = mChild2[a];
+        int balance = mHeight[c] - mHeight[b];
+        if (balance > 1) {
+            return rotate(a, c, b);
+        }
+        if (balance < -1) {
+            return rotate(a, b, c);
+        }
+        return a;
+    }
+
+    /**
+     * Promotes the taller child of a.
+     *
+     * @param a The imbalanced node.
+     * @param up Its taller child, which takes its place.
+     * @param other Its other child.
+     */
+    private int rotate(int a, int up, int other) {
+        int f = mChild1[up];
+        int g = mChild2[up];
+
+        // Swap a and up.
+        mChild1[up] = a;
+        mParent[up] = mParent[a];
+        mParent[a] = up;
+        if (mParent[up] != NULL_NODE) {
+            if (mChild1[mParent[up]] == a) {
+                mChild1[mParent[up]] = up;
+            } else {
+                mChild2[mParent[up]] = up;
+            }
+        } else {
+            mRoot = up;
+        }
+
+        // Keep the taller grandchild under up, and give the shorter one to a.
+        int keep = mHeight[f] > mHeight[g] ? f : g;
+        int give = keep == f ? g : f;
+        mChild2[up] = keep;
+        if (mChild1[a] == up) {
+            mChild1[a] = give;
+        } else {
+            mChild2[a] = give;
+        }
+        mParent[give] = a;
+        unionBounds(a, other, give);
+        unionBounds(up, a, keep);
+        mHeight[a] = 1 + Math.max(mHeight[other], mHeight[give]);
+        mHeight[up] = 1 + Math.max(mHeight[a], mHeight[keep]);
+        return up;
+    }
+
+    private void unionBounds(int node, int a, int b) {
+        int o = node * 6;
+        int oa = a * 6;
+        int ob = b * 6;
+        for (int i = 0; i < 3; i++) {
+            mBounds[o + i] = Math.min(mBounds[oa + i], mBounds[ob + i]);
+            mBounds[o + 3 + i] = Math.max(mBounds[oa + 3 + i], mBounds[ob + 3 + i]);
+        }
+    }
+
+    private float area(int node) {
+        int o = node * 6;
+        float dx = mBounds[o + 3] - mBounds[o];
+        float dy = mBounds[o + 4] - mBounds[o + 1];
+        float dz = mBounds[o + 5] - mBounds[o + 2];
+        return 2.0f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private float unionArea(int node, int leafOffset) {
+        int o = node * 6;
+        float dx = Math.max(mBounds[o + 3], mBounds[leafOffset + 3])
+                - Math.min(mBounds[o], mBounds[leafOffset]);
+        float dy = Math.max(mBounds[o + 4], mBounds[leafOffset + 4])
+                - Math.min(mBounds[o + 1], mBounds[leafOffset + 1]);
+        float dz = Math.max(mBounds[o + 5], mBounds[leafOffset + 5])
+                - Math.min(mBounds[o + 2], mBounds[leafOffset + 2]);
+        return 2.0f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private int allocateNode() {
+        if (mFreeList == NULL_NODE) {
+            int old = mCapacity;
+            allocate(mCapacity * 2);
+            for (int i = old; i < mCapacity - 1; i++) {
+                mParent[i] = i + 1;
+            }
+            mParent[mCapacity - 1] = NULL_NODE;
+            mFreeList = old;
+        }
+        int node = mFreeList;
+        mFreeList = mParent[node];
+        mParent[node] = NULL_NODE;
+        mChild1[node] = NULL_NODE;
+        mChild2[node] = NULL_NODE;
+        mHeight[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        mObjects[node] = null;
+        mHeight[node] = -1;
+        mParent[node] = mFreeList;
+        mFreeList = node;
+    }
+
+    private void allocate(int capacity) {
+        mCapacity = capacity;
+        if (mBounds == null) {
+            mBounds = new float[capacity * 6];
+            mParent = new int[capacity];
+            mChild1 = new int[capacity];
+            mChild2 = new int[capacity];
+            mHeight = new int[capacity];
+            mObjects = new CardboardObject[capacity];
+            for (int i = 0; i < capacity - 1; i++) {
+                mParent[i] = i + 1;
+            }
+            mParent[capacity - 1] = NULL_NODE;
+            mFreeList = 0;
+        } else {
+            mBounds = Arrays.copyOf(mBounds, capacity * 6);
+            mParent = Arrays.copyOf(mParent, capacity);
+            mChild1 = Arrays.copyOf(mChild1, capacity);
+            mChild2 = Arrays.copyOf(mChild2, capacity);
+            mHeight = Arrays.copyOf(mHeight, capacity);
+            mObjects = Arrays.copyOf(mObjects, capacity);
+        }
+    }
+}
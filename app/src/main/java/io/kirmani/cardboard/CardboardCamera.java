@@ -9,10 +9,11 @@ package io.kirmani.cardboard;
 
 import android.content.Context;
 import android.opengl.GLES20;
-import android.opengl.Matrix;
 
 import com.google.vrtoolkit.cardboard.Eye;
-import com.google.vrtoolkit.cardboard.HeadTransform;
+
+import io.kirmani.cardboard.math.Frustum;
+import io.kirmani.cardboard.math.Mat4;
 
 import javax.microedition.khronos.egl.EGLConfig;
 
@@ -20,36 +21,109 @@ public class CardboardCamera extends CardboardObject {
     private static final float CAMERA_Z = 0.01f;
 
     // We keep the light always position just above the user.
-    private static final float[] LIGHT_POS_IN_WORLD_SPACE = new float[] { 0.0f, 2.0f, 0.0f, 1.0f };
+    private static final float[] LIGHT_POS_IN_WORLD_SPACE = new float[] { 0.0f, 2.0f, 0.0f };
+
+    // Per-eye transforms relative to the head, from the last time each eye was drawn. These only
+    // change with the viewer profile, so they can be used to predict both eyes' frustums at the
+    // start of a frame, and to put the eyes on a replayed head. Indexed by eye type -
+    // Eye.Type.LEFT.
+    private final Mat4[] mEyeFromHead = { new Mat4(), new Mat4() };
+    private final Mat4 mMonocularFromHead = new Mat4();
+    private final Mat4[] mEyeProjection = { new Mat4(), new Mat4() };
+    private final boolean[] mEyeKnown = new boolean[2];
+
+    private final Mat4 mHeadInverse = new Mat4();
+    private final Mat4 mEyeViewProjection = new Mat4();
+    private final Frustum mRightFrustum = new Frustum();
 
     public CardboardCamera(Context context, CardboardScene scene) {
         super(context, scene);
-        setModel(new float[16]);
+        // Build the camera matrix. It doesn't change, so it is built once rather than every frame.
+        getModel().setLookAt(0.0f, 0.0f, CAMERA_Z, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
     }
 
     @Override
     public void onSurfaceCreated(EGLConfig config) {
         super.onSurfaceCreated(config);
-        GLES20.glClearColor(0.1f, 0.1f, 0.1f, 0.5f); // Dark background so text shows up well.
+        // Dark background so text shows up well.
+        CardboardGLContext.get().glClearColor(0.1f, 0.1f, 0.1f, 0.5f);
     }
 
     @Override
-    public void onNewFrame(HeadTransform headTransform) {
-        super.onNewFrame(headTransform);
-        // Build the camera matrix and apply it to the ModelView.
-        Matrix.setLookAtM(getModel(), 0, 0.0f, 0.0f, CAMERA_Z, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+    public void onNewFrame(Mat4 headView) {
+        super.onNewFrame(headView);
+        // Set the position of the light, once for both eyes.
+        System.arraycopy(LIGHT_POS_IN_WORLD_SPACE, 0, getScene().getLightPosInWorldSpace(), 0, 3);
+        // The eyes are built from the live head pose, even while a replay overrides it.
+        mHeadInverse.invertRigid(getScene().getLiveHeadView());
+        if (getScene().getCullingMode() == CardboardScene.CULL_PER_FRAME) {
+            updateFrameFrustum();
+        }
     }
 
+    /**
+     * Prepares the view and ViewProjection matrices shared by every object drawn for this eye.
+     *
+     * <p>While the scene replays a trace, the eye's offset from the live head is applied to the
+     * recorded head view instead, so that the replayed pose is what gets drawn.
+     */
+    @Override
     public void onDrawEye(Eye eye) {
-        super.onDrawEye(eye);
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        getGLState().enable(GLES20.GL_DEPTH_TEST);
+        CardboardGLContext.get().glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        // The eye view is the eye's offset times the head view.
+        int type = eye.getType();
+        boolean stereo = type == Eye.Type.LEFT || type == Eye.Type.RIGHT;
+        Mat4 eyeFromHead = stereo ? mEyeFromHead[type - Eye.Type.LEFT] : mMonocularFromHead;
+        eyeFromHead.multiply(eye.getEyeView(), 0, mHeadInverse);
 
         // Apply the eye transformation to the camera.
-        Matrix.multiplyMM(getView(), 0, eye.getEyeView(), 0, getModel(), 0);
+        // The Eye caches its perspective matrix, so asking for it once per eye doesn't allocate.
+        if (getScene().isReplaying()) {
+            getView().multiply(getScene().getHeadView(), getModel());
+            getView().multiply(eyeFromHead, getView());
+        } else {
+            getView().multiply(eye.getEyeView(), 0, getModel());
+        }
+        getScene().getViewProjection().multiply(eye.getPerspective(Z_NEAR, Z_FAR), 0, getView());
+        getScene().getFrustum().set(getScene().getViewProjection());
+
+        if (stereo) {
+            int index = type - Eye.Type.LEFT;
+            mEyeProjection[index].set(eye.getPerspective(Z_NEAR, Z_FAR), 0);
+            mEyeKnown[index] = true;
+        }
+        // The projection's y scale is the cotangent of half the vertical field of view.
+        getScene().setPixelsPerUnit(
+                0.5f * eye.getViewport().height * eye.getPerspective(Z_NEAR, Z_FAR)[5]);
+    }
+
+    /**
+     * Predicts the frustum of each eye for the new head pose and combines them into one that
+     * contains both.
+     *
+     * <p>The eyes share their orientation and are only offset along their x axis, which lies in
+     * the top, bottom, near and far planes. Those planes are therefore the same for both eyes, and
+     * the union of the two frustums is bounded by the left eye's left plane and the right eye's
+     * right plane.
+     */
+    private void updateFrameFrustum() {
+        if (!mEyeKnown[0] || !mEyeKnown[1]) {
+            getScene().setFrameFrustumValid(false);
+            return;
+        }
+        Frustum frame = getScene().getFrameFrustum();
+        frame.set(eyeViewProjection(0));
+        mRightFrustum.set(eyeViewProjection(1));
+        frame.getPlane(Frustum.RIGHT).set(mRightFrustum.getPlane(Frustum.RIGHT));
+        getScene().setFrameFrustumValid(true);
+    }
 
-        // Set the position of the light
-        Matrix.multiplyMV(getLightPosInEyeSpace(), 0, getView(), 0, LIGHT_POS_IN_WORLD_SPACE, 0);
+    private Mat4 eyeViewProjection(int index) {
+        mEyeViewProjection.multiply(getScene().getHeadView(), getModel());
+        mEyeViewProjection.multiply(mEyeFromHead[index], mEyeViewProjection);
+        return mEyeViewProjection.multiply(mEyeProjection[index], mEyeViewProjection);
     }
 }
 
@@ -8,44 +8,41 @@
 package io.kirmani.cardboard;
 
 import android.app.Activity;
-import android.content.Context;
-import android.opengl.Matrix;
-import android.opengl.GLES20;
-import android.os.Vibrator;
 import android.util.Log;
 
 import com.google.vrtoolkit.cardboard.Eye;
-import com.google.vrtoolkit.cardboard.HeadTransform;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import io.kirmani.cardboard.math.Mat4;
+import io.kirmani.cardboard.math.Vec3;
 
 import javax.microedition.khronos.egl.EGLConfig;
 
 public class CardboardCube extends CardboardObject {
     private static final String TAG = "CardboardCube";
 
-    private static final float YAW_LIMIT = 0.12f;
-    private static final float PITCH_LIMIT = 0.12f;
-
-    private float[] mView;
-    private float[] mHeadView;
-
-    private FloatBuffer mFoundColors;
-
     private int mScore;
     private float objectDistance = 12f;
-    private static final float TIME_DELTA = 0.3f;
+    // In degrees per second.
+    private static final float ROTATION_SPEED = 18.0f;
+
+    // Set by the trigger on the UI thread, acted on by the simulation.
+    private volatile boolean mHideRequested;
+
+    // Scratch storage, so that hiding doesn't allocate. Only used by the simulation.
+    private final Vec3 mPosition = new Vec3();
+    private final Mat4 mRotation = new Mat4();
 
-    private Vibrator mVibrator;
     private CardboardOverlayView mOverlayView;
 
     public CardboardCube(Activity activity, CardboardScene scene) {
         super(activity, scene);
-        setModel(new float[16]);
-        mHeadView = new float[16];
-        mVibrator = (Vibrator) getContext().getSystemService(Context.VIBRATOR_SERVICE);
+        setMesh(new CardboardMeshBuilder()
+                .addTriangles(CUBE_COORDS, CUBE_NORMALS, CUBE_COLORS)
+                .build(true));
+        setHighlightColor(CUBE_FOUND_COLOR[0], CUBE_FOUND_COLOR[1], CUBE_FOUND_COLOR[2]);
+        setPickable(true);
+        getModel().setTranslation(0, 0, -objectDistance);
+        setSimulated(true);
 
         mOverlayView = (CardboardOverlayView) activity.findViewById(R.id.overlay);
         mOverlayView.show3DToast("Pull the magnet when you find an object.");
@@ -55,174 +52,76 @@ public class CardboardCube extends CardboardObject {
     public void onSurfaceCreated(EGLConfig config) {
         super.onSurfaceCreated(config);
         checkGLError("onSurfaceCreated");
-        ByteBuffer bbVertices = ByteBuffer.allocateDirect(CUBE_COORDS.length * 4);
-        bbVertices.order(ByteOrder.nativeOrder());
-        setVertices(bbVertices.asFloatBuffer());
-        getVertices().put(CUBE_COORDS);
-        getVertices().position(0);
-
-        ByteBuffer bbColors = ByteBuffer.allocateDirect(CUBE_COLORS.length * 4);
-        bbColors.order(ByteOrder.nativeOrder());
-        setColors(bbColors.asFloatBuffer());
-        getColors().put(CUBE_COLORS);
-        getColors().position(0);
-
-        ByteBuffer bbFoundColors = ByteBuffer.allocateDirect(CUBE_FOUND_COLORS.length * 4);
-        bbFoundColors.order(ByteOrder.nativeOrder());
-        mFoundColors = bbFoundColors.asFloatBuffer();
-        mFoundColors.put(CUBE_FOUND_COLORS);
-        mFoundColors.position(0);
-
-        ByteBuffer bbNormals = ByteBuffer.allocateDirect(CUBE_NORMALS.length * 4);
-        bbNormals.order(ByteOrder.nativeOrder());
-        setNormals(bbNormals.asFloatBuffer());
-        getNormals().put(CUBE_NORMALS);
-        getNormals().position(0);
-
-        int vertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.light_vertex);
-        int passthroughShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.passthrough_fragment);
-
-        setProgram(GLES20.glCreateProgram());
-        GLES20.glAttachShader(getProgram(), vertexShader);
-        GLES20.glAttachShader(getProgram(), passthroughShader);
-        GLES20.glLinkProgram(getProgram());
-        GLES20.glUseProgram(getProgram());
 
+        setProgram(loadProgram(R.raw.light_vertex, R.raw.passthrough_fragment, "HIGHLIGHT"));
         checkGLError("Cube program");
-
-        setPositionParam(GLES20.glGetAttribLocation(getProgram(), "a_Position"));
-        setNormalParam(GLES20.glGetAttribLocation(getProgram(), "a_Normal"));
-        setColorParam(GLES20.glGetAttribLocation(getProgram(), "a_Color"));
-
-        setModelParam(GLES20.glGetUniformLocation(getProgram(), "u_Model"));
-        setModelViewParam(GLES20.glGetUniformLocation(getProgram(), "u_MVMatrix"));
-        setModelViewProjectionParam(GLES20.glGetUniformLocation(getProgram(), "u_MVP"));
-        setLightPosParam(GLES20.glGetUniformLocation(getProgram(), "u_LightPos"));
-
-        GLES20.glEnableVertexAttribArray(getPositionParam());
-        GLES20.glEnableVertexAttribArray(getNormalParam());
-        GLES20.glEnableVertexAttribArray(getColorParam());
-
-        checkGLError("Cube program params");
-
-        Matrix.setIdentityM(getModel(), 0);
-        Matrix.translateM(getModel(), 0, 0, 0, -objectDistance);
-        checkGLError("onSurfaceCreated");
     }
 
     @Override
-    public void onNewFrame(HeadTransform headTransform) {
-        super.onNewFrame(headTransform);
-        Matrix.rotateM(getModel(), 0, TIME_DELTA, 0.5f, 0.5f, 1.0f);
-        headTransform.getHeadView(mHeadView, 0);
+    protected void onSimulate(Mat4 model, float deltaSeconds) {
+        if (mHideRequested) {
+            mHideRequested = false;
+            hide(model);
+        }
+        model.rotate(ROTATION_SPEED * deltaSeconds, 0.5f, 0.5f, 1.0f);
     }
 
+    /**
+     * Highlights the cube in its found color while the user is looking at it. The gaze target is
+     * only known once every object has been updated, so this can't happen any earlier.
+     */
     @Override
     public void onDrawEye(Eye eye) {
+        setHighlight(isLookingAt() ? 1.0f : 0.0f);
         super.onDrawEye(eye);
-        // Build the ModelView and ModelViewProjection matrices
-        // for calculating cube position and light.
-        float[] perspective = eye.getPerspective(Z_NEAR, Z_FAR);
-        Matrix.multiplyMM(getModelView(), 0, getView(), 0, getModel(), 0);
-        Matrix.multiplyMM(getModelViewProjection(), 0, perspective, 0, getModelView(), 0);
-        draw();
     }
 
     /**
-     * Draw the cube.
-     *
-     * <p>We've set all of our transformation matrices. Now we simply pass them into the shader.
+     * Called by the scene only when the trigger is pulled while the user looks at the cube.
      */
-    public void draw() {
-        GLES20.glUseProgram(getProgram());
-
-        GLES20.glUniform3fv(getLightPosParam(), 1, getLightPosInEyeSpace(), 0);
-
-        // Set the Model in the shader, used to calculate lighting
-        GLES20.glUniformMatrix4fv(getModelParam(), 1, false, getModel(), 0);
-
-        // Set the ModelView in the shader, used to calculate lighting
-        GLES20.glUniformMatrix4fv(getModelViewParam(), 1, false, getModelView(), 0);
-
-        // Set the position of the cube
-        GLES20.glVertexAttribPointer(getPositionParam(), COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-                false, 0, getVertices());
-
-        // Set the ModelViewProjection matrix in the shader.
-        GLES20.glUniformMatrix4fv(getModelViewProjectionParam(), 1, false, getModelViewProjection(), 0);
-
-        // Set the normal positions of the cube, again for shading
-        GLES20.glVertexAttribPointer(getNormalParam(), 3, GLES20.GL_FLOAT, false, 0, getNormals());
-        GLES20.glVertexAttribPointer(getColorParam(), 4, GLES20.GL_FLOAT, false, 0,
-                isLookingAtObject() ? mFoundColors : getColors());
-
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);
-        checkGLError("Drawing cube");
-    }
-
     @Override
     public void onCardboardTrigger() {
         super.onCardboardTrigger();
         Log.i(TAG, "onCardboardTrigger");
 
-        if (isLookingAtObject()) {
-            mScore++;
-            mOverlayView.show3DToast("Found it! Look around for another one.\nScore = " + mScore);
-            hide();
-        } else {
-            mOverlayView.show3DToast("Look around to find the object!");
-        }
-
-        // Always give user feedback.
-        mVibrator.vibrate(50);
+        mScore++;
+        mOverlayView.show3DToast("Found it! Look around for another one.\nScore = " + mScore);
+        mHideRequested = true;
     }
 
     /**
      * Find a new random position for the object.
      *
      * We'll rotate it around the Y-axis so it's out of sight, and then up or down by a little bit.
+     *
+     * @param model The cube's model matrix, owned by the simulation.
      */
-    private void hide() {
-        float[] rotationMatrix = new float[16];
-        float[] posVec = new float[4];
-
+    private void hide(Mat4 model) {
         // First rotate in XZ plane, between 90 and 270 deg away, and scale so that we vary
         // the object's distance from the user.
         float angleXZ = (float) Math.random() * 180 + 90;
-        Matrix.setRotateM(rotationMatrix, 0, angleXZ, 0f, 1f, 0f);
+        mRotation.setRotation(angleXZ, 0f, 1f, 0f);
         float oldObjectDistance = objectDistance;
         objectDistance = (float) Math.random() * 15 + 5;
         float objectScalingFactor = objectDistance / oldObjectDistance;
-        Matrix.scaleM(rotationMatrix, 0, objectScalingFactor, objectScalingFactor,
-                objectScalingFactor);
-        Matrix.multiplyMV(posVec, 0, rotationMatrix, 0, getModel(), 12);
+        mRotation.scale(objectScalingFactor, objectScalingFactor, objectScalingFactor);
+        mRotation.transformPoint(model.getTranslation(mPosition), mPosition);
 
         // Now get the up or down angle, between -20 and 20 degrees.
         float angleY = (float) Math.random() * 80 - 40; // Angle in Y plane, between -40 and 40.
         angleY = (float) Math.toRadians(angleY);
         float newY = (float) Math.tan(angleY) * objectDistance;
 
-        Matrix.setIdentityM(getModel(), 0);
-        Matrix.translateM(getModel(), 0, posVec[0], newY, posVec[2]);
+        model.setTranslation(mPosition.x, newY, mPosition.z);
     }
 
     /**
-     * Check if user is looking at object by calculating where the object is in eye-space.
+     * Check if user is looking at object, i.e. whether the scene's gaze ray hit it this frame.
      *
      * @return true if the user is looking at the object.
      */
-    private boolean isLookingAtObject() {
-        float[] initVec = { 0, 0, 0, 1.0f };
-        float[] objPositionVec = new float[4];
-
-        // Convert object space to camera space. Use the headView from onNewFrame.
-        Matrix.multiplyMM(getModelView(), 0, mHeadView, 0, getModel(), 0);
-        Matrix.multiplyMV(objPositionVec, 0, getModelView(), 0, initVec, 0);
-
-        float pitch = (float) Math.atan2(objPositionVec[1], -objPositionVec[2]);
-        float yaw = (float) Math.atan2(objPositionVec[0], -objPositionVec[2]);
-
-        return Math.abs(pitch) < PITCH_LIMIT && Math.abs(yaw) < YAW_LIMIT;
+    private boolean isLookingAt() {
+        return getScene().getGazeTarget() == this;
     }
 
     public static final float[] CUBE_COORDS = new float[] {
@@ -325,55 +224,8 @@ public class CardboardCube extends CardboardObject {
             0.8359375f,  0.17578125f,  0.125f, 1.0f,
     };
 
-    public static final float[] CUBE_FOUND_COLORS = new float[] {
-        // front, yellow
-        1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-
-            // right, yellow
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-
-            // back, yellow
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-
-            // left, yellow
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-
-            // top, yellow
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-
-            // bottom, yellow
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-            1.0f,  0.6523f, 0.0f, 1.0f,
-    };
+    // The color of the cube while the user is looking at it, yellow.
+    public static final float[] CUBE_FOUND_COLOR = new float[] { 1.0f, 0.6523f, 0.0f };
 
     public static final float[] CUBE_NORMALS = new float[] {
         // Front face
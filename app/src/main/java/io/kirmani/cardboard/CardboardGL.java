@@ -0,0 +1,143 @@
+/*
+ * CardboardGL.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES calls the renderer makes.
+ *
+ * <p>Every GL call goes through the implementation returned by {@link CardboardGLContext#get()}
+ * instead of the GLES20 and GLES30 statics, so that the renderer can run without a device.
+ * {@link CardboardAndroidGL} forwards to the driver and {@link CardboardRecordingGL} only records
+ * the calls. Methods are named and take their arguments exactly like their GLES counterparts,
+ * and GL enums are still taken from GLES20 and GLES30. The GLES30 methods need an OpenGL ES 3
+ * context, which callers check for.
+ */
+public interface CardboardGL {
+    void glActiveTexture(int texture);
+
+    void glAttachShader(int program, int shader);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBindTexture(int target, int texture);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    void glClear(int mask);
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glCompileShader(int shader);
+
+    void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height,
+            int border, int imageSize, Buffer data);
+
+    int glCreateProgram();
+
+    int glCreateShader(int type);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteProgram(int program);
+
+    void glDeleteShader(int shader);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glDisable(int cap);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glDrawArrays(int mode, int first, int count);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    void glEnable(int cap);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    void glGenerateMipmap(int target);
+
+    String glGetActiveAttrib(int program, int index, int[] size, int sizeOffset, int[] type,
+            int typeOffset);
+
+    String glGetActiveUniform(int program, int index, int[] size, int sizeOffset, int[] type,
+            int typeOffset);
+
+    int glGetAttribLocation(int program, String name);
+
+    int glGetError();
+
+    void glGetIntegerv(int pname, int[] params, int offset);
+
+    String glGetProgramInfoLog(int program);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    String glGetString(int name);
+
+    int glGetUniformLocation(int program, String name);
+
+    void glLinkProgram(int program);
+
+    void glPixelStorei(int pname, int param);
+
+    void glShaderSource(int shader, String string);
+
+    void glTexImage2D(int target, int level, int internalformat, int width, int height,
+            int border, int format, int type, Buffer pixels);
+
+    void glTexParameteri(int target, int pname, int param);
+
+    void glUniform3fv(int location, int count, float[] v, int offset);
+
+    void glUniform4fv(int location, int count, float[] v, int offset);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+            int offset);
+
+    void glUseProgram(int program);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+            int offset);
+
+    // OpenGL ES 3.
+
+    void glBeginQuery(int target, int id);
+
+    void glDrawArraysInstanced(int mode, int first, int count, int instanceCount);
+
+    void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount);
+
+    void glEndQuery(int target);
+
+    void glGenQueries(int n, int[] ids, int offset);
+
+    void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+            int[] binaryFormat, int binaryFormatOffset, Buffer binary);
+
+    void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+
+    void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+    void glProgramParameteri(int program, int pname, int value);
+
+    void glVertexAttribDivisor(int index, int divisor);
+}
@@ -0,0 +1,38 @@
+/*
+ * CardboardGLContext.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+/**
+ * Holds the {@link CardboardGL} that every GL call of the renderer goes through.
+ *
+ * <p>It is global for the same reason the GLES statics are: GL calls always go to the context
+ * that is current on the GL thread, and the renderer only ever has one. The default forwards to
+ * the device; tests and benchmarks install a {@link CardboardRecordingGL} before creating the
+ * scene.
+ */
+public final class CardboardGLContext {
+    private static CardboardGL sGL = new CardboardAndroidGL();
+
+    private CardboardGLContext() {
+    }
+
+    public static CardboardGL get() {
+        return sGL;
+    }
+
+    /**
+     * Replaces the GL implementation. Must be called before the GL thread starts, since the field
+     * is read on every call without synchronization.
+     */
+    public static void set(CardboardGL gl) {
+        if (gl == null) {
+            throw new IllegalArgumentException("gl must not be null");
+        }
+        sGL = gl;
+    }
+}
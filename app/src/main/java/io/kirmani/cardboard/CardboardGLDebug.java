@@ -0,0 +1,162 @@
+/*
+ * CardboardGLDebug.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * Decides how much GL error checking the renderer does.
+ *
+ * <p>glGetError makes many drivers wait for the GPU, so it must not be called per draw in a
+ * release build. There are three kinds of check:
+ *
+ * <ul>
+ * <li>Setup checks, after one-off work such as creating buffers and programs, which are cheap
+ * enough to keep in every mode but {@link #MODE_OFF}.
+ * <li>Draw checks, after each draw, only in {@link #MODE_FULL} and {@link #MODE_TRACE}.
+ * <li>The frame check, once per frame in full and trace mode, and once every
+ * {@link #setSampleInterval(int) sample interval} frames in {@link #MODE_SAMPLED}. It catches
+ * errors from anywhere in the frame, just not where they happened.
+ * </ul>
+ *
+ * <p>In full and trace mode an error throws, so that it is found during development; in sampled
+ * mode it is only logged. Trace mode also checks every call issued through
+ * {@link CardboardGLState}, and logs the failing call along with its arguments.
+ *
+ * <p>The mode is global, since all GL calls go to the current context of the GL thread.
+ */
+public final class CardboardGLDebug {
+    private static final String TAG = "CardboardGLDebug";
+
+    /** No checking at all. */
+    public static final int MODE_OFF = 0;
+    /** Setup checks, and a frame check every few frames. The release default. */
+    public static final int MODE_SAMPLED = 1;
+    /** Every kind of check, every frame. */
+    public static final int MODE_FULL = 2;
+    /** Full checking, plus a check after every call through {@link CardboardGLState}. */
+    public static final int MODE_TRACE = 3;
+
+    public static final int DEFAULT_SAMPLE_INTERVAL = 300;
+
+    private static volatile int sMode = MODE_SAMPLED;
+    private static volatile int sSampleInterval = DEFAULT_SAMPLE_INTERVAL;
+    private static int sFrame;
+
+    private CardboardGLDebug() {
+    }
+
+    public static void setMode(int mode) {
+        sMode = mode;
+    }
+
+    public static int getMode() {
+        return sMode;
+    }
+
+    /**
+     * Sets how many frames apart the frame check runs in {@link #MODE_SAMPLED}.
+     */
+    public static void setSampleInterval(int frames) {
+        sSampleInterval = Math.max(frames, 1);
+    }
+
+    /**
+     * Returns whether each draw, and the frame, should be checked.
+     */
+    public static boolean isCheckingDraws() {
+        return sMode >= MODE_FULL;
+    }
+
+    /**
+     * Returns whether every call through {@link CardboardGLState} should be checked.
+     */
+    public static boolean isTracing() {
+        return sMode == MODE_TRACE;
+    }
+
+    /**
+     * Checks for errors after setup work, unless checking is off.
+     *
+     * @param label Label to report in case of error.
+     */
+    public static void checkSetup(String label) {
+        if (sMode != MODE_OFF) {
+            check(label);
+        }
+    }
+
+    /**
+     * Checks for errors after a draw, in full and trace mode.
+     */
+    public static void checkDraw(String label) {
+        if (sMode >= MODE_FULL) {
+            check(label);
+        }
+    }
+
+    /**
+     * Checks for errors at the end of a frame, when this frame is due for it. Call once per frame
+     * on the GL thread.
+     */
+    public static void checkFrame(String label) {
+        int mode = sMode;
+        sFrame++;
+        if (mode >= MODE_FULL || (mode == MODE_SAMPLED && sFrame % sSampleInterval == 0)) {
+            check(label);
+        }
+    }
+
+    /**
+     * Checks for an error after a call issued by {@link CardboardGLState} in trace mode, and
+     * reports the call.
+     *
+     * @param call The name of the GL function.
+     * @param args Its arguments.
+     */
+    static void checkCall(String call, Object... args) {
+        int error = CardboardGLContext.get().glGetError();
+        if (error != GLES20.GL_NO_ERROR) {
+            report(formatCall(call, args), error);
+        }
+    }
+
+    /**
+     * Formats a GL call with its arguments, e.g. "glBindBuffer(0x8892, 3)".
+     */
+    static String formatCall(String call, Object... args) {
+        StringBuilder message = new StringBuilder(call).append('(');
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                message.append(", ");
+            }
+            Object arg = args[i];
+            // GL enums read better in hex.
+            message.append(arg instanceof Integer && (Integer) arg >= 0x100
+                    ? "0x" + Integer.toHexString((Integer) arg) : String.valueOf(arg));
+        }
+        return message.append(')').toString();
+    }
+
+    private static void check(String label) {
+        CardboardGL gl = CardboardGLContext.get();
+        int error;
+        while ((error = gl.glGetError()) != GLES20.GL_NO_ERROR) {
+            report(label, error);
+        }
+    }
+
+    private static void report(String label, int error) {
+        String message = label + ": glError 0x" + Integer.toHexString(error);
+        Log.e(TAG, message);
+        if (sMode >= MODE_FULL) {
+            throw new RuntimeException(message);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * CardboardGLState.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+
+/**
+ * Shadows the GL state that objects set while drawing and skips calls that wouldn't change it.
+ *
+ * <p>Tracks the bound program, the bound array and element array buffers, enabled vertex attribute
+ * arrays and their pointers, enabled capabilities, the active texture unit and the 2D texture
+ * bound to each unit, and the last value uploaded to each float uniform of each program. Uniforms
+ * uploaded with a source and version, see
+ * {@link #uniformMatrix4fv(int, float[], int, Object, long)}, are skipped without comparing the
+ * values when the source hasn't changed since. Every call through this class counts as either
+ * issued or skipped, so the savings can be measured. In {@link CardboardGLDebug#MODE_TRACE} every
+ * issued call is checked for errors and logged with its arguments if it failed.
+ *
+ * <p>Anything outside of the scene may change GL state behind our back; in particular the
+ * Cardboard distortion pass runs after every frame. {@link #invalidate()} must be called before
+ * drawing a frame so that the first call of each kind always reaches the driver. Uniform values
+ * live in the program objects and are only lost with the EGL context.
+ */
+public class CardboardGLState {
+    private static final int MAX_ATTRIBS = 16;
+    private static final int MAX_CAPABILITY = 0x10000;
+    private static final int MAX_TEXTURE_UNITS = 8;
+
+    private CardboardProgram mProgram;
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+
+    private final boolean[] mAttribEnabled = new boolean[MAX_ATTRIBS];
+    private final boolean[] mAttribKnown = new boolean[MAX_ATTRIBS];
+    private final int[] mAttribBuffer = new int[MAX_ATTRIBS];
+    private final int[] mAttribSize = new int[MAX_ATTRIBS];
+    private final int[] mAttribType = new int[MAX_ATTRIBS];
+    private final int[] mAttribStride = new int[MAX_ATTRIBS];
+    private final int[] mAttribOffset = new int[MAX_ATTRIBS];
+    private final boolean[] mAttribNormalized = new boolean[MAX_ATTRIBS];
+
+    // Only instanced draws, which require OpenGL ES 3, change divisors, and they set them back to 0
+    // afterwards. Unlike everything else this is therefore never invalidated.
+    private final int[] mAttribDivisor = new int[MAX_ATTRIBS];
+
+    // 0 = unknown, 1 = enabled, -1 = disabled, indexed by capability enum.
+    private final byte[] mCapabilities = new byte[MAX_CAPABILITY];
+
+    // -1 for unknown.
+    private int mActiveTexture;
+    private final int[] mBoundTextures = new int[MAX_TEXTURE_UNITS];
+
+    private long mIssuedCalls;
+    private long mSkippedCalls;
+
+    public CardboardGLState() {
+        invalidate();
+    }
+
+    /**
+     * Forgets all shadowed state except uniform values, so that the next call of each kind is
+     * issued.
+     */
+    public void invalidate() {
+        mProgram = null;
+        mArrayBuffer = -1;
+        mElementArrayBuffer = -1;
+        Arrays.fill(mAttribKnown, false);
+        Arrays.fill(mCapabilities, (byte) 0);
+        mActiveTexture = -1;
+        Arrays.fill(mBoundTextures, -1);
+    }
+
+    public void useProgram(CardboardProgram program) {
+        if (program == mProgram) {
+            mSkippedCalls++;
+            return;
+        }
+        mProgram = program;
+        CardboardGLContext.get().glUseProgram(program.getHandle());
+        mIssuedCalls++;
+        if (CardboardGLDebug.isTracing()) {
+            CardboardGLDebug.checkCall("glUseProgram", program.getHandle());
+        }
+    }
+
+    public CardboardProgram getProgram() {
+        return mProgram;
+    }
+
+    public void bindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            if (buffer == mArrayBuffer) {
+                mSkippedCalls++;
+                return;
+            }
+            mArrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (buffer == mElementArrayBuffer) {
+                mSkippedCalls++;
+                return;
+            }
+            mElementArrayBuffer = buffer;
+        }
+        CardboardGLContext.get().glBindBuffer(target, buffer);
+        mIssuedCalls++;
+        if (CardboardGLDebug.isTracing()) {
+            CardboardGLDebug.checkCall("glBindBuffer", target, buffer);
+        }
+    }
+
+    /**
+     * Forgets a buffer binding, e.g. after the buffer was bound or deleted without going through
+     * this class.
+     */
+    public void forgetBuffer(int target) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            mArrayBuffer = -1;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            mElementArrayBuffer = -1;
+        }
+    }
+
+    public void enableVertexAttribArray(int index) {
+        if (index < 0) {
+            return;
+        }
+        if (index < MAX_ATTRIBS && mAttribKnown[index] && mAttribEnabled[index]) {
+            mSkippedCalls++;
+            return;
+        }
+        CardboardGLContext.get().glEnableVertexAttribArray(index);
+        mIssuedCalls++;
+        if (CardboardGLDebug.isTracing()) {
+            CardboardGLDebug.checkCall("glEnableVertexAttribArray", index);
+        }
+        if (index < MAX_ATTRIBS) {
+            if (!mAttribKnown[index]) {
+                // Pointer state is unknown until set through this class.
+                mAttribBuffer[index] = -1;
+            }
+            mAttribKnown[index] = true;
+            mAttribEnabled[index] = true;
+        }
+    }
+
+    public void disableVertexAttribArray(int index) {
+        if (index < 0) {
+            return;
+        }
+        if (index < MAX_ATTRIBS && mAttribKnown[index] && !mAttribEnabled[index]) {
+            mSkippedCalls++;
+            return;
+        }
+        CardboardGLContext.get().glDisableVertexAttribArray(index);
+        mIssuedCalls++;
+        if (CardboardGLDebug.isTracing()) {
+            CardboardGLDebug.checkCall("glDisableVertexAttribArray", index);
+        }
+        if (index < MAX_ATTRIBS) {
+            if (!mAttribKnown[index]) {
+                mAttribBuffer[index] = -1;
+            }
+            mAttribKnown[index] = true;
+            mAttribEnabled[index] = false;
+        }
+    }
+
+    /**
+     * Points an attribute at an offset into the currently bound array buffer.
+     */
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+            int offset) {
+        if (index < 0) {
+            return;
+        }
+        if (index < MAX_ATTRIBS && mAttribKnown[index] && mArrayBuffer >= 0
+                && mAttribBuffer[index] == mArrayBuffer && mAttribSize[index] == size
+                && mAttribType[index] == type && mAttribNormalized[index] == normalized
+                && mAttribStride[index] == stride && mAttribOffset[index] == offset) {
+            mSkippedCalls++;
+            return;
+        }
+        CardboardGLContext.get().glVertexAttribPointer(index, size, type, normalized, stride,
+                offset);
+        mIssuedCalls++;
+        if (CardboardGLDebug.isTracing()) {
+            CardboardGLDebug.checkCall("glVertexAttribPointer", index, size, type, normalized,
+                    stride, offset);
+        }
+        if (index < MAX_ATTRIBS && mAttribKnown[index]) {
+            mAttribBuffer[index] = mArrayBuffer;
+            mAttribSize[index] = size;
+            mAttribType[index] = type;
+            mAttribNormalized[index] = normalized;
+            mAttribStride[index] = stride;
+            mAttribOffset[index] = offset;
+        }
+    }
+
+    /**
+     * Sets the instance divisor of an attribute. Requires an OpenGL ES 3 context.
+     */
+    public void vertexAttribDivisor(int index, int divisor) {
+        if (index < 0) {
+            return;
+        }
+        if (index < MAX_ATTRIBS && mAttribDivisor[index] == divisor) {
+            mSkippedCalls++;
+            return;
+        }
+        CardboardGLContext.get().glVertexAttribDivisor(index, divisor);
+        mIssuedCalls++;
+        if (CardboardGLDebug.isTracing()) {
+            CardboardGLDebug.checkCall("glVertexAttribDivisor", index, divisor);
+        }
+        if (index < MAX_ATTRIBS) {
+            mAttribDivisor[index] = divisor;
+        }
+    }
+
+    public void enable(int capability) {
+        if (capability < MAX_CAPABILITY && mCapabilities[capability] == 1) {
+            mSkippedCalls++;
+            return;
+        }
+        CardboardGLContext.get().glEnable(capability);
+        mIssuedCalls++;
+        if (CardboardGLDebug.isTracing()) {
+            CardboardGLDebug.checkCall("glEnable", capability);
+        }
+        if (capability < MAX_CAPABILITY) {
+            mCapabilities[capability] = 1;
+        }
+    }
+
+    public void disable(int capability) {
+        if (capability < MAX_CAPABILITY && mCapabilities[capability] == -1) {
+            mSkippedCalls++;
+            return;
+        }
+        CardboardGLContext.get().glDisable(capability);
+        mIssuedCalls++;
+        if (CardboardGLDebug.isTracing()) {
+            CardboardGLDebug.checkCall("glDisable", capability);
+        }
+        if (capability < MAX_CAPABILITY) {
+            mCapabilities[capability] = -1;
+        }
+    }
+
+    /**
+     * Binds a 2D texture to a texture unit, making the unit active first if it isn't.
+     *
+     * @param unit The unit, counted from 0 rather than GL_TEXTURE0.
+     */
+    public void bindTexture(int unit, int texture) {
+        if (unit < MAX_TEXTURE_UNITS && mBoundTextures[unit] == texture) {
+            mSkippedCalls++;
+            return;
+        }
+        CardboardGL gl = CardboardGLContext.get();
+        if (unit != mActiveTexture) {
+            gl.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+            mIssuedCalls++;
+            if (CardboardGLDebug.isTracing()) {
+                CardboardGLDebug.checkCall("glActiveTexture", unit);
+            }
+            mActiveTexture = unit;
+        }
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        mIssuedCalls++;
+        if (CardboardGLDebug.isTracing()) {
+            CardboardGLDebug.checkCall("glBindTexture", unit, texture);
+        }
+        if (unit < MAX_TEXTURE_UNITS) {
+            mBoundTextures[unit] = texture;
+        }
+    }
+
+    /**
+     * Uploads a 4x4 matrix to a uniform of the current program, unless it already holds it.
+     */
+    public void uniformMatrix4fv(int location, float[] value, int offset) {
+        if (location < 0) {
+            return;
+        }
+        if (updateShadow(location, value, offset, 16)) {
+            CardboardGLContext.get().glUniformMatrix4fv(location, 1, false, value, offset);
+            mIssuedCalls++;
+            if (CardboardGLDebug.isTracing()) {
+                CardboardGLDebug.checkCall("glUniformMatrix4fv", location, 1, false);
+            }
+        } else {
+            mSkippedCalls++;
+        }
+    }
+
+    /**
+     * Uploads a 4x4 matrix that belongs to a source which bumps a version whenever the matrix
+     * changes, e.g. an object's world matrix. When the uniform of the current program was last set
+     * from the same source at the same version the upload is skipped without comparing the values,
+     * which is what makes still objects cheap to draw.
+     */
+    public void uniformMatrix4fv(int location, float[] value, int offset, Object source,
+            long version) {
+        if (location < 0) {
+            return;
+        }
+        if (mProgram != null && mProgram.isUniformSourceCurrent(location, source, version)) {
+            mSkippedCalls++;
+            return;
+        }
+        uniformMatrix4fv(location, value, offset);
+        if (mProgram != null) {
+            mProgram.setUniformSource(location, source, version);
+        }
+    }
+
+    /**
+     * Uploads a 3-component vector to a uniform of the current program, unless it already holds
+     * it.
+     */
+    public void uniform3fv(int location, float[] value, int offset) {
+        if (location < 0) {
+            return;
+        }
+        if (updateShadow(location, value, offset, 3)) {
+            CardboardGLContext.get().glUniform3fv(location, 1, value, offset);
+            mIssuedCalls++;
+            if (CardboardGLDebug.isTracing()) {
+                CardboardGLDebug.checkCall("glUniform3fv", location, 1);
+            }
+        } else {
+            mSkippedCalls++;
+        }
+    }
+
+    /**
+     * Uploads a 4-component vector to a uniform of the current program, unless it already holds
+     * it.
+     */
+    public void uniform4fv(int location, float[] value, int offset) {
+        uniform4fv(location, 1, value, offset);
+    }
+
+    /**
+     * Uploads the first elements of a vec4 array uniform of the current program with one call,
+     * unless they already hold the values.
+     *
+     * @param count The number of vectors.
+     */
+    public void uniform4fv(int location, int count, float[] value, int offset) {
+        if (location < 0) {
+            return;
+        }
+        if (updateShadow(location, value, offset, count * 4)) {
+            CardboardGLContext.get().glUniform4fv(location, count, value, offset);
+            mIssuedCalls++;
+            if (CardboardGLDebug.isTracing()) {
+                CardboardGLDebug.checkCall("glUniform4fv", location, count);
+            }
+        } else {
+            mSkippedCalls++;
+        }
+    }
+
+    public long getIssuedCalls() {
+        return mIssuedCalls;
+    }
+
+    public long getSkippedCalls() {
+        return mSkippedCalls;
+    }
+
+    public void resetCounters() {
+        mIssuedCalls = 0;
+        mSkippedCalls = 0;
+    }
+
+    /**
+     * Compares a value against the current program's shadow of a uniform and copies it in if it
+     * differs.
+     *
+     * @return Whether the value has to be uploaded.
+     */
+    private boolean updateShadow(int location, float[] value, int offset, int count) {
+        float[] shadow = mProgram != null ? mProgram.getUniformShadow(location) : null;
+        if (shadow == null || shadow.length < count) {
+            return true;
+        }
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            if (shadow[i] != value[offset + i]) {
+                changed = true;
+                break;
+            }
+        }
+        if (changed) {
+            System.arraycopy(value, offset, shadow, 0, count);
+            // Whatever source the old value came from, it no longer matches.
+            mProgram.setUniformSource(location, null, 0);
+        }
+        return changed;
+    }
+}
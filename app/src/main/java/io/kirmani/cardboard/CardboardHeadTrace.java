@@ -0,0 +1,153 @@
+/*
+ * CardboardHeadTrace.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import com.google.vrtoolkit.cardboard.HeadTransform;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A recording of head poses and the times of the frames they were rendered in.
+ *
+ * <p>A trace is recorded from a live session with
+ * {@link CardboardScene#startHeadRecording(CardboardHeadTrace)}, and played back with
+ * {@link CardboardScene#startReplay(CardboardHeadTrace)}, which renders the same frames with the
+ * same head poses and simulation steps every time. That makes a trace a repeatable workload for
+ * profiling, and a way to reproduce a bug seen once.
+ *
+ * <p>Traces can be saved and loaded with {@link #write(OutputStream)} and
+ * {@link #read(InputStream)}.
+ */
+public class CardboardHeadTrace {
+    private static final int MAGIC = 0x43424854;
+    private static final int VERSION = 1;
+    // The frames read from a stream are made room for as they arrive, from this many up, so that a
+    // corrupt frame count can't allocate more than the stream holds.
+    private static final int READ_CAPACITY = 600;
+
+    private long mStartNanos;
+    private long[] mFrameNanos;
+    private float[] mHeadViews;
+    private int mFrameCount;
+
+    public CardboardHeadTrace() {
+        this(600);
+    }
+
+    /**
+     * @param capacity The number of frames to make room for up front.
+     */
+    public CardboardHeadTrace(int capacity) {
+        capacity = Math.max(1, capacity);
+        mFrameNanos = new long[capacity];
+        mHeadViews = new float[capacity * 16];
+    }
+
+    /**
+     * Adds a frame.
+     *
+     * @param frameNanos The time of the frame, e.g. from {@link System#nanoTime()}.
+     */
+    public void add(long frameNanos, HeadTransform headTransform) {
+        ensureCapacity(mFrameCount + 1);
+        headTransform.getHeadView(mHeadViews, mFrameCount * 16);
+        addTime(frameNanos);
+    }
+
+    /**
+     * Adds a frame with the given head view matrix.
+     */
+    public void add(long frameNanos, float[] headView, int offset) {
+        ensureCapacity(mFrameCount + 1);
+        System.arraycopy(headView, offset, mHeadViews, mFrameCount * 16, 16);
+        addTime(frameNanos);
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns the time of a frame, from the first one.
+     */
+    public long getFrameNanos(int frame) {
+        return mFrameNanos[frame];
+    }
+
+    public void getHeadView(int frame, float[] out, int offset) {
+        System.arraycopy(mHeadViews, frame * 16, out, offset, 16);
+    }
+
+    public void clear() {
+        mFrameCount = 0;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(mFrameCount);
+        for (int i = 0; i < mFrameCount; i++) {
+            data.writeLong(mFrameNanos[i]);
+            for (int j = 0; j < 16; j++) {
+                data.writeFloat(mHeadViews[i * 16 + j]);
+            }
+        }
+        data.flush();
+    }
+
+    public static CardboardHeadTrace read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a head trace");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported head trace version " + version);
+        }
+        int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("Bad frame count " + count);
+        }
+        CardboardHeadTrace trace = new CardboardHeadTrace(Math.min(count, READ_CAPACITY));
+        // A truncated trace ends in an EOFException.
+        for (int i = 0; i < count; i++) {
+            trace.ensureCapacity(i + 1);
+            trace.mFrameNanos[i] = data.readLong();
+            for (int j = 0; j < 16; j++) {
+                trace.mHeadViews[i * 16 + j] = data.readFloat();
+            }
+            trace.mFrameCount = i + 1;
+        }
+        return trace;
+    }
+
+    private void addTime(long frameNanos) {
+        if (mFrameCount == 0) {
+            mStartNanos = frameNanos;
+        }
+        mFrameNanos[mFrameCount++] = frameNanos - mStartNanos;
+    }
+
+    private void ensureCapacity(int frames) {
+        if (frames <= mFrameNanos.length) {
+            return;
+        }
+        int capacity = Math.max(frames, mFrameNanos.length * 2);
+        long[] frameNanos = new long[capacity];
+        System.arraycopy(mFrameNanos, 0, frameNanos, 0, mFrameCount);
+        mFrameNanos = frameNanos;
+        float[] headViews = new float[capacity * 16];
+        System.arraycopy(mHeadViews, 0, headViews, 0, mFrameCount * 16);
+        mHeadViews = headViews;
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * CardboardInstances.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.util.Log;
+
+import com.google.vrtoolkit.cardboard.Eye;
+
+import io.kirmani.cardboard.math.BoundingBox;
+import io.kirmani.cardboard.math.Mat4;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import javax.microedition.khronos.egl.EGLConfig;
+
+/**
+ * Many copies of one mesh, each with its own model matrix and color, drawn with a single draw
+ * call.
+ *
+ * <p>With an OpenGL ES 3 context the instances are drawn with glDrawElementsInstanced, reading the
+ * model matrix and color of each instance from a per-instance vertex buffer. Otherwise the
+ * instances are transformed on the CPU into one pre-allocated batch mesh, which is rewritten
+ * whenever an instance changes. Instances that change most frames can instead be
+ * {@link #setDynamic(boolean) drawn from uniform arrays}, a chunk of them per upload and draw
+ * call. Either way, the instance matrices are applied before this object's own model matrix, and
+ * each instance's color multiplies the mesh's vertex colors.
+ */
+public class CardboardInstances extends CardboardObject {
+    private static final String TAG = "CardboardInstances";
+
+    /** The floats stored per instance: a column-major model matrix followed by an RGBA color. */
+    public static final int FLOATS_PER_INSTANCE = 16 + 4;
+    private static final int INSTANCE_STRIDE = FLOATS_PER_INSTANCE * 4;
+    private static final int INSTANCE_COLOR_OFFSET = 16 * 4;
+    // An instance is exactly five vec4s of u_Instances.
+    private static final int VECTORS_PER_INSTANCE = FLOATS_PER_INSTANCE / 4;
+    // Instances drawn per call from uniform arrays. Must match the size of u_Instances in
+    // light_vertex.shader.
+    private static final int UNIFORM_CHUNK = 16;
+
+    private final CardboardMesh mSource;
+    private final float[] mSourceVertices;
+    private final int mCapacity;
+    private int mCount;
+
+    private final float[] mInstanceData;
+    private final CardboardBuffer mInstanceBuffer;
+    private boolean mInstancesDirty;
+
+    private boolean mHardware;
+    private int mInstanceModelParam;
+    private int mInstanceColorParam;
+
+    private boolean mDynamic;
+    private boolean mUniform;
+    private int mInstancesParam;
+    private int mInstanceIndexParam;
+    // The uniform array path, built the first time it is needed: UNIFORM_CHUNK copies of the
+    // mesh, and the instance each vertex belongs to.
+    private CardboardMesh mChunk;
+    private CardboardBuffer mChunkInstanceIndices;
+
+    // The CPU fallback, built the first time it is needed.
+    private CardboardMesh mBatch;
+    private float[] mBatchVertices;
+
+    private final Mat4 mInstanceModel = new Mat4();
+    private final Mat4 mInstanceNormalMatrix = new Mat4();
+    private final BoundingBox mBounds = new BoundingBox();
+    private final BoundingBox mInstanceBounds = new BoundingBox();
+
+    /**
+     * @param mesh The mesh to draw for every instance.
+     * @param capacity The maximum number of instances.
+     */
+    public CardboardInstances(Context context, CardboardScene scene, CardboardMesh mesh,
+            int capacity) {
+        super(context, scene);
+        mSource = mesh;
+        mCapacity = capacity;
+        mInstanceData = new float[capacity * FLOATS_PER_INSTANCE];
+        mInstanceBuffer = new CardboardBuffer(GLES20.GL_ARRAY_BUFFER,
+                CardboardBuffer.toFloatBuffer(mInstanceData), capacity * INSTANCE_STRIDE);
+        mInstanceBuffer.setUsage(GLES20.GL_DYNAMIC_DRAW);
+
+        FloatBuffer vertices = mesh.getVertexFloats();
+        mSourceVertices = new float[mesh.getVertexCount() * CardboardMesh.FLOATS_PER_VERTEX];
+        vertices.get(mSourceVertices);
+        vertices.position(0);
+
+        setMesh(mesh);
+        updateBounds();
+    }
+
+    /**
+     * Adds an instance.
+     *
+     * @return The index of the new instance.
+     */
+    public int addInstance(Mat4 model, float r, float g, float b, float a) {
+        if (mCount == mCapacity) {
+            throw new IllegalStateException("All " + mCapacity + " instances are in use");
+        }
+        int index = mCount++;
+        setInstanceModel(index, model);
+        setInstanceColor(index, r, g, b, a);
+        return index;
+    }
+
+    public void setInstanceModel(int index, Mat4 model) {
+        System.arraycopy(model.m, 0, mInstanceData, index * FLOATS_PER_INSTANCE, 16);
+        mInstancesDirty = true;
+    }
+
+    public void setInstanceColor(int index, float r, float g, float b, float a) {
+        int offset = index * FLOATS_PER_INSTANCE + 16;
+        mInstanceData[offset] = r;
+        mInstanceData[offset + 1] = g;
+        mInstanceData[offset + 2] = b;
+        mInstanceData[offset + 3] = a;
+        mInstancesDirty = true;
+    }
+
+    /**
+     * Removes every instance.
+     */
+    public void clearInstances() {
+        mCount = 0;
+        mInstancesDirty = true;
+    }
+
+    public int getInstanceCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns whether the instances are drawn with hardware instancing rather than the CPU batch.
+     * Valid after onSurfaceCreated.
+     */
+    public boolean isHardwareInstanced() {
+        return mHardware;
+    }
+
+    /**
+     * Hints that the instances change most frames. Without instanced arrays, dynamic instances are
+     * then drawn from uniform arrays, uploading and drawing a chunk of instances per call, rather
+     * than transformed on the CPU into the batch. The batch is the better choice for instances
+     * that rarely change, since it is drawn with one call and only rewritten when they do. Takes
+     * effect in onSurfaceCreated.
+     */
+    public void setDynamic(boolean dynamic) {
+        mDynamic = dynamic;
+    }
+
+    public boolean isDynamic() {
+        return mDynamic;
+    }
+
+    /**
+     * Returns whether the instances are drawn from uniform arrays. Valid after onSurfaceCreated.
+     */
+    public boolean isUniformInstanced() {
+        return mUniform;
+    }
+
+    @Override
+    public void onSurfaceCreated(EGLConfig config) {
+        mHardware = supportsInstancing();
+        mUniform = !mHardware && mDynamic;
+        Log.i(TAG, "Drawing instances " + (mHardware ? "with instanced arrays"
+                : mUniform ? "from uniform arrays" : "on the CPU"));
+        if (mHardware) {
+            setMesh(mSource);
+            mInstanceBuffer.upload();
+            setProgram(loadProgram(R.raw.light_vertex, R.raw.passthrough_fragment, "INSTANCED"));
+            mInstanceModelParam = getProgram().getAttribLocation("a_InstanceModel");
+            mInstanceColorParam = getProgram().getAttribLocation("a_InstanceColor");
+        } else if (mUniform) {
+            if (mChunk == null) {
+                mChunk = buildChunk();
+            }
+            setMesh(mChunk);
+            mChunkInstanceIndices.upload();
+            setProgram(loadProgram(R.raw.light_vertex, R.raw.passthrough_fragment,
+                    "UNIFORM_INSTANCED"));
+            mInstancesParam = getProgram().getUniformLocation("u_Instances");
+            mInstanceIndexParam = getProgram().getAttribLocation("a_InstanceIndex");
+        } else {
+            if (mBatch == null) {
+                mBatch = buildBatch();
+            }
+            setMesh(mBatch);
+            setProgram(loadProgram(R.raw.light_vertex, R.raw.passthrough_fragment));
+        }
+        // Uploads the mesh.
+        super.onSurfaceCreated(config);
+        updateBounds();
+        mInstancesDirty = true;
+        checkGLError("onSurfaceCreated");
+    }
+
+    @Override
+    public void onRendererShutdown() {
+        super.onRendererShutdown();
+        mInstanceBuffer.release();
+        if (mChunkInstanceIndices != null) {
+            mChunkInstanceIndices.release();
+        }
+    }
+
+    @Override
+    public void onNewFrame(Mat4 headView) {
+        super.onNewFrame(headView);
+        if (!mInstancesDirty || getProgram() == null) {
+            return;
+        }
+        updateBounds();
+        if (mHardware) {
+            FloatBuffer data = (FloatBuffer) mInstanceBuffer.getData();
+            data.put(mInstanceData, 0, mCount * FLOATS_PER_INSTANCE);
+            data.position(0);
+            mInstanceBuffer.update(getGLState(), mCount * INSTANCE_STRIDE);
+        } else if (!mUniform) {
+            updateBatch();
+        }
+        mInstancesDirty = false;
+    }
+
+    @Override
+    public void onDrawEye(Eye eye) {
+        if (mCount > 0) {
+            super.onDrawEye(eye);
+        }
+    }
+
+    /**
+     * Points the per-instance attributes at the instance buffer. A mat4 attribute takes four
+     * consecutive locations, one per column.
+     */
+    @Override
+    protected void onBindAttributes(CardboardGLState state) {
+        if (mUniform) {
+            mChunkInstanceIndices.bind(state);
+            state.enableVertexAttribArray(mInstanceIndexParam);
+            state.vertexAttribPointer(mInstanceIndexParam, 1, GLES20.GL_FLOAT, false, 0, 0);
+            return;
+        }
+        if (!mHardware || mInstanceModelParam < 0) {
+            return;
+        }
+        mInstanceBuffer.bind(state);
+        for (int column = 0; column < 4; column++) {
+            int location = mInstanceModelParam + column;
+            state.enableVertexAttribArray(location);
+            state.vertexAttribPointer(location, 4, GLES20.GL_FLOAT, false, INSTANCE_STRIDE,
+                    column * 16);
+            state.vertexAttribDivisor(location, 1);
+        }
+        state.enableVertexAttribArray(mInstanceColorParam);
+        state.vertexAttribPointer(mInstanceColorParam, 4, GLES20.GL_FLOAT, false, INSTANCE_STRIDE,
+                INSTANCE_COLOR_OFFSET);
+        state.vertexAttribDivisor(mInstanceColorParam, 1);
+    }
+
+    @Override
+    protected void drawMesh(CardboardMesh mesh) {
+        getProfiler().count(CardboardProfiler.TRIANGLES, mCount * mSource.getElementCount() / 3);
+        if (mUniform) {
+            CardboardGLState state = getGLState();
+            for (int first = 0; first < mCount; first += UNIFORM_CHUNK) {
+                int count = Math.min(UNIFORM_CHUNK, mCount - first);
+                state.uniform4fv(mInstancesParam, count * VECTORS_PER_INSTANCE, mInstanceData,
+                        first * FLOATS_PER_INSTANCE);
+                mesh.draw(count * mSource.getElementCount());
+                getProfiler().count(CardboardProfiler.DRAW_CALLS, 1);
+            }
+            return;
+        }
+        getProfiler().count(CardboardProfiler.DRAW_CALLS, 1);
+        if (!mHardware) {
+            // Only the batch vertices of the current instances are filled in.
+            mesh.draw(mCount * mSource.getElementCount());
+            return;
+        }
+        mesh.drawInstanced(mCount);
+        if (mInstanceModelParam < 0) {
+            return;
+        }
+        // Other programs may use these locations for per-vertex attributes.
+        CardboardGLState state = getGLState();
+        for (int column = 0; column < 4; column++) {
+            state.vertexAttribDivisor(mInstanceModelParam + column, 0);
+        }
+        state.vertexAttribDivisor(mInstanceColorParam, 0);
+    }
+
+    /**
+     * Sets the object's bounds to contain every instance, so that the instances are culled as a
+     * group.
+     */
+    private void updateBounds() {
+        mBounds.setEmpty();
+        for (int i = 0; i < mCount; i++) {
+            mInstanceModel.set(mInstanceData, i * FLOATS_PER_INSTANCE);
+            mBounds.include(mSource.getBounds().transform(mInstanceModel, mInstanceBounds));
+        }
+        setLocalBounds(mBounds);
+    }
+
+    /**
+     * Builds the CPU fallback: one mesh with room for every instance, whose indices repeat the
+     * source's for each instance.
+     */
+    private CardboardMesh buildBatch() {
+        mBatchVertices = new float[mCapacity * mSourceVertices.length];
+        CardboardMesh batch = new CardboardMesh(mBatchVertices, repeatIndices(mCapacity));
+        batch.getVertexBuffer().setUsage(GLES20.GL_DYNAMIC_DRAW);
+        return batch;
+    }
+
+    /**
+     * Builds the uniform array path: a mesh of untransformed copies of the source, one per
+     * instance of a chunk, whose vertices know which copy they belong to. The shader moves each
+     * copy by its instance's matrix from u_Instances.
+     */
+    private CardboardMesh buildChunk() {
+        int copies = Math.min(mCapacity, UNIFORM_CHUNK);
+        int vertexCount = mSource.getVertexCount();
+        float[] vertices = new float[copies * mSourceVertices.length];
+        float[] instanceIndices = new float[copies * vertexCount];
+        for (int copy = 0; copy < copies; copy++) {
+            System.arraycopy(mSourceVertices, 0, vertices, copy * mSourceVertices.length,
+                    mSourceVertices.length);
+            Arrays.fill(instanceIndices, copy * vertexCount, (copy + 1) * vertexCount, copy);
+        }
+        mChunkInstanceIndices = CardboardBuffer.fromFloats(instanceIndices);
+        return new CardboardMesh(vertices, repeatIndices(copies));
+    }
+
+    /**
+     * Returns the source's indices repeated for the given number of consecutive copies of its
+     * vertices.
+     */
+    private int[] repeatIndices(int copies) {
+        int vertexCount = mSource.getVertexCount();
+        int elementCount = mSource.getElementCount();
+        int[] indices = new int[copies * elementCount];
+        for (int i = 0; i < elementCount; i++) {
+            indices[i] = mSource.isIndexed() ? mSource.getIndex(i) : i;
+        }
+        for (int copy = 1; copy < copies; copy++) {
+            int base = copy * vertexCount;
+            for (int i = 0; i < elementCount; i++) {
+                indices[copy * elementCount + i] = base + indices[i];
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Transforms the source vertices by every instance's matrix and color, and uploads them.
+     */
+    private void updateBatch() {
+        final int floats = CardboardMesh.FLOATS_PER_VERTEX;
+        float[] src = mSourceVertices;
+        float[] dst = mBatchVertices;
+        int out = 0;
+        for (int i = 0; i < mCount; i++) {
+            int instance = i * FLOATS_PER_INSTANCE;
+            float[] m = mInstanceModel.set(mInstanceData, instance).m;
+            // Normals of scaled instances stay perpendicular to their surfaces, see
+            // Mat4#setNormalMatrix.
+            float[] n = mInstanceNormalMatrix.setNormalMatrix(mInstanceModel).m;
+            float r = mInstanceData[instance + 16];
+            float g = mInstanceData[instance + 17];
+            float b = mInstanceData[instance + 18];
+            float a = mInstanceData[instance + 19];
+            for (int in = 0; in < src.length; in += floats, out += floats) {
+                float x = src[in];
+                float y = src[in + 1];
+                float z = src[in + 2];
+                dst[out] = m[0] * x + m[4] * y + m[8] * z + m[12];
+                dst[out + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+                dst[out + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+                float nx = src[in + 3];
+                float ny = src[in + 4];
+                float nz = src[in + 5];
+                float wx = n[0] * nx + n[4] * ny + n[8] * nz;
+                float wy = n[1] * nx + n[5] * ny + n[9] * nz;
+                float wz = n[2] * nx + n[6] * ny + n[10] * nz;
+                float length = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+                float scale = length != 0.0f ? 1.0f / length : 0.0f;
+                dst[out + 3] = wx * scale;
+                dst[out + 4] = wy * scale;
+                dst[out + 5] = wz * scale;
+                dst[out + 6] = src[in + 6] * r;
+                dst[out + 7] = src[in + 7] * g;
+                dst[out + 8] = src[in + 8] * b;
+                dst[out + 9] = src[in + 9] * a;
+            }
+        }
+        CardboardBuffer buffer = mBatch.getVertexBuffer();
+        FloatBuffer data = (FloatBuffer) buffer.getData();
+        data.put(dst, 0, out);
+        data.position(0);
+        buffer.update(getGLState(), out * 4);
+    }
+
+    /**
+     * The Java bindings only expose instanced drawing through GLES30, which needs API 18 and an
+     * OpenGL ES 3 context. The EXT/ANGLE/NV instanced array extensions have no Java bindings.
+     */
+    private static boolean supportsInstancing() {
+        String version = CardboardGLContext.get().glGetString(GLES20.GL_VERSION);
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && version != null
+                && version.startsWith("OpenGL ES 3");
+    }
+}
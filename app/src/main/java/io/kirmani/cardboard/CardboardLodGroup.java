@@ -0,0 +1,144 @@
+/*
+ * CardboardLodGroup.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versions of one mesh at decreasing levels of detail, and the rule for choosing between them.
+ *
+ * <p>Level 0 is the full-detail mesh. Each further level is coarser and comes with a threshold,
+ * which depending on the mode is either the distance from which the level is used
+ * ({@link #MODE_DISTANCE}), or the level's geometric error, the most its surface deviates from the
+ * full-detail mesh in the mesh's own units ({@link #MODE_SCREEN_ERROR}). In the latter mode a level
+ * is used once its error, projected to the screen, is below {@link #setMaxScreenError(float)}
+ * pixels. The mesh simplifier in the tools module prints the error of every level it generates.
+ *
+ * <p>Either way the thresholds come down to a switching distance per level. To avoid popping when
+ * an object hovers around one of them, a level is only left once the distance is past the switching
+ * distance by the hysteresis fraction.
+ */
+public class CardboardLodGroup {
+    /** The thresholds are distances from the viewer, in world units. */
+    public static final int MODE_DISTANCE = 0;
+    /** The thresholds are geometric errors, in the mesh's own units. */
+    public static final int MODE_SCREEN_ERROR = 1;
+
+    public static final float DEFAULT_HYSTERESIS = 0.1f;
+    public static final float DEFAULT_MAX_SCREEN_ERROR = 2.0f;
+
+    private final int mMode;
+    private final List<CardboardMesh> mMeshes = new ArrayList<CardboardMesh>();
+    private float[] mThresholds = new float[4];
+
+    private float mHysteresis = DEFAULT_HYSTERESIS;
+    private float mMaxScreenError = DEFAULT_MAX_SCREEN_ERROR;
+
+    /**
+     * @param mode {@link #MODE_DISTANCE} or {@link #MODE_SCREEN_ERROR}.
+     * @param mesh The full-detail mesh, level 0.
+     */
+    public CardboardLodGroup(int mode, CardboardMesh mesh) {
+        mMode = mode;
+        mMeshes.add(mesh);
+    }
+
+    /**
+     * Adds the next coarser level.
+     *
+     * @param threshold The distance from which the level is used, or its geometric error,
+     *     depending on the mode. Must be larger than the previous level's.
+     */
+    public CardboardLodGroup addLevel(CardboardMesh mesh, float threshold) {
+        int level = mMeshes.size();
+        if (threshold <= mThresholds[level - 1]) {
+            throw new IllegalArgumentException("LOD thresholds must increase");
+        }
+        if (level == mThresholds.length) {
+            float[] thresholds = new float[level * 2];
+            System.arraycopy(mThresholds, 0, thresholds, 0, level);
+            mThresholds = thresholds;
+        }
+        mThresholds[level] = threshold;
+        mMeshes.add(mesh);
+        return this;
+    }
+
+    /**
+     * Sets how far past a switching distance the viewer must move before the level changes, as a
+     * fraction of that distance.
+     */
+    public void setHysteresis(float hysteresis) {
+        mHysteresis = hysteresis;
+    }
+
+    /**
+     * Sets the largest acceptable error on screen, in pixels, in {@link #MODE_SCREEN_ERROR}.
+     */
+    public void setMaxScreenError(float pixels) {
+        mMaxScreenError = pixels;
+    }
+
+    public int getLevelCount() {
+        return mMeshes.size();
+    }
+
+    public CardboardMesh getMesh(int level) {
+        return mMeshes.get(level);
+    }
+
+    /**
+     * Chooses the level to draw.
+     *
+     * @param current The level drawn in the previous frame.
+     * @param distance The distance from the viewer to the object.
+     * @param scale How much larger the object is in world space than in its own space.
+     * @param pixelsPerUnit The size in pixels of one world unit at distance 1, see
+     *     {@link CardboardScene#getPixelsPerUnit()}.
+     */
+    public int selectLevel(int current, float distance, float scale, float pixelsPerUnit) {
+        if (mMode == MODE_SCREEN_ERROR && pixelsPerUnit <= 0.0f) {
+            // Nothing has been drawn yet, so the projection is unknown.
+            return 0;
+        }
+        int level = Math.min(Math.max(current, 0), mMeshes.size() - 1);
+        while (level + 1 < mMeshes.size() && distance
+                >= switchDistance(level + 1, scale, pixelsPerUnit) * (1.0f + mHysteresis)) {
+            level++;
+        }
+        while (level > 0 && distance
+                < switchDistance(level, scale, pixelsPerUnit) * (1.0f - mHysteresis)) {
+            level--;
+        }
+        return level;
+    }
+
+    public void upload() {
+        for (int i = 0; i < mMeshes.size(); i++) {
+            mMeshes.get(i).upload();
+        }
+    }
+
+    public void release() {
+        for (int i = 0; i < mMeshes.size(); i++) {
+            mMeshes.get(i).release();
+        }
+    }
+
+    /**
+     * Returns the distance from which a level may be used.
+     */
+    private float switchDistance(int level, float scale, float pixelsPerUnit) {
+        if (mMode == MODE_DISTANCE) {
+            return mThresholds[level];
+        }
+        // The error projects to error * scale * pixelsPerUnit / distance pixels.
+        return mThresholds[level] * scale * pixelsPerUnit / mMaxScreenError;
+    }
+}
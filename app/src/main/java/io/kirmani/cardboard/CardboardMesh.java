@@ -0,0 +1,310 @@
+/*
+ * CardboardMesh.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+
+import io.kirmani.cardboard.math.BoundingBox;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Triangle geometry stored in a single interleaved vertex buffer object.
+ *
+ * <p>Each vertex is laid out as position (3 floats), normal (3 floats) and color (4 floats), so one
+ * buffer bind serves all three attributes and the vertices of a triangle sit next to each other in
+ * memory. A mesh may optionally carry an index buffer, see {@link CardboardMeshBuilder}.
+ */
+public class CardboardMesh {
+    public static final int POSITION_SIZE = 3;
+    public static final int NORMAL_SIZE = 3;
+    public static final int COLOR_SIZE = 4;
+
+    public static final int FLOATS_PER_VERTEX = POSITION_SIZE + NORMAL_SIZE + COLOR_SIZE;
+    public static final int STRIDE = FLOATS_PER_VERTEX * 4;
+
+    public static final int POSITION_OFFSET = 0;
+    public static final int NORMAL_OFFSET = POSITION_OFFSET + POSITION_SIZE * 4;
+    public static final int COLOR_OFFSET = NORMAL_OFFSET + NORMAL_SIZE * 4;
+
+    private static final String UINT_INDEX_EXTENSION = "GL_OES_element_index_uint";
+
+    private final CardboardBuffer mVertices;
+    private final int mVertexCount;
+
+    private final CardboardBuffer mIndices;
+    private final int mIndexCount;
+    private final int mIndexType;
+
+    private final BoundingBox mBounds = new BoundingBox();
+
+    public CardboardMesh(float[] interleaved) {
+        mVertices = CardboardBuffer.fromFloats(interleaved);
+        mVertexCount = interleaved.length / FLOATS_PER_VERTEX;
+        mIndices = null;
+        mIndexCount = 0;
+        mIndexType = 0;
+        computeBounds(interleaved);
+    }
+
+    /**
+     * Creates an indexed mesh. Indices are stored as unsigned shorts when every vertex can be
+     * addressed that way, and as unsigned ints otherwise.
+     */
+    public CardboardMesh(float[] interleaved, int[] indices) {
+        mVertices = CardboardBuffer.fromFloats(interleaved);
+        mVertexCount = interleaved.length / FLOATS_PER_VERTEX;
+        mIndexCount = indices.length;
+        computeBounds(interleaved);
+        if (mVertexCount <= 0x10000) {
+            ByteBuffer bb = ByteBuffer.allocateDirect(indices.length * 2);
+            bb.order(ByteOrder.nativeOrder());
+            ShortBuffer shorts = bb.asShortBuffer();
+            for (int i = 0; i < indices.length; i++) {
+                shorts.put((short) indices[i]);
+            }
+            shorts.position(0);
+            mIndices = new CardboardBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, shorts,
+                    indices.length * 2);
+            mIndexType = GLES20.GL_UNSIGNED_SHORT;
+        } else {
+            ByteBuffer bb = ByteBuffer.allocateDirect(indices.length * 4);
+            bb.order(ByteOrder.nativeOrder());
+            IntBuffer ints = bb.asIntBuffer();
+            ints.put(indices);
+            ints.position(0);
+            mIndices = new CardboardBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ints,
+                    indices.length * 4);
+            mIndexType = GLES20.GL_UNSIGNED_INT;
+        }
+    }
+
+    /**
+     * Creates a mesh around buffers in the interleaved layout, e.g. mapped from a file by
+     * {@link CardboardMeshLoader}. The buffers are handed to glBufferData as they are, so they must
+     * be direct and in native byte order.
+     *
+     * @param vertices The interleaved vertices.
+     * @param vertexCount The number of vertices.
+     * @param indices The indices, or null for a non-indexed mesh.
+     * @param indexCount The number of indices.
+     * @param indexType GL_UNSIGNED_SHORT or GL_UNSIGNED_INT.
+     * @param bounds The bounds of the vertex positions.
+     */
+    public CardboardMesh(ByteBuffer vertices, int vertexCount, ByteBuffer indices, int indexCount,
+            int indexType, BoundingBox bounds) {
+        mVertices = new CardboardBuffer(GLES20.GL_ARRAY_BUFFER, vertices, vertexCount * STRIDE);
+        mVertexCount = vertexCount;
+        if (indices != null) {
+            int indexSize = indexType == GLES20.GL_UNSIGNED_INT ? 4 : 2;
+            mIndices = new CardboardBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices,
+                    indexCount * indexSize);
+            mIndexCount = indexCount;
+            mIndexType = indexType;
+        } else {
+            mIndices = null;
+            mIndexCount = 0;
+            mIndexType = 0;
+        }
+        mBounds.set(bounds);
+    }
+
+    /**
+     * Builds a mesh from separate position, normal and color arrays, one entry per vertex.
+     */
+    public static CardboardMesh fromArrays(float[] coords, float[] normals, float[] colors) {
+        int vertexCount = coords.length / POSITION_SIZE;
+        float[] interleaved = new float[vertexCount * FLOATS_PER_VERTEX];
+        for (int i = 0; i < vertexCount; i++) {
+            int offset = i * FLOATS_PER_VERTEX;
+            System.arraycopy(coords, i * POSITION_SIZE, interleaved, offset, POSITION_SIZE);
+            System.arraycopy(normals, i * NORMAL_SIZE, interleaved, offset + POSITION_SIZE,
+                    NORMAL_SIZE);
+            System.arraycopy(colors, i * COLOR_SIZE, interleaved,
+                    offset + POSITION_SIZE + NORMAL_SIZE, COLOR_SIZE);
+        }
+        return new CardboardMesh(interleaved);
+    }
+
+    /**
+     * Uploads the mesh to the GPU. Must be called from onSurfaceCreated.
+     */
+    public void upload() {
+        mVertices.upload();
+        if (mIndices != null) {
+            checkIndexType();
+            mIndices.upload();
+        }
+    }
+
+    /**
+     * Uploads the next part of the mesh, vertices first, so that a large mesh can be uploaded over
+     * several frames. See {@link CardboardBuffer#uploadPart(int)}.
+     *
+     * @param maxBytes The most bytes to copy in this call.
+     * @return Whether the whole mesh has been uploaded.
+     */
+    public boolean uploadPart(int maxBytes) {
+        if (!mVertices.isUploaded()) {
+            return mVertices.uploadPart(maxBytes) && mIndices == null;
+        }
+        if (mIndices != null && !mIndices.isUploaded()) {
+            checkIndexType();
+            return mIndices.uploadPart(maxBytes);
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the buffer objects after the EGL context was lost, see
+     * {@link CardboardBuffer#discard()}.
+     */
+    public void discard() {
+        mVertices.discard();
+        if (mIndices != null) {
+            mIndices.discard();
+        }
+    }
+
+    public void release() {
+        mVertices.release();
+        if (mIndices != null) {
+            mIndices.release();
+        }
+    }
+
+    /**
+     * Binds the vertex buffer, enables the given attributes and points them at it.
+     */
+    public void bind(CardboardGLState state, int positionParam, int normalParam, int colorParam) {
+        if (mIndices != null) {
+            mIndices.bind(state);
+        }
+        mVertices.bind(state);
+        state.enableVertexAttribArray(positionParam);
+        state.enableVertexAttribArray(normalParam);
+        state.enableVertexAttribArray(colorParam);
+        state.vertexAttribPointer(positionParam, POSITION_SIZE, GLES20.GL_FLOAT, false,
+                STRIDE, POSITION_OFFSET);
+        state.vertexAttribPointer(normalParam, NORMAL_SIZE, GLES20.GL_FLOAT, false,
+                STRIDE, NORMAL_OFFSET);
+        state.vertexAttribPointer(colorParam, COLOR_SIZE, GLES20.GL_FLOAT, false,
+                STRIDE, COLOR_OFFSET);
+    }
+
+    public void draw() {
+        draw(getElementCount());
+    }
+
+    /**
+     * Draws only the first elements of the mesh, e.g. the used part of a preallocated batch.
+     */
+    public void draw(int elementCount) {
+        CardboardGL gl = CardboardGLContext.get();
+        if (mIndices != null) {
+            gl.glDrawElements(GLES20.GL_TRIANGLES, elementCount, mIndexType, 0);
+        } else {
+            gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, elementCount);
+        }
+    }
+
+    /**
+     * Draws several instances of the mesh with one call. Requires an OpenGL ES 3 context.
+     */
+    public void drawInstanced(int instanceCount) {
+        CardboardGL gl = CardboardGLContext.get();
+        if (mIndices != null) {
+            gl.glDrawElementsInstanced(GLES20.GL_TRIANGLES, mIndexCount, mIndexType, 0,
+                    instanceCount);
+        } else {
+            gl.glDrawArraysInstanced(GLES20.GL_TRIANGLES, 0, mVertexCount, instanceCount);
+        }
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    /**
+     * Returns the number of vertices drawn, i.e. the index count for indexed meshes.
+     */
+    public int getElementCount() {
+        return mIndices != null ? mIndexCount : mVertexCount;
+    }
+
+    public boolean isIndexed() {
+        return mIndices != null;
+    }
+
+    public CardboardBuffer getIndexBuffer() {
+        return mIndices;
+    }
+
+    public int getIndexType() {
+        return mIndexType;
+    }
+
+    /**
+     * Returns the bounds of the vertex positions, in the mesh's own space.
+     */
+    public BoundingBox getBounds() {
+        return mBounds;
+    }
+
+    public CardboardBuffer getVertexBuffer() {
+        return mVertices;
+    }
+
+    /**
+     * Returns the client copy of the interleaved vertices as floats, whatever buffer type the mesh
+     * was created from.
+     */
+    public FloatBuffer getVertexFloats() {
+        Buffer data = mVertices.getData();
+        if (data instanceof FloatBuffer) {
+            return (FloatBuffer) data;
+        }
+        return ((ByteBuffer) data).asFloatBuffer();
+    }
+
+    /**
+     * Returns an index from the client copy of the index buffer. Must only be called on indexed
+     * meshes.
+     */
+    public int getIndex(int i) {
+        Buffer data = mIndices.getData();
+        if (data instanceof ShortBuffer) {
+            return ((ShortBuffer) data).get(i) & 0xffff;
+        } else if (data instanceof IntBuffer) {
+            return ((IntBuffer) data).get(i);
+        } else if (mIndexType == GLES20.GL_UNSIGNED_SHORT) {
+            return ((ByteBuffer) data).getShort(i * 2) & 0xffff;
+        }
+        return ((ByteBuffer) data).getInt(i * 4);
+    }
+
+    private void checkIndexType() {
+        if (mIndexType == GLES20.GL_UNSIGNED_INT
+                && !CardboardGLContext.get().glGetString(GLES20.GL_EXTENSIONS)
+                        .contains(UINT_INDEX_EXTENSION)) {
+            throw new RuntimeException("Mesh with " + mVertexCount + " vertices needs "
+                    + UINT_INDEX_EXTENSION);
+        }
+    }
+
+    private void computeBounds(float[] interleaved) {
+        for (int i = 0; i < interleaved.length; i += FLOATS_PER_VERTEX) {
+            mBounds.include(interleaved[i], interleaved[i + 1], interleaved[i + 2]);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * CardboardMeshBuilder.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds indexed meshes from fully expanded triangle lists.
+ *
+ * <p>Vertices that are identical in every attribute are welded into one, so a cube given as 36
+ * triangle corners ends up with 24 unique vertices and 36 indices. The triangles can optionally be
+ * reordered for the post-transform vertex cache using Tom Forsyth's linear-speed algorithm, so
+ * that fewer vertex shader invocations are needed per draw.
+ */
+public class CardboardMeshBuilder {
+    private static final int CACHE_SIZE = 32;
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRI_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    private final Map<VertexKey, Integer> mWelded = new HashMap<VertexKey, Integer>();
+
+    private float[] mVertices = new float[64 * CardboardMesh.FLOATS_PER_VERTEX];
+    private int mVertexCount;
+
+    private int[] mIndices = new int[64];
+    private int mIndexCount;
+
+    /**
+     * Adds a triangle corner, welding it to an existing vertex if all of its attributes match.
+     *
+     * @return The index of the welded vertex.
+     */
+    public int addVertex(float[] coords, int coordsOffset, float[] normals, int normalsOffset,
+            float[] colors, int colorsOffset) {
+        float[] vertex = new float[CardboardMesh.FLOATS_PER_VERTEX];
+        System.arraycopy(coords, coordsOffset, vertex, 0, CardboardMesh.POSITION_SIZE);
+        System.arraycopy(normals, normalsOffset, vertex, CardboardMesh.POSITION_SIZE,
+                CardboardMesh.NORMAL_SIZE);
+        System.arraycopy(colors, colorsOffset, vertex,
+                CardboardMesh.POSITION_SIZE + CardboardMesh.NORMAL_SIZE, CardboardMesh.COLOR_SIZE);
+
+        VertexKey key = new VertexKey(vertex);
+        Integer index = mWelded.get(key);
+        if (index == null) {
+            index = mVertexCount++;
+            if (mVertexCount * CardboardMesh.FLOATS_PER_VERTEX > mVertices.length) {
+                mVertices = Arrays.copyOf(mVertices, mVertices.length * 2);
+            }
+            System.arraycopy(vertex, 0, mVertices, index * CardboardMesh.FLOATS_PER_VERTEX,
+                    CardboardMesh.FLOATS_PER_VERTEX);
+            mWelded.put(key, index);
+        }
+
+        if (mIndexCount == mIndices.length) {
+            mIndices = Arrays.copyOf(mIndices, mIndices.length * 2);
+        }
+        mIndices[mIndexCount++] = index;
+        return index;
+    }
+
+    /**
+     * Adds a fully expanded triangle list given as separate position, normal and color arrays, one
+     * entry per triangle corner.
+     */
+    public CardboardMeshBuilder addTriangles(float[] coords, float[] normals, float[] colors) {
+        int count = coords.length / CardboardMesh.POSITION_SIZE;
+        for (int i = 0; i < count; i++) {
+            addVertex(coords, i * CardboardMesh.POSITION_SIZE,
+                    normals, i * CardboardMesh.NORMAL_SIZE,
+                    colors, i * CardboardMesh.COLOR_SIZE);
+        }
+        return this;
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    public int getIndexCount() {
+        return mIndexCount;
+    }
+
+    /**
+     * Compacts a per-corner attribute stream that parallels the triangles added so far into a
+     * per-vertex stream matching the welded vertex order. Where several corners were welded into
+     * one vertex, the value of the first corner wins.
+     *
+     * @param data One entry of {@code size} floats per triangle corner.
+     * @param size The number of floats per entry.
+     */
+    public float[] remap(float[] data, int size) {
+        float[] remapped = new float[mVertexCount * size];
+        boolean[] written = new boolean[mVertexCount];
+        for (int i = 0; i < mIndexCount; i++) {
+            int vertex = mIndices[i];
+            if (!written[vertex]) {
+                System.arraycopy(data, i * size, remapped, vertex * size, size);
+                written[vertex] = true;
+            }
+        }
+        return remapped;
+    }
+
+    /**
+     * Builds the indexed mesh.
+     *
+     * @param optimizeVertexCache Whether to reorder triangles for the post-transform vertex cache.
+     */
+    public CardboardMesh build(boolean optimizeVertexCache) {
+        int[] indices = Arrays.copyOf(mIndices, mIndexCount);
+        if (optimizeVertexCache) {
+            indices = optimizeVertexCache(indices, mVertexCount);
+        }
+        return new CardboardMesh(Arrays.copyOf(mVertices,
+                    mVertexCount * CardboardMesh.FLOATS_PER_VERTEX), indices);
+    }
+
+    /**
+     * Reorders triangles so that consecutive triangles share vertices that are still in the
+     * post-transform cache.
+     *
+     * @param indices The triangle list to reorder.
+     * @param vertexCount The number of vertices referenced by the triangle list.
+     * @return A new triangle list containing the same triangles.
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+
+        // Build the vertex to triangle adjacency.
+        int[] activeTriangles = new int[vertexCount];
+        for (int i = 0; i < indices.length; i++) {
+            activeTriangles[indices[i]]++;
+        }
+        int[] adjacencyOffset = new int[vertexCount + 1];
+        for (int i = 0; i < vertexCount; i++) {
+            adjacencyOffset[i + 1] = adjacencyOffset[i] + activeTriangles[i];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(adjacencyOffset, vertexCount);
+        for (int i = 0; i < indices.length; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        int[] cachePosition = new int[vertexCount];
+        Arrays.fill(cachePosition, -1);
+        float[] vertexScore = new float[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            vertexScore[i] = vertexScore(-1, activeTriangles[i]);
+        }
+
+        boolean[] added = new boolean[triangleCount];
+        float[] triangleScore = new float[triangleCount];
+        for (int i = 0; i < triangleCount; i++) {
+            triangleScore[i] = vertexScore[indices[i * 3]] + vertexScore[indices[i * 3 + 1]]
+                    + vertexScore[indices[i * 3 + 2]];
+        }
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int[] newCache = new int[CACHE_SIZE + 3];
+
+        int[] result = new int[indices.length];
+        int bestTriangle = -1;
+        for (int output = 0; output < triangleCount; output++) {
+            if (bestTriangle < 0) {
+                // Nothing useful in the cache, fall back to a full scan.
+                float bestScore = -1.0f;
+                for (int i = 0; i < triangleCount; i++) {
+                    if (!added[i] && triangleScore[i] > bestScore) {
+                        bestScore = triangleScore[i];
+                        bestTriangle = i;
+                    }
+                }
+            }
+
+            added[bestTriangle] = true;
+            int newCacheCount = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices[bestTriangle * 3 + corner];
+                result[output * 3 + corner] = vertex;
+                newCache[newCacheCount++] = vertex;
+
+                // Remove the triangle from the vertex's active list.
+                int end = adjacencyOffset[vertex] + activeTriangles[vertex];
+                for (int j = adjacencyOffset[vertex]; j < end; j++) {
+                    if (adjacency[j] == bestTriangle) {
+                        adjacency[j] = adjacency[end - 1];
+                        break;
+                    }
+                }
+                activeTriangles[vertex]--;
+            }
+
+            // Push the triangle's vertices to the front of the cache.
+            for (int i = 0; i < cacheCount; i++) {
+                int vertex = cache[i];
+                if (vertex != newCache[0] && vertex != newCache[1] && vertex != newCache[2]) {
+                    newCache[newCacheCount++] = vertex;
+                }
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = newCacheCount;
+
+            // Rescore every vertex that was touched, and every triangle using them.
+            for (int i = 0; i < cacheCount; i++) {
+                int vertex = cache[i];
+                cachePosition[vertex] = i < CACHE_SIZE ? i : -1;
+                vertexScore[vertex] = vertexScore(cachePosition[vertex], activeTriangles[vertex]);
+            }
+            bestTriangle = -1;
+            float bestScore = -1.0f;
+            for (int i = 0; i < cacheCount; i++) {
+                int vertex = cache[i];
+                int end = adjacencyOffset[vertex] + activeTriangles[vertex];
+                for (int j = adjacencyOffset[vertex]; j < end; j++) {
+                    int triangle = adjacency[j];
+                    float score = vertexScore[indices[triangle * 3]]
+                            + vertexScore[indices[triangle * 3 + 1]]
+                            + vertexScore[indices[triangle * 3 + 2]];
+                    triangleScore[triangle] = score;
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestTriangle = triangle;
+                    }
+                }
+            }
+            if (cacheCount > CACHE_SIZE) {
+                cacheCount = CACHE_SIZE;
+            }
+        }
+        return result;
+    }
+
+    private static float vertexScore(int cachePosition, int activeTriangles) {
+        if (activeTriangles == 0) {
+            return -1.0f;
+        }
+        float score = 0.0f;
+        if (cachePosition >= 0) {
+            if (cachePosition < 3) {
+                // The most recent triangle should not get a boost, or it would be favoured
+                // regardless of how many vertices it actually shares.
+                score = LAST_TRI_SCORE;
+            } else {
+                float scaler = 1.0f / (CACHE_SIZE - 3);
+                score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+        // Boost vertices with few triangles left so that lone triangles are not left behind.
+        score += VALENCE_BOOST_SCALE * (float) Math.pow(activeTriangles, -VALENCE_BOOST_POWER);
+        return score;
+    }
+
+    private static final class VertexKey {
+        private final float[] mValues;
+        private final int mHash;
+
+        VertexKey(float[] values) {
+            mValues = values;
+            mHash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof VertexKey && Arrays.equals(mValues, ((VertexKey) other).mValues);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * CardboardMeshLoader.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.opengl.GLES20;
+
+import io.kirmani.cardboard.math.BoundingBox;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads meshes stored in the binary mesh format (".cbm"), written by the OBJ converter in the
+ * tools module.
+ *
+ * <p>The file is memory-mapped, and slices of the mapping are handed to glBufferData as they are,
+ * so loading a mesh does not copy its vertices onto the Java heap. The format is little-endian:
+ *
+ * <pre>
+ * int     magic            "CBMF"
+ * int     version          1
+ * int     vertexCount
+ * int     indexCount       0 for a non-indexed mesh
+ * int     indexType        0, GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+ * int     stride           bytes per vertex
+ * int     attributeCount
+ * attributeCount x {
+ *     int semantic         ATTRIBUTE_POSITION, ATTRIBUTE_NORMAL or ATTRIBUTE_COLOR
+ *     int components
+ *     int type             GL_FLOAT
+ *     int offset           bytes from the start of the vertex
+ * }
+ * float[6] bounds          minX, minY, minZ, maxX, maxY, maxZ
+ * int     vertexDataOffset from the start of the file, a multiple of 4
+ * int     indexDataOffset  from the start of the file, a multiple of 4
+ * </pre>
+ *
+ * <p>Only the interleaved layout of {@link CardboardMesh} is accepted; the descriptor is there so
+ * that a file in another layout is rejected instead of being drawn as garbage.
+ */
+public class CardboardMeshLoader {
+    public static final int MAGIC = 0x464d4243; // "CBMF" read as a little-endian int.
+    public static final int VERSION = 1;
+
+    public static final int ATTRIBUTE_POSITION = 0;
+    public static final int ATTRIBUTE_NORMAL = 1;
+    public static final int ATTRIBUTE_COLOR = 2;
+
+    private CardboardMeshLoader() {
+    }
+
+    /**
+     * Maps and loads a mesh file. The mapped pages are read in before returning, so that the
+     * thread loading the mesh takes the page faults rather than the GL thread uploading it.
+     */
+    public static CardboardMesh load(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).load());
+        } finally {
+            // The mapping stays valid after the channel is closed.
+            stream.close();
+        }
+    }
+
+    /**
+     * Maps and loads a mesh from the application's assets. The asset must be stored uncompressed
+     * in the APK, which the app's build does for the ".cbm" extension.
+     */
+    public static CardboardMesh loadAsset(AssetManager assets, String path) throws IOException {
+        AssetFileDescriptor descriptor = assets.openFd(path);
+        try {
+            FileChannel channel = descriptor.createInputStream().getChannel();
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(),
+                    descriptor.getLength()).load());
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    /**
+     * Loads a mesh from a buffer holding a whole mesh file. The mesh keeps slices of the buffer,
+     * so it must not be modified afterwards.
+     */
+    public static CardboardMesh load(ByteBuffer file) throws IOException {
+        ByteBuffer data = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < 28 || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a mesh file");
+        }
+        int version = data.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported mesh version " + version);
+        }
+        int vertexCount = data.getInt(8);
+        int indexCount = data.getInt(12);
+        int indexType = data.getInt(16);
+        int stride = data.getInt(20);
+        int attributeCount = data.getInt(24);
+        if (stride != CardboardMesh.STRIDE) {
+            throw new IOException("Unsupported vertex stride " + stride);
+        }
+
+        int position = 28;
+        boolean[] found = new boolean[3];
+        for (int i = 0; i < attributeCount; i++, position += 16) {
+            int semantic = data.getInt(position);
+            int components = data.getInt(position + 4);
+            int type = data.getInt(position + 8);
+            int offset = data.getInt(position + 12);
+            if (semantic < 0 || semantic >= found.length || type != GLES20.GL_FLOAT
+                    || components != componentsOf(semantic) || offset != offsetOf(semantic)) {
+                throw new IOException("Unsupported vertex attribute " + semantic);
+            }
+            found[semantic] = true;
+        }
+        if (!found[ATTRIBUTE_POSITION] || !found[ATTRIBUTE_NORMAL] || !found[ATTRIBUTE_COLOR]) {
+            throw new IOException("Missing vertex attributes");
+        }
+
+        BoundingBox bounds = new BoundingBox().set(data.getFloat(position),
+                data.getFloat(position + 4), data.getFloat(position + 8),
+                data.getFloat(position + 12), data.getFloat(position + 16),
+                data.getFloat(position + 20));
+        int vertexOffset = data.getInt(position + 24);
+        int indexOffset = data.getInt(position + 28);
+
+        ByteBuffer vertices = slice(data, vertexOffset, vertexCount * stride, 4);
+        ByteBuffer indices = null;
+        if (indexCount > 0) {
+            int indexSize;
+            if (indexType == GLES20.GL_UNSIGNED_SHORT) {
+                indexSize = 2;
+            } else if (indexType == GLES20.GL_UNSIGNED_INT) {
+                indexSize = 4;
+            } else {
+                throw new IOException("Unsupported index type " + indexType);
+            }
+            indices = slice(data, indexOffset, indexCount * indexSize, indexSize);
+        }
+        return new CardboardMesh(vertices, vertexCount, indices, indexCount, indexType, bounds);
+    }
+
+    private static int componentsOf(int semantic) {
+        switch (semantic) {
+            case ATTRIBUTE_POSITION:
+                return CardboardMesh.POSITION_SIZE;
+            case ATTRIBUTE_NORMAL:
+                return CardboardMesh.NORMAL_SIZE;
+            default:
+                return CardboardMesh.COLOR_SIZE;
+        }
+    }
+
+    private static int offsetOf(int semantic) {
+        switch (semantic) {
+            case ATTRIBUTE_POSITION:
+                return CardboardMesh.POSITION_OFFSET;
+            case ATTRIBUTE_NORMAL:
+                return CardboardMesh.NORMAL_OFFSET;
+            default:
+                return CardboardMesh.COLOR_OFFSET;
+        }
+    }
+
+    /**
+     * Returns a direct, native-order view of part of the file. On a little-endian device, which is
+     * every device Android runs on in practice, a mapped file is shared rather than copied;
+     * otherwise the data is copied, swapping bytes if needed.
+     *
+     * @param elementSize The size of the values in the range, used to swap their bytes.
+     */
+    private static ByteBuffer slice(ByteBuffer data, int offset, int length, int elementSize)
+            throws IOException {
+        if (offset < 0 || length < 0 || offset > data.limit() - length) {
+            throw new IOException("Truncated mesh file");
+        }
+        ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        // slice() resets the byte order to big-endian.
+        view = view.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (view.isDirect() && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+            return view;
+        }
+        ByteBuffer copy = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+        if (elementSize == 2) {
+            copy.asShortBuffer().put(view.asShortBuffer());
+        } else {
+            copy.asIntBuffer().put(view.asIntBuffer());
+        }
+        return copy;
+    }
+}
@@ -8,21 +8,35 @@
 package io.kirmani.cardboard;
 
 import android.content.Context;
-import android.opengl.GLES20;
 import android.util.Log;
 
 import com.google.vrtoolkit.cardboard.Eye;
-import com.google.vrtoolkit.cardboard.HeadTransform;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import io.kirmani.cardboard.math.BoundingBox;
+import io.kirmani.cardboard.math.Frustum;
+import io.kirmani.cardboard.math.Mat4;
+import io.kirmani.cardboard.math.Vec3;
 
-import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.microedition.khronos.egl.EGLConfig;
 
+/**
+ * A node in the scene graph.
+ *
+ * <p>Every object carries a model matrix relative to its parent and a cached world matrix. The
+ * world matrix is only recomputed during the per-frame traversal when the object's own model, or
+ * the model of one of its ancestors, has been invalidated.
+ *
+ * <p>An object with a mesh also carries local bounds, an axis-aligned box and the sphere around it,
+ * which are transformed to world space along with the world matrix and used by the scene to skip
+ * objects outside the view frustum. Pickable objects are also kept in the scene's
+ * {@link CardboardBvh}, so that the scene can find the one under the user's gaze.
+ *
+ * <p>Objects that move on their own can be {@link #setSimulated(boolean) simulated}, in which case
+ * their model matrix is advanced by {@link #onSimulate(Mat4, float)} off the GL thread.
+ */
 public class CardboardObject {
     private static final String TAG = "CardboardObject";
 
@@ -30,35 +44,95 @@ public class CardboardObject {
     protected static final float Z_FAR = 100.0f;
     protected static final int COORDS_PER_VERTEX = 3;
 
-    private final float[] mLightPosInEyeSpace = new float[4];
-
     private CardboardScene mScene;
 
     private Context mContext;
 
-    private FloatBuffer mVertices;
-    private FloatBuffer mColors;
-    private FloatBuffer mNormals;
+    private CardboardMesh mMesh;
+    private CardboardLodGroup mLods;
+    private int mLodLevel;
+    private CardboardAssetLoader.Request<?> mMeshRequest;
 
-    private int mProgram;
+    private CardboardProgram mProgram;
 
     private int mPositionParam;
     private int mNormalParam;
     private int mColorParam;
     private int mModelParam;
-    private int mModelViewParam;
-    private int mModelViewProjectionParam;
-    private int mLightPosParam;
+    private int mHighlightParam;
+
+    // The highlight color, and how much of the object's own color it replaces.
+    private final float[] mHighlight = new float[] { 1.0f, 1.0f, 1.0f, 0.0f };
+
+    private final Mat4 mModel = new Mat4();
+    private final Mat4 mWorldModel = new Mat4();
+    private boolean mModelDirty;
+    // Bumped whenever the world matrix changes, so that its upload can be skipped otherwise.
+    private long mWorldVersion;
 
-    private float[] mModel;
+    private BoundingBox mLocalBounds;
+    private final BoundingBox mWorldBounds = new BoundingBox();
+    private final Vec3 mWorldCenter = new Vec3();
+    private float mWorldRadius;
+    private boolean mFrameCulled;
+
+    private boolean mPickable;
+    private int mBvhProxy = CardboardBvh.NULL_NODE;
+
+    private boolean mVisible = true;
+
+    private CardboardSimulation.Transform mSimulatedTransform;
+
+    private boolean mStatic;
+    private boolean mBatched;
+    private boolean mTransparent;
+
+    private CardboardObject mParent;
+    private final List<CardboardObject> mChildren = new ArrayList<CardboardObject>();
 
     public CardboardObject(Context context, CardboardScene scene) {
         mContext = context;
         mScene = scene;
     }
 
+    /**
+     * Attaches a child to this object. The child's model matrix is interpreted relative to this
+     * object's world matrix.
+     *
+     * @param child The object to attach. It is detached from its previous parent first.
+     */
+    public void addChild(CardboardObject child) {
+        if (child.mParent != null) {
+            child.mParent.removeChild(child);
+        }
+        child.mParent = this;
+        child.mModelDirty = true;
+        mChildren.add(child);
+    }
+
+    public void removeChild(CardboardObject child) {
+        if (mChildren.remove(child)) {
+            child.mParent = null;
+            child.mModelDirty = true;
+            child.dispatchRemoved();
+        }
+    }
+
+    public CardboardObject getParent() {
+        return mParent;
+    }
+
+    public List<CardboardObject> getChildren() {
+        return mChildren;
+    }
+
     public void onRendererShutdown() {
         Log.i(TAG, "onRendererShutdown");
+        if (mLods != null) {
+            mLods.release();
+        } else if (mMesh != null) {
+            mMesh.release();
+        }
     }
 
     public void onSurfaceChanged(int width, int height) {
@@ -68,217 +142,592 @@ public class CardboardObject {
     /**
      * Creates the buffers we use to store information about the 3D world.
      *
-     * <p>OpenGL doesn't use Java arrays, but rather needs data in a format it can understand.
-     * Hence we use ByteBuffers.
+     * <p>The mesh is uploaded to a vertex buffer object once here rather than being copied from
+     * client memory on every draw. This is also called again after the EGL context has been lost,
+     * so everything GL-side must be recreated.
      *
      * @param config The EGL configuration used when creating the surface.
      */
     public void onSurfaceCreated(EGLConfig config) {
+        if (mLods != null) {
+            mLods.upload();
+        } else if (mMesh != null) {
+            mMesh.upload();
+        }
     }
 
     /**
      * Prepares OpenGL ES before we draw a frame.
      *
-     * @param headTransform The head transformation in the new frame.
+     * @param headView The head view of the new frame, recorded or live, see
+     *     {@link CardboardScene#getHeadView()}.
      */
-    public void onNewFrame(HeadTransform headTransform) {
-        checkGLError("onReadyToDraw");
+    public void onNewFrame(Mat4 headView) {
     }
 
     /**
-     * Draws a frame for an eye.
+     * Advances the model matrix of a simulated object, see {@link #setSimulated(boolean)}.
+     *
+     * <p>Runs on a simulation thread, at the same time as the GL thread and possibly as other
+     * objects' onSimulate. It must only change the given matrix, and state of this object that
+     * nothing else touches; in particular not {@link #getModel()}.
+     *
+     * @param model The model matrix, relative to the parent. It persists between steps.
+     * @param deltaSeconds The time since the previous step.
+     */
+    protected void onSimulate(Mat4 model, float deltaSeconds) {
+    }
+
+    /**
+     * Called once per frame, after this object's world matrix is up to date and before any eye is
+     * drawn. Anything that doesn't depend on the eye, such as hit tests against the head pose,
+     * belongs here rather than in {@link #onDrawEye(Eye)}, which runs twice per frame.
+     */
+    protected void onPrepareFrame() {
+    }
+
+    /**
+     * Submits the object to the scene's render queue for an eye. The actual GL calls happen later
+     * in {@link #draw()}, in the order chosen by the queue.
+     *
+     * <p>Nothing is computed per object and eye but the depth to sort by: the shader multiplies
+     * the world matrix by the ViewProjection matrix, which the scene uploads once per program and
+     * eye, see {@link CardboardScene#applyGlobals(CardboardGLState, CardboardProgram)}.
      *
      * @param eye The eye to render. Includes all required transformations.
      */
-    public void onDrawEye(Eye eye) {}
+    public void onDrawEye(Eye eye) {
+        if (mMesh == null || mProgram == null || mBatched || !mVisible) {
+            return;
+        }
+        if (mScene.cull(this)) {
+            return;
+        }
+        // The camera looks down -z, so the distance along the view axis is -z in view space.
+        float[] view = mScene.getView().m;
+        float[] world = mWorldModel.m;
+        float depth = -(view[2] * world[12] + view[6] * world[13] + view[10] * world[14]
+                + view[14]);
+        mScene.getRenderQueue().submit(this, mTransparent ? CardboardRenderQueue.PASS_TRANSPARENT
+                : CardboardRenderQueue.PASS_OPAQUE, mProgram, mMesh, depth);
+    }
+
+    /**
+     * Draws the object for the eye of the last {@link #onDrawEye(Eye)}.
+     *
+     * <p>The world matrix is the main per-object uniform. It is versioned, so when the program
+     * still holds it, e.g. for the second eye of an object with a program of its own, the upload
+     * is skipped without comparing the matrix. Programs built with HIGHLIGHT also take the
+     * object's highlight, which only costs an upload when it differs from the previous object's.
+     */
+    public void draw() {
+        CardboardGLState state = getGLState();
+        state.useProgram(mProgram);
+        mScene.applyGlobals(state, mProgram);
+        state.uniformMatrix4fv(mModelParam, mWorldModel.m, 0, this, mWorldVersion);
+        state.uniform4fv(mHighlightParam, mHighlight, 0);
+
+        // Set the position, normals and colors from the vertex buffer.
+        mMesh.bind(state, mPositionParam, mNormalParam, mColorParam);
+        onBindAttributes(state);
+
+        drawMesh(mMesh);
+        // Only in debug builds, since glGetError can stall the pipeline.
+        CardboardGLDebug.checkDraw("draw");
+    }
+
+    /**
+     * Called after the mesh has been bound, to let subclasses override attribute pointers.
+     */
+    protected void onBindAttributes(CardboardGLState state) {
+    }
 
     /**
-     * Called when the Cardboard trigger is pulled.
+     * Issues the draw call for the bound mesh. Subclasses may draw it differently, e.g. instanced,
+     * and should then report what they drew to the profiler themselves.
+     */
+    protected void drawMesh(CardboardMesh mesh) {
+        mesh.draw();
+        getProfiler().count(CardboardProfiler.DRAW_CALLS, 1);
+        getProfiler().count(CardboardProfiler.TRIANGLES, mesh.getElementCount() / 3);
+    }
+
+    /**
+     * Called when the Cardboard trigger is pulled while the user is looking at this object. Only
+     * pickable objects receive this, see {@link #setPickable(boolean)}.
      */
     public void onCardboardTrigger() {
     }
 
+    /**
+     * Returns the distance along a world-space ray at which it hits this object, or a negative
+     * value if it misses. Called for pickable objects whose bounding volume the ray hits; the
+     * default tests the world bounding box.
+     *
+     * @param origin The start of the ray.
+     * @param direction The normalized direction of the ray.
+     */
+    protected float intersectRay(Vec3 origin, Vec3 direction) {
+        return mWorldBounds.intersectRay(origin, direction);
+    }
+
+    void dispatchRendererShutdown() {
+        onRendererShutdown();
+        for (int i = 0; i < mChildren.size(); i++) {
+            mChildren.get(i).dispatchRendererShutdown();
+        }
+    }
+
+    void dispatchSurfaceChanged(int width, int height) {
+        onSurfaceChanged(width, height);
+        for (int i = 0; i < mChildren.size(); i++) {
+            mChildren.get(i).dispatchSurfaceChanged(width, height);
+        }
+    }
+
+    void dispatchSurfaceCreated(EGLConfig config) {
+        onSurfaceCreated(config);
+        mModelDirty = true;
+        for (int i = 0; i < mChildren.size(); i++) {
+            mChildren.get(i).dispatchSurfaceCreated(config);
+        }
+    }
+
+    /**
+     * Updates this object and its subtree, recomputing world matrices where needed.
+     *
+     * @param headView The head view of the new frame.
+     * @param parentChanged Whether the parent's world matrix changed during this traversal.
+     */
+    void dispatchNewFrame(Mat4 headView, boolean parentChanged) {
+        if (mSimulatedTransform != null
+                && mScene.getSimulation().read(mSimulatedTransform, mModel)) {
+            mModelDirty = true;
+        }
+        onNewFrame(headView);
+        boolean changed = parentChanged || mModelDirty;
+        if (changed) {
+            updateWorldModel();
+        }
+        updateFrameCulling();
+        if (mLods != null) {
+            updateLod();
+        }
+        onPrepareFrame();
+        for (int i = 0; i < mChildren.size(); i++) {
+            mChildren.get(i).dispatchNewFrame(headView, changed);
+        }
+    }
+
+    void dispatchDrawEye(Eye eye) {
+        onDrawEye(eye);
+        for (int i = 0; i < mChildren.size(); i++) {
+            mChildren.get(i).dispatchDrawEye(eye);
+        }
+    }
+
+    /**
+     * Takes this object and its subtree out of the scene's spatial index and simulation after it
+     * was detached.
+     */
+    void dispatchRemoved() {
+        if (mBvhProxy != CardboardBvh.NULL_NODE) {
+            mScene.getBvh().remove(mBvhProxy);
+            mBvhProxy = CardboardBvh.NULL_NODE;
+        }
+        setSimulated(false);
+        for (int i = 0; i < mChildren.size(); i++) {
+            mChildren.get(i).dispatchRemoved();
+        }
+    }
+
+    private void updateWorldModel() {
+        if (mParent == null) {
+            mWorldModel.set(mModel);
+        } else {
+            mWorldModel.multiply(mParent.mWorldModel, mModel);
+        }
+        mWorldVersion++;
+        mModelDirty = false;
+        if (mLocalBounds != null) {
+            mLocalBounds.transform(mWorldModel, mWorldBounds);
+            mWorldModel.transformPoint(mLocalBounds.getCenter(mWorldCenter), mWorldCenter);
+            mWorldRadius = mLocalBounds.getRadius() * mWorldModel.getMaxScale();
+            if (mPickable) {
+                if (mBvhProxy == CardboardBvh.NULL_NODE) {
+                    mBvhProxy = mScene.getBvh().insert(this, mWorldBounds);
+                } else {
+                    mScene.getBvh().update(mBvhProxy, mWorldBounds);
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the level of detail for the frame from the distance between the viewer and the center
+     * of the object's bounds. Done once per frame, so that both eyes draw the same level.
+     */
+    private void updateLod() {
+        float distance = (float) Math.sqrt(
+                mWorldCenter.distanceSquared(mScene.getViewerPosition()));
+        mLodLevel = mLods.selectLevel(mLodLevel, distance, mWorldModel.getMaxScale(),
+                mScene.getPixelsPerUnit());
+        mMesh = mLods.getMesh(mLodLevel);
+    }
+
+    /**
+     * Tests the object against the scene's frustum for the whole frame, if there is one, so that
+     * the per-eye traversal only has to read the result.
+     */
+    void updateFrameCulling() {
+        mFrameCulled = mScene.isFrameCullingActive() && isOutside(mScene.getFrameFrustum());
+    }
+
+    /**
+     * Returns whether the object was outside the frame frustum in this frame.
+     */
+    boolean isFrameCulled() {
+        return mFrameCulled;
+    }
+
+    /**
+     * Returns whether the object's world bounds lie entirely outside a frustum. Objects without
+     * bounds are never outside.
+     */
+    boolean isOutside(Frustum frustum) {
+        if (mLocalBounds == null) {
+            return false;
+        }
+        // The sphere test is the cheaper one and rejects most objects; the box is tighter.
+        return !frustum.intersectsSphere(mWorldCenter, mWorldRadius)
+                || !frustum.intersectsBox(mWorldBounds);
+    }
+
     protected Context getContext() {
         return mContext;
     }
 
-    protected void setModel(float[] model) {
-        mModel = model;
+    protected void setModel(Mat4 model) {
+        mModel.set(model);
+        mModelDirty = true;
     }
 
-    protected float[] getModel() {
+    /**
+     * Returns the model matrix of this object, relative to its parent. Callers that modify it in
+     * place must call {@link #invalidateModel()} afterwards.
+     */
+    protected Mat4 getModel() {
         return mModel;
     }
 
-    protected float[] getModelView() {
-        return mScene.getModelView();
+    /**
+     * Marks the model matrix as changed so the world matrix of this object and its subtree is
+     * recomputed on the next frame.
+     */
+    protected void invalidateModel() {
+        mModelDirty = true;
     }
 
-    protected float[] getModelViewProjection() {
-        return mScene.getModelViewProjection();
+    /**
+     * Returns the cached model-to-world matrix, valid after this object's onNewFrame traversal.
+     */
+    protected Mat4 getWorldModel() {
+        return mWorldModel;
     }
 
-    protected float[] getView() {
-        return mScene.getView();
+    /**
+     * Returns a number that changes whenever the world matrix does, for use with
+     * {@link CardboardGLState#uniformMatrix4fv(int, float[], int, Object, long)}.
+     */
+    protected long getWorldVersion() {
+        return mWorldVersion;
     }
 
-    protected void setVertices(FloatBuffer vertices) {
-        mVertices = vertices;
+    protected CardboardScene getScene() {
+        return mScene;
     }
 
-    protected FloatBuffer getVertices() {
-        return mVertices;
+    protected CardboardGLState getGLState() {
+        return mScene.getGLState();
     }
 
-    protected void setColors(FloatBuffer colors) {
-        mColors = colors;
+    protected CardboardProfiler getProfiler() {
+        return mScene.getProfiler();
     }
 
-    protected FloatBuffer getColors() {
-        return mColors;
+    /**
+     * Marks this object as static. Static objects with the same program are merged into one
+     * pre-transformed batch by the scene, so they must not move once the batch has been built.
+     */
+    public void setStatic(boolean isStatic) {
+        mStatic = isStatic;
+        mScene.invalidateStaticBatches();
     }
 
-    protected void setNormals(FloatBuffer normals) {
-        mNormals = normals;
+    public boolean isStatic() {
+        return mStatic;
     }
 
-    protected FloatBuffer getNormals() {
-        return mNormals;
+    /**
+     * Makes the object a candidate for gaze picking. It then receives
+     * {@link #onCardboardTrigger()} when the trigger is pulled while the user looks at it. The
+     * object needs bounds, normally from its mesh.
+     */
+    public void setPickable(boolean pickable) {
+        if (pickable == mPickable) {
+            return;
+        }
+        mPickable = pickable;
+        if (pickable) {
+            // Inserted into the index once the world bounds are known.
+            mModelDirty = true;
+        } else if (mBvhProxy != CardboardBvh.NULL_NODE) {
+            mScene.getBvh().remove(mBvhProxy);
+            mBvhProxy = CardboardBvh.NULL_NODE;
+        }
     }
 
-    protected void setProgram(int program) {
-        mProgram = program;
+    public boolean isPickable() {
+        return mPickable;
     }
 
-    protected int getProgram() {
-        return mProgram;
+    /**
+     * Moves the updates of this object's model matrix to the scene's {@link CardboardSimulation},
+     * which calls {@link #onSimulate(Mat4, float)} from the current model on. The GL thread picks
+     * up the result at the start of each frame.
+     *
+     * <p>While the object is simulated, the simulation owns its model: changes made through
+     * {@link #getModel()} or {@link #setModel(Mat4)} are overwritten by the next step, and other
+     * threads must make theirs in onSimulate or in a task posted to the simulation. Removing the
+     * object from the scene stops its simulation.
+     */
+    public void setSimulated(boolean simulated) {
+        if (simulated == (mSimulatedTransform != null)) {
+            return;
+        }
+        if (simulated) {
+            mSimulatedTransform = mScene.getSimulation().add(this, mModel);
+        } else {
+            mScene.getSimulation().remove(mSimulatedTransform);
+            mSimulatedTransform = null;
+        }
     }
 
-    protected void setPositionParam(int positionParam) {
-        mPositionParam = positionParam;
+    public boolean isSimulated() {
+        return mSimulatedTransform != null;
     }
 
-    protected int getPositionParam() {
-        return mPositionParam;
+    void setBatched(boolean batched) {
+        mBatched = batched;
     }
 
-    protected void setNormalParam(int normalParam) {
-        mNormalParam = normalParam;
+    /**
+     * Marks this object as transparent, so that it is drawn after all opaque objects, back to
+     * front.
+     */
+    public void setTransparent(boolean transparent) {
+        if (transparent == mTransparent) {
+            return;
+        }
+        mTransparent = transparent;
+        if (mStatic) {
+            mScene.invalidateStaticBatches();
+        }
     }
 
-    protected int getNormalParam() {
-        return mNormalParam;
+    public boolean isTransparent() {
+        return mTransparent;
+    }
+
+    /**
+     * Shows or hides the object. Hidden objects are not submitted for drawing, but are still
+     * updated every frame. Hiding or showing a static object rebuilds the static batches.
+     */
+    public void setVisible(boolean visible) {
+        if (visible == mVisible) {
+            return;
+        }
+        mVisible = visible;
+        if (mStatic) {
+            mScene.invalidateStaticBatches();
+        }
     }
 
-    protected void setColorParam(int colorParam) {
-        mColorParam = colorParam;
+    public boolean isVisible() {
+        return mVisible;
     }
 
-    protected int getColorParam() {
-        return mColorParam;
+    protected Mat4 getView() {
+        return mScene.getView();
     }
 
-    protected void setModelParam(int modelParam) {
-        mModelParam = modelParam;
+    /**
+     * Sets the mesh to draw. The object's local bounds are taken from the mesh.
+     */
+    protected void setMesh(CardboardMesh mesh) {
+        mMesh = mesh;
+        mMeshRequest = null;
+        mLods = null;
+        setLocalBounds(mesh != null ? mesh.getBounds() : null);
     }
 
-    protected int getModelParam() {
-        return mModelParam;
+    /**
+     * Overrides the bounds used for culling, in the object's own space. Pass null to never cull
+     * the object.
+     */
+    protected void setLocalBounds(BoundingBox bounds) {
+        if (bounds == null) {
+            mLocalBounds = null;
+        } else {
+            if (mLocalBounds == null) {
+                mLocalBounds = new BoundingBox();
+            }
+            mLocalBounds.set(bounds);
+        }
+        // Recomputes the world bounds on the next frame.
+        mModelDirty = true;
     }
 
-    protected void setModelViewParam(int modelViewParam) {
-        mModelViewParam = modelViewParam;
+    /**
+     * Returns the bounds of the object in world space, valid after its onNewFrame traversal.
+     */
+    public BoundingBox getWorldBounds() {
+        return mWorldBounds;
     }
 
-    protected int getModelViewParam() {
-        return mModelViewParam;
+    public Vec3 getWorldCenter() {
+        return mWorldCenter;
     }
 
-    protected void setModelViewProjectionParam(int modelViewProjectionParam) {
-        mModelViewProjectionParam = modelViewProjectionParam;
+    public float getWorldRadius() {
+        return mWorldRadius;
     }
 
-    protected int getModelViewProjectionParam() {
-        return mModelViewProjectionParam;
+    /**
+     * Draws the object with one of several levels of detail, chosen every frame by its distance
+     * from the viewer. The bounds are those of the full-detail mesh, so that culling and picking
+     * don't change with the level.
+     */
+    protected void setLods(CardboardLodGroup lods) {
+        setMesh(lods.getMesh(0));
+        mLods = lods;
+        mLodLevel = 0;
     }
 
-    protected void setLightPosParam(int lightPosParam) {
-        mLightPosParam = lightPosParam;
+    public CardboardLodGroup getLods() {
+        return mLods;
     }
 
-    protected int getLightPosParam() {
-        return mLightPosParam;
+    /**
+     * Returns the level of detail drawn in the current frame, 0 being the full detail.
+     */
+    public int getLodLevel() {
+        return mLodLevel;
     }
 
-    protected float[] getLightPosInEyeSpace() {
-        return mLightPosInEyeSpace;
+    /**
+     * Loads the mesh from an asset in the binary mesh format in the background, see
+     * {@link CardboardAssetLoader}. Until it has been uploaded the object draws the placeholder,
+     * which is uploaded along with the object in onSurfaceCreated, or nothing if it is null.
+     */
+    protected void loadMesh(String assetPath, CardboardMesh placeholder) {
+        setMesh(placeholder);
+        mMeshRequest = new CardboardAssetLoader.MeshRequest(mContext.getAssets(), assetPath) {
+            @Override
+            protected void onLoaded(CardboardMesh mesh) {
+                // A later setMesh or loadMesh wins over this one.
+                if (mMeshRequest == this) {
+                    mMeshRequest = null;
+                    setMesh(mesh);
+                    if (mStatic) {
+                        mScene.invalidateStaticBatches();
+                    }
+                }
+            }
+        };
+        mScene.getAssetLoader().load(mMeshRequest);
+    }
+
+    protected CardboardMesh getMesh() {
+        return mMesh;
     }
 
     /**
-     * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
-     *
-     * @param label Label to report in case of error.
+     * Sets the program used to draw this object and picks up the locations of the standard
+     * attributes and uniforms from it.
      */
-    protected static void checkGLError(String label) {
-        int error;
-        while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
-            Log.e(TAG, label + ": glError " + error);
-            throw new RuntimeException(label + ": glError " + error);
-        }
+    protected void setProgram(CardboardProgram program) {
+        mProgram = program;
+        mPositionParam = program.getAttribLocation("a_Position");
+        mNormalParam = program.getAttribLocation("a_Normal");
+        mColorParam = program.getAttribLocation("a_Color");
+        mModelParam = program.getUniformLocation("u_Model");
+        mHighlightParam = program.getUniformLocation("u_Highlight");
     }
 
     /**
-     * Converts a raw text file, saved as a resource, into an OpenGL ES shader.
-     *
-     * @param type The type of shader we will be creating.
-     * @param resId The resource ID of the raw text file about to be turned into a shader.
-     * @return The shader object handler.
-     */
-    protected int loadGLShader(int type, int resId) {
-        String code = readRawTextFile(resId);
-        int shader = GLES20.glCreateShader(type);
-        GLES20.glShaderSource(shader, code);
-        GLES20.glCompileShader(shader);
-
-        // Get the compilation status.
-        final int[] compileStatus = new int[1];
-        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
-
-        // If the compilation failed, delete the shader.
-        if (compileStatus[0] == 0) {
-            Log.e(TAG, "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
-            GLES20.glDeleteShader(shader);
-            shader = 0;
+     * Sets how much of the object's color is replaced by its highlight color, from 0 for none to
+     * 1 for all of it, e.g. to show that it is selected or looked at. Only has an effect with a
+     * program built with the HIGHLIGHT define, see {@link #loadProgram(int, int, String...)}.
+     * A highlighted static object is drawn on its own rather than as part of a batch, so turning
+     * the highlight of one on or off rebuilds the static batches.
+     */
+    public void setHighlight(float amount) {
+        if (mStatic && (amount == 0.0f) != (mHighlight[3] == 0.0f)) {
+            mScene.invalidateStaticBatches();
         }
+        mHighlight[3] = amount;
+    }
 
-        if (shader == 0) {
-            throw new RuntimeException("Error creating shader.");
-        }
+    public float getHighlight() {
+        return mHighlight[3];
+    }
+
+    /**
+     * Sets the color the object takes on while highlighted. It is lit like the object's own
+     * colors. The default is white.
+     */
+    public void setHighlightColor(float r, float g, float b) {
+        mHighlight[0] = r;
+        mHighlight[1] = g;
+        mHighlight[2] = b;
+    }
+
+    protected CardboardProgram getProgram() {
+        return mProgram;
+    }
+
+    /**
+     * Returns the program for the given shaders from the scene's shared cache.
+     */
+    protected CardboardProgram loadProgram(int vertexResId, int fragmentResId, String... defines) {
+        return mScene.getProgramCache().getProgram(vertexResId, fragmentResId, defines);
+    }
+
+    protected int getPositionParam() {
+        return mPositionParam;
+    }
+
+    protected int getNormalParam() {
+        return mNormalParam;
+    }
 
-        return shader;
+    protected int getColorParam() {
+        return mColorParam;
+    }
+
+    protected int getModelParam() {
+        return mModelParam;
     }
 
     /**
-     * Converts a raw text file into a string.
+     * Checks if we've had an error inside of OpenGL ES, and if so what that error is. Meant for
+     * setup code such as onSurfaceCreated; see {@link CardboardGLDebug} for what it does in each
+     * mode.
      *
-     * @param resId The resource ID of the raw text file about to be turned into a shader.
-     * @return The context of the text file, or null in case of error.
-     */
-    private String readRawTextFile(int resId) {
-        InputStream inputStream = mContext.getResources().openRawResource(resId);
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
-            reader.close();
-            return sb.toString();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return null;
+     * @param label Label to report in case of error.
+     */
+    protected static void checkGLError(String label) {
+        CardboardGLDebug.checkSetup(label);
     }
 }
-
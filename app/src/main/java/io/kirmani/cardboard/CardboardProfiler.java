@@ -0,0 +1,260 @@
+/*
+ * CardboardProfiler.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records where the time of each frame goes.
+ *
+ * <p>Each frame, the profiler collects the CPU time of the renderer callbacks and of the scene's
+ * object phases, the time between frames, the number of draw calls, triangles and GL state
+ * changes, and, where the driver supports timer queries, the GPU time of the frame. Every metric
+ * goes into a {@link CardboardStatsRing}, so the recent history can be dumped as percentiles from
+ * any thread while the renderer keeps running.
+ *
+ * <p>A disabled profiler does nothing beyond checking a flag, so the calls can stay in the frame
+ * loop of release builds. Recording doesn't allocate.
+ */
+public class CardboardProfiler {
+    private static final String TAG = "CardboardProfiler";
+
+    /** CPU time of MainActivity.onNewFrame. */
+    public static final int CPU_NEW_FRAME = 0;
+    /** CPU time of MainActivity.onDrawEye, for both eyes. */
+    public static final int CPU_DRAW_EYE = 1;
+    /** CPU time of MainActivity.onFinishFrame. */
+    public static final int CPU_FINISH_FRAME = 2;
+    /** CPU time of the objects' update traversal. */
+    public static final int CPU_OBJECTS_NEW_FRAME = 3;
+    /** CPU time of the objects' per-eye traversal, which culls and submits them. */
+    public static final int CPU_OBJECTS_DRAW_EYE = 4;
+    /** CPU time of drawing the submitted objects, for both eyes. */
+    public static final int CPU_OBJECTS_DRAW = 5;
+    /** Time from the start of one frame to the start of the next. */
+    public static final int FRAME_INTERVAL = 6;
+    /** GPU time from the start of the frame to onFinishFrame, where timer queries exist. */
+    public static final int GPU_FRAME = 7;
+    public static final int DRAW_CALLS = 8;
+    public static final int TRIANGLES = 9;
+    /** GL calls that got past {@link CardboardGLState}. */
+    public static final int STATE_CHANGES = 10;
+
+    private static final int METRIC_COUNT = 11;
+    private static final int FIRST_COUNTER = DRAW_CALLS;
+    private static final String[] NAMES = {
+        "cpu onNewFrame", "cpu onDrawEye", "cpu onFinishFrame", "cpu objects new frame",
+        "cpu objects draw eye", "cpu objects draw", "frame interval", "gpu frame", "draw calls",
+        "triangles", "state changes",
+    };
+
+    private static final int HISTORY = 1024;
+
+    // From EXT_disjoint_timer_query, which has no Java bindings.
+    private static final String TIMER_QUERY_EXTENSION = "GL_EXT_disjoint_timer_query";
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+    // Results are read a few frames late, so the GPU never has to be waited for.
+    private static final int QUERY_COUNT = 4;
+
+    private final boolean mEnabled;
+
+    private final CardboardStatsRing[] mRings = new CardboardStatsRing[METRIC_COUNT];
+    private final long[] mFrameValues = new long[METRIC_COUNT];
+    private long mFrameStart;
+
+    private boolean mTimerQueries;
+    private final int[] mQueries = new int[QUERY_COUNT];
+    private final boolean[] mQueryPending = new boolean[QUERY_COUNT];
+    private int mQueryIndex;
+    private final int[] mQueryResult = new int[1];
+
+    public CardboardProfiler(boolean enabled) {
+        mEnabled = enabled;
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            mRings[i] = new CardboardStatsRing(HISTORY);
+        }
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Sets up the GPU timer queries in a new EGL context. Must be called from onSurfaceCreated.
+     */
+    public void onSurfaceCreated() {
+        CardboardGL gl = CardboardGLContext.get();
+        if (!mEnabled) {
+            return;
+        }
+        // Queries from a previous context died with it.
+        Arrays.fill(mQueryPending, false);
+        String version = gl.glGetString(GLES20.GL_VERSION);
+        String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+        mTimerQueries = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                && version != null && version.startsWith("OpenGL ES 3")
+                && extensions != null && extensions.contains(TIMER_QUERY_EXTENSION);
+        if (mTimerQueries) {
+            gl.glGenQueries(QUERY_COUNT, mQueries, 0);
+        }
+        Log.i(TAG, "GPU timer queries " + (mTimerQueries ? "enabled" : "not supported"));
+    }
+
+    /**
+     * Starts a frame. Call first thing in onNewFrame.
+     */
+    public void beginFrame() {
+        if (!mEnabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (mFrameStart != 0) {
+            mRings[FRAME_INTERVAL].add(now - mFrameStart);
+        }
+        mFrameStart = now;
+        if (mTimerQueries) {
+            readQueries();
+            if (!mQueryPending[mQueryIndex]) {
+                CardboardGLContext.get().glBeginQuery(GL_TIME_ELAPSED_EXT, mQueries[mQueryIndex]);
+            }
+        }
+    }
+
+    /**
+     * Ends a frame and records its metrics. Call last thing in onFinishFrame.
+     */
+    public void endFrame() {
+        if (!mEnabled || mFrameStart == 0) {
+            return;
+        }
+        if (mTimerQueries && !mQueryPending[mQueryIndex]) {
+            CardboardGLContext.get().glEndQuery(GL_TIME_ELAPSED_EXT);
+            mQueryPending[mQueryIndex] = true;
+            mQueryIndex = (mQueryIndex + 1) % QUERY_COUNT;
+        }
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            if (i != FRAME_INTERVAL && i != GPU_FRAME) {
+                mRings[i].add(mFrameValues[i]);
+            }
+            mFrameValues[i] = 0;
+        }
+    }
+
+    /**
+     * Returns a start time for {@link #end(int, long)}, or 0 when disabled.
+     */
+    public long begin() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since start to a CPU metric of the current frame.
+     */
+    public void end(int metric, long start) {
+        if (mEnabled) {
+            mFrameValues[metric] += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Adds to a counter of the current frame.
+     */
+    public void count(int metric, long amount) {
+        if (mEnabled) {
+            mFrameValues[metric] += amount;
+        }
+    }
+
+    /**
+     * Writes p50, p95, p99 and the maximum of every metric over the recent frames. May be called
+     * from any thread.
+     */
+    public void dump(Writer out) throws IOException {
+        long[] samples = new long[HISTORY];
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            int count = mRings[i].snapshot(samples);
+            if (count == 0) {
+                continue;
+            }
+            Arrays.sort(samples, 0, count);
+            out.write(String.format(Locale.US, "%-22s n=%-5d p50=%s p95=%s p99=%s max=%s%n",
+                    NAMES[i], count,
+                    format(i, percentile(samples, count, 50)),
+                    format(i, percentile(samples, count, 95)),
+                    format(i, percentile(samples, count, 99)),
+                    format(i, samples[count - 1])));
+        }
+    }
+
+    /**
+     * Writes the percentiles to logcat.
+     */
+    public void log() {
+        if (!mEnabled) {
+            return;
+        }
+        StringWriter out = new StringWriter();
+        try {
+            dump(out);
+        } catch (IOException e) {
+            // StringWriter doesn't throw.
+        }
+        for (String line : out.toString().split("\n")) {
+            Log.i(TAG, line);
+        }
+    }
+
+    /**
+     * Reads the results of the queries the GPU has finished with.
+     */
+    private void readQueries() {
+        CardboardGL gl = CardboardGLContext.get();
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            int index = (mQueryIndex + i) % QUERY_COUNT;
+            if (!mQueryPending[index]) {
+                continue;
+            }
+            gl.glGetQueryObjectuiv(mQueries[index], GLES30.GL_QUERY_RESULT_AVAILABLE,
+                    mQueryResult, 0);
+            if (mQueryResult[0] == 0) {
+                // Later queries can't be done before this one.
+                break;
+            }
+            gl.glGetQueryObjectuiv(mQueries[index], GLES30.GL_QUERY_RESULT, mQueryResult, 0);
+            long elapsed = mQueryResult[0] & 0xffffffffL;
+            mQueryPending[index] = false;
+            // A disjoint operation, such as a frequency change, makes the result meaningless.
+            gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, mQueryResult, 0);
+            if (mQueryResult[0] == 0) {
+                mRings[GPU_FRAME].add(elapsed);
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, int count, int percent) {
+        return sorted[Math.min(count - 1, (int) ((long) count * percent / 100))];
+    }
+
+    private static String format(int metric, long value) {
+        if (metric >= FIRST_COUNTER) {
+            return Long.toString(value);
+        }
+        return String.format(Locale.US, "%.2fms", value / 1e6);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * CardboardProgram.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A linked shader program together with the locations of its active attributes and uniforms.
+ *
+ * <p>Locations are queried once right after linking, so looking one up never goes to the driver.
+ * The program also keeps a shadow copy of the last value uploaded to each float uniform, which
+ * {@link CardboardGLState} uses to skip uploads that wouldn't change anything. Uniforms set from
+ * a versioned source, such as an object's world matrix, also remember the source and its version,
+ * so that an unchanged value is recognized without comparing it.
+ */
+public class CardboardProgram {
+    // Uniform locations above this are not shadowed, so the shadow table stays small.
+    private static final int MAX_SHADOWED_LOCATION = 255;
+
+    private final int mHandle;
+    private final Map<String, Integer> mAttribLocations = new HashMap<String, Integer>();
+    private final Map<String, Integer> mUniformLocations = new HashMap<String, Integer>();
+
+    private float[][] mUniformValues = new float[0][];
+    private Object[] mUniformSources;
+    private long[] mUniformVersions;
+
+    // The version of the scene's globals last uploaded to this program, 0 for none.
+    private int mGlobalsVersion;
+
+    /**
+     * @param handle A successfully linked program.
+     */
+    public CardboardProgram(int handle) {
+        CardboardGL gl = CardboardGLContext.get();
+        mHandle = handle;
+
+        final int[] count = new int[1];
+        final int[] size = new int[1];
+        final int[] type = new int[1];
+
+        gl.glGetProgramiv(handle, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
+        for (int i = 0; i < count[0]; i++) {
+            String name = gl.glGetActiveAttrib(handle, i, size, 0, type, 0);
+            mAttribLocations.put(name, gl.glGetAttribLocation(handle, name));
+        }
+
+        gl.glGetProgramiv(handle, GLES20.GL_ACTIVE_UNIFORMS, count, 0);
+        for (int i = 0; i < count[0]; i++) {
+            String name = stripArraySuffix(gl.glGetActiveUniform(handle, i, size, 0, type, 0));
+            int location = gl.glGetUniformLocation(handle, name);
+            mUniformLocations.put(name, location);
+
+            int floats = floatsPerElement(type[0]) * size[0];
+            if (floats > 0 && location >= 0 && location <= MAX_SHADOWED_LOCATION) {
+                if (location >= mUniformValues.length) {
+                    mUniformValues = Arrays.copyOf(mUniformValues, location + 1);
+                }
+                // NaN never compares equal, so the first upload always goes through.
+                mUniformValues[location] = new float[floats];
+                Arrays.fill(mUniformValues[location], Float.NaN);
+            }
+        }
+        mUniformSources = new Object[mUniformValues.length];
+        mUniformVersions = new long[mUniformValues.length];
+    }
+
+    public int getHandle() {
+        return mHandle;
+    }
+
+    /**
+     * @return The location of the attribute, or -1 if the program doesn't use it.
+     */
+    public int getAttribLocation(String name) {
+        Integer location = mAttribLocations.get(name);
+        return location != null ? location : -1;
+    }
+
+    /**
+     * @return The location of the uniform, or -1 if the program doesn't use it.
+     */
+    public int getUniformLocation(String name) {
+        Integer location = mUniformLocations.get(name);
+        return location != null ? location : -1;
+    }
+
+    /**
+     * Returns the last value uploaded to a float uniform, or null if it isn't shadowed.
+     */
+    float[] getUniformShadow(int location) {
+        return location >= 0 && location < mUniformValues.length ? mUniformValues[location] : null;
+    }
+
+    /**
+     * Returns whether a uniform was last set from the given source at the given version.
+     */
+    boolean isUniformSourceCurrent(int location, Object source, long version) {
+        return location >= 0 && location < mUniformSources.length
+                && mUniformSources[location] == source && mUniformVersions[location] == version;
+    }
+
+    /**
+     * Records the source of a shadowed uniform's value, or forgets it if the source is null.
+     */
+    void setUniformSource(int location, Object source, long version) {
+        if (getUniformShadow(location) != null) {
+            mUniformSources[location] = source;
+            mUniformVersions[location] = version;
+        }
+    }
+
+    int getGlobalsVersion() {
+        return mGlobalsVersion;
+    }
+
+    void setGlobalsVersion(int version) {
+        mGlobalsVersion = version;
+    }
+
+    public void release() {
+        CardboardGLContext.get().glDeleteProgram(mHandle);
+    }
+
+    private static int floatsPerElement(int type) {
+        switch (type) {
+            case GLES20.GL_FLOAT:
+                return 1;
+            case GLES20.GL_FLOAT_VEC2:
+                return 2;
+            case GLES20.GL_FLOAT_VEC3:
+                return 3;
+            case GLES20.GL_FLOAT_VEC4:
+            case GLES20.GL_FLOAT_MAT2:
+                return 4;
+            case GLES20.GL_FLOAT_MAT3:
+                return 9;
+            case GLES20.GL_FLOAT_MAT4:
+                return 16;
+            default:
+                return 0;
+        }
+    }
+
+    private static String stripArraySuffix(String name) {
+        return name.endsWith("[0]") ? name.substring(0, name.length() - 3) : name;
+    }
+}
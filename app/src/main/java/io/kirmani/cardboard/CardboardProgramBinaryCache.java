@@ -0,0 +1,237 @@
+/*
+ * CardboardProgramBinaryCache.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Persists linked program binaries to app storage so that later launches can skip compiling
+ * shaders from source.
+ *
+ * <p>Binaries are only valid for the driver that produced them, so they are stored in a directory
+ * named after the GL renderer and version, and directories left behind by other drivers are
+ * removed. Each binary is keyed by a hash of the full shader sources, defines included. A binary
+ * that the driver refuses is deleted and the caller falls back to compiling from source.
+ *
+ * <p>The Java bindings only expose program binaries through GLES30, so the cache is only enabled on
+ * API 18 and above with an OpenGL ES 3 context. Everywhere else it does nothing.
+ */
+public class CardboardProgramBinaryCache {
+    private static final String TAG = "CardboardProgramBinaryCache";
+
+    private static final String DIRECTORY = "programs";
+
+    private final File mRoot;
+    private File mDirectory;
+    private boolean mSupported;
+
+    public CardboardProgramBinaryCache(Context context) {
+        mRoot = new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    /**
+     * Checks whether the current context supports program binaries and picks the directory for
+     * its driver. Must be called from onSurfaceCreated.
+     */
+    public void onSurfaceCreated() {
+        CardboardGL gl = CardboardGLContext.get();
+        mSupported = false;
+        String version = gl.glGetString(GLES20.GL_VERSION);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2
+                || version == null || !version.startsWith("OpenGL ES 3")) {
+            return;
+        }
+        final int[] formats = new int[1];
+        gl.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        if (formats[0] == 0) {
+            return;
+        }
+
+        String driver = hash(gl.glGetString(GLES20.GL_RENDERER), version);
+        mDirectory = new File(mRoot, driver);
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Couldn't create " + mDirectory);
+            return;
+        }
+        File[] stale = mRoot.listFiles();
+        if (stale != null) {
+            for (File directory : stale) {
+                if (!directory.getName().equals(driver)) {
+                    deleteRecursively(directory);
+                }
+            }
+        }
+        mSupported = true;
+    }
+
+    public boolean isSupported() {
+        return mSupported;
+    }
+
+    /**
+     * Returns the cache key for a program built from the given sources.
+     */
+    public String getKey(String vertexSource, String fragmentSource) {
+        return hash(vertexSource, fragmentSource);
+    }
+
+    /**
+     * Creates a program from a cached binary.
+     *
+     * @return The linked program, or 0 if there is no usable binary for the key.
+     */
+    public int load(String key) {
+        CardboardGL gl = CardboardGLContext.get();
+        if (!mSupported) {
+            return 0;
+        }
+        File file = new File(mDirectory, key);
+        if (!file.isFile()) {
+            return 0;
+        }
+
+        int format;
+        ByteBuffer binary;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            format = in.readInt();
+            byte[] bytes = new byte[(int) file.length() - 4];
+            in.readFully(bytes);
+            binary = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.nativeOrder());
+            binary.put(bytes).position(0);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read program binary " + key, e);
+            file.delete();
+            return 0;
+        } finally {
+            close(in);
+        }
+
+        int program = gl.glCreateProgram();
+        gl.glProgramBinary(program, format, binary, binary.capacity());
+        final int[] linkStatus = new int[1];
+        gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == 0) {
+            // Rejected by the driver, e.g. after an update that kept the version string.
+            Log.i(TAG, "Discarding stale program binary " + key);
+            gl.glDeleteProgram(program);
+            file.delete();
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * Marks a program so that the driver keeps its binary around. Must be called before linking.
+     */
+    public void prepare(int program) {
+        if (mSupported) {
+            CardboardGLContext.get().glProgramParameteri(program,
+                    GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+    }
+
+    /**
+     * Writes the binary of a linked program to the cache.
+     */
+    public void save(String key, int program) {
+        CardboardGL gl = CardboardGLContext.get();
+        if (!mSupported) {
+            return;
+        }
+        final int[] length = new int[1];
+        gl.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] == 0) {
+            return;
+        }
+        ByteBuffer binary = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        final int[] format = new int[1];
+        gl.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+        byte[] bytes = new byte[length[0]];
+        binary.get(bytes);
+
+        // Write to a temporary file first so a crash never leaves a truncated binary behind.
+        File file = new File(mDirectory, key);
+        File temp = new File(mDirectory, key + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(temp));
+            out.writeInt(format[0]);
+            out.write(bytes);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write program binary " + key, e);
+            temp.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private static String hash(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes("UTF-8"));
+                digest.update((byte) 0);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing left to do.
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * CardboardProgramCache.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles and links each combination of shaders and defines only once.
+ *
+ * <p>The cache is shared by every object in a {@link CardboardScene}, so the time it takes to
+ * create or recreate the surface doesn't grow with the number of objects. Shader sources are kept
+ * across EGL context loss, compiled shaders and linked programs are not.
+ *
+ * <p>Where the driver supports it, linked programs are also persisted through a
+ * {@link CardboardProgramBinaryCache}, so that a cold start doesn't have to compile anything.
+ */
+public class CardboardProgramCache {
+    private static final String TAG = "CardboardProgramCache";
+
+    private final Context mContext;
+    private final CardboardProgramBinaryCache mBinaryCache;
+
+    private final Map<Integer, String> mSources = new HashMap<Integer, String>();
+    private final Map<String, Integer> mShaders = new HashMap<String, Integer>();
+    private final Map<String, CardboardProgram> mPrograms = new HashMap<String, CardboardProgram>();
+
+    public CardboardProgramCache(Context context) {
+        mContext = context;
+        mBinaryCache = new CardboardProgramBinaryCache(context);
+    }
+
+    /**
+     * Forgets every shader and program. Called when a new EGL context has been created, since the
+     * handles from the previous context are no longer valid.
+     */
+    public void onSurfaceCreated() {
+        mShaders.clear();
+        mPrograms.clear();
+        mBinaryCache.onSurfaceCreated();
+    }
+
+    /**
+     * Deletes every shader and program in the current context.
+     */
+    public void release() {
+        for (int shader : mShaders.values()) {
+            CardboardGLContext.get().glDeleteShader(shader);
+        }
+        for (CardboardProgram program : mPrograms.values()) {
+            program.release();
+        }
+        mShaders.clear();
+        mPrograms.clear();
+    }
+
+    /**
+     * Returns the program for the given shaders, compiling and linking it on first use.
+     *
+     * @param vertexResId The resource ID of the vertex shader.
+     * @param fragmentResId The resource ID of the fragment shader.
+     * @param defines Preprocessor symbols defined at the top of both shaders, after the
+     *     #version directive if there is one. Their order doesn't matter.
+     * @return The linked program.
+     */
+    public CardboardProgram getProgram(int vertexResId, int fragmentResId, String... defines) {
+        defines = normalizeDefines(defines);
+        String key = vertexResId + ":" + fragmentResId + defineKey(defines);
+        CardboardProgram program = mPrograms.get(key);
+        if (program == null) {
+            String vertexSource = getSource(vertexResId, defines);
+            String fragmentSource = getSource(fragmentResId, defines);
+            String binaryKey = mBinaryCache.isSupported()
+                    ? mBinaryCache.getKey(vertexSource, fragmentSource) : null;
+
+            int handle = binaryKey != null ? mBinaryCache.load(binaryKey) : 0;
+            if (handle == 0) {
+                handle = linkProgram(
+                        getShader(GLES20.GL_VERTEX_SHADER, vertexResId, defines, vertexSource),
+                        getShader(GLES20.GL_FRAGMENT_SHADER, fragmentResId, defines,
+                            fragmentSource));
+                if (binaryKey != null) {
+                    mBinaryCache.save(binaryKey, handle);
+                }
+            }
+            program = new CardboardProgram(handle);
+            mPrograms.put(key, program);
+        }
+        return program;
+    }
+
+    private int getShader(int type, int resId, String[] defines, String source) {
+        String key = type + ":" + resId + defineKey(defines);
+        Integer shader = mShaders.get(key);
+        if (shader == null) {
+            shader = loadGLShader(type, source);
+            mShaders.put(key, shader);
+        }
+        return shader;
+    }
+
+    private int linkProgram(int vertexShader, int fragmentShader) {
+        CardboardGL gl = CardboardGLContext.get();
+        int program = gl.glCreateProgram();
+        mBinaryCache.prepare(program);
+        gl.glAttachShader(program, vertexShader);
+        gl.glAttachShader(program, fragmentShader);
+        gl.glLinkProgram(program);
+
+        final int[] linkStatus = new int[1];
+        gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == 0) {
+            Log.e(TAG, "Error linking program: " + gl.glGetProgramInfoLog(program));
+            gl.glDeleteProgram(program);
+            throw new RuntimeException("Error linking program.");
+        }
+        return program;
+    }
+
+    /**
+     * Converts shader source into an OpenGL ES shader.
+     *
+     * @param type The type of shader we will be creating.
+     * @param code The source of the shader.
+     * @return The shader object handler.
+     */
+    private int loadGLShader(int type, String code) {
+        CardboardGL gl = CardboardGLContext.get();
+        int shader = gl.glCreateShader(type);
+        gl.glShaderSource(shader, code);
+        gl.glCompileShader(shader);
+
+        // Get the compilation status.
+        final int[] compileStatus = new int[1];
+        gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+
+        // If the compilation failed, delete the shader.
+        if (compileStatus[0] == 0) {
+            Log.e(TAG, "Error compiling shader: " + gl.glGetShaderInfoLog(shader));
+            gl.glDeleteShader(shader);
+            shader = 0;
+        }
+
+        if (shader == 0) {
+            throw new RuntimeException("Error creating shader.");
+        }
+
+        return shader;
+    }
+
+    private String getSource(int resId, String[] defines) {
+        String source = mSources.get(resId);
+        if (source == null) {
+            source = readRawTextFile(resId);
+            mSources.put(resId, source);
+        }
+        if (defines.length == 0) {
+            return source;
+        }
+        // Nothing but comments and whitespace may come before #version, so the defines go after
+        // it.
+        int start = findVersionEnd(source);
+        StringBuilder sb = new StringBuilder(source.length() + 32 * defines.length);
+        sb.append(source, 0, start);
+        if (start > 0 && source.charAt(start - 1) != '\n') {
+            sb.append('\n');
+        }
+        for (String define : defines) {
+            sb.append("#define ").append(define).append("\n");
+        }
+        return sb.append(source, start, source.length()).toString();
+    }
+
+    /**
+     * Returns the index just past the line of the source's #version directive, or 0 if it has
+     * none.
+     */
+    static int findVersionEnd(String source) {
+        int i = 0;
+        int length = source.length();
+        while (i < length) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (source.startsWith("//", i)) {
+                i = lineEnd(source, i);
+            } else if (source.startsWith("/*", i)) {
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (source.startsWith("#version", i)) {
+                return lineEnd(source, i);
+            } else {
+                break;
+            }
+        }
+        return 0;
+    }
+
+    private static int lineEnd(String source, int from) {
+        int end = source.indexOf('\n', from);
+        return end < 0 ? source.length() : end + 1;
+    }
+
+    /**
+     * Converts a raw text file into a string. The file is read in one go rather than line by line.
+     *
+     * @param resId The resource ID of the raw text file about to be turned into a shader.
+     * @return The context of the text file, or null in case of error.
+     */
+    private String readRawTextFile(int resId) {
+        InputStream inputStream = mContext.getResources().openRawResource(resId);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(inputStream.available());
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            inputStream.close();
+            return out.toString("UTF-8");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Sorts the defines and drops duplicates, so that every order of the same set shares one
+     * program.
+     */
+    static String[] normalizeDefines(String[] defines) {
+        if (defines.length < 2) {
+            return defines;
+        }
+        String[] sorted = defines.clone();
+        Arrays.sort(sorted);
+        int count = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (!sorted[i].equals(sorted[count - 1])) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+
+    private static String defineKey(String[] defines) {
+        StringBuilder sb = new StringBuilder();
+        for (String define : defines) {
+            sb.append(':').append(define);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,1159 @@
+/*
+ * CardboardRecordingGL.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A GL that draws nothing, for running the renderer on a plain JVM without a GPU.
+ *
+ * <p>It counts every call, draw and triangle, and can keep a log of the calls with their
+ * arguments. It also keeps enough state to behave like a driver towards the renderer: names are
+ * handed out, buffers and textures remember their size, and linking a program reads the attribute
+ * and uniform declarations from its shader sources, so that locations can be looked up and
+ * uniforms shadowed.
+ * Common misuse, such as drawing elements without an element array buffer, or uploading more
+ * than a buffer holds, sets the GL error like a driver would, so {@link CardboardGLDebug} catches
+ * it in full mode.
+ *
+ * <p>Shaders always compile and program binaries are not supported. Like a real context it must
+ * only be used from one thread.
+ */
+public class CardboardRecordingGL implements CardboardGL {
+    public static final String DEFAULT_VERSION = "OpenGL ES 2.0 (headless)";
+
+    private static final String VENDOR = "io.kirmani.cardboard";
+    private static final String RENDERER = "CardboardRecordingGL";
+    private static final int MAX_ATTRIBS = 16;
+    private static final int MAX_TEXTURE_UNITS = 8;
+    private static final int MAX_TEXTURE_SIZE = 4096;
+    private static final int MAX_TEXTURE_LEVELS = 16;
+
+    // A declaration with a single declarator, e.g. "uniform highp vec3 u_Lights[4];".
+    private static final Pattern DECLARATION = Pattern.compile("\\b(attribute|in|uniform)\\s+"
+            + "(?:(?:lowp|mediump|highp)\\s+)?(\\w+)\\s+(\\w+)\\s*(?:\\[\\s*(\\d+)\\s*\\])?\\s*;");
+
+    private static final Map<String, Integer> TYPES = new HashMap<String, Integer>();
+    static {
+        TYPES.put("float", GLES20.GL_FLOAT);
+        TYPES.put("vec2", GLES20.GL_FLOAT_VEC2);
+        TYPES.put("vec3", GLES20.GL_FLOAT_VEC3);
+        TYPES.put("vec4", GLES20.GL_FLOAT_VEC4);
+        TYPES.put("mat2", GLES20.GL_FLOAT_MAT2);
+        TYPES.put("mat3", GLES20.GL_FLOAT_MAT3);
+        TYPES.put("mat4", GLES20.GL_FLOAT_MAT4);
+        TYPES.put("int", GLES20.GL_INT);
+        TYPES.put("ivec2", GLES20.GL_INT_VEC2);
+        TYPES.put("ivec3", GLES20.GL_INT_VEC3);
+        TYPES.put("ivec4", GLES20.GL_INT_VEC4);
+        TYPES.put("bool", GLES20.GL_BOOL);
+        TYPES.put("sampler2D", GLES20.GL_SAMPLER_2D);
+        TYPES.put("samplerCube", GLES20.GL_SAMPLER_CUBE);
+    }
+
+    private static class Shader {
+        final int type;
+        String source = "";
+        boolean compiled;
+
+        Shader(int type) {
+            this.type = type;
+        }
+    }
+
+    private static class Variable {
+        final String name;
+        final int type;
+        final int size;
+        final int location;
+
+        Variable(String name, int type, int size, int location) {
+            this.name = name;
+            this.type = type;
+            this.size = size;
+            this.location = location;
+        }
+    }
+
+    private static class Texture {
+        final long[] levelBytes = new long[MAX_TEXTURE_LEVELS];
+        int width;
+        int height;
+        // 0 for compressed formats, which can't have mipmaps generated.
+        int bytesPerPixel;
+    }
+
+    private static class Program {
+        final List<Integer> shaders = new ArrayList<Integer>();
+        final List<Variable> attributes = new ArrayList<Variable>();
+        final List<Variable> uniforms = new ArrayList<Variable>();
+        boolean linked;
+    }
+
+    private final String mVersion;
+    private final String mExtensions;
+
+    private int mNextName = 1;
+    private int mError = GLES20.GL_NO_ERROR;
+
+    private final Map<Integer, Shader> mShaders = new HashMap<Integer, Shader>();
+    private final Map<Integer, Program> mPrograms = new HashMap<Integer, Program>();
+    private final Map<Integer, Integer> mBufferSizes = new HashMap<Integer, Integer>();
+    private final Map<Integer, Texture> mTextures = new HashMap<Integer, Texture>();
+
+    private int mProgram;
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+    private final boolean[] mAttribEnabled = new boolean[MAX_ATTRIBS];
+    // A set of boxed capabilities would allocate whenever the depth test is turned back on.
+    private final BitSet mCapabilities = new BitSet();
+    private int mActiveTexture;
+    private final int[] mBoundTextures = new int[MAX_TEXTURE_UNITS];
+
+    private final Map<String, long[]> mCallCounts = new HashMap<String, long[]>();
+    private long mCalls;
+    private long mDrawCalls;
+    private long mTriangles;
+
+    private boolean mRecording;
+    private final List<String> mLog = new ArrayList<String>();
+
+    /**
+     * Creates an OpenGL ES 2 context without extensions.
+     */
+    public CardboardRecordingGL() {
+        this(DEFAULT_VERSION, "");
+    }
+
+    /**
+     * @param version What glGetString(GL_VERSION) returns, e.g. "OpenGL ES 3.0 (headless)" for
+     *     code that checks for OpenGL ES 3.
+     * @param extensions What glGetString(GL_EXTENSIONS) returns, separated by spaces.
+     */
+    public CardboardRecordingGL(String version, String extensions) {
+        mVersion = version;
+        mExtensions = extensions;
+    }
+
+    /**
+     * Sets whether each call is also logged with its arguments. Counting is always on.
+     */
+    public void setRecording(boolean recording) {
+        mRecording = recording;
+    }
+
+    /**
+     * Returns the calls logged while recording, e.g. "glBindBuffer(0x8892, 3)".
+     */
+    public List<String> getLog() {
+        return mLog;
+    }
+
+    /**
+     * Returns the number of calls made of every kind.
+     */
+    public long getCallCount() {
+        return mCalls;
+    }
+
+    /**
+     * Returns the number of calls made to one method, e.g. "glUseProgram".
+     */
+    public long getCallCount(String call) {
+        long[] count = mCallCounts.get(call);
+        return count != null ? count[0] : 0;
+    }
+
+    /**
+     * Returns the number of draw calls, with each instanced draw counting once.
+     */
+    public long getDrawCalls() {
+        return mDrawCalls;
+    }
+
+    /**
+     * Returns the number of triangles drawn, across all instances.
+     */
+    public long getTriangles() {
+        return mTriangles;
+    }
+
+    /**
+     * Clears the counters and the log, but none of the GL state.
+     */
+    public void resetCounters() {
+        mCallCounts.clear();
+        mCalls = 0;
+        mDrawCalls = 0;
+        mTriangles = 0;
+        mLog.clear();
+    }
+
+    public int getBoundProgram() {
+        return mProgram;
+    }
+
+    public int getBoundBuffer(int target) {
+        return target == GLES20.GL_ELEMENT_ARRAY_BUFFER ? mElementArrayBuffer : mArrayBuffer;
+    }
+
+    public boolean isEnabled(int cap) {
+        return cap >= 0 && mCapabilities.get(cap);
+    }
+
+    public boolean isVertexAttribArrayEnabled(int index) {
+        return index >= 0 && index < MAX_ATTRIBS && mAttribEnabled[index];
+    }
+
+    /**
+     * Returns the size of a buffer object's data store, or -1 if there is no such buffer.
+     */
+    public int getBufferSize(int buffer) {
+        Integer size = mBufferSizes.get(buffer);
+        return size != null ? size : -1;
+    }
+
+    /**
+     * Returns the total size of all buffer objects.
+     */
+    public long getBufferMemory() {
+        long total = 0;
+        for (int size : mBufferSizes.values()) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the texture bound to a unit, counted from 0 rather than GL_TEXTURE0.
+     */
+    public int getBoundTexture(int unit) {
+        return mBoundTextures[unit];
+    }
+
+    /**
+     * Returns the total size of all texture levels.
+     */
+    public long getTextureMemory() {
+        long total = 0;
+        for (Texture texture : mTextures.values()) {
+            for (long bytes : texture.levelBytes) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        if (record("glActiveTexture")) {
+            log("glActiveTexture", texture);
+        }
+        int unit = texture - GLES20.GL_TEXTURE0;
+        if (unit < 0 || unit >= MAX_TEXTURE_UNITS) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return;
+        }
+        mActiveTexture = unit;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        if (record("glAttachShader")) {
+            log("glAttachShader", program, shader);
+        }
+        Program p = mPrograms.get(program);
+        if (p == null || !mShaders.containsKey(shader)) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+        p.shaders.add(shader);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (record("glBindBuffer")) {
+            log("glBindBuffer", target, buffer);
+        }
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            mArrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            mElementArrayBuffer = buffer;
+        } else {
+            setError(GLES20.GL_INVALID_ENUM);
+            return;
+        }
+        // Binding a name that was never generated creates the buffer in OpenGL ES 2.
+        if (buffer != 0 && !mBufferSizes.containsKey(buffer)) {
+            mBufferSizes.put(buffer, 0);
+        }
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        if (record("glBindTexture")) {
+            log("glBindTexture", target, texture);
+        }
+        if (target != GLES20.GL_TEXTURE_2D) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return;
+        }
+        mBoundTextures[mActiveTexture] = texture;
+        if (texture != 0 && !mTextures.containsKey(texture)) {
+            mTextures.put(texture, new Texture());
+        }
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        if (record("glBufferData")) {
+            log("glBufferData", target, size, usage);
+        }
+        checkRemaining(data, size);
+        int buffer = getBoundBuffer(target);
+        if (buffer == 0) {
+            setError(GLES20.GL_INVALID_OPERATION);
+        } else if (size < 0) {
+            setError(GLES20.GL_INVALID_VALUE);
+        } else {
+            mBufferSizes.put(buffer, size);
+        }
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        if (record("glBufferSubData")) {
+            log("glBufferSubData", target, offset, size);
+        }
+        checkRemaining(data, size);
+        int buffer = getBoundBuffer(target);
+        if (buffer == 0) {
+            setError(GLES20.GL_INVALID_OPERATION);
+        } else if (offset < 0 || size < 0 || offset + size > mBufferSizes.get(buffer)) {
+            setError(GLES20.GL_INVALID_VALUE);
+        }
+    }
+
+    @Override
+    public void glClear(int mask) {
+        if (record("glClear")) {
+            log("glClear", mask);
+        }
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        if (record("glClearColor")) {
+            log("glClearColor", red, green, blue, alpha);
+        }
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        if (record("glCompileShader")) {
+            log("glCompileShader", shader);
+        }
+        Shader s = mShaders.get(shader);
+        if (s == null) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+        s.compiled = true;
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalformat, int width,
+            int height, int border, int imageSize, Buffer data) {
+        if (record("glCompressedTexImage2D")) {
+            log("glCompressedTexImage2D", target, level, internalformat, width, height,
+                    imageSize);
+        }
+        checkRemaining(data, imageSize);
+        boolean etc2 = internalformat == GLES30.GL_COMPRESSED_RGB8_ETC2
+                || internalformat == GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC;
+        if (internalformat != CardboardTextureData.GL_ETC1_RGB8_OES
+                && !(etc2 && mVersion.startsWith("OpenGL ES 3"))) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return;
+        }
+        Texture texture = getBoundTexture(target, level, width, height);
+        if (texture != null) {
+            setLevel(texture, level, width, height, 0, imageSize);
+        }
+    }
+
+    @Override
+    public int glCreateProgram() {
+        if (record("glCreateProgram")) {
+            log("glCreateProgram");
+        }
+        int program = mNextName++;
+        mPrograms.put(program, new Program());
+        return program;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        if (record("glCreateShader")) {
+            log("glCreateShader", type);
+        }
+        if (type != GLES20.GL_VERTEX_SHADER && type != GLES20.GL_FRAGMENT_SHADER) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return 0;
+        }
+        int shader = mNextName++;
+        mShaders.put(shader, new Shader(type));
+        return shader;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        if (record("glDeleteBuffers")) {
+            log("glDeleteBuffers", n);
+        }
+        for (int i = 0; i < n; i++) {
+            int buffer = buffers[offset + i];
+            mBufferSizes.remove(buffer);
+            if (mArrayBuffer == buffer) {
+                mArrayBuffer = 0;
+            }
+            if (mElementArrayBuffer == buffer) {
+                mElementArrayBuffer = 0;
+            }
+        }
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        if (record("glDeleteProgram")) {
+            log("glDeleteProgram", program);
+        }
+        mPrograms.remove(program);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        if (record("glDeleteShader")) {
+            log("glDeleteShader", shader);
+        }
+        // Programs hold on to the shaders they were linked from, so the source is kept.
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        if (record("glDeleteTextures")) {
+            log("glDeleteTextures", n);
+        }
+        for (int i = 0; i < n; i++) {
+            int texture = textures[offset + i];
+            mTextures.remove(texture);
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+                if (mBoundTextures[unit] == texture) {
+                    mBoundTextures[unit] = 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        if (record("glDisable")) {
+            log("glDisable", cap);
+        }
+        if (cap >= 0) {
+            mCapabilities.clear(cap);
+        }
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (record("glDisableVertexAttribArray")) {
+            log("glDisableVertexAttribArray", index);
+        }
+        if (checkAttrib(index)) {
+            mAttribEnabled[index] = false;
+        }
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        if (record("glDrawArrays")) {
+            log("glDrawArrays", mode, first, count);
+        }
+        countDraw(mode, count, 1);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        if (record("glDrawElements")) {
+            log("glDrawElements", mode, count, type, offset);
+        }
+        if (mElementArrayBuffer == 0) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return;
+        }
+        countDraw(mode, count, 1);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        if (record("glEnable")) {
+            log("glEnable", cap);
+        }
+        if (cap >= 0) {
+            mCapabilities.set(cap);
+        }
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (record("glEnableVertexAttribArray")) {
+            log("glEnableVertexAttribArray", index);
+        }
+        if (checkAttrib(index)) {
+            mAttribEnabled[index] = true;
+        }
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        if (record("glGenBuffers")) {
+            log("glGenBuffers", n);
+        }
+        for (int i = 0; i < n; i++) {
+            buffers[offset + i] = mNextName++;
+            mBufferSizes.put(buffers[offset + i], 0);
+        }
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        if (record("glGenTextures")) {
+            log("glGenTextures", n);
+        }
+        for (int i = 0; i < n; i++) {
+            textures[offset + i] = mNextName++;
+            mTextures.put(textures[offset + i], new Texture());
+        }
+    }
+
+    @Override
+    public void glGenerateMipmap(int target) {
+        if (record("glGenerateMipmap")) {
+            log("glGenerateMipmap", target);
+        }
+        Texture texture = getBoundTexture(target, 0, 0, 0);
+        if (texture == null) {
+            return;
+        }
+        // OpenGL ES 2 only generates mipmaps for power-of-two sizes.
+        boolean powerOfTwo = Integer.bitCount(texture.width) == 1
+                && Integer.bitCount(texture.height) == 1;
+        if (texture.bytesPerPixel == 0 || texture.levelBytes[0] == 0
+                || (!powerOfTwo && !mVersion.startsWith("OpenGL ES 3"))) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return;
+        }
+        int width = texture.width;
+        int height = texture.height;
+        for (int level = 1; (width > 1 || height > 1) && level < MAX_TEXTURE_LEVELS; level++) {
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            setLevel(texture, level, width, height, texture.bytesPerPixel,
+                    (long) width * height * texture.bytesPerPixel);
+        }
+    }
+
+    @Override
+    public String glGetActiveAttrib(int program, int index, int[] size, int sizeOffset, int[] type,
+            int typeOffset) {
+        record("glGetActiveAttrib");
+        return getActive(program, true, index, size, sizeOffset, type, typeOffset);
+    }
+
+    @Override
+    public String glGetActiveUniform(int program, int index, int[] size, int sizeOffset,
+            int[] type, int typeOffset) {
+        record("glGetActiveUniform");
+        return getActive(program, false, index, size, sizeOffset, type, typeOffset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        record("glGetAttribLocation");
+        Program p = getLinkedProgram(program);
+        if (p != null) {
+            for (Variable attribute : p.attributes) {
+                if (attribute.name.equals(name)) {
+                    return attribute.location;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int glGetError() {
+        record("glGetError");
+        int error = mError;
+        mError = GLES20.GL_NO_ERROR;
+        return error;
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        record("glGetIntegerv");
+        if (pname == GLES20.GL_MAX_VERTEX_ATTRIBS) {
+            params[offset] = MAX_ATTRIBS;
+        } else if (pname == GLES20.GL_MAX_TEXTURE_SIZE) {
+            params[offset] = MAX_TEXTURE_SIZE;
+        } else {
+            params[offset] = 0;
+        }
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        record("glGetProgramInfoLog");
+        return "";
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        record("glGetProgramiv");
+        Program p = mPrograms.get(program);
+        if (p == null) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+        if (pname == GLES20.GL_LINK_STATUS) {
+            params[offset] = p.linked ? GLES20.GL_TRUE : GLES20.GL_FALSE;
+        } else if (pname == GLES20.GL_ACTIVE_ATTRIBUTES) {
+            params[offset] = p.attributes.size();
+        } else if (pname == GLES20.GL_ACTIVE_UNIFORMS) {
+            params[offset] = p.uniforms.size();
+        } else {
+            params[offset] = 0;
+        }
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        record("glGetShaderInfoLog");
+        return "";
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        record("glGetShaderiv");
+        Shader s = mShaders.get(shader);
+        if (s == null) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+        params[offset] = pname == GLES20.GL_COMPILE_STATUS && s.compiled ? GLES20.GL_TRUE : 0;
+    }
+
+    @Override
+    public String glGetString(int name) {
+        record("glGetString");
+        switch (name) {
+            case GLES20.GL_VERSION:
+                return mVersion;
+            case GLES20.GL_EXTENSIONS:
+                return mExtensions;
+            case GLES20.GL_RENDERER:
+                return RENDERER;
+            case GLES20.GL_VENDOR:
+                return VENDOR;
+            default:
+                setError(GLES20.GL_INVALID_ENUM);
+                return null;
+        }
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        record("glGetUniformLocation");
+        Program p = getLinkedProgram(program);
+        if (p == null) {
+            return -1;
+        }
+        int element = 0;
+        int bracket = name.indexOf('[');
+        if (bracket >= 0 && name.endsWith("]")) {
+            try {
+                element = Integer.parseInt(name.substring(bracket + 1, name.length() - 1));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            name = name.substring(0, bracket);
+        }
+        for (Variable uniform : p.uniforms) {
+            if (uniform.name.equals(name)) {
+                return element < uniform.size ? uniform.location + element : -1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        if (record("glLinkProgram")) {
+            log("glLinkProgram", program);
+        }
+        Program p = mPrograms.get(program);
+        if (p == null) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+        p.attributes.clear();
+        p.uniforms.clear();
+        int attribLocation = 0;
+        int uniformLocation = 0;
+        for (int shader : p.shaders) {
+            Shader s = mShaders.get(shader);
+            Matcher m = DECLARATION.matcher(preprocess(s.source));
+            while (m.find()) {
+                String name = m.group(3);
+                int type = typeOf(m.group(2));
+                int size = m.group(4) != null ? Integer.parseInt(m.group(4)) : 1;
+                if (m.group(1).equals("uniform")) {
+                    if (find(p.uniforms, name) == null) {
+                        p.uniforms.add(new Variable(name, type, size, uniformLocation));
+                        uniformLocation += size;
+                    }
+                } else if (s.type == GLES20.GL_VERTEX_SHADER) {
+                    p.attributes.add(new Variable(name, type, size, attribLocation));
+                    attribLocation += size * columnsOf(type);
+                }
+            }
+        }
+        p.linked = true;
+    }
+
+    @Override
+    public void glPixelStorei(int pname, int param) {
+        if (record("glPixelStorei")) {
+            log("glPixelStorei", pname, param);
+        }
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        if (record("glShaderSource")) {
+            log("glShaderSource", shader);
+        }
+        Shader s = mShaders.get(shader);
+        if (s == null) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return;
+        }
+        s.source = string;
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height,
+            int border, int format, int type, Buffer pixels) {
+        if (record("glTexImage2D")) {
+            log("glTexImage2D", target, level, internalformat, width, height, format, type);
+        }
+        int bytesPerPixel = bytesPerPixel(format, type);
+        if (internalformat != format || bytesPerPixel == 0) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return;
+        }
+        long size = (long) width * height * bytesPerPixel;
+        checkRemaining(pixels, (int) size);
+        Texture texture = getBoundTexture(target, level, width, height);
+        if (texture != null) {
+            setLevel(texture, level, width, height, bytesPerPixel, size);
+        }
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        if (record("glTexParameteri")) {
+            log("glTexParameteri", target, pname, param);
+        }
+        if (target != GLES20.GL_TEXTURE_2D) {
+            setError(GLES20.GL_INVALID_ENUM);
+        }
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, float[] v, int offset) {
+        if (record("glUniform3fv")) {
+            log("glUniform3fv", location, count);
+        }
+        checkUniform();
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        if (record("glUniform4fv")) {
+            log("glUniform4fv", location, count);
+        }
+        checkUniform();
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+            int offset) {
+        if (record("glUniformMatrix4fv")) {
+            log("glUniformMatrix4fv", location, count, transpose);
+        }
+        checkUniform();
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (record("glUseProgram")) {
+            log("glUseProgram", program);
+        }
+        if (program != 0 && getLinkedProgram(program) == null) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return;
+        }
+        mProgram = program;
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+            int stride, int offset) {
+        if (record("glVertexAttribPointer")) {
+            log("glVertexAttribPointer", index, size, type, normalized, stride, offset);
+        }
+        if (!checkAttrib(index)) {
+            return;
+        }
+        // The offset overload only makes sense with an array buffer bound.
+        if (mArrayBuffer == 0) {
+            setError(GLES20.GL_INVALID_OPERATION);
+        }
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        if (record("glBeginQuery")) {
+            log("glBeginQuery", target, id);
+        }
+    }
+
+    @Override
+    public void glDrawArraysInstanced(int mode, int first, int count, int instanceCount) {
+        if (record("glDrawArraysInstanced")) {
+            log("glDrawArraysInstanced", mode, first, count, instanceCount);
+        }
+        countDraw(mode, count, instanceCount);
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, int offset,
+            int instanceCount) {
+        if (record("glDrawElementsInstanced")) {
+            log("glDrawElementsInstanced", mode, count, type, offset, instanceCount);
+        }
+        if (mElementArrayBuffer == 0) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return;
+        }
+        countDraw(mode, count, instanceCount);
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+        if (record("glEndQuery")) {
+            log("glEndQuery", target);
+        }
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset) {
+        if (record("glGenQueries")) {
+            log("glGenQueries", n);
+        }
+        for (int i = 0; i < n; i++) {
+            ids[offset + i] = mNextName++;
+        }
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+            int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+        record("glGetProgramBinary");
+        length[lengthOffset] = 0;
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        record("glGetQueryObjectuiv");
+        // Every query is done at once and took no time.
+        params[offset] = pname == GLES30.GL_QUERY_RESULT_AVAILABLE ? GLES20.GL_TRUE : 0;
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        if (record("glProgramBinary")) {
+            log("glProgramBinary", program, binaryFormat, length);
+        }
+        Program p = mPrograms.get(program);
+        if (p != null) {
+            p.linked = false;
+        }
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+        if (record("glProgramParameteri")) {
+            log("glProgramParameteri", program, pname, value);
+        }
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        if (record("glVertexAttribDivisor")) {
+            log("glVertexAttribDivisor", index, divisor);
+        }
+        checkAttrib(index);
+    }
+
+    /**
+     * Counts a call.
+     *
+     * @return Whether the call should also be logged.
+     */
+    private boolean record(String call) {
+        mCalls++;
+        long[] count = mCallCounts.get(call);
+        if (count == null) {
+            count = new long[1];
+            mCallCounts.put(call, count);
+        }
+        count[0]++;
+        return mRecording;
+    }
+
+    private void log(String call, Object... args) {
+        mLog.add(CardboardGLDebug.formatCall(call, args));
+    }
+
+    /**
+     * Records an error. Like in GL, the first one sticks until glGetError is called.
+     */
+    private void setError(int error) {
+        if (mError == GLES20.GL_NO_ERROR) {
+            mError = error;
+        }
+    }
+
+    private boolean checkAttrib(int index) {
+        if (index < 0 || index >= MAX_ATTRIBS) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the texture bound to the active unit for a texture upload, or null after setting
+     * the error the upload would cause.
+     */
+    private Texture getBoundTexture(int target, int level, int width, int height) {
+        if (target != GLES20.GL_TEXTURE_2D) {
+            setError(GLES20.GL_INVALID_ENUM);
+            return null;
+        }
+        Texture texture = mTextures.get(mBoundTextures[mActiveTexture]);
+        if (texture == null) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return null;
+        }
+        if (level < 0 || level >= MAX_TEXTURE_LEVELS || width < 0 || height < 0
+                || width > MAX_TEXTURE_SIZE || height > MAX_TEXTURE_SIZE) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return null;
+        }
+        return texture;
+    }
+
+    private static void setLevel(Texture texture, int level, int width, int height,
+            int bytesPerPixel, long size) {
+        if (level == 0) {
+            texture.width = width;
+            texture.height = height;
+            texture.bytesPerPixel = bytesPerPixel;
+        }
+        texture.levelBytes[level] = size;
+    }
+
+    private static int bytesPerPixel(int format, int type) {
+        if (type != GLES20.GL_UNSIGNED_BYTE) {
+            return 0;
+        }
+        switch (format) {
+            case GLES20.GL_ALPHA:
+            case GLES20.GL_LUMINANCE:
+                return 1;
+            case GLES20.GL_LUMINANCE_ALPHA:
+                return 2;
+            case GLES20.GL_RGB:
+                return 3;
+            case GLES20.GL_RGBA:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    private void checkUniform() {
+        if (mProgram == 0) {
+            setError(GLES20.GL_INVALID_OPERATION);
+        }
+    }
+
+    /**
+     * Throws like the Android bindings do when the client data is shorter than the size given.
+     */
+    private static void checkRemaining(Buffer data, int size) {
+        if (data == null) {
+            return;
+        }
+        int elementSize;
+        if (data instanceof ByteBuffer) {
+            elementSize = 1;
+        } else if (data instanceof ShortBuffer || data instanceof CharBuffer) {
+            elementSize = 2;
+        } else if (data instanceof LongBuffer || data instanceof DoubleBuffer) {
+            elementSize = 8;
+        } else {
+            elementSize = 4;
+        }
+        if ((long) data.remaining() * elementSize < size) {
+            throw new IllegalArgumentException("remaining() < size < needed");
+        }
+    }
+
+    private void countDraw(int mode, int count, int instanceCount) {
+        mDrawCalls++;
+        if (mode == GLES20.GL_TRIANGLES) {
+            mTriangles += (long) (count / 3) * instanceCount;
+        }
+    }
+
+    private Program getLinkedProgram(int program) {
+        Program p = mPrograms.get(program);
+        if (p == null || !p.linked) {
+            setError(GLES20.GL_INVALID_OPERATION);
+            return null;
+        }
+        return p;
+    }
+
+    private String getActive(int program, boolean attribute, int index, int[] size,
+            int sizeOffset, int[] type, int typeOffset) {
+        Program p = getLinkedProgram(program);
+        List<Variable> variables = p == null ? null : attribute ? p.attributes : p.uniforms;
+        if (variables == null || index < 0 || index >= variables.size()) {
+            setError(GLES20.GL_INVALID_VALUE);
+            return "";
+        }
+        Variable variable = variables.get(index);
+        size[sizeOffset] = variable.size;
+        type[typeOffset] = variable.type;
+        // Drivers report arrays by their first element.
+        return variable.size > 1 ? variable.name + "[0]" : variable.name;
+    }
+
+    private static Variable find(List<Variable> variables, String name) {
+        for (Variable variable : variables) {
+            if (variable.name.equals(name)) {
+                return variable;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Strips comments and the lines a minimal preprocessor would skip, so that declarations in
+     * branches like "#ifdef INSTANCED" only count when the symbol is defined. #if expressions
+     * aren't evaluated and count as true.
+     */
+    private static String preprocess(String source) {
+        String code = source.replaceAll("(?s)/\\*.*?\\*/", " ").replaceAll("//[^\\n]*", "");
+        Set<String> defines = new HashSet<String>();
+        Deque<Boolean> enclosing = new ArrayDeque<Boolean>();
+        boolean active = true;
+        StringBuilder out = new StringBuilder();
+        for (String line : code.split("\n")) {
+            String trimmed = line.trim();
+            if (!trimmed.startsWith("#")) {
+                if (active) {
+                    out.append(line).append('\n');
+                }
+                continue;
+            }
+            String[] words = trimmed.substring(1).trim().split("\\s+");
+            String directive = words[0];
+            String argument = words.length > 1 ? words[1] : "";
+            if (directive.equals("define") && active) {
+                defines.add(argument);
+            } else if (directive.equals("ifdef") || directive.equals("ifndef")
+                    || directive.equals("if")) {
+                enclosing.push(active);
+                active = active && (directive.equals("if")
+                        || defines.contains(argument) == directive.equals("ifdef"));
+            } else if (directive.equals("else") && !enclosing.isEmpty()) {
+                active = enclosing.peek() && !active;
+            } else if (directive.equals("endif") && !enclosing.isEmpty()) {
+                active = enclosing.pop();
+            }
+        }
+        return out.toString();
+    }
+
+    private static int typeOf(String name) {
+        Integer type = TYPES.get(name);
+        return type != null ? type : 0;
+    }
+
+    /**
+     * Returns how many attribute locations one element of a type takes.
+     */
+    private static int columnsOf(int type) {
+        switch (type) {
+            case GLES20.GL_FLOAT_MAT2:
+                return 2;
+            case GLES20.GL_FLOAT_MAT3:
+                return 3;
+            case GLES20.GL_FLOAT_MAT4:
+                return 4;
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * CardboardRenderQueue.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import java.util.Arrays;
+
+/**
+ * Collects the objects to draw for an eye and draws them in an order that minimizes state changes.
+ *
+ * <p>Every submitted item gets a 64-bit sort key. Opaque items sort by program, then vertex buffer,
+ * then depth front to back, so that program switches and attribute rebinds are grouped and early
+ * depth rejection works. Transparent items always come after opaque ones and sort back to front,
+ * which is required for correct blending.
+ *
+ * <p>Opaque key:      [pass:2][program:14][buffer:16][depth:32]
+ * <br>Transparent key: [pass:2][inverted depth:32][program:14][buffer:16]
+ *
+ * <p>The queue is reused every eye and doesn't allocate once it has grown to the scene size.
+ */
+public class CardboardRenderQueue {
+    public static final int PASS_OPAQUE = 0;
+    public static final int PASS_TRANSPARENT = 1;
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private CardboardObject[] mObjects = new CardboardObject[64];
+    private long[] mKeys = new long[64];
+    private int[] mOrder = new int[64];
+    private int mSize;
+
+    private int mDrawCalls;
+
+    public void clear() {
+        Arrays.fill(mObjects, 0, mSize, null);
+        mSize = 0;
+    }
+
+    /**
+     * Submits an object for drawing.
+     *
+     * @param object The object, whose {@link CardboardObject#draw()} is called on flush.
+     * @param pass Either {@link #PASS_OPAQUE} or {@link #PASS_TRANSPARENT}.
+     * @param program The program the object draws with.
+     * @param mesh The mesh the object draws.
+     * @param depth The view-space distance of the object from the eye.
+     */
+    public void submit(CardboardObject object, int pass, CardboardProgram program,
+            CardboardMesh mesh, float depth) {
+        if (mSize == mObjects.length) {
+            int capacity = mSize * 2;
+            mObjects = Arrays.copyOf(mObjects, capacity);
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mOrder = Arrays.copyOf(mOrder, capacity);
+        }
+        mObjects[mSize] = object;
+        mKeys[mSize] = makeKey(pass, program, mesh, depth);
+        mOrder[mSize] = mSize;
+        mSize++;
+    }
+
+    /**
+     * Sorts the submitted items, draws them and clears the queue.
+     */
+    public void flush() {
+        sort(0, mSize - 1);
+        for (int i = 0; i < mSize; i++) {
+            mObjects[mOrder[i]].draw();
+        }
+        mDrawCalls = mSize;
+        clear();
+    }
+
+    /**
+     * Returns the number of items drawn by the last flush.
+     */
+    public int getDrawCalls() {
+        return mDrawCalls;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    static long makeKey(int pass, CardboardProgram program, CardboardMesh mesh, float depth) {
+        long programBits = program != null ? program.getHandle() & 0x3fff : 0;
+        long bufferBits = mesh != null ? mesh.getVertexBuffer().getHandle() & 0xffff : 0;
+        // The bits of a non-negative float sort in the same order as its value.
+        long depthBits = Float.floatToIntBits(Math.max(depth, 0.0f)) & 0xffffffffL;
+        if (pass == PASS_TRANSPARENT) {
+            return ((long) pass << 62) | ((~depthBits & 0xffffffffL) << 30) | (programBits << 16)
+                    | bufferBits;
+        }
+        return ((long) pass << 62) | (programBits << 48) | (bufferBits << 32) | depthBits;
+    }
+
+    /**
+     * Sorts mOrder by key. A plain quicksort on the parallel arrays, since the library sorts either
+     * allocate or can't carry the item index along.
+     */
+    private void sort(int low, int high) {
+        while (high - low >= INSERTION_SORT_THRESHOLD) {
+            long pivot = mKeys[mOrder[(low + high) >>> 1]];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(mKeys[mOrder[i]], pivot) < 0) {
+                    i++;
+                }
+                while (compare(mKeys[mOrder[j]], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = mOrder[i];
+                    mOrder[i] = mOrder[j];
+                    mOrder[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller half to bound the stack depth.
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            int item = mOrder[i];
+            long key = mKeys[item];
+            int j = i - 1;
+            while (j >= low && compare(mKeys[mOrder[j]], key) > 0) {
+                mOrder[j + 1] = mOrder[j];
+                j--;
+            }
+            mOrder[j + 1] = item;
+        }
+    }
+
+    /**
+     * Compares keys as unsigned values.
+     */
+    private static int compare(long a, long b) {
+        a += Long.MIN_VALUE;
+        b += Long.MIN_VALUE;
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+}
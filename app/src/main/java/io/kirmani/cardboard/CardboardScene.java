@@ -7,26 +7,657 @@
 
 package io.kirmani.cardboard;
 
+import android.content.Context;
+
+import com.google.vrtoolkit.cardboard.Eye;
+import com.google.vrtoolkit.cardboard.HeadTransform;
+
+import io.kirmani.cardboard.math.Frustum;
+import io.kirmani.cardboard.math.Mat4;
+import io.kirmani.cardboard.math.Vec3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.microedition.khronos.egl.EGLConfig;
+
+/**
+ * The scene graph.
+ *
+ * <p>Holds the camera and the top-level objects of the scene. The graph is traversed once per
+ * frame to update objects and their world matrices, and once per eye to submit them to a
+ * {@link CardboardRenderQueue}, which then draws them sorted by state. Static objects are merged
+ * into {@link CardboardStaticBatch}es and drawn in as few draw calls as possible.
+ *
+ * <p>Objects whose bounds lie outside the view frustum are not submitted. By default they are
+ * tested against each eye's frustum; {@link #CULL_PER_FRAME} tests them once per frame against a
+ * frustum that contains both eyes instead.
+ *
+ * <p>Pickable objects are indexed in a {@link CardboardBvh}. Once per frame the scene casts a ray
+ * from the head pose through it to find the object the user is looking at, which is the one that
+ * receives the Cardboard trigger.
+ *
+ * <p>Objects that move on their own are advanced by a {@link CardboardSimulation} on other
+ * threads. Each frame starts from the newest transforms it has published.
+ *
+ * <p>The head poses of a session can be recorded into a {@link CardboardHeadTrace} and replayed
+ * later, see {@link #startReplay(CardboardHeadTrace)}.
+ */
 public class CardboardScene {
-    private float[] mView;
-    private float[] mModelView;
-    private float[] mModelViewProjection;
+    /** Draws every object. */
+    public static final int CULL_NONE = 0;
+    /** Tests objects against the frustum of each eye. */
+    public static final int CULL_PER_EYE = 1;
+    /** Tests objects once per frame against a frustum that contains both eyes. */
+    public static final int CULL_PER_FRAME = 2;
+
+    private final Mat4 mView = new Mat4();
+    private final Mat4 mViewProjection = new Mat4();
+    // The head view the frame is drawn from, which a replay takes from its trace, and the one
+    // the headset reported.
+    private final Mat4 mHeadView = new Mat4();
+    private final Mat4 mLiveHeadView = new Mat4();
+    private final float[] mLightPosInWorldSpace = new float[3];
+    // Bumped for every eye, whose ViewProjection matrix and light position are uploaded to each
+    // program once, see applyGlobals.
+    private int mGlobalsVersion;
+
+    private int mCullingMode = CULL_PER_EYE;
+    private final Frustum mFrustum = new Frustum();
+    private final Frustum mFrameFrustum = new Frustum();
+    private boolean mFrameFrustumValid;
+
+    // Objects further away than this can't be picked.
+    private static final float MAX_GAZE_DISTANCE = 100.0f;
+
+    private final CardboardBvh mBvh = new CardboardBvh();
+    private final Mat4 mGazeTransform = new Mat4();
+    private final Vec3 mViewerPosition = new Vec3();
+    private final Vec3 mGazeDirection = new Vec3();
+    // Written on the GL thread, read on the UI thread when the trigger is pulled.
+    private volatile CardboardObject mGazeTarget;
+
+    private float mPixelsPerUnit;
+
+    private int mCulledCount;
+    private int mDrawnCount;
+    private int mLastCulledCount;
+    private int mLastDrawnCount;
+
+    private final Context mContext;
+
+    private CardboardCamera mCamera;
+    private final List<CardboardObject> mObjects = new ArrayList<CardboardObject>();
+
+    private final CardboardProgramCache mProgramCache;
+    private final CardboardGLState mGLState = new CardboardGLState();
+    private final CardboardRenderQueue mRenderQueue = new CardboardRenderQueue();
+    private final CardboardAssetLoader mAssetLoader = new CardboardAssetLoader();
+    private final CardboardTextureManager mTextureManager =
+            new CardboardTextureManager(mAssetLoader);
+    private final CardboardSimulation mSimulation = new CardboardSimulation();
+    private CardboardHeadTrace mHeadRecording;
+    // Replays are started and stopped on the GL thread, at the start of a frame.
+    private final Queue<Runnable> mReplayTasks = new ConcurrentLinkedQueue<Runnable>();
+    private CardboardHeadTrace mReplay;
+    private int mReplayFrame;
+    // Held while the simulation is started, stopped or stepped on the GL thread, since onPause
+    // and onResume come from the UI thread.
+    private final Object mSimulationLock = new Object();
+    // Whether the simulation thread should run, once no replay is stepping the simulation.
+    private boolean mResumed;
+    private CardboardProfiler mProfiler = new CardboardProfiler(false);
+    private long mLastIssuedCalls;
+
+    private List<CardboardStaticBatch> mStaticBatches = new ArrayList<CardboardStaticBatch>();
+    private boolean mStaticBatchesDirty;
+
+    public CardboardScene(Context context) {
+        mContext = context;
+        mProgramCache = new CardboardProgramCache(context);
+    }
+
+    public void setCamera(CardboardCamera camera) {
+        mCamera = camera;
+    }
+
+    public CardboardCamera getCamera() {
+        return mCamera;
+    }
+
+    /**
+     * Adds a top-level object to the scene. Objects attached to it with
+     * {@link CardboardObject#addChild(CardboardObject)} are traversed along with it.
+     */
+    public void addObject(CardboardObject object) {
+        mObjects.add(object);
+        mStaticBatchesDirty = true;
+    }
+
+    public void removeObject(CardboardObject object) {
+        if (mObjects.remove(object)) {
+            object.dispatchRemoved();
+        }
+        mStaticBatchesDirty = true;
+    }
+
+    /**
+     * Rebuilds the static batches on the next frame. Call this after a static object was added,
+     * removed or moved.
+     */
+    public void invalidateStaticBatches() {
+        mStaticBatchesDirty = true;
+    }
+
+    public List<CardboardObject> getObjects() {
+        return mObjects;
+    }
+
+    public CardboardProgramCache getProgramCache() {
+        return mProgramCache;
+    }
+
+    public CardboardGLState getGLState() {
+        return mGLState;
+    }
+
+    public CardboardRenderQueue getRenderQueue() {
+        return mRenderQueue;
+    }
+
+    /**
+     * Returns the loader that loads assets in the background and uploads them between frames.
+     */
+    public CardboardAssetLoader getAssetLoader() {
+        return mAssetLoader;
+    }
+
+    /**
+     * Returns the manager that shares textures between objects and evicts them under its memory
+     * cap.
+     */
+    public CardboardTextureManager getTextureManager() {
+        return mTextureManager;
+    }
+
+    /**
+     * Returns the simulation that updates simulated objects off the GL thread. It has to be
+     * started and stopped along with the activity.
+     */
+    public CardboardSimulation getSimulation() {
+        return mSimulation;
+    }
+
+    /**
+     * Starts adding the head pose and time of every frame to a trace. Call on the GL thread.
+     */
+    public void startHeadRecording(CardboardHeadTrace trace) {
+        mHeadRecording = trace;
+    }
+
+    public void stopHeadRecording() {
+        mHeadRecording = null;
+    }
+
+    /**
+     * Starts the simulation thread, unless a replay is stepping the simulation, in which case
+     * the thread starts when the replay ends. Call from onResume.
+     */
+    public void onResume() {
+        synchronized (mSimulationLock) {
+            mResumed = true;
+            if (mReplay == null) {
+                mSimulation.start();
+            }
+        }
+    }
+
+    /**
+     * Stops the simulation thread. Call from onPause. A replayed step that the GL thread is in
+     * the middle of finishes first.
+     */
+    public void onPause() {
+        synchronized (mSimulationLock) {
+            mResumed = false;
+            mSimulation.stop();
+        }
+    }
+
+    /**
+     * Replaces the live head poses with those of a recorded trace, one frame at a time, from the
+     * next frame until the trace ends or {@link #stopReplay()} is called. May be called from any
+     * thread.
+     *
+     * <p>The simulation thread is stopped for the replay, and the simulation is advanced on the
+     * GL thread by the recorded frame times instead, so that every replay of a trace runs the
+     * same steps and draws the same frames from the same head poses, however long they take.
+     * Starting from the same scene, a replay is therefore repeatable.
+     */
+    public void startReplay(final CardboardHeadTrace trace) {
+        mReplayTasks.add(new Runnable() {
+            @Override
+            public void run() {
+                beginReplay(trace);
+            }
+        });
+    }
+
+    /**
+     * Goes back to live head poses from the next frame, and restarts the simulation thread if
+     * the scene is resumed. May be called from any thread.
+     */
+    public void stopReplay() {
+        mReplayTasks.add(new Runnable() {
+            @Override
+            public void run() {
+                endReplay();
+            }
+        });
+    }
+
+    /**
+     * Returns whether the current frame is replayed. Call on the GL thread.
+     */
+    public boolean isReplaying() {
+        return mReplay != null;
+    }
 
-    public CardboardScene() {
-        mView = new float[16];
-        mModelView = new float[16];
-        mModelViewProjection = new float[16];
+    private void beginReplay(CardboardHeadTrace trace) {
+        synchronized (mSimulationLock) {
+            mSimulation.stop();
+            mReplay = trace;
+            mReplayFrame = 0;
+            if (trace.getFrameCount() > 0) {
+                mSimulation.resetClock(trace.getFrameNanos(0));
+            }
+        }
     }
 
-    public float[] getView() {
+    private void endReplay() {
+        synchronized (mSimulationLock) {
+            if (mReplay == null) {
+                return;
+            }
+            mReplay = null;
+            if (mResumed) {
+                mSimulation.start();
+            }
+        }
+    }
+
+    /**
+     * Sets the profiler that the scene and its objects report their frame phases to. The default
+     * one is disabled.
+     */
+    public void setProfiler(CardboardProfiler profiler) {
+        mProfiler = profiler;
+    }
+
+    public CardboardProfiler getProfiler() {
+        return mProfiler;
+    }
+
+    /**
+     * Returns the spatial index of pickable objects.
+     */
+    public CardboardBvh getBvh() {
+        return mBvh;
+    }
+
+    /**
+     * Returns the object the user is looking at in the current frame, or null.
+     */
+    public CardboardObject getGazeTarget() {
+        return mGazeTarget;
+    }
+
+    /**
+     * Sets how objects outside the view are skipped, one of {@link #CULL_NONE},
+     * {@link #CULL_PER_EYE} or {@link #CULL_PER_FRAME}.
+     */
+    public void setCullingMode(int mode) {
+        mCullingMode = mode;
+    }
+
+    public int getCullingMode() {
+        return mCullingMode;
+    }
+
+    /**
+     * Returns the number of object submissions skipped by culling in the last frame, counting
+     * each eye.
+     */
+    public int getCulledCount() {
+        return mLastCulledCount;
+    }
+
+    /**
+     * Returns the number of object submissions that passed culling in the last frame, counting
+     * each eye.
+     */
+    public int getDrawnCount() {
+        return mLastDrawnCount;
+    }
+
+    public void onRendererShutdown() {
+        mAssetLoader.shutdown();
+        synchronized (mSimulationLock) {
+            mSimulation.stop();
+        }
+        if (mCamera != null) {
+            mCamera.onRendererShutdown();
+        }
+        for (int i = 0; i < mObjects.size(); i++) {
+            mObjects.get(i).dispatchRendererShutdown();
+        }
+        for (int i = 0; i < mStaticBatches.size(); i++) {
+            mStaticBatches.get(i).onRendererShutdown();
+        }
+        mStaticBatches.clear();
+        mTextureManager.onRendererShutdown();
+        mProgramCache.release();
+    }
+
+    public void onSurfaceChanged(int width, int height) {
+        if (mCamera != null) {
+            mCamera.onSurfaceChanged(width, height);
+        }
+        for (int i = 0; i < mObjects.size(); i++) {
+            mObjects.get(i).dispatchSurfaceChanged(width, height);
+        }
+    }
+
+    public void onSurfaceCreated(EGLConfig config) {
+        mProgramCache.onSurfaceCreated();
+        mAssetLoader.onSurfaceCreated();
+        mTextureManager.onSurfaceCreated();
+        mGLState.invalidate();
+        if (mCamera != null) {
+            mCamera.onSurfaceCreated(config);
+        }
+        for (int i = 0; i < mObjects.size(); i++) {
+            mObjects.get(i).dispatchSurfaceCreated(config);
+        }
+        // The batches' buffers died with the old context, so they are dropped, not released.
+        mStaticBatches.clear();
+        mStaticBatchesDirty = true;
+    }
+
+    /**
+     * Updates the camera and every object in the scene for a new frame.
+     *
+     * @param headTransform The head transformation in the new frame.
+     */
+    public void onNewFrame(HeadTransform headTransform) {
+        // Finished assets are handed to their objects before the traversal.
+        mAssetLoader.onNewFrame();
+        // Evicted texture names may be handed out again, so this goes before the invalidation
+        // too.
+        mTextureManager.onNewFrame();
+        // The distortion pass of the previous frame, the uploads and the evictions have changed
+        // GL state behind our back.
+        mGLState.invalidate();
+        mLastCulledCount = mCulledCount;
+        mLastDrawnCount = mDrawnCount;
+        mCulledCount = 0;
+        mDrawnCount = 0;
+        long frameNanos = System.nanoTime();
+        Runnable task;
+        while ((task = mReplayTasks.poll()) != null) {
+            task.run();
+        }
+        if (mReplay != null && mReplayFrame >= mReplay.getFrameCount()) {
+            endReplay();
+        }
+        headTransform.getHeadView(mLiveHeadView.m, 0);
+        if (mReplay != null) {
+            mReplay.getHeadView(mReplayFrame, mHeadView.m, 0);
+            frameNanos = mReplay.getFrameNanos(mReplayFrame++);
+            synchronized (mSimulationLock) {
+                mSimulation.advance(frameNanos);
+            }
+        } else {
+            mHeadView.set(mLiveHeadView);
+            if (mHeadRecording != null) {
+                mHeadRecording.add(frameNanos, mLiveHeadView.m, 0);
+            }
+        }
+        // Simulated objects pick their transforms up from here during the traversal.
+        mSimulation.acquire(frameNanos);
+        if (mCamera != null) {
+            mCamera.onNewFrame(mHeadView);
+        }
+        updateViewer();
+        long start = mProfiler.begin();
+        for (int i = 0; i < mObjects.size(); i++) {
+            mObjects.get(i).dispatchNewFrame(mHeadView, false);
+        }
+        mProfiler.end(CardboardProfiler.CPU_OBJECTS_NEW_FRAME, start);
+        if (mStaticBatchesDirty) {
+            rebuildStaticBatches();
+        }
+        for (int i = 0; i < mStaticBatches.size(); i++) {
+            mStaticBatches.get(i).dispatchNewFrame(mHeadView, false);
+        }
+        updateGazeTarget();
+    }
+
+    /**
+     * Draws every object in the scene for an eye. The camera is drawn first so that the view
+     * matrix and the light position are set before any object uses them.
+     *
+     * @param eye The eye to render. Includes all required transformations.
+     */
+    public void onDrawEye(Eye eye) {
+        if (mCamera != null) {
+            mCamera.onDrawEye(eye);
+        }
+        mGlobalsVersion++;
+        long start = mProfiler.begin();
+        for (int i = 0; i < mObjects.size(); i++) {
+            mObjects.get(i).dispatchDrawEye(eye);
+        }
+        for (int i = 0; i < mStaticBatches.size(); i++) {
+            mStaticBatches.get(i).onDrawEye(eye);
+        }
+        mProfiler.end(CardboardProfiler.CPU_OBJECTS_DRAW_EYE, start);
+
+        start = mProfiler.begin();
+        mRenderQueue.flush();
+        mProfiler.end(CardboardProfiler.CPU_OBJECTS_DRAW, start);
+        long issuedCalls = mGLState.getIssuedCalls();
+        mProfiler.count(CardboardProfiler.STATE_CHANGES, issuedCalls - mLastIssuedCalls);
+        mLastIssuedCalls = issuedCalls;
+    }
+
+    /**
+     * Uploads the globals of the eye being drawn, the ViewProjection matrix and the light
+     * position, to a program that was just made current. Each program gets them once per eye
+     * rather than once per object.
+     */
+    void applyGlobals(CardboardGLState state, CardboardProgram program) {
+        if (program.getGlobalsVersion() == mGlobalsVersion) {
+            return;
+        }
+        program.setGlobalsVersion(mGlobalsVersion);
+        state.uniformMatrix4fv(program.getUniformLocation("u_ViewProjection"), mViewProjection.m,
+                0);
+        state.uniform3fv(program.getUniformLocation("u_LightPos"), mLightPosInWorldSpace, 0);
+    }
+
+    /**
+     * Sends the trigger to the object the user is looking at.
+     *
+     * @return Whether an object was hit.
+     */
+    public boolean onCardboardTrigger() {
+        if (mGazeTarget == null) {
+            return false;
+        }
+        mGazeTarget.onCardboardTrigger();
+        return true;
+    }
+
+    /**
+     * Returns the view matrix of the eye being drawn.
+     */
+    public Mat4 getView() {
         return mView;
     }
 
-    public float[] getModelView() {
-        return mModelView;
+    /**
+     * Returns the projection times the view matrix of the eye being drawn.
+     */
+    public Mat4 getViewProjection() {
+        return mViewProjection;
+    }
+
+    /**
+     * Returns the view frustum of the eye being drawn, in world space.
+     */
+    public Frustum getFrustum() {
+        return mFrustum;
+    }
+
+    /**
+     * Returns the frustum that contains both eyes in the current frame, in world space. Only
+     * meaningful when {@link #isFrameCullingActive()}.
+     */
+    public Frustum getFrameFrustum() {
+        return mFrameFrustum;
+    }
+
+    /**
+     * Marks the frame frustum as set for this frame. The camera can't set it until it has seen
+     * both eyes once.
+     */
+    void setFrameFrustumValid(boolean valid) {
+        mFrameFrustumValid = valid;
+    }
+
+    /**
+     * Returns whether objects are culled once per frame in the current frame.
+     */
+    public boolean isFrameCullingActive() {
+        return mCullingMode == CULL_PER_FRAME && mFrameFrustumValid;
+    }
+
+    /**
+     * Decides whether an object is skipped for the eye being drawn, and counts the result.
+     */
+    boolean cull(CardboardObject object) {
+        boolean culled;
+        if (isFrameCullingActive()) {
+            culled = object.isFrameCulled();
+        } else if (mCullingMode != CULL_NONE) {
+            culled = object.isOutside(mFrustum);
+        } else {
+            culled = false;
+        }
+        if (culled) {
+            mCulledCount++;
+        } else {
+            mDrawnCount++;
+        }
+        return culled;
+    }
+
+    /**
+     * Returns the head view of the current frame, shared by both eyes. While replaying, this is
+     * the recorded one.
+     */
+    public Mat4 getHeadView() {
+        return mHeadView;
+    }
+
+    /**
+     * Returns the head view the headset reported for the current frame, which the eyes passed
+     * to {@link #onDrawEye(Eye)} are built from.
+     */
+    public Mat4 getLiveHeadView() {
+        return mLiveHeadView;
+    }
+
+    /**
+     * Returns the position of the viewer in world space in the current frame, between the eyes.
+     */
+    public Vec3 getViewerPosition() {
+        return mViewerPosition;
+    }
+
+    /**
+     * Returns the size in pixels of one world unit at a distance of one unit from the viewer, as
+     * of the last eye drawn, or 0 before anything has been drawn.
+     */
+    public float getPixelsPerUnit() {
+        return mPixelsPerUnit;
+    }
+
+    void setPixelsPerUnit(float pixelsPerUnit) {
+        mPixelsPerUnit = pixelsPerUnit;
+    }
+
+    /**
+     * Returns the position of the light in world space. It is set by the camera once per frame,
+     * before any eye is drawn.
+     */
+    public float[] getLightPosInWorldSpace() {
+        return mLightPosInWorldSpace;
+    }
+
+    /**
+     * Computes the viewer's position and gaze direction for the new head pose, before the objects
+     * are updated.
+     */
+    private void updateViewer() {
+        if (mCamera != null) {
+            mGazeTransform.multiply(mHeadView, mCamera.getModel());
+        } else {
+            mGazeTransform.set(mHeadView);
+        }
+        // World from head is the inverse of the (rigid) head view.
+        mGazeTransform.invertRigid(mGazeTransform);
+        mGazeTransform.getTranslation(mViewerPosition);
+        mGazeTransform.transformDirection(mGazeDirection.set(0.0f, 0.0f, -1.0f), mGazeDirection);
+        mGazeDirection.normalize();
+    }
+
+    /**
+     * Casts the gaze ray, along the -z axis of the head, through the index of pickable objects.
+     * Runs after every world matrix of the frame is up to date.
+     */
+    private void updateGazeTarget() {
+        mGazeTarget = mBvh.raycast(mViewerPosition, mGazeDirection, MAX_GAZE_DISTANCE);
+    }
+
+    /**
+     * Merges static objects into batches. Runs on the GL thread after the world matrices of the
+     * frame have been updated.
+     */
+    private void rebuildStaticBatches() {
+        for (int i = 0; i < mStaticBatches.size(); i++) {
+            mStaticBatches.get(i).onRendererShutdown();
+        }
+        List<CardboardObject> statics = new ArrayList<CardboardObject>();
+        for (int i = 0; i < mObjects.size(); i++) {
+            collectStatics(mObjects.get(i), statics);
+        }
+        mStaticBatches = CardboardStaticBatch.build(mContext, this, statics);
+        mStaticBatchesDirty = false;
+        // Uploading the batches bound buffers directly.
+        mGLState.invalidate();
     }
 
-    public float[] getModelViewProjection() {
-        return mModelViewProjection;
+    private static void collectStatics(CardboardObject object, List<CardboardObject> statics) {
+        object.setBatched(false);
+        if (object.isStatic()) {
+            statics.add(object);
+        }
+        List<CardboardObject> children = object.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            collectStatics(children.get(i), statics);
+        }
     }
 }
@@ -0,0 +1,613 @@
+/*
+ * CardboardSimulation.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import io.kirmani.cardboard.math.Mat4;
+import io.kirmani.cardboard.math.Quat;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Updates object transforms off the GL thread.
+ *
+ * <p>The model matrix of every object marked with {@link CardboardObject#setSimulated(boolean)}
+ * is advanced by {@link CardboardObject#onSimulate(Mat4, float)} on a simulation thread, in
+ * steps of a fixed length that doesn't depend on the renderer, see
+ * {@link CardboardSimulationClock}. Large scenes are split between worker threads, one per spare
+ * core, so the cost of a step shrinks with the number of cores. Each step ends by publishing the
+ * new model matrices as a snapshot, and the GL thread picks up the newest complete snapshot at
+ * the start of each frame. The renderer never waits for the simulation, and never sees half of a
+ * step.
+ *
+ * <p>Frames rarely line up with steps, so by default the GL thread renders in between the last
+ * two steps, by how far the frame is into the step after them. Motion is then smooth at any
+ * frame rate, at the cost of showing the world one step late. The simulation publishes each
+ * model split into a translation, a scale and a rotation quaternion, so that the GL thread only
+ * has to blend them rather than take the matrices apart every frame.
+ *
+ * <p>For reproducible runs the simulation thread can be left stopped and the simulation advanced
+ * on the GL thread with {@link #advance(long)} instead, from recorded frame times, see
+ * {@link CardboardScene#startReplay(CardboardHeadTrace)}.
+ *
+ * <p>Snapshots are triple-buffered, see {@link CardboardTripleBuffer}: the simulation writes one
+ * buffer while the GL thread reads another, and the third holds the newest published step. Each
+ * side hands buffers over with a single atomic swap, so neither takes a lock.
+ *
+ * <p>Simulated objects still have their world matrices, bounds and levels of detail computed on
+ * the GL thread, since those feed the scene's spatial index, which isn't thread-safe.
+ */
+public class CardboardSimulation {
+    private static final String TAG = "CardboardSimulation";
+
+    public static final float DEFAULT_STEP_SECONDS = 1.0f / 60.0f;
+
+    // Below this many objects a step isn't worth handing to the workers.
+    private static final int MIN_PARALLEL_OBJECTS = 256;
+
+    // A pose is a translation, a scale and a rotation quaternion, in that order.
+    private static final int POSE_FLOATS = 10;
+    private static final int POSE_SCALE = 3;
+    private static final int POSE_ROTATION = 6;
+    // A snapshot is the model after the step, then the poses before and after it.
+    private static final int SNAPSHOT_FROM = 16;
+    private static final int SNAPSHOT_TO = SNAPSHOT_FROM + POSE_FLOATS;
+    private static final int SNAPSHOT_FLOATS = SNAPSHOT_TO + POSE_FLOATS;
+
+    /**
+     * The simulated state of one object. The model and its pose are the ones the object was added
+     * with, which its first step starts from; later steps start from the last published snapshot.
+     * The snapshots are written by the simulation and read by the GL thread.
+     */
+    static final class Transform {
+        final CardboardObject object;
+        final Mat4 model = new Mat4();
+        final float[] pose = new float[POSE_FLOATS];
+        final float[] snapshots = new float[3 * SNAPSHOT_FLOATS];
+        // The step each snapshot was taken in, 0 for none.
+        final long[] steps = new long[3];
+        // The last step and interpolation copied out on the GL thread.
+        long appliedStep;
+        float appliedAlpha;
+
+        Transform(CardboardObject object, Mat4 model) {
+            this.object = object;
+            this.model.set(model);
+            decompose(model, new Quat(), pose, 0);
+        }
+    }
+
+    private final CardboardTripleBuffer mSnapshots = new CardboardTripleBuffer();
+    // The time each snapshot's step stands for.
+    private final long[] mSnapshotNanos = new long[3];
+    // Only touched by the thread that steps, and read by the workers during a step.
+    private long mStep;
+    // The slot and step of the last published snapshot, which the next step starts from. It is
+    // never the back slot, so a step that is dropped or fails leaves it untouched.
+    private int mPublishedSlot = -1;
+    private long mPublishedStep;
+    private final CardboardSimulationClock mClock =
+            new CardboardSimulationClock(DEFAULT_STEP_SECONDS);
+
+    // Only touched by the GL thread.
+    private boolean mInterpolating = true;
+    private float mAlpha = 1.0f;
+    private final Quat mFromRotation = new Quat();
+    private final Quat mToRotation = new Quat();
+
+    // Work for the stepping thread, run between steps.
+    private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<Runnable>();
+    private final ArrayList<Transform> mTransforms = new ArrayList<Transform>();
+    // Only touched by the thread that steps; each worker has its own.
+    private final Quat mRotation = new Quat();
+    private final Mat4 mModel = new Mat4();
+
+    private int mThreadCount;
+    private Thread[] mWorkers;
+    private CyclicBarrier mBarrier;
+    // Handed to the workers through the barrier.
+    private float mDeltaSeconds;
+    private boolean mStopping;
+    private volatile Throwable mWorkerError;
+
+    private Thread mThread;
+
+    /**
+     * Creates a simulation that uses every core but one, which is left to the GL thread.
+     */
+    public CardboardSimulation() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * @param threadCount The number of threads a step is split between, counting the simulation
+     *     thread itself.
+     */
+    public CardboardSimulation(int threadCount) {
+        mThreadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Changes the number of threads a step is split between. Must not be called while a step is
+     * running.
+     */
+    public synchronized void setThreadCount(int threadCount) {
+        stopWorkers();
+        mThreadCount = Math.max(1, threadCount);
+    }
+
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    /**
+     * Sets the length of a step, which is also the time each step advances objects by.
+     */
+    public void setStepSeconds(float seconds) {
+        mClock.setStepSeconds(seconds);
+    }
+
+    /**
+     * Returns the clock that decides when to step, and measures the update and render rates.
+     */
+    public CardboardSimulationClock getClock() {
+        return mClock;
+    }
+
+    /**
+     * Sets whether the GL thread renders in between the last two steps, rather than the last
+     * step as it is. On by default.
+     */
+    public void setInterpolating(boolean interpolating) {
+        mInterpolating = interpolating;
+    }
+
+    public boolean isInterpolating() {
+        return mInterpolating;
+    }
+
+    /**
+     * Starts stepping on the simulation thread. Call from onResume.
+     */
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runLoop();
+                } finally {
+                    stopWorkers();
+                }
+            }
+        }, TAG);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Returns whether the simulation thread is stepping.
+     */
+    public synchronized boolean isRunning() {
+        return mThread != null;
+    }
+
+    /**
+     * Stops the simulation thread and the workers, and waits for them. Call from onPause. The
+     * last published snapshot stays available to the GL thread.
+     */
+    public synchronized void stop() {
+        if (mThread == null) {
+            stopWorkers();
+            return;
+        }
+        mThread.interrupt();
+        boolean interrupted = false;
+        while (mThread.isAlive()) {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        mThread = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a task on the stepping thread before the next step. This is how other threads change
+     * the state of simulated objects. May be called from any thread.
+     */
+    public void post(Runnable task) {
+        mTasks.add(task);
+    }
+
+    /**
+     * Starts simulating an object from the given model matrix.
+     */
+    Transform add(CardboardObject object, Mat4 model) {
+        final Transform transform = new Transform(object, model);
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mTransforms.add(transform);
+            }
+        });
+        return transform;
+    }
+
+    void remove(final Transform transform) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mTransforms.remove(transform);
+            }
+        });
+    }
+
+    /**
+     * Runs the pending tasks, advances every simulated object and publishes the result. This is
+     * what the simulation thread does at each tick; it may also be called directly while the
+     * thread isn't running, but only from one thread at a time.
+     *
+     * @param deltaSeconds The time since the previous step.
+     */
+    public void step(float deltaSeconds) {
+        step(deltaSeconds, System.nanoTime());
+    }
+
+    /**
+     * Restarts the clock from the given time, so that the time before it isn't caught up with.
+     * Call before {@link #advance(long)} is first used, e.g. when a replay starts. The simulation
+     * thread does this itself whenever it starts.
+     */
+    public void resetClock(long nowNanos) {
+        mClock.reset(nowNanos);
+    }
+
+    /**
+     * Runs every step that is due by the given time, in fixed steps. This is what the simulation
+     * thread does in a loop; it may also be called directly while the thread isn't running, e.g.
+     * on the GL thread with recorded frame times, which makes the steps the same on every run.
+     *
+     * @return The number of steps run.
+     */
+    public int advance(long nowNanos) {
+        int steps = mClock.advance(nowNanos);
+        long stepNanos = mClock.getStepNanos();
+        long time = mClock.getSimulatedNanos() - (steps - 1) * stepNanos;
+        for (int i = 0; i < steps; i++) {
+            if (!step(mClock.getStepSeconds(), time)) {
+                return i;
+            }
+            time += stepNanos;
+        }
+        return steps;
+    }
+
+    /**
+     * Makes the newest published step the one read during this frame, if there is a newer one
+     * than the current. Called on the GL thread at the start of each frame.
+     *
+     * @return Whether a newer step was acquired.
+     */
+    public boolean acquire() {
+        return acquire(System.nanoTime());
+    }
+
+    /**
+     * Like {@link #acquire()}, for a frame at the given time, which decides how far objects are
+     * interpolated between the last two steps.
+     */
+    public boolean acquire(long frameNanos) {
+        boolean acquired = mSnapshots.acquire();
+        mClock.onRender(frameNanos);
+        if (mInterpolating) {
+            float alpha = (float) (frameNanos - mSnapshotNanos[mSnapshots.getFrontIndex()])
+                    / mClock.getStepNanos();
+            mAlpha = Math.max(0.0f, Math.min(1.0f, alpha));
+        } else {
+            mAlpha = 1.0f;
+        }
+        return acquired;
+    }
+
+    /**
+     * Copies an object's model matrix out of the acquired snapshot, interpolated for the frame,
+     * unless it was already copied. Called on the GL thread.
+     *
+     * @return Whether the model changed.
+     */
+    boolean read(Transform transform, Mat4 model) {
+        int front = mSnapshots.getFrontIndex();
+        long step = transform.steps[front];
+        if (step == 0 || (step == transform.appliedStep && mAlpha == transform.appliedAlpha)) {
+            return false;
+        }
+        transform.appliedStep = step;
+        transform.appliedAlpha = mAlpha;
+        int offset = front * SNAPSHOT_FLOATS;
+        if (mAlpha >= 1.0f) {
+            System.arraycopy(transform.snapshots, offset, model.m, 0, 16);
+        } else {
+            interpolate(transform.snapshots, offset + SNAPSHOT_FROM, offset + SNAPSHOT_TO, mAlpha,
+                    model);
+        }
+        return true;
+    }
+
+    /**
+     * Interpolates two poses: the translations and scales linearly, the rotations along the
+     * shortest arc.
+     */
+    private void interpolate(float[] poses, int from, int to, float t, Mat4 out) {
+        mFromRotation.set(poses, from + POSE_ROTATION);
+        mToRotation.set(poses, to + POSE_ROTATION);
+        out.setRotation(mFromRotation.slerp(mFromRotation, mToRotation, t));
+        out.scale(lerp(poses[from + POSE_SCALE], poses[to + POSE_SCALE], t),
+                lerp(poses[from + POSE_SCALE + 1], poses[to + POSE_SCALE + 1], t),
+                lerp(poses[from + POSE_SCALE + 2], poses[to + POSE_SCALE + 2], t));
+        out.m[12] = lerp(poses[from], poses[to], t);
+        out.m[13] = lerp(poses[from + 1], poses[to + 1], t);
+        out.m[14] = lerp(poses[from + 2], poses[to + 2], t);
+    }
+
+    /**
+     * Splits a rigid transform with a uniform or axis-aligned scale into a pose.
+     */
+    private static void decompose(Mat4 model, Quat rotation, float[] pose, int offset) {
+        float[] m = model.m;
+        pose[offset] = m[12];
+        pose[offset + 1] = m[13];
+        pose[offset + 2] = m[14];
+        pose[offset + POSE_SCALE] = length(m, 0);
+        pose[offset + POSE_SCALE + 1] = length(m, 4);
+        pose[offset + POSE_SCALE + 2] = length(m, 8);
+        rotation.setRotation(model);
+        pose[offset + POSE_ROTATION] = rotation.x;
+        pose[offset + POSE_ROTATION + 1] = rotation.y;
+        pose[offset + POSE_ROTATION + 2] = rotation.z;
+        pose[offset + POSE_ROTATION + 3] = rotation.w;
+    }
+
+    private static float length(float[] m, int column) {
+        return (float) Math.sqrt(m[column] * m[column] + m[column + 1] * m[column + 1]
+                + m[column + 2] * m[column + 2]);
+    }
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    /**
+     * @param timeNanos The time the step stands for.
+     * @return False if the step was interrupted, and dropped rather than published.
+     */
+    private boolean step(float deltaSeconds, long timeNanos) {
+        Runnable task;
+        while ((task = mTasks.poll()) != null) {
+            task.run();
+        }
+        long step = ++mStep;
+        int count = mTransforms.size();
+        if (count < MIN_PARALLEL_OBJECTS || mThreadCount == 1) {
+            update(0, count, deltaSeconds, step, mRotation, mModel);
+        } else if (!updateParallel(count, deltaSeconds, step)) {
+            return false;
+        }
+        int back = mSnapshots.getBackIndex();
+        mSnapshotNanos[back] = timeNanos;
+        mSnapshots.publish();
+        mPublishedSlot = back;
+        mPublishedStep = step;
+        return true;
+    }
+
+    private void runLoop() {
+        mClock.reset(System.nanoTime());
+        while (!Thread.currentThread().isInterrupted()) {
+            advance(System.nanoTime());
+            long sleep = mClock.getNanosUntilNextStep(System.nanoTime());
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep / 1000000L, (int) (sleep % 1000000L));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps a range of objects from the last published snapshot, and writes the result to the
+     * back snapshot only. A step that is dropped or fails is therefore never seen by the next
+     * one. The pose before the step is the one published after the previous step, so each model
+     * is only taken apart once.
+     *
+     * @param rotation Scratch space, owned by the calling thread.
+     * @param model Scratch space, owned by the calling thread.
+     */
+    private void update(int from, int to, float deltaSeconds, long step, Quat rotation,
+            Mat4 model) {
+        int back = mSnapshots.getBackIndex();
+        int offset = back * SNAPSHOT_FLOATS;
+        int published = mPublishedSlot;
+        for (int i = from; i < to; i++) {
+            Transform transform = mTransforms.get(i);
+            float[] snapshots = transform.snapshots;
+            if (published >= 0 && transform.steps[published] == mPublishedStep) {
+                int last = published * SNAPSHOT_FLOATS;
+                model.set(snapshots, last);
+                System.arraycopy(snapshots, last + SNAPSHOT_TO, snapshots,
+                        offset + SNAPSHOT_FROM, POSE_FLOATS);
+            } else {
+                // Added since the last published step.
+                model.set(transform.model);
+                System.arraycopy(transform.pose, 0, snapshots, offset + SNAPSHOT_FROM,
+                        POSE_FLOATS);
+            }
+            transform.object.onSimulate(model, deltaSeconds);
+            System.arraycopy(model.m, 0, snapshots, offset, 16);
+            decompose(model, rotation, snapshots, offset + SNAPSHOT_TO);
+            transform.steps[back] = step;
+        }
+    }
+
+    /**
+     * Splits a step into one contiguous range of objects per thread. The stepping thread takes
+     * the first range itself.
+     *
+     * @return Whether the step completed.
+     */
+    private boolean updateParallel(int count, float deltaSeconds, long step) {
+        if (mWorkers == null) {
+            startWorkers();
+        }
+        mDeltaSeconds = deltaSeconds;
+        // The barrier publishes the objects, the delta and the step to the workers, and their
+        // snapshots back to this thread.
+        if (!await()) {
+            abandonWorkers();
+            return false;
+        }
+        try {
+            update(0, count / mThreadCount, deltaSeconds, step, mRotation, mModel);
+        } catch (Throwable e) {
+            // The workers would otherwise wait at the end of this step forever.
+            abandonWorkers();
+            throw e;
+        }
+        if (!await()) {
+            // The broken barrier can't be used again, so the next step starts new workers.
+            abandonWorkers();
+            return false;
+        }
+        Throwable error = mWorkerError;
+        if (error != null) {
+            mWorkerError = null;
+            abandonWorkers();
+            // Wrapped rather than cast, whatever the worker threw, so that the trace shows this
+            // thread's step as well as the worker's.
+            throw new IllegalStateException("A simulation worker failed", error);
+        }
+        return true;
+    }
+
+    private void startWorkers() {
+        mBarrier = new CyclicBarrier(mThreadCount);
+        mWorkers = new Thread[mThreadCount - 1];
+        for (int i = 0; i < mWorkers.length; i++) {
+            final int index = i + 1;
+            mWorkers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWorker(index);
+                }
+            }, TAG + " worker " + index);
+            mWorkers[i].setDaemon(true);
+            mWorkers[i].start();
+        }
+    }
+
+    private void runWorker(int index) {
+        Quat rotation = new Quat();
+        Mat4 model = new Mat4();
+        while (await()) {
+            if (mStopping) {
+                return;
+            }
+            int count = mTransforms.size();
+            try {
+                update(count * index / mThreadCount, count * (index + 1) / mThreadCount,
+                        mDeltaSeconds, mStep, rotation, model);
+            } catch (Throwable e) {
+                // Handed to the stepping thread, which still needs this worker at the barrier.
+                mWorkerError = e;
+            }
+            if (!await()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the workers. Called on the stepping thread, or once it has stopped.
+     */
+    private void stopWorkers() {
+        if (mWorkers == null) {
+            return;
+        }
+        // The workers are waiting for the next step, unless the barrier was broken by an
+        // interrupt, which already let them go.
+        mStopping = true;
+        if (!mBarrier.isBroken()) {
+            await();
+        }
+        joinWorkers();
+    }
+
+    /**
+     * Stops the workers wherever they are in a step, after the step failed or was interrupted.
+     * Called on the stepping thread.
+     */
+    private void abandonWorkers() {
+        // Resetting the barrier breaks it for the workers waiting on it, and the interrupt breaks
+        // it for any that haven't reached it yet.
+        mStopping = true;
+        mBarrier.reset();
+        for (int i = 0; i < mWorkers.length; i++) {
+            mWorkers[i].interrupt();
+        }
+        joinWorkers();
+    }
+
+    private void joinWorkers() {
+        boolean interrupted = false;
+        for (int i = 0; i < mWorkers.length; i++) {
+            while (mWorkers[i].isAlive()) {
+                try {
+                    mWorkers[i].join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        mWorkers = null;
+        mBarrier = null;
+        mStopping = false;
+        // An error from a step that was dropped belongs to no later step.
+        mWorkerError = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for every thread of the step to reach the barrier.
+     *
+     * @return False if the barrier was broken by an interrupt.
+     */
+    private boolean await() {
+        try {
+            mBarrier.await();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (BrokenBarrierException e) {
+            return false;
+        }
+    }
+}
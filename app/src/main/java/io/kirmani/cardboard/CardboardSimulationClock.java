@@ -0,0 +1,187 @@
+/*
+ * CardboardSimulationClock.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+/**
+ * Turns elapsed time into a whole number of fixed-length simulation steps.
+ *
+ * <p>Elapsed time is added to an accumulator, and every full step in it is taken out and run.
+ * The remainder carries over to the next call, so the simulation advances at exactly one step
+ * per step length on average, however often it is called. The state of the world therefore
+ * doesn't depend on the frame rate, and with the same times fed in, the same steps come out.
+ *
+ * <p>When the caller falls behind, e.g. because a step takes longer than a step's worth of time,
+ * the backlog would keep growing. No more than the maximum catch-up steps are run per call, and
+ * time beyond that is dropped, so the world slows down instead of the app locking up.
+ *
+ * <p>The clock also measures how many steps and frames actually happen per second. Times are in
+ * nanoseconds, from whatever source the caller uses, normally {@link System#nanoTime()}.
+ * {@link #advance(long)} must only be called from one thread; the rates may be read from any.
+ */
+public class CardboardSimulationClock {
+    public static final int DEFAULT_MAX_CATCH_UP_STEPS = 5;
+
+    // The rates are recomputed once per window.
+    private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+    /**
+     * Counts events per second, averaged over a window.
+     */
+    private static final class RateMeter {
+        private long mWindowStart = -1;
+        private long mCount;
+        volatile float rate;
+
+        void add(long nowNanos, int count) {
+            if (mWindowStart < 0) {
+                mWindowStart = nowNanos;
+            }
+            mCount += count;
+            long elapsed = nowNanos - mWindowStart;
+            if (elapsed >= RATE_WINDOW_NANOS) {
+                rate = mCount * 1e9f / elapsed;
+                mWindowStart = nowNanos;
+                mCount = 0;
+            }
+        }
+
+        void reset() {
+            mWindowStart = -1;
+            mCount = 0;
+        }
+    }
+
+    private volatile long mStepNanos;
+    private volatile int mMaxCatchUpSteps = DEFAULT_MAX_CATCH_UP_STEPS;
+
+    private long mLastNanos;
+    private long mAccumulatorNanos;
+    private volatile long mStepCount;
+    private volatile long mDroppedNanos;
+
+    private final RateMeter mUpdateRate = new RateMeter();
+    private final RateMeter mRenderRate = new RateMeter();
+
+    public CardboardSimulationClock(float stepSeconds) {
+        setStepSeconds(stepSeconds);
+    }
+
+    public void setStepSeconds(float seconds) {
+        mStepNanos = (long) (seconds * 1e9f);
+    }
+
+    public float getStepSeconds() {
+        return mStepNanos / 1e9f;
+    }
+
+    public long getStepNanos() {
+        return mStepNanos;
+    }
+
+    /**
+     * Sets the most steps run by one call to {@link #advance(long)}.
+     */
+    public void setMaxCatchUpSteps(int steps) {
+        mMaxCatchUpSteps = Math.max(1, steps);
+    }
+
+    public int getMaxCatchUpSteps() {
+        return mMaxCatchUpSteps;
+    }
+
+    /**
+     * Starts counting from the given time, with nothing accumulated. Call before the first
+     * {@link #advance(long)}, and after a pause whose time shouldn't be caught up with.
+     */
+    public void reset(long nowNanos) {
+        mLastNanos = nowNanos;
+        mAccumulatorNanos = 0;
+        mUpdateRate.reset();
+    }
+
+    /**
+     * Adds the time since the previous call and takes the steps that are due out of it.
+     *
+     * @return The number of steps to run now, at most the maximum catch-up steps.
+     */
+    public int advance(long nowNanos) {
+        long stepNanos = mStepNanos;
+        mAccumulatorNanos += Math.max(0, nowNanos - mLastNanos);
+        mLastNanos = nowNanos;
+        long due = mAccumulatorNanos / stepNanos;
+        int steps = (int) Math.min(due, mMaxCatchUpSteps);
+        mAccumulatorNanos -= steps * stepNanos;
+        if (due > steps) {
+            // Only the fraction of a step carries over.
+            long dropped = mAccumulatorNanos - mAccumulatorNanos % stepNanos;
+            mAccumulatorNanos -= dropped;
+            mDroppedNanos += dropped;
+        }
+        mStepCount += steps;
+        mUpdateRate.add(nowNanos, steps);
+        return steps;
+    }
+
+    /**
+     * Returns the time the latest step stands for: the time of the last call to
+     * {@link #advance(long)}, less what is left in the accumulator.
+     */
+    public long getSimulatedNanos() {
+        return mLastNanos - mAccumulatorNanos;
+    }
+
+    /**
+     * Returns how far the accumulator is into the next step, from 0 to 1, as of the last call to
+     * {@link #advance(long)}.
+     */
+    public float getAlpha() {
+        return (float) mAccumulatorNanos / mStepNanos;
+    }
+
+    /**
+     * Returns how long until the next step is due.
+     */
+    public long getNanosUntilNextStep(long nowNanos) {
+        return mStepNanos - mAccumulatorNanos - (nowNanos - mLastNanos);
+    }
+
+    /**
+     * Counts a rendered frame, for {@link #getRenderRate()}.
+     */
+    public void onRender(long nowNanos) {
+        mRenderRate.add(nowNanos, 1);
+    }
+
+    /**
+     * Returns the number of steps run since the clock was created.
+     */
+    public long getStepCount() {
+        return mStepCount;
+    }
+
+    /**
+     * Returns the total time dropped because the maximum catch-up was reached.
+     */
+    public long getDroppedNanos() {
+        return mDroppedNanos;
+    }
+
+    /**
+     * Returns the measured steps per second, over the last full second.
+     */
+    public float getUpdateRate() {
+        return mUpdateRate.rate;
+    }
+
+    /**
+     * Returns the measured frames per second, over the last full second.
+     */
+    public float getRenderRate() {
+        return mRenderRate.rate;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * CardboardStaticBatch.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.content.Context;
+
+import io.kirmani.cardboard.math.Mat4;
+import io.kirmani.cardboard.math.Vec3;
+
+import java.nio.FloatBuffer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the meshes of static objects that share a program into one pre-transformed mesh, so that
+ * they are drawn with a single draw call.
+ *
+ * <p>Vertices are transformed to world space when the batch is built, and the batch itself is drawn
+ * with an identity model matrix. The batched objects must therefore not move afterwards; see
+ * {@link CardboardScene#invalidateStaticBatches()}. Hidden, highlighted and transparent objects
+ * are left out, so that they keep drawing themselves, and the batches are rebuilt when that
+ * changes.
+ */
+public class CardboardStaticBatch extends CardboardObject {
+    // Keep batches addressable with 16-bit indices.
+    private static final int MAX_VERTICES = 0x10000;
+
+    private CardboardStaticBatch(Context context, CardboardScene scene, CardboardProgram program,
+            CardboardMesh mesh) {
+        super(context, scene);
+        setProgram(program);
+        setMesh(mesh);
+        mesh.upload();
+    }
+
+    /**
+     * Builds batches for the given static objects, one or more per program. Objects that end up in
+     * a batch are marked as batched so they no longer submit themselves.
+     */
+    static List<CardboardStaticBatch> build(Context context, CardboardScene scene,
+            List<CardboardObject> objects) {
+        Map<CardboardProgram, List<CardboardObject>> groups =
+                new LinkedHashMap<CardboardProgram, List<CardboardObject>>();
+        for (CardboardObject object : objects) {
+            // An object whose level of detail changes can't be baked into a batch, and neither can
+            // the per-object state of the draw. Batches are drawn in the opaque pass, so
+            // transparent objects keep their place in the back to front order.
+            if (object.getMesh() == null || object.getProgram() == null
+                    || object.getLods() != null || !object.isVisible()
+                    || object.getHighlight() != 0.0f || object.isTransparent()) {
+                continue;
+            }
+            List<CardboardObject> group = groups.get(object.getProgram());
+            if (group == null) {
+                group = new ArrayList<CardboardObject>();
+                groups.put(object.getProgram(), group);
+            }
+            group.add(object);
+        }
+
+        List<CardboardStaticBatch> batches = new ArrayList<CardboardStaticBatch>();
+        for (Map.Entry<CardboardProgram, List<CardboardObject>> entry : groups.entrySet()) {
+            List<CardboardObject> group = entry.getValue();
+            int start = 0;
+            while (start < group.size()) {
+                int end = start;
+                int vertexCount = 0;
+                int indexCount = 0;
+                while (end < group.size()) {
+                    CardboardMesh mesh = group.get(end).getMesh();
+                    if (end > start && vertexCount + mesh.getVertexCount() > MAX_VERTICES) {
+                        break;
+                    }
+                    vertexCount += mesh.getVertexCount();
+                    indexCount += mesh.getElementCount();
+                    end++;
+                }
+                List<CardboardObject> members = group.subList(start, end);
+                CardboardMesh merged = merge(members, vertexCount, indexCount);
+                for (CardboardObject member : members) {
+                    member.setBatched(true);
+                }
+                batches.add(new CardboardStaticBatch(context, scene, entry.getKey(), merged));
+                start = end;
+            }
+        }
+        return batches;
+    }
+
+    private static CardboardMesh merge(List<CardboardObject> objects, int vertexCount,
+            int indexCount) {
+        float[] vertices = new float[vertexCount * CardboardMesh.FLOATS_PER_VERTEX];
+        int[] indices = new int[indexCount];
+        Vec3 vector = new Vec3();
+        Mat4 normalMatrix = new Mat4();
+
+        int baseVertex = 0;
+        int index = 0;
+        for (CardboardObject object : objects) {
+            CardboardMesh mesh = object.getMesh();
+            Mat4 world = object.getWorldModel();
+            normalMatrix.setNormalMatrix(world);
+            FloatBuffer source = mesh.getVertexFloats();
+            for (int v = 0; v < mesh.getVertexCount(); v++) {
+                int src = v * CardboardMesh.FLOATS_PER_VERTEX;
+                int dst = (baseVertex + v) * CardboardMesh.FLOATS_PER_VERTEX;
+                for (int f = 0; f < CardboardMesh.FLOATS_PER_VERTEX; f++) {
+                    vertices[dst + f] = source.get(src + f);
+                }
+
+                world.transformPoint(vector.set(vertices, dst), vector).get(vertices, dst);
+
+                int normal = dst + CardboardMesh.POSITION_SIZE;
+                normalMatrix.transformDirection(vector.set(vertices, normal), vector)
+                        .normalize().get(vertices, normal);
+            }
+
+            if (mesh.isIndexed()) {
+                for (int i = 0; i < mesh.getElementCount(); i++) {
+                    indices[index++] = baseVertex + mesh.getIndex(i);
+                }
+            } else {
+                for (int i = 0; i < mesh.getVertexCount(); i++) {
+                    indices[index++] = baseVertex + i;
+                }
+            }
+            baseVertex += mesh.getVertexCount();
+        }
+        return new CardboardMesh(vertices, indices);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * CardboardStatsRing.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+/**
+ * A fixed-size ring of the most recent samples of one statistic.
+ *
+ * <p>There must only be one writer, normally the GL thread, but any thread can take a snapshot
+ * at any time without locking. The writer stores a sample and then publishes it by bumping a
+ * volatile count; a reader copies the samples below the count it saw and afterwards drops the
+ * ones the writer may have overwritten in the meantime.
+ */
+public class CardboardStatsRing {
+    private final long[] mValues;
+    private final int mMask;
+    private volatile long mCount;
+
+    /**
+     * @param capacity The number of samples kept. Must be a power of two.
+     */
+    public CardboardStatsRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mValues = new long[capacity];
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Adds a sample, replacing the oldest one once the ring is full. Only call from the writer
+     * thread.
+     */
+    public void add(long value) {
+        long count = mCount;
+        mValues[(int) (count & mMask)] = value;
+        mCount = count + 1;
+    }
+
+    /**
+     * Copies the most recent samples, oldest first.
+     *
+     * @param out Receives the samples. Should be at least as large as the capacity.
+     * @return The number of samples copied.
+     */
+    public int snapshot(long[] out) {
+        long end = mCount;
+        long start = Math.max(0, end - Math.min(mValues.length, out.length));
+        for (long i = start; i < end; i++) {
+            out[(int) (i - start)] = mValues[(int) (i & mMask)];
+        }
+        // The writer may have lapped the copy; its next slot is also the oldest one copied.
+        long overwritten = mCount - mValues.length + 1;
+        if (overwritten > start) {
+            int dropped = (int) Math.min(overwritten - start, end - start);
+            System.arraycopy(out, dropped, out, 0, (int) (end - start) - dropped);
+            return (int) (end - start) - dropped;
+        }
+        return (int) (end - start);
+    }
+
+    /**
+     * Returns the total number of samples ever added.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    public int getCapacity() {
+        return mValues.length;
+    }
+}
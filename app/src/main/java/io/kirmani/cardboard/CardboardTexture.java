@@ -0,0 +1,237 @@
+/*
+ * CardboardTexture.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+
+import java.io.IOException;
+
+/**
+ * A 2D texture owned by a {@link CardboardTextureManager}.
+ *
+ * <p>Textures are shared: every {@link CardboardTextureManager#acquire(String, Source, boolean)}
+ * of the same key returns the same texture and takes a reference to it, which is given back with
+ * {@link #release()}. The pixels are never kept on the client side. They are loaded from the
+ * texture's {@link Source} on the asset loader's thread whenever the texture is needed and isn't
+ * resident on the GPU, i.e. the first time it is bound, after it was evicted to stay under the
+ * manager's memory cap, and after the EGL context was lost. Until then it binds the manager's
+ * fallback, a single white pixel.
+ */
+public class CardboardTexture {
+    /**
+     * Where the pixels of a texture come from.
+     */
+    public interface Source {
+        /**
+         * Reads or generates the pixels. Runs on the asset loader's thread and must not make GL
+         * calls. May be called again every time the texture is reloaded.
+         */
+        CardboardTextureData load() throws IOException;
+    }
+
+    private final CardboardTextureManager mManager;
+    private final String mKey;
+    private final Source mSource;
+    private final boolean mMipmaps;
+
+    private int mHandle;
+    private int mWidth;
+    private int mHeight;
+    private long mSizeInBytes;
+
+    // The texture being uploaded, and how many of its levels are done.
+    private int mPendingHandle;
+    private int mUploadedLevels;
+
+    int mRefCount;
+    long mLastUsedFrame = -1;
+    boolean mLoading;
+    boolean mFailed;
+
+    CardboardTexture(CardboardTextureManager manager, String key, Source source,
+            boolean mipmaps) {
+        mManager = manager;
+        mKey = key;
+        mSource = source;
+        mMipmaps = mipmaps;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Returns whether the texture is on the GPU, rather than binding the fallback.
+     */
+    public boolean isResident() {
+        return mHandle != 0;
+    }
+
+    public int getHandle() {
+        return mHandle;
+    }
+
+    /**
+     * Returns the width of the full-size level, or 0 before the texture was first loaded.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns the GPU memory the texture takes while resident, counting its mipmaps.
+     */
+    public long getSizeInBytes() {
+        return mSizeInBytes;
+    }
+
+    /**
+     * Binds the texture to a unit, or the fallback if it isn't resident yet, and marks it as
+     * used in this frame. A texture that isn't resident starts loading.
+     *
+     * @param unit The unit, counted from 0 rather than GL_TEXTURE0.
+     */
+    public void bind(CardboardGLState state, int unit) {
+        mManager.markUsed(this);
+        state.bindTexture(unit, mHandle != 0 ? mHandle : mManager.getFallbackHandle());
+    }
+
+    /**
+     * Gives back a reference taken with
+     * {@link CardboardTextureManager#acquire(String, Source, boolean)}.
+     */
+    public void release() {
+        mManager.release(this);
+    }
+
+    Source getSource() {
+        return mSource;
+    }
+
+    /**
+     * Uploads the next levels of freshly loaded data into a new texture object. Called on the GL
+     * thread by the asset loader until it returns true. Binds the texture directly.
+     *
+     * @return Whether the upload is complete.
+     */
+    boolean uploadPart(CardboardTextureData data, int maxBytes) {
+        CardboardGL gl = CardboardGLContext.get();
+        if (mPendingHandle == 0) {
+            int[] handles = new int[1];
+            gl.glGenTextures(1, handles, 0);
+            mPendingHandle = handles[0];
+            mUploadedLevels = 0;
+        }
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, mPendingHandle);
+        // Rows of RGB and luminance data aren't padded to 4 bytes.
+        gl.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        int bytes = 0;
+        while (mUploadedLevels < data.getLevelCount() && bytes < maxBytes) {
+            int level = mUploadedLevels++;
+            uploadLevel(gl, data, level);
+            bytes += data.getLevel(level).remaining();
+        }
+        if (mUploadedLevels < data.getLevelCount()) {
+            return false;
+        }
+
+        long size = data.getSizeInBytes();
+        boolean mipmapped = data.getLevelCount() > 1;
+        if (mMipmaps && !mipmapped && !data.isCompressed() && mManager.canGenerateMipmaps(data)) {
+            gl.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+            size = getMipmapChainBytes(data);
+            mipmapped = true;
+        }
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+                mipmapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        // OpenGL ES 2 can only repeat power-of-two textures, and atlases must not wrap anyway.
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S,
+                GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T,
+                GLES20.GL_CLAMP_TO_EDGE);
+
+        mHandle = mPendingHandle;
+        mPendingHandle = 0;
+        mWidth = data.getWidth();
+        mHeight = data.getHeight();
+        mSizeInBytes = size;
+        return true;
+    }
+
+    /**
+     * Returns the memory taken by uncompressed data and every level the driver generates for it,
+     * down to 1x1. Roughly a third more than the full-size level.
+     */
+    private static long getMipmapChainBytes(CardboardTextureData data) {
+        int width = data.getWidth();
+        int height = data.getHeight();
+        long bytesPerPixel = data.getSizeInBytes() / ((long) width * height);
+        long size = 0;
+        while (true) {
+            size += width * height * bytesPerPixel;
+            if (width == 1 && height == 1) {
+                return size;
+            }
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+        }
+    }
+
+    /**
+     * Forgets an upload in progress whose texture died with the old EGL context.
+     */
+    void discardUpload() {
+        mPendingHandle = 0;
+        mUploadedLevels = 0;
+    }
+
+    /**
+     * Deletes the texture object and any upload in progress. Called on the GL thread.
+     */
+    void delete() {
+        CardboardGL gl = CardboardGLContext.get();
+        if (mHandle != 0) {
+            gl.glDeleteTextures(1, new int[] { mHandle }, 0);
+        }
+        if (mPendingHandle != 0) {
+            gl.glDeleteTextures(1, new int[] { mPendingHandle }, 0);
+        }
+        discard();
+    }
+
+    /**
+     * Forgets the texture object without deleting it, after the EGL context was lost.
+     */
+    void discard() {
+        mHandle = 0;
+        discardUpload();
+    }
+
+    private static void uploadLevel(CardboardGL gl, CardboardTextureData data, int level) {
+        int width = data.getLevelWidth(level);
+        int height = data.getLevelHeight(level);
+        if (data.isCompressed()) {
+            gl.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, data.getFormat(), width,
+                    height, 0, data.getLevel(level).remaining(), data.getLevel(level));
+        } else {
+            gl.glTexImage2D(GLES20.GL_TEXTURE_2D, level, data.getFormat(), width, height, 0,
+                    data.getFormat(), data.getType(), data.getLevel(level));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mKey;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * CardboardTextureAtlas.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs small images into one texture at runtime, so that objects using different images can be
+ * drawn without binding a texture in between.
+ *
+ * <p>Images are placed with a {@link CardboardAtlasPacker} when they are added, which only needs
+ * their size, so every object knows its {@link Region} right away. The atlas itself is a
+ * {@link CardboardTexture.Source}: it loads every image and composites them on the asset loader's
+ * thread, so it is acquired from the {@link CardboardTextureManager} like any other texture, and
+ * is rebuilt the same way after being evicted. Images must therefore be added before the atlas
+ * texture is first bound.
+ *
+ * <p>Each image is surrounded by a border of padding, filled by repeating its edge pixels, so that
+ * filtering and mipmaps don't bleed neighbours into it. Only uncompressed 8-bit RGBA images can be
+ * packed.
+ */
+public class CardboardTextureAtlas implements CardboardTexture.Source {
+    /**
+     * Where an image ended up in the atlas.
+     */
+    public static class Region {
+        private final int mX;
+        private final int mY;
+        private final int mWidth;
+        private final int mHeight;
+        private final float mU0;
+        private final float mV0;
+        private final float mU1;
+        private final float mV1;
+        private final CardboardTexture.Source mSource;
+
+        Region(int x, int y, int width, int height, int atlasSize,
+                CardboardTexture.Source source) {
+            mX = x;
+            mY = y;
+            mWidth = width;
+            mHeight = height;
+            mU0 = (float) x / atlasSize;
+            mV0 = (float) y / atlasSize;
+            mU1 = (float) (x + width) / atlasSize;
+            mV1 = (float) (y + height) / atlasSize;
+            mSource = source;
+        }
+
+        public int getX() {
+            return mX;
+        }
+
+        public int getY() {
+            return mY;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        public float getU0() {
+            return mU0;
+        }
+
+        public float getV0() {
+            return mV0;
+        }
+
+        public float getU1() {
+            return mU1;
+        }
+
+        public float getV1() {
+            return mV1;
+        }
+
+        /**
+         * Writes the scale and offset that map texture coordinates of the image on its own into
+         * the atlas, as (scaleU, scaleV, offsetU, offsetV), e.g. for a vec4 uniform.
+         */
+        public void getScaleOffset(float[] out) {
+            out[0] = mU1 - mU0;
+            out[1] = mV1 - mV0;
+            out[2] = mU0;
+            out[3] = mV0;
+        }
+    }
+
+    private final int mSize;
+    private final int mPadding;
+    private final CardboardAtlasPacker mPacker;
+    private final List<Region> mRegions = new ArrayList<Region>();
+    private final int[] mPosition = new int[2];
+
+    /**
+     * @param size The width and height of the atlas texture. A power of two, so that OpenGL ES 2
+     *     can generate its mipmaps.
+     * @param padding The border around each image, in pixels.
+     */
+    public CardboardTextureAtlas(int size, int padding) {
+        mSize = size;
+        mPadding = padding;
+        mPacker = new CardboardAtlasPacker(size, size);
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Finds room for an image. Must not be called once the atlas texture is in use.
+     *
+     * @param source Loads the image, whose size must be the given one.
+     * @return The image's region, or null if the atlas is full.
+     */
+    public Region add(int width, int height, CardboardTexture.Source source) {
+        if (!mPacker.pack(width + 2 * mPadding, height + 2 * mPadding, mPosition)) {
+            return null;
+        }
+        Region region = new Region(mPosition[0] + mPadding, mPosition[1] + mPadding, width,
+                height, mSize, source);
+        mRegions.add(region);
+        return region;
+    }
+
+    public List<Region> getRegions() {
+        return mRegions;
+    }
+
+    /**
+     * Returns the fraction of the atlas taken by images and their padding.
+     */
+    public float getOccupancy() {
+        return mPacker.getOccupancy();
+    }
+
+    /**
+     * Loads every image and composites them. Runs on the asset loader's thread.
+     */
+    @Override
+    public CardboardTextureData load() throws IOException {
+        ByteBuffer pixels = ByteBuffer.allocateDirect(mSize * mSize * 4);
+        for (int i = 0; i < mRegions.size(); i++) {
+            Region region = mRegions.get(i);
+            CardboardTextureData image = region.mSource.load();
+            if (image.getFormat() != GLES20.GL_RGBA
+                    || image.getType() != GLES20.GL_UNSIGNED_BYTE
+                    || image.getWidth() != region.mWidth || image.getHeight() != region.mHeight) {
+                throw new IOException("Atlas images must be " + region.mWidth + "x"
+                        + region.mHeight + " RGBA");
+            }
+            blit(image.getLevel(0), region, pixels);
+        }
+        pixels.position(0);
+        return CardboardTextureData.fromRgba(mSize, mSize, pixels);
+    }
+
+    /**
+     * Copies an image into its region, and extends its edge pixels into the padding.
+     */
+    private void blit(ByteBuffer image, Region region, ByteBuffer atlas) {
+        int rowBytes = region.mWidth * 4;
+        byte[] row = new byte[rowBytes];
+        int top = Math.max(0, region.mY - mPadding);
+        int bottom = Math.min(mSize, region.mY + region.mHeight + mPadding);
+        int left = Math.max(0, region.mX - mPadding);
+        int right = Math.min(mSize, region.mX + region.mWidth + mPadding);
+        for (int y = top; y < bottom; y++) {
+            int sourceY = Math.min(Math.max(y - region.mY, 0), region.mHeight - 1);
+            image.position(sourceY * rowBytes);
+            image.get(row);
+            atlas.position((y * mSize + region.mX) * 4);
+            atlas.put(row);
+            for (int x = left; x < region.mX; x++) {
+                copyPixel(row, 0, atlas, y * mSize + x);
+            }
+            for (int x = region.mX + region.mWidth; x < right; x++) {
+                copyPixel(row, rowBytes - 4, atlas, y * mSize + x);
+            }
+        }
+        image.position(0);
+    }
+
+    private static void copyPixel(byte[] row, int offset, ByteBuffer atlas, int pixel) {
+        atlas.position(pixel * 4);
+        atlas.put(row, offset, 4);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * CardboardTextureData.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The pixels of a texture, ready to be uploaded: one direct buffer per mipmap level, either
+ * uncompressed or in one of the ETC formats.
+ *
+ * <p>ETC1 is supported by every OpenGL ES 2 device, and takes an eighth of the memory of RGBA.
+ * ETC2 adds alpha, but needs OpenGL ES 3. Compressed data is read from PKM files, which hold a
+ * single level, or KTX files, which may hold a full mipmap chain. The driver can't generate
+ * mipmaps for compressed textures, so they have to come with the file.
+ *
+ * <p>Reading doesn't make GL calls, so it can run on the asset loader's thread.
+ */
+public class CardboardTextureData {
+    /** From OES_compressed_ETC1_RGB8_texture, whose Java binding is in GLES11Ext. */
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+
+    private static final byte[] PKM_MAGIC = { 'P', 'K', 'M', ' ' };
+    private static final int PKM_ETC1_RGB = 0;
+    private static final int PKM_ETC2_RGB = 1;
+    private static final int PKM_ETC2_RGBA = 3;
+
+    private static final byte[] KTX_MAGIC = { (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1',
+        (byte) 0xBB, '\r', '\n', 0x1A, '\n' };
+    private static final int KTX_ENDIANNESS = 0x04030201;
+
+    private final int mFormat;
+    private final int mType;
+    private final int mWidth;
+    private final int mHeight;
+    private final ByteBuffer[] mLevels;
+
+    /**
+     * @param format The internal format, e.g. GL_RGBA or GL_ETC1_RGB8_OES.
+     * @param type The pixel type of uncompressed data, e.g. GL_UNSIGNED_BYTE, or 0 for
+     *     compressed data.
+     * @param levels The mipmap levels, from the full size down. Each must be a direct buffer
+     *     positioned at 0.
+     */
+    public CardboardTextureData(int format, int type, int width, int height, ByteBuffer[] levels) {
+        mFormat = format;
+        mType = type;
+        mWidth = width;
+        mHeight = height;
+        mLevels = levels;
+    }
+
+    /**
+     * Wraps uncompressed 8-bit RGBA pixels, e.g. a decoded bitmap.
+     */
+    public static CardboardTextureData fromRgba(int width, int height, ByteBuffer pixels) {
+        return new CardboardTextureData(GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, width, height,
+                new ByteBuffer[] { pixels });
+    }
+
+    /**
+     * Reads an ETC1 or ETC2 texture in the PKM format of the Khronos and Mali tools: a 16-byte
+     * big-endian header and a single level.
+     */
+    public static CardboardTextureData readPkm(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        if (!matches(magic, PKM_MAGIC)) {
+            throw new IOException("Not a PKM file");
+        }
+        // The version, "10" or "20", follows from the format.
+        in.readUnsignedShort();
+        int pkmFormat = in.readUnsignedShort();
+        int paddedWidth = in.readUnsignedShort();
+        int paddedHeight = in.readUnsignedShort();
+        int width = in.readUnsignedShort();
+        int height = in.readUnsignedShort();
+
+        int format;
+        switch (pkmFormat) {
+            case PKM_ETC1_RGB:
+                format = GL_ETC1_RGB8_OES;
+                break;
+            case PKM_ETC2_RGB:
+                format = GLES30.GL_COMPRESSED_RGB8_ETC2;
+                break;
+            case PKM_ETC2_RGBA:
+                format = GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC;
+                break;
+            default:
+                throw new IOException("Unsupported PKM format " + pkmFormat);
+        }
+        int size = (paddedWidth / 4) * (paddedHeight / 4) * blockBytes(format);
+        return new CardboardTextureData(format, 0, width, height,
+                new ByteBuffer[] { read(in, size) });
+    }
+
+    /**
+     * Reads a 2D texture in the KTX 1 format, with every mipmap level it holds.
+     */
+    public static CardboardTextureData readKtx(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        byte[] magic = new byte[KTX_MAGIC.length];
+        in.readFully(magic);
+        if (!matches(magic, KTX_MAGIC)) {
+            throw new IOException("Not a KTX file");
+        }
+        // The header is in the byte order of the machine that wrote it.
+        ByteBuffer header = ByteBuffer.wrap(readBytes(in, 13 * 4)).order(ByteOrder.BIG_ENDIAN);
+        if (header.getInt(0) != KTX_ENDIANNESS) {
+            header.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int type = header.getInt(4);
+        // Uncompressed data is uploaded with its unsized format, as OpenGL ES 2 requires.
+        int format = type != 0 ? header.getInt(12) : header.getInt(16);
+        int width = header.getInt(24);
+        int height = header.getInt(28);
+        int depth = header.getInt(32);
+        int arrayElements = header.getInt(36);
+        int faces = header.getInt(40);
+        int levelCount = Math.max(1, header.getInt(44));
+        int keyValueBytes = header.getInt(48);
+        if (depth > 0 || arrayElements > 0 || faces != 1) {
+            throw new IOException("Only 2D KTX textures are supported");
+        }
+        skip(in, keyValueBytes);
+
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        byte[] sizeBytes = new byte[4];
+        for (int level = 0; level < levelCount; level++) {
+            in.readFully(sizeBytes);
+            int size = ByteBuffer.wrap(sizeBytes).order(header.order()).getInt();
+            levels[level] = read(in, size);
+            // Levels are padded to 4 bytes.
+            skip(in, 3 - (size + 3) % 4);
+        }
+        return new CardboardTextureData(format, type, width, height, levels);
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    public boolean isCompressed() {
+        return mType == 0;
+    }
+
+    /**
+     * Returns whether the data needs OpenGL ES 3 to be uploaded.
+     */
+    public boolean isEtc2() {
+        return mFormat == GLES30.GL_COMPRESSED_RGB8_ETC2
+                || mFormat == GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getLevelCount() {
+        return mLevels.length;
+    }
+
+    public ByteBuffer getLevel(int level) {
+        return mLevels[level];
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, mWidth >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, mHeight >> level);
+    }
+
+    /**
+     * Returns the size of every level together.
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (ByteBuffer level : mLevels) {
+            size += level.remaining();
+        }
+        return size;
+    }
+
+    private static int blockBytes(int format) {
+        // A 4x4 block takes 64 bits, and another 64 for EAC alpha.
+        return format == GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC ? 16 : 8;
+    }
+
+    private static ByteBuffer read(DataInputStream in, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        buffer.put(readBytes(in, size));
+        buffer.position(0);
+        return buffer;
+    }
+
+    private static byte[] readBytes(DataInputStream in, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void skip(DataInputStream in, int count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped <= 0) {
+                // skipBytes also stops short before the end of the stream.
+                in.readByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static boolean matches(byte[] bytes, byte[] magic) {
+        for (int i = 0; i < magic.length; i++) {
+            if (bytes[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
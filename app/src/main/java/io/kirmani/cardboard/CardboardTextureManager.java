@@ -0,0 +1,312 @@
+/*
+ * CardboardTextureManager.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares textures between objects and keeps their GPU memory under a cap.
+ *
+ * <p>Textures are looked up by key and reference counted, so objects that use the same image
+ * share one texture object. Pixels are loaded through the scene's {@link CardboardAssetLoader},
+ * off the GL thread and uploaded within its per-frame budget, the first time a texture is bound.
+ * Uncompressed textures get their mipmaps generated by the driver; ETC1 and ETC2 textures are
+ * uploaded as they are, with the levels their file holds. ETC2 needs OpenGL ES 3, and fails to
+ * load on OpenGL ES 2.
+ *
+ * <p>When the resident textures take more than the memory cap, the least recently bound ones are
+ * evicted at the start of the next frame. Textures nobody holds a reference to go first, and are
+ * forgotten; referenced ones just lose their texture object and are loaded again when they are
+ * next bound. Textures bound in the previous frame are never evicted, so a scene that needs more
+ * than the cap goes over it rather than reloading textures every frame.
+ *
+ * <p>All methods must be called on the GL thread.
+ */
+public class CardboardTextureManager {
+    private static final String TAG = "CardboardTextureManager";
+
+    /** The default cap on the memory taken by resident textures, in bytes. */
+    public static final long DEFAULT_MEMORY_CAP = 32L * 1024 * 1024;
+
+    private final CardboardAssetLoader mAssetLoader;
+    private final Map<String, CardboardTexture> mTextures = new HashMap<String, CardboardTexture>();
+    // Reused by trim().
+    private final List<CardboardTexture> mResident = new ArrayList<CardboardTexture>();
+
+    private long mMemoryCap = DEFAULT_MEMORY_CAP;
+    private long mResidentBytes;
+    private long mFrame;
+
+    private int mFallbackHandle;
+    // Read on the loader's thread, to fail ETC2 textures before they are uploaded.
+    private volatile boolean mEs3;
+    private int mMaxTextureSize;
+
+    public CardboardTextureManager(CardboardAssetLoader assetLoader) {
+        mAssetLoader = assetLoader;
+    }
+
+    /**
+     * Returns the texture for a key, creating it if there is none, and takes a reference to it.
+     * Nothing is loaded until the texture is first bound.
+     *
+     * @param key Identifies the texture, e.g. its asset path.
+     * @param source Loads the pixels. Ignored when the key already has a texture.
+     * @param mipmaps Whether to generate mipmaps for uncompressed data.
+     */
+    public CardboardTexture acquire(String key, CardboardTexture.Source source,
+            boolean mipmaps) {
+        CardboardTexture texture = mTextures.get(key);
+        if (texture == null) {
+            texture = new CardboardTexture(this, key, source, mipmaps);
+            mTextures.put(key, texture);
+        }
+        texture.mRefCount++;
+        return texture;
+    }
+
+    /**
+     * Gives back a reference to a texture. A resident texture without references stays resident,
+     * so it can be acquired again for free, until it is evicted.
+     */
+    public void release(CardboardTexture texture) {
+        if (texture.mRefCount == 0) {
+            throw new IllegalStateException("Texture " + texture + " released too often");
+        }
+        texture.mRefCount--;
+        // Nothing to keep of a texture that isn't resident, or on its way.
+        if (texture.mRefCount == 0 && !texture.isResident() && !texture.mLoading) {
+            mTextures.remove(texture.getKey());
+        }
+    }
+
+    /**
+     * Sets the most memory resident textures may take, in bytes. Takes effect on the next frame.
+     */
+    public void setMemoryCap(long bytes) {
+        mMemoryCap = bytes;
+    }
+
+    public long getMemoryCap() {
+        return mMemoryCap;
+    }
+
+    /**
+     * Returns the memory taken by resident textures, counting mipmaps.
+     */
+    public long getResidentBytes() {
+        return mResidentBytes;
+    }
+
+    /**
+     * Returns the number of textures known to the manager, resident or not.
+     */
+    public int getTextureCount() {
+        return mTextures.size();
+    }
+
+    /**
+     * Returns whether ETC2 textures can be uploaded, which takes an OpenGL ES 3 context.
+     */
+    public boolean supportsEtc2() {
+        return mEs3;
+    }
+
+    /**
+     * Returns the largest texture size the context supports, or 0 before the surface was created.
+     */
+    public int getMaxTextureSize() {
+        return mMaxTextureSize;
+    }
+
+    /**
+     * Forgets every texture object, which died with the old EGL context, and creates the
+     * fallback texture in the new one. Referenced textures are loaded again when next bound.
+     */
+    public void onSurfaceCreated() {
+        for (CardboardTexture texture : mTextures.values()) {
+            texture.discard();
+        }
+        mResidentBytes = 0;
+
+        CardboardGL gl = CardboardGLContext.get();
+        String version = gl.glGetString(GLES20.GL_VERSION);
+        mEs3 = version != null && version.startsWith("OpenGL ES 3");
+        int[] values = new int[1];
+        gl.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, values, 0);
+        mMaxTextureSize = values[0];
+
+        gl.glGenTextures(1, values, 0);
+        mFallbackHandle = values[0];
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, mFallbackHandle);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        ByteBuffer white = ByteBuffer.allocateDirect(4);
+        white.put(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff });
+        white.position(0);
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1, 1, 0, GLES20.GL_RGBA,
+                GLES20.GL_UNSIGNED_BYTE, white);
+    }
+
+    /**
+     * Evicts textures until the resident ones fit under the memory cap. Called on the GL thread
+     * at the start of each frame. Deleting textures changes bindings, so the scene's
+     * {@link CardboardGLState} must be invalidated afterwards.
+     */
+    public void onNewFrame() {
+        mFrame++;
+        trim();
+    }
+
+    /**
+     * Deletes every texture object. Textures that are still referenced are loaded again when
+     * next bound.
+     */
+    public void onRendererShutdown() {
+        for (CardboardTexture texture : mTextures.values()) {
+            texture.delete();
+            // The asset loader dropped the requests in flight.
+            texture.mLoading = false;
+        }
+        mResidentBytes = 0;
+        if (mFallbackHandle != 0) {
+            CardboardGLContext.get().glDeleteTextures(1, new int[] { mFallbackHandle }, 0);
+            mFallbackHandle = 0;
+        }
+    }
+
+    int getFallbackHandle() {
+        return mFallbackHandle;
+    }
+
+    /**
+     * Marks a texture as used in this frame, and starts loading it if it isn't resident.
+     */
+    void markUsed(CardboardTexture texture) {
+        texture.mLastUsedFrame = mFrame;
+        if (!texture.isResident() && !texture.mLoading && !texture.mFailed) {
+            texture.mLoading = true;
+            mAssetLoader.load(new TextureRequest(texture));
+        }
+    }
+
+    /**
+     * Returns whether the driver can generate mipmaps for the data: OpenGL ES 2 only does so for
+     * power-of-two sizes.
+     */
+    boolean canGenerateMipmaps(CardboardTextureData data) {
+        return mEs3 || (isPowerOfTwo(data.getWidth()) && isPowerOfTwo(data.getHeight()));
+    }
+
+    /**
+     * Evicts the least recently used resident textures until the rest fit under the cap.
+     */
+    void trim() {
+        if (mResidentBytes <= mMemoryCap) {
+            return;
+        }
+        mResident.clear();
+        for (CardboardTexture texture : mTextures.values()) {
+            // Textures bound in the previous frame are likely bound again in this one.
+            if (texture.isResident() && texture.mLastUsedFrame < mFrame - 1) {
+                mResident.add(texture);
+            }
+        }
+        while (mResidentBytes > mMemoryCap && !mResident.isEmpty()) {
+            CardboardTexture victim = null;
+            int victimIndex = -1;
+            for (int i = 0; i < mResident.size(); i++) {
+                CardboardTexture texture = mResident.get(i);
+                if (victim == null || isBetterVictim(texture, victim)) {
+                    victim = texture;
+                    victimIndex = i;
+                }
+            }
+            mResident.remove(victimIndex);
+            evict(victim);
+        }
+        mResident.clear();
+    }
+
+    private void evict(CardboardTexture texture) {
+        mResidentBytes -= texture.getSizeInBytes();
+        texture.delete();
+        if (texture.mRefCount == 0) {
+            mTextures.remove(texture.getKey());
+        }
+    }
+
+    private static boolean isBetterVictim(CardboardTexture a, CardboardTexture b) {
+        if ((a.mRefCount == 0) != (b.mRefCount == 0)) {
+            return a.mRefCount == 0;
+        }
+        return a.mLastUsedFrame < b.mLastUsedFrame;
+    }
+
+    private static boolean isPowerOfTwo(int value) {
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+
+    /**
+     * Loads a texture's pixels on the loader's thread and uploads them on the GL thread.
+     */
+    private class TextureRequest extends CardboardAssetLoader.Request<CardboardTextureData> {
+        private final CardboardTexture mTexture;
+
+        TextureRequest(CardboardTexture texture) {
+            mTexture = texture;
+        }
+
+        @Override
+        protected CardboardTextureData load() throws Exception {
+            CardboardTextureData data = mTexture.getSource().load();
+            if (data.isEtc2() && !mEs3) {
+                throw new IOException("ETC2 needs OpenGL ES 3");
+            }
+            return data;
+        }
+
+        @Override
+        protected boolean upload(CardboardTextureData data, int maxBytes) {
+            return mTexture.uploadPart(data, maxBytes);
+        }
+
+        @Override
+        protected void onContextLost(CardboardTextureData data) {
+            mTexture.discardUpload();
+        }
+
+        @Override
+        protected void onLoaded(CardboardTextureData data) {
+            mTexture.mLoading = false;
+            mResidentBytes += mTexture.getSizeInBytes();
+        }
+
+        @Override
+        protected void onFailed(Exception error) {
+            Log.e(TAG, "Could not load texture " + mTexture, error);
+            mTexture.mLoading = false;
+            // Not retried, the texture binds the fallback from now on.
+            mTexture.mFailed = true;
+        }
+
+        @Override
+        public String toString() {
+            return mTexture.toString();
+        }
+    }
+}
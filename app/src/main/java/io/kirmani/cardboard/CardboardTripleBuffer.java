@@ -0,0 +1,70 @@
+/*
+ * CardboardTripleBuffer.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands data from one producer thread to one consumer thread without locks.
+ *
+ * <p>The data lives in three slots, which the caller keeps, e.g. as arrays of three, and this
+ * class only says which slot is which. The producer writes the back slot and publishes it, which
+ * swaps it with the middle one. The consumer acquires the middle slot when it holds something
+ * newer than the front slot, which swaps those two. Either side takes a single atomic swap, and
+ * neither ever waits for the other. The consumer always gets the newest published data; older
+ * data it didn't get to is overwritten.
+ *
+ * <p>Everything the producer wrote to the back slot before publishing is visible to the consumer
+ * once it has acquired it.
+ */
+public class CardboardTripleBuffer {
+    // The middle slot's index, and whether it holds data the consumer hasn't acquired yet.
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+    // Only touched by the producer.
+    private int mBack = 0;
+    // Only touched by the consumer.
+    private int mFront = 2;
+
+    /**
+     * Returns the slot the producer writes to.
+     */
+    public int getBackIndex() {
+        return mBack;
+    }
+
+    /**
+     * Hands the back slot to the consumer. Called by the producer.
+     */
+    public void publish() {
+        mBack = mMiddle.getAndSet(mBack | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Makes the newest published slot the front one, if there is one the consumer hasn't
+     * acquired yet. Called by the consumer.
+     *
+     * @return Whether the front slot changed.
+     */
+    public boolean acquire() {
+        if ((mMiddle.get() & FRESH) == 0) {
+            return false;
+        }
+        mFront = mMiddle.getAndSet(mFront) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Returns the slot the consumer reads from.
+     */
+    public int getFrontIndex() {
+        return mFront;
+    }
+}
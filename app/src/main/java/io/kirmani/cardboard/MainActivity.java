@@ -14,7 +14,22 @@ import com.google.vrtoolkit.cardboard.Eye;
 import com.google.vrtoolkit.cardboard.HeadTransform;
 import com.google.vrtoolkit.cardboard.Viewport;
 
+import android.content.Context;
+import android.content.Intent;
 import android.os.Bundle;
+import android.os.Vibrator;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 
 import javax.microedition.khronos.egl.EGLConfig;
 
@@ -24,11 +39,21 @@ import javax.microedition.khronos.egl.EGLConfig;
 public class MainActivity extends CardboardActivity implements CardboardView.StereoRenderer {
     private static final String TAG = "MainActivity";
 
+    private static final String FRAME_STATS_FILE = "frame_stats.txt";
+
+    // Launch with one of these set to record the head poses of the session into HEAD_TRACE_FILE,
+    // or to replay the poses recorded there as a repeatable workload, e.g.
+    //   adb shell am start -n io.kirmani.cardboard/.MainActivity \
+    //       --ez io.kirmani.cardboard.REPLAY_HEAD true
+    public static final String EXTRA_RECORD_HEAD = "io.kirmani.cardboard.RECORD_HEAD";
+    public static final String EXTRA_REPLAY_HEAD = "io.kirmani.cardboard.REPLAY_HEAD";
+    private static final String HEAD_TRACE_FILE = "head_trace.bin";
+
     private CardboardOverlayView mOverlayView;
-    private CardboardCube mCube;
-    private CardboardFloor mFloor;
-    private CardboardCamera mCamera;
     private CardboardScene mScene;
+    private Vibrator mVibrator;
+    private final CardboardProfiler mProfiler = new CardboardProfiler(BuildConfig.DEBUG);
+    private CardboardHeadTrace mHeadTrace;
 
     /**
      * Sets the view to our CardboardView and initializes the transformation matrices we will use
@@ -44,21 +69,103 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
         cardboardView.setRenderer(this);
         setCardboardView(cardboardView);
 
-        mScene = new CardboardScene();
+        // Check every draw while developing. Release builds only check every few frames.
+        CardboardGLDebug.setMode(BuildConfig.DEBUG ? CardboardGLDebug.MODE_FULL
+                : CardboardGLDebug.MODE_SAMPLED);
+
+        mScene = new CardboardScene(this);
+        mScene.setProfiler(mProfiler);
+        mScene.setCamera(new CardboardCamera(this, mScene));
+        mScene.addObject(new CardboardCube(this, mScene));
+        mScene.addObject(new CardboardFloor(this, mScene));
 
-        mCube = new CardboardCube(this, mScene);
-        mFloor = new CardboardFloor(this, mScene);
-        mCamera = new CardboardCamera(this, mScene);
+        // The GL thread hasn't started yet, so the recording can be set up from here.
+        Intent intent = getIntent();
+        if (intent.getBooleanExtra(EXTRA_REPLAY_HEAD, false)) {
+            startReplay();
+        } else if (intent.getBooleanExtra(EXTRA_RECORD_HEAD, false)) {
+            mHeadTrace = new CardboardHeadTrace();
+            mScene.startHeadRecording(mHeadTrace);
+        }
+
+        mVibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
 
         mOverlayView = (CardboardOverlayView) findViewById(R.id.overlay);
         mOverlayView.show3DToast("Pull the magnet when you find an object.");
     }
 
     @Override
-    public void onRendererShutdown() {}
+    protected void onResume() {
+        super.onResume();
+        mScene.onResume();
+    }
 
+    /**
+     * Stops the simulation, saves the head poses recorded so far, and dumps the frame statistics
+     * of the session, to logcat and to a file in the app's files directory.
+     */
     @Override
-    public void onSurfaceChanged(int width, int height) {}
+    protected void onPause() {
+        super.onPause();
+        mScene.onPause();
+        // The GL thread is paused by now, so it no longer adds to the trace.
+        if (mHeadTrace != null) {
+            writeHeadTrace();
+        }
+        if (!mProfiler.isEnabled()) {
+            return;
+        }
+        mProfiler.log();
+        File file = new File(getFilesDir(), FRAME_STATS_FILE);
+        try {
+            Writer out = new FileWriter(file);
+            try {
+                mProfiler.dump(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + file, e);
+        }
+    }
+
+    private void startReplay() {
+        File file = new File(getFilesDir(), HEAD_TRACE_FILE);
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                mScene.startReplay(CardboardHeadTrace.read(in));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + file, e);
+        }
+    }
+
+    private void writeHeadTrace() {
+        File file = new File(getFilesDir(), HEAD_TRACE_FILE);
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                mHeadTrace.write(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + file, e);
+        }
+    }
+
+    @Override
+    public void onRendererShutdown() {
+        mScene.onRendererShutdown();
+    }
+
+    @Override
+    public void onSurfaceChanged(int width, int height) {
+        mScene.onSurfaceChanged(width, height);
+    }
 
     /**
      * Creates the buffers we use to store information about the 3D world.
@@ -70,8 +177,8 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
      */
     @Override
     public void onSurfaceCreated(EGLConfig config) {
-        mCube.onSurfaceCreated(config);
-        mFloor.onSurfaceCreated(config);
+        mProfiler.onSurfaceCreated();
+        mScene.onSurfaceCreated(config);
     }
 
     /**
@@ -81,8 +188,10 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
      */
     @Override
     public void onNewFrame(HeadTransform headTransform) {
-        mCube.onNewFrame(headTransform);
-        mCamera.onNewFrame(headTransform);
+        mProfiler.beginFrame();
+        long start = mProfiler.begin();
+        mScene.onNewFrame(headTransform);
+        mProfiler.end(CardboardProfiler.CPU_NEW_FRAME, start);
     }
 
     /**
@@ -92,19 +201,35 @@ public class MainActivity extends CardboardActivity implements CardboardView.Ste
      */
     @Override
     public void onDrawEye(Eye eye) {
-        mCamera.onDrawEye(eye);
-        mCube.onDrawEye(eye);
-        mFloor.onDrawEye(eye);
+        long start = mProfiler.begin();
+        mScene.onDrawEye(eye);
+        mProfiler.end(CardboardProfiler.CPU_DRAW_EYE, start);
     }
 
+    /**
+     * Called after both eyes have been drawn and distorted.
+     *
+     * @param viewport The viewport of the full display.
+     */
     @Override
-    public void onFinishFrame(Viewport viewport) {}
+    public void onFinishFrame(Viewport viewport) {
+        long start = mProfiler.begin();
+        CardboardGLDebug.checkFrame("frame");
+        mProfiler.end(CardboardProfiler.CPU_FINISH_FRAME, start);
+        mProfiler.endFrame();
+    }
 
     /**
-     * Called when the Cardboard trigger is pulled.
+     * Called when the Cardboard trigger is pulled. The scene passes it on to the object the user
+     * is looking at, if any.
      */
     @Override
     public void onCardboardTrigger() {
-        mCube.onCardboardTrigger();
+        if (!mScene.onCardboardTrigger()) {
+            mOverlayView.show3DToast("Look around to find the object!");
+        }
+
+        // Always give user feedback.
+        mVibrator.vibrate(50);
     }
 }
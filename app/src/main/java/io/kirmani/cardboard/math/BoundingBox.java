@@ -0,0 +1,171 @@
+/*
+ * BoundingBox.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.math;
+
+/**
+ * A mutable axis-aligned bounding box. A new box is empty until a point is added to it.
+ */
+public final class BoundingBox {
+    public final Vec3 min = new Vec3();
+    public final Vec3 max = new Vec3();
+
+    public BoundingBox() {
+        setEmpty();
+    }
+
+    public BoundingBox setEmpty() {
+        min.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+        max.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return min.x > max.x || min.y > max.y || min.z > max.z;
+    }
+
+    public BoundingBox set(BoundingBox other) {
+        min.set(other.min);
+        max.set(other.max);
+        return this;
+    }
+
+    public BoundingBox set(float minX, float minY, float minZ, float maxX, float maxY,
+            float maxZ) {
+        min.set(minX, minY, minZ);
+        max.set(maxX, maxY, maxZ);
+        return this;
+    }
+
+    /**
+     * Grows the box to contain a point.
+     */
+    public BoundingBox include(float x, float y, float z) {
+        min.set(Math.min(min.x, x), Math.min(min.y, y), Math.min(min.z, z));
+        max.set(Math.max(max.x, x), Math.max(max.y, y), Math.max(max.z, z));
+        return this;
+    }
+
+    /**
+     * Grows the box to contain another box.
+     */
+    public BoundingBox include(BoundingBox other) {
+        if (!other.isEmpty()) {
+            include(other.min.x, other.min.y, other.min.z);
+            include(other.max.x, other.max.y, other.max.z);
+        }
+        return this;
+    }
+
+    public Vec3 getCenter(Vec3 out) {
+        return out.set((min.x + max.x) * 0.5f, (min.y + max.y) * 0.5f, (min.z + max.z) * 0.5f);
+    }
+
+    /**
+     * Returns the radius of the sphere around the center that contains the box.
+     */
+    public float getRadius() {
+        if (isEmpty()) {
+            return 0.0f;
+        }
+        float dx = max.x - min.x;
+        float dy = max.y - min.y;
+        float dz = max.z - min.z;
+        return 0.5f * (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    public boolean contains(Vec3 point) {
+        return point.x >= min.x && point.x <= max.x && point.y >= min.y && point.y <= max.y
+                && point.z >= min.z && point.z <= max.z;
+    }
+
+    public boolean intersects(BoundingBox other) {
+        return min.x <= other.max.x && max.x >= other.min.x && min.y <= other.max.y
+                && max.y >= other.min.y && min.z <= other.max.z && max.z >= other.min.z;
+    }
+
+    /**
+     * Returns the distance along a ray at which it enters the box, 0 if it starts inside, or a
+     * negative value if it misses.
+     *
+     * @param origin The start of the ray.
+     * @param direction The direction of the ray. Distances are in multiples of its length.
+     */
+    public float intersectRay(Vec3 origin, Vec3 direction) {
+        if (isEmpty()) {
+            return -1.0f;
+        }
+        float near = 0.0f;
+        float far = Float.POSITIVE_INFINITY;
+        float t1 = (min.x - origin.x) / direction.x;
+        float t2 = (max.x - origin.x) / direction.x;
+        near = max(near, Math.min(t1, t2));
+        far = min(far, Math.max(t1, t2));
+        t1 = (min.y - origin.y) / direction.y;
+        t2 = (max.y - origin.y) / direction.y;
+        near = max(near, Math.min(t1, t2));
+        far = min(far, Math.max(t1, t2));
+        t1 = (min.z - origin.z) / direction.z;
+        t2 = (max.z - origin.z) / direction.z;
+        near = max(near, Math.min(t1, t2));
+        far = min(far, Math.max(t1, t2));
+        return near <= far ? near : -1.0f;
+    }
+
+    /**
+     * Like Math.max, but ignores a NaN in b, which comes from a ray parallel to a slab that starts
+     * on its boundary.
+     */
+    private static float max(float a, float b) {
+        return b > a ? b : a;
+    }
+
+    private static float min(float a, float b) {
+        return b < a ? b : a;
+    }
+
+    /**
+     * Sets out to the axis-aligned box that contains this box transformed by a matrix. out may be
+     * this box.
+     */
+    public BoundingBox transform(Mat4 matrix, BoundingBox out) {
+        if (isEmpty()) {
+            return out.setEmpty();
+        }
+        // Arvo's method: each output extent is the sum of the extremes of every column's
+        // contribution, which avoids transforming all eight corners.
+        float[] m = matrix.m;
+        float minX = m[12];
+        float minY = m[13];
+        float minZ = m[14];
+        float maxX = minX;
+        float maxY = minY;
+        float maxZ = minZ;
+        for (int c = 0; c < 3; c++) {
+            float lo = c == 0 ? min.x : (c == 1 ? min.y : min.z);
+            float hi = c == 0 ? max.x : (c == 1 ? max.y : max.z);
+            float ax = m[c * 4] * lo;
+            float bx = m[c * 4] * hi;
+            float ay = m[c * 4 + 1] * lo;
+            float by = m[c * 4 + 1] * hi;
+            float az = m[c * 4 + 2] * lo;
+            float bz = m[c * 4 + 2] * hi;
+            minX += Math.min(ax, bx);
+            maxX += Math.max(ax, bx);
+            minY += Math.min(ay, by);
+            maxY += Math.max(ay, by);
+            minZ += Math.min(az, bz);
+            maxZ += Math.max(az, bz);
+        }
+        return out.set(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + min + " - " + max + "]";
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Frustum.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.math;
+
+/**
+ * The six planes of a view frustum, used to reject objects that can't be seen.
+ *
+ * <p>Planes are stored as (a, b, c, d) with the normal (a, b, c) normalized and pointing into the
+ * frustum, so a point p is inside a plane when a * p.x + b * p.y + c * p.z + d >= 0. The tests are
+ * conservative: they may report an intersection for something just outside a corner, but never
+ * reject something that is visible.
+ */
+public final class Frustum {
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    public static final int BOTTOM = 2;
+    public static final int TOP = 3;
+    public static final int NEAR = 4;
+    public static final int FAR = 5;
+
+    private final Vec4[] mPlanes = new Vec4[6];
+
+    public Frustum() {
+        for (int i = 0; i < mPlanes.length; i++) {
+            mPlanes[i] = new Vec4();
+        }
+    }
+
+    /**
+     * Extracts the planes from a projection times view matrix, in world space (Gribb/Hartmann).
+     */
+    public Frustum set(Mat4 viewProjection) {
+        float[] m = viewProjection.m;
+        // Row i of a column-major matrix is (m[i], m[4 + i], m[8 + i], m[12 + i]).
+        for (int i = 0; i < 3; i++) {
+            Vec4 lower = mPlanes[i * 2];
+            Vec4 upper = mPlanes[i * 2 + 1];
+            lower.set(m[3] + m[i], m[7] + m[4 + i], m[11] + m[8 + i], m[15] + m[12 + i]);
+            upper.set(m[3] - m[i], m[7] - m[4 + i], m[11] - m[8 + i], m[15] - m[12 + i]);
+            normalize(lower);
+            normalize(upper);
+        }
+        return this;
+    }
+
+    public Frustum set(Frustum other) {
+        for (int i = 0; i < mPlanes.length; i++) {
+            mPlanes[i].set(other.mPlanes[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Returns one of the planes, e.g. {@link #LEFT}. It may be modified in place.
+     */
+    public Vec4 getPlane(int plane) {
+        return mPlanes[plane];
+    }
+
+    public boolean intersectsSphere(Vec3 center, float radius) {
+        for (int i = 0; i < mPlanes.length; i++) {
+            if (mPlanes[i].dotPoint(center) < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean intersectsBox(BoundingBox box) {
+        if (box.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < mPlanes.length; i++) {
+            Vec4 p = mPlanes[i];
+            // Test the corner furthest along the plane normal.
+            float x = p.x >= 0.0f ? box.max.x : box.min.x;
+            float y = p.y >= 0.0f ? box.max.y : box.min.y;
+            float z = p.z >= 0.0f ? box.max.z : box.min.z;
+            if (p.x * x + p.y * y + p.z * z + p.w < 0.0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void normalize(Vec4 plane) {
+        float length = (float) Math.sqrt(plane.x * plane.x + plane.y * plane.y
+                + plane.z * plane.z);
+        if (length > 0.0f) {
+            plane.scale(1.0f / length);
+        }
+    }
+}
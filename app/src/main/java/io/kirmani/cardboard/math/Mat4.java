@@ -0,0 +1,380 @@
+/*
+ * Mat4.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.math;
+
+/**
+ * A mutable 4x4 matrix in the column-major layout used by OpenGL and {@link android.opengl.Matrix}.
+ *
+ * <p>The elements live in {@link #m}, which can be handed straight to glUniformMatrix4fv. Every
+ * operation writes into this matrix and never allocates; arguments may alias this matrix. Angles
+ * are in degrees, as in {@link android.opengl.Matrix}.
+ */
+public final class Mat4 {
+    public final float[] m = new float[16];
+
+    public Mat4() {
+        setIdentity();
+    }
+
+    public Mat4 setIdentity() {
+        for (int i = 0; i < 16; i++) {
+            m[i] = (i % 5) == 0 ? 1.0f : 0.0f;
+        }
+        return this;
+    }
+
+    public Mat4 set(Mat4 other) {
+        System.arraycopy(other.m, 0, m, 0, 16);
+        return this;
+    }
+
+    public Mat4 set(float[] src, int offset) {
+        System.arraycopy(src, offset, m, 0, 16);
+        return this;
+    }
+
+    /**
+     * Sets this matrix to lhs * rhs.
+     */
+    public Mat4 multiply(Mat4 lhs, Mat4 rhs) {
+        multiply(m, 0, lhs.m, 0, rhs.m, 0);
+        return this;
+    }
+
+    /**
+     * Sets this matrix to lhs * rhs, for a left-hand side that comes as an array, such as an eye
+     * view or a perspective matrix from the Cardboard SDK.
+     */
+    public Mat4 multiply(float[] lhs, int lhsOffset, Mat4 rhs) {
+        multiply(m, 0, lhs, lhsOffset, rhs.m, 0);
+        return this;
+    }
+
+    /**
+     * Multiplies two column-major matrices stored in arrays. The result may alias either operand
+     * at the same offset.
+     */
+    public static void multiply(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+            float[] rhs, int rhsOffset) {
+        // Cache lhs so that writing the result can't clobber it.
+        float l00 = lhs[lhsOffset];
+        float l10 = lhs[lhsOffset + 1];
+        float l20 = lhs[lhsOffset + 2];
+        float l30 = lhs[lhsOffset + 3];
+        float l01 = lhs[lhsOffset + 4];
+        float l11 = lhs[lhsOffset + 5];
+        float l21 = lhs[lhsOffset + 6];
+        float l31 = lhs[lhsOffset + 7];
+        float l02 = lhs[lhsOffset + 8];
+        float l12 = lhs[lhsOffset + 9];
+        float l22 = lhs[lhsOffset + 10];
+        float l32 = lhs[lhsOffset + 11];
+        float l03 = lhs[lhsOffset + 12];
+        float l13 = lhs[lhsOffset + 13];
+        float l23 = lhs[lhsOffset + 14];
+        float l33 = lhs[lhsOffset + 15];
+        for (int c = 0; c < 16; c += 4) {
+            // Each result column only depends on the same rhs column, which is read first.
+            float r0 = rhs[rhsOffset + c];
+            float r1 = rhs[rhsOffset + c + 1];
+            float r2 = rhs[rhsOffset + c + 2];
+            float r3 = rhs[rhsOffset + c + 3];
+            result[resultOffset + c] = l00 * r0 + l01 * r1 + l02 * r2 + l03 * r3;
+            result[resultOffset + c + 1] = l10 * r0 + l11 * r1 + l12 * r2 + l13 * r3;
+            result[resultOffset + c + 2] = l20 * r0 + l21 * r1 + l22 * r2 + l23 * r3;
+            result[resultOffset + c + 3] = l30 * r0 + l31 * r1 + l32 * r2 + l33 * r3;
+        }
+    }
+
+    /**
+     * Sets this matrix to a translation.
+     */
+    public Mat4 setTranslation(float x, float y, float z) {
+        setIdentity();
+        m[12] = x;
+        m[13] = y;
+        m[14] = z;
+        return this;
+    }
+
+    /**
+     * Post-multiplies this matrix by a translation, like {@link android.opengl.Matrix#translateM}.
+     */
+    public Mat4 translate(float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
+        }
+        return this;
+    }
+
+    /**
+     * Post-multiplies this matrix by a scale, like {@link android.opengl.Matrix#scaleM}.
+     */
+    public Mat4 scale(float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[i] *= x;
+            m[4 + i] *= y;
+            m[8 + i] *= z;
+        }
+        return this;
+    }
+
+    /**
+     * Sets this matrix to a rotation around an axis, like {@link android.opengl.Matrix#setRotateM}.
+     */
+    public Mat4 setRotation(float angle, float x, float y, float z) {
+        setIdentity();
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length == 0.0f) {
+            return this;
+        }
+        x /= length;
+        y /= length;
+        z /= length;
+        double radians = Math.toRadians(angle);
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float nc = 1.0f - c;
+        m[0] = x * x * nc + c;
+        m[1] = y * x * nc + z * s;
+        m[2] = x * z * nc - y * s;
+        m[4] = x * y * nc - z * s;
+        m[5] = y * y * nc + c;
+        m[6] = y * z * nc + x * s;
+        m[8] = x * z * nc + y * s;
+        m[9] = y * z * nc - x * s;
+        m[10] = z * z * nc + c;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to the rotation of a unit quaternion.
+     */
+    public Mat4 setRotation(Quat q) {
+        setIdentity();
+        float xx = q.x * q.x;
+        float yy = q.y * q.y;
+        float zz = q.z * q.z;
+        float xy = q.x * q.y;
+        float xz = q.x * q.z;
+        float yz = q.y * q.z;
+        float wx = q.w * q.x;
+        float wy = q.w * q.y;
+        float wz = q.w * q.z;
+        m[0] = 1.0f - 2.0f * (yy + zz);
+        m[1] = 2.0f * (xy + wz);
+        m[2] = 2.0f * (xz - wy);
+        m[4] = 2.0f * (xy - wz);
+        m[5] = 1.0f - 2.0f * (xx + zz);
+        m[6] = 2.0f * (yz + wx);
+        m[8] = 2.0f * (xz + wy);
+        m[9] = 2.0f * (yz - wx);
+        m[10] = 1.0f - 2.0f * (xx + yy);
+        return this;
+    }
+
+    /**
+     * Post-multiplies this matrix by a rotation around an axis, like
+     * {@link android.opengl.Matrix#rotateM}, without a temporary matrix.
+     */
+    public Mat4 rotate(float angle, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length == 0.0f) {
+            return this;
+        }
+        x /= length;
+        y /= length;
+        z /= length;
+        double radians = Math.toRadians(angle);
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float nc = 1.0f - c;
+        float r00 = x * x * nc + c;
+        float r10 = y * x * nc + z * s;
+        float r20 = x * z * nc - y * s;
+        float r01 = x * y * nc - z * s;
+        float r11 = y * y * nc + c;
+        float r21 = y * z * nc + x * s;
+        float r02 = x * z * nc + y * s;
+        float r12 = y * z * nc - x * s;
+        float r22 = z * z * nc + c;
+        // The rotation leaves the translation column alone, so only the first three change.
+        for (int i = 0; i < 4; i++) {
+            float c0 = m[i];
+            float c1 = m[4 + i];
+            float c2 = m[8 + i];
+            m[i] = c0 * r00 + c1 * r10 + c2 * r20;
+            m[4 + i] = c0 * r01 + c1 * r11 + c2 * r21;
+            m[8 + i] = c0 * r02 + c1 * r12 + c2 * r22;
+        }
+        return this;
+    }
+
+    /**
+     * Sets this matrix to a view matrix, like {@link android.opengl.Matrix#setLookAtM}.
+     */
+    public Mat4 setLookAt(float eyeX, float eyeY, float eyeZ, float centerX, float centerY,
+            float centerZ, float upX, float upY, float upZ) {
+        float fx = centerX - eyeX;
+        float fy = centerY - eyeY;
+        float fz = centerZ - eyeZ;
+        float rlf = 1.0f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx *= rlf;
+        fy *= rlf;
+        fz *= rlf;
+
+        // s = f x up
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+        float rls = 1.0f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+        sx *= rls;
+        sy *= rls;
+        sz *= rls;
+
+        // u = s x f
+        float ux = sy * fz - sz * fy;
+        float uy = sz * fx - sx * fz;
+        float uz = sx * fy - sy * fx;
+
+        m[0] = sx;
+        m[1] = ux;
+        m[2] = -fx;
+        m[3] = 0.0f;
+        m[4] = sy;
+        m[5] = uy;
+        m[6] = -fy;
+        m[7] = 0.0f;
+        m[8] = sz;
+        m[9] = uz;
+        m[10] = -fz;
+        m[11] = 0.0f;
+        m[12] = 0.0f;
+        m[13] = 0.0f;
+        m[14] = 0.0f;
+        m[15] = 1.0f;
+        return translate(-eyeX, -eyeY, -eyeZ);
+    }
+
+    /**
+     * Sets this matrix to the inverse of a rigid transform, i.e. one made only of rotations and
+     * translations such as a view matrix. This is much cheaper than a general inverse.
+     */
+    public Mat4 invertRigid(Mat4 src) {
+        float[] s = src.m;
+        float r01 = s[4];
+        float r02 = s[8];
+        float r12 = s[9];
+        float r10 = s[1];
+        float r20 = s[2];
+        float r21 = s[6];
+        float tx = s[12];
+        float ty = s[13];
+        float tz = s[14];
+        m[0] = s[0];
+        m[5] = s[5];
+        m[10] = s[10];
+        m[1] = r01;
+        m[2] = r02;
+        m[6] = r12;
+        m[4] = r10;
+        m[8] = r20;
+        m[9] = r21;
+        m[3] = 0.0f;
+        m[7] = 0.0f;
+        m[11] = 0.0f;
+        m[12] = -(m[0] * tx + m[4] * ty + m[8] * tz);
+        m[13] = -(m[1] * tx + m[5] * ty + m[9] * tz);
+        m[14] = -(m[2] * tx + m[6] * ty + m[10] * tz);
+        m[15] = 1.0f;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to the normal matrix of another: the inverse transpose of its upper 3x3,
+     * which keeps normals perpendicular to their surface under non-uniform scales. The
+     * translation is cleared. The transformed normals still need to be normalized.
+     */
+    public Mat4 setNormalMatrix(Mat4 src) {
+        float[] s = src.m;
+        float a = s[0];
+        float b = s[4];
+        float c = s[8];
+        float d = s[1];
+        float e = s[5];
+        float f = s[9];
+        float g = s[2];
+        float h = s[6];
+        float i = s[10];
+        // The cofactors, which are the inverse transpose times the determinant.
+        float c00 = e * i - f * h;
+        float c01 = f * g - d * i;
+        float c02 = d * h - e * g;
+        float c10 = c * h - b * i;
+        float c11 = a * i - c * g;
+        float c12 = b * g - a * h;
+        float c20 = b * f - c * e;
+        float c21 = c * d - a * f;
+        float c22 = a * e - b * d;
+        float det = a * c00 + b * c01 + c * c02;
+        float scale = det != 0.0f ? 1.0f / det : 0.0f;
+        setIdentity();
+        m[0] = c00 * scale;
+        m[4] = c01 * scale;
+        m[8] = c02 * scale;
+        m[1] = c10 * scale;
+        m[5] = c11 * scale;
+        m[9] = c12 * scale;
+        m[2] = c20 * scale;
+        m[6] = c21 * scale;
+        m[10] = c22 * scale;
+        return this;
+    }
+
+    /**
+     * Transforms a point, treating it as (x, y, z, 1) and ignoring the resulting w.
+     */
+    public Vec3 transformPoint(Vec3 in, Vec3 out) {
+        return out.set(m[0] * in.x + m[4] * in.y + m[8] * in.z + m[12],
+                m[1] * in.x + m[5] * in.y + m[9] * in.z + m[13],
+                m[2] * in.x + m[6] * in.y + m[10] * in.z + m[14]);
+    }
+
+    /**
+     * Transforms a direction, treating it as (x, y, z, 0).
+     */
+    public Vec3 transformDirection(Vec3 in, Vec3 out) {
+        return out.set(m[0] * in.x + m[4] * in.y + m[8] * in.z,
+                m[1] * in.x + m[5] * in.y + m[9] * in.z,
+                m[2] * in.x + m[6] * in.y + m[10] * in.z);
+    }
+
+    public Vec4 transform(Vec4 in, Vec4 out) {
+        return out.set(m[0] * in.x + m[4] * in.y + m[8] * in.z + m[12] * in.w,
+                m[1] * in.x + m[5] * in.y + m[9] * in.z + m[13] * in.w,
+                m[2] * in.x + m[6] * in.y + m[10] * in.z + m[14] * in.w,
+                m[3] * in.x + m[7] * in.y + m[11] * in.z + m[15] * in.w);
+    }
+
+    /**
+     * Returns the largest scale factor along any axis, e.g. to scale a bounding sphere radius.
+     */
+    public float getMaxScale() {
+        float sx = m[0] * m[0] + m[1] * m[1] + m[2] * m[2];
+        float sy = m[4] * m[4] + m[5] * m[5] + m[6] * m[6];
+        float sz = m[8] * m[8] + m[9] * m[9] + m[10] * m[10];
+        return (float) Math.sqrt(Math.max(sx, Math.max(sy, sz)));
+    }
+
+    /**
+     * Returns the translation column, i.e. the origin of the transformed space.
+     */
+    public Vec3 getTranslation(Vec3 out) {
+        return out.set(m[12], m[13], m[14]);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Quat.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.math;
+
+/**
+ * A mutable rotation quaternion, stored as (x, y, z, w) like the Cardboard head transform.
+ *
+ * <p>Like {@link Vec3}, every operation writes into this quaternion and returns it. Arguments may
+ * alias this quaternion.
+ */
+public final class Quat {
+    public float x;
+    public float y;
+    public float z;
+    public float w = 1.0f;
+
+    public Quat setIdentity() {
+        return set(0.0f, 0.0f, 0.0f, 1.0f);
+    }
+
+    public Quat set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    public Quat set(Quat q) {
+        return set(q.x, q.y, q.z, q.w);
+    }
+
+    public Quat set(float[] src, int offset) {
+        return set(src[offset], src[offset + 1], src[offset + 2], src[offset + 3]);
+    }
+
+    /**
+     * Sets this quaternion to a rotation around an axis.
+     *
+     * @param angle The angle in degrees, as in {@link android.opengl.Matrix#setRotateM}.
+     */
+    public Quat setAxisAngle(float angle, float ax, float ay, float az) {
+        float length = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (length == 0.0f) {
+            return setIdentity();
+        }
+        double half = Math.toRadians(angle) * 0.5;
+        float s = (float) Math.sin(half) / length;
+        return set(ax * s, ay * s, az * s, (float) Math.cos(half));
+    }
+
+    /**
+     * Sets this quaternion to the rotation part of a matrix. Any scale along the matrix's axes is
+     * divided out first; shear is not supported.
+     */
+    public Quat setRotation(Mat4 matrix) {
+        float[] m = matrix.m;
+        float sx = length(m[0], m[1], m[2]);
+        float sy = length(m[4], m[5], m[6]);
+        float sz = length(m[8], m[9], m[10]);
+        // r<row><column> of the normalized rotation.
+        float r00 = m[0] / sx;
+        float r10 = m[1] / sx;
+        float r20 = m[2] / sx;
+        float r01 = m[4] / sy;
+        float r11 = m[5] / sy;
+        float r21 = m[6] / sy;
+        float r02 = m[8] / sz;
+        float r12 = m[9] / sz;
+        float r22 = m[10] / sz;
+        float trace = r00 + r11 + r22;
+        // Divides by the largest of the four components, to stay accurate.
+        if (trace > 0.0f) {
+            float s = 0.5f / (float) Math.sqrt(trace + 1.0f);
+            set((r21 - r12) * s, (r02 - r20) * s, (r10 - r01) * s, 0.25f / s);
+        } else if (r00 > r11 && r00 > r22) {
+            float s = 2.0f * (float) Math.sqrt(1.0f + r00 - r11 - r22);
+            set(0.25f * s, (r01 + r10) / s, (r02 + r20) / s, (r21 - r12) / s);
+        } else if (r11 > r22) {
+            float s = 2.0f * (float) Math.sqrt(1.0f + r11 - r00 - r22);
+            set((r01 + r10) / s, 0.25f * s, (r12 + r21) / s, (r02 - r20) / s);
+        } else {
+            float s = 2.0f * (float) Math.sqrt(1.0f + r22 - r00 - r11);
+            set((r02 + r20) / s, (r12 + r21) / s, 0.25f * s, (r10 - r01) / s);
+        }
+        return normalize();
+    }
+
+    /**
+     * Sets this quaternion to a * b, the rotation b followed by a.
+     */
+    public Quat multiply(Quat a, Quat b) {
+        return set(a.w * b.x + a.x * b.w + a.y * b.z - a.z * b.y,
+                a.w * b.y - a.x * b.z + a.y * b.w + a.z * b.x,
+                a.w * b.z + a.x * b.y - a.y * b.x + a.z * b.w,
+                a.w * b.w - a.x * b.x - a.y * b.y - a.z * b.z);
+    }
+
+    public Quat conjugate() {
+        return set(-x, -y, -z, w);
+    }
+
+    public float dot(Quat q) {
+        return x * q.x + y * q.y + z * q.z + w * q.w;
+    }
+
+    public Quat normalize() {
+        float length = (float) Math.sqrt(dot(this));
+        return length > 0.0f ? set(x / length, y / length, z / length, w / length) : setIdentity();
+    }
+
+    /**
+     * Sets this quaternion to the spherical interpolation between a and b, taking the shorter
+     * path.
+     */
+    public Quat slerp(Quat a, Quat b, float t) {
+        float cos = a.dot(b);
+        float sign = 1.0f;
+        if (cos < 0.0f) {
+            cos = -cos;
+            sign = -1.0f;
+        }
+        float wa;
+        float wb;
+        if (cos > 0.9995f) {
+            // Nearly parallel; a normalized lerp is accurate and avoids dividing by sin ~ 0.
+            wa = 1.0f - t;
+            wb = t * sign;
+        } else {
+            double theta = Math.acos(cos);
+            double sin = Math.sin(theta);
+            wa = (float) (Math.sin((1.0 - t) * theta) / sin);
+            wb = (float) (Math.sin(t * theta) / sin) * sign;
+        }
+        set(wa * a.x + wb * b.x, wa * a.y + wb * b.y, wa * a.z + wb * b.z, wa * a.w + wb * b.w);
+        return normalize();
+    }
+
+    /**
+     * Rotates a vector by this quaternion.
+     */
+    public Vec3 rotate(Vec3 in, Vec3 out) {
+        // t = 2 * cross(q.xyz, v); v' = v + w * t + cross(q.xyz, t)
+        float tx = 2.0f * (y * in.z - z * in.y);
+        float ty = 2.0f * (z * in.x - x * in.z);
+        float tz = 2.0f * (x * in.y - y * in.x);
+        return out.set(in.x + w * tx + (y * tz - z * ty),
+                in.y + w * ty + (z * tx - x * tz),
+                in.z + w * tz + (x * ty - y * tx));
+    }
+
+    private static float length(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ", " + z + ", " + w + ")";
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Vec3.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.math;
+
+/**
+ * A mutable 3-component vector.
+ *
+ * <p>Every operation writes into this vector and returns it, so that calls can be chained and
+ * temporaries can be kept in fields instead of being allocated per frame. Arguments may alias
+ * this vector.
+ */
+public final class Vec3 {
+    public float x;
+    public float y;
+    public float z;
+
+    public Vec3() {
+    }
+
+    public Vec3(float x, float y, float z) {
+        set(x, y, z);
+    }
+
+    public Vec3 set(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public Vec3 set(Vec3 v) {
+        return set(v.x, v.y, v.z);
+    }
+
+    /**
+     * Reads three floats from an array, e.g. the translation column of a matrix.
+     */
+    public Vec3 set(float[] src, int offset) {
+        return set(src[offset], src[offset + 1], src[offset + 2]);
+    }
+
+    public void get(float[] dst, int offset) {
+        dst[offset] = x;
+        dst[offset + 1] = y;
+        dst[offset + 2] = z;
+    }
+
+    public Vec3 add(Vec3 v) {
+        return set(x + v.x, y + v.y, z + v.z);
+    }
+
+    public Vec3 subtract(Vec3 v) {
+        return set(x - v.x, y - v.y, z - v.z);
+    }
+
+    public Vec3 scale(float s) {
+        return set(x * s, y * s, z * s);
+    }
+
+    /**
+     * Sets this vector to a + (b - a) * t.
+     */
+    public Vec3 lerp(Vec3 a, Vec3 b, float t) {
+        return set(a.x + (b.x - a.x) * t, a.y + (b.y - a.y) * t, a.z + (b.z - a.z) * t);
+    }
+
+    public float dot(Vec3 v) {
+        return x * v.x + y * v.y + z * v.z;
+    }
+
+    /**
+     * Sets this vector to the cross product a x b.
+     */
+    public Vec3 cross(Vec3 a, Vec3 b) {
+        return set(a.y * b.z - a.z * b.y, a.z * b.x - a.x * b.z, a.x * b.y - a.y * b.x);
+    }
+
+    public float lengthSquared() {
+        return x * x + y * y + z * z;
+    }
+
+    public float length() {
+        return (float) Math.sqrt(lengthSquared());
+    }
+
+    public float distanceSquared(Vec3 v) {
+        float dx = x - v.x;
+        float dy = y - v.y;
+        float dz = z - v.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Scales this vector to unit length. A zero vector is left unchanged.
+     */
+    public Vec3 normalize() {
+        float length = length();
+        return length > 0.0f ? scale(1.0f / length) : this;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ", " + z + ")";
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Vec4.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.math;
+
+/**
+ * A mutable 4-component vector, used for homogeneous coordinates and plane equations.
+ *
+ * <p>Like {@link Vec3}, every operation writes into this vector and returns it.
+ */
+public final class Vec4 {
+    public float x;
+    public float y;
+    public float z;
+    public float w;
+
+    public Vec4() {
+    }
+
+    public Vec4(float x, float y, float z, float w) {
+        set(x, y, z, w);
+    }
+
+    public Vec4 set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    public Vec4 set(Vec4 v) {
+        return set(v.x, v.y, v.z, v.w);
+    }
+
+    public Vec4 set(Vec3 v, float w) {
+        return set(v.x, v.y, v.z, w);
+    }
+
+    public Vec4 set(float[] src, int offset) {
+        return set(src[offset], src[offset + 1], src[offset + 2], src[offset + 3]);
+    }
+
+    public void get(float[] dst, int offset) {
+        dst[offset] = x;
+        dst[offset + 1] = y;
+        dst[offset + 2] = z;
+        dst[offset + 3] = w;
+    }
+
+    public Vec4 scale(float s) {
+        return set(x * s, y * s, z * s, w * s);
+    }
+
+    public float dot(Vec4 v) {
+        return x * v.x + y * v.y + z * v.z + w * v.w;
+    }
+
+    /**
+     * Returns the dot product with the point (v, 1), e.g. the signed distance of a point from a
+     * normalized plane.
+     */
+    public float dotPoint(Vec3 v) {
+        return x * v.x + y * v.y + z * v.z + w;
+    }
+
+    /**
+     * Divides x, y and z by w.
+     */
+    public Vec4 homogenize() {
+        return w != 0.0f ? set(x / w, y / w, z / w, 1.0f) : this;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ", " + z + ", " + w + ")";
+    }
+}
@@ -1,26 +1,83 @@
-uniform mat4 u_Model;
-uniform mat4 u_MVP;
-uniform mat4 u_MVMatrix;
+// Globals, set once per program per eye rather than per object.
+uniform mat4 u_ViewProjection;
 uniform vec3 u_LightPos;
 
+uniform mat4 u_Model;
+
 attribute vec4 a_Position;
 attribute vec4 a_Color;
 attribute vec3 a_Normal;
 
+#ifdef INSTANCED
+// Per-instance attributes, advanced once per instance rather than once per vertex.
+attribute mat4 a_InstanceModel;
+attribute vec4 a_InstanceColor;
+#endif
+
+#ifdef UNIFORM_INSTANCED
+// The instances of a chunk, five vectors each: the columns of the model matrix, then the color.
+// Uploaded with one call per chunk. 16 instances fit in the 128 vectors every device has.
+uniform vec4 u_Instances[80];
+attribute float a_InstanceIndex;
+#endif
+
 varying vec4 v_Color;
 varying vec3 v_Grid;
 
+#ifdef HIGHLIGHT
+// The lighting alone, for the fragment shader to light the highlight color with.
+varying float v_Diffuse;
+#endif
+
+#if defined(INSTANCED) || defined(UNIFORM_INSTANCED)
+// Transforms a normal by the inverse transpose of the instance's upper 3x3, so that it stays
+// perpendicular to a surface the instance scales unevenly. GLSL ES has no inverse(), but the
+// cross products of the columns give the inverse transpose times the determinant, and only the
+// determinant's sign matters once the normal is normalized.
+vec4 instanceNormal(mat4 model, vec3 n) {
+   vec3 x = model[0].xyz;
+   vec3 y = model[1].xyz;
+   vec3 z = model[2].xyz;
+   vec3 yz = cross(y, z);
+   return vec4(mat3(yz, cross(z, x), cross(x, y)) * n * sign(dot(x, yz)), 0.0);
+}
+#endif
+
 void main() {
-   v_Grid = vec3(u_Model * a_Position);
+#ifdef INSTANCED
+   // The instance's model matrix is applied before the object's own.
+   vec4 position = a_InstanceModel * a_Position;
+   vec4 normal = instanceNormal(a_InstanceModel, a_Normal);
+   vec4 color = a_Color * a_InstanceColor;
+#else
+#ifdef UNIFORM_INSTANCED
+   int base = int(a_InstanceIndex) * 5;
+   mat4 instanceModel = mat4(u_Instances[base], u_Instances[base + 1], u_Instances[base + 2],
+         u_Instances[base + 3]);
+   vec4 position = instanceModel * a_Position;
+   vec4 normal = instanceNormal(instanceModel, a_Normal);
+   vec4 color = a_Color * u_Instances[base + 4];
+#else
+   vec4 position = a_Position;
+   vec4 normal = vec4(a_Normal, 0.0);
+   vec4 color = a_Color;
+#endif
+#endif
 
-   vec3 modelViewVertex = vec3(u_MVMatrix * a_Position);
-   vec3 modelViewNormal = vec3(u_MVMatrix * vec4(a_Normal, 0.0));
+   // Lighting is done in world space, so neither u_Model nor u_LightPos depends on the eye.
+   vec4 worldPosition = u_Model * position;
+   vec3 worldVertex = worldPosition.xyz;
+   vec3 worldNormal = normalize(vec3(u_Model * normal));
+   v_Grid = worldVertex;
 
-   float distance = length(u_LightPos - modelViewVertex);
-   vec3 lightVector = normalize(u_LightPos - modelViewVertex);
-   float diffuse = max(dot(modelViewNormal, lightVector), 0.5);
+   float distance = length(u_LightPos - worldVertex);
+   vec3 lightVector = normalize(u_LightPos - worldVertex);
+   float diffuse = max(dot(worldNormal, lightVector), 0.5);
 
    diffuse = diffuse * (1.0 / (1.0 + (0.00001 * distance * distance)));
-   v_Color = a_Color * diffuse;
-   gl_Position = u_MVP * a_Position;
+   v_Color = color * diffuse;
+#ifdef HIGHLIGHT
+   v_Diffuse = diffuse;
+#endif
+   gl_Position = u_ViewProjection * worldPosition;
 }
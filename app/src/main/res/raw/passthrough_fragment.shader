@@ -1,6 +1,17 @@
 precision mediump float;
 varying vec4 v_Color;
 
+#ifdef HIGHLIGHT
+// The highlight color in rgb, and how much of the object's color it replaces in a.
+uniform vec4 u_Highlight;
+varying float v_Diffuse;
+#endif
+
 void main() {
+#ifdef HIGHLIGHT
+    // The highlight is lit like the vertex color it replaces.
+    gl_FragColor = mix(v_Color, vec4(u_Highlight.rgb, 1.0) * v_Diffuse, u_Highlight.a);
+#else
     gl_FragColor = v_Color;
+#endif
 }
@@ -0,0 +1,24 @@
+/*
+ * Context.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package android.content;
+
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+
+import java.io.File;
+
+/**
+ * Host version of the Android context, with only the methods the renderer calls.
+ */
+public abstract class Context {
+    public abstract Resources getResources();
+
+    public abstract AssetManager getAssets();
+
+    public abstract File getCacheDir();
+}
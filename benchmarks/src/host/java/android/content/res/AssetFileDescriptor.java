@@ -0,0 +1,34 @@
+/*
+ * AssetFileDescriptor.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package android.content.res;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Host version of the Android asset descriptor. {@link AssetManager} never returns one.
+ */
+public final class AssetFileDescriptor {
+    private AssetFileDescriptor() {
+    }
+
+    public FileInputStream createInputStream() throws IOException {
+        throw new IOException("No assets on the host");
+    }
+
+    public long getStartOffset() {
+        return 0;
+    }
+
+    public long getLength() {
+        return 0;
+    }
+
+    public void close() throws IOException {
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * AssetManager.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package android.content.res;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Host version of the Android asset manager. The host has no APK, so there are no assets.
+ */
+public final class AssetManager {
+    public AssetFileDescriptor openFd(String fileName) throws IOException {
+        throw new FileNotFoundException(fileName);
+    }
+}
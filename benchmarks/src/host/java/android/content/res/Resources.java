@@ -0,0 +1,23 @@
+/*
+ * Resources.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package android.content.res;
+
+import java.io.InputStream;
+
+/**
+ * Host version of the Android resources, with only the methods the renderer calls.
+ */
+public abstract class Resources {
+    public abstract InputStream openRawResource(int id);
+
+    public static class NotFoundException extends RuntimeException {
+        public NotFoundException(String name) {
+            super(name);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * GLES20.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package android.opengl;
+
+/**
+ * Host version of the OpenGL ES 2 bindings, with the enums the renderer uses. There are no
+ * functions; on the host every call goes through {@link io.kirmani.cardboard.CardboardGL}.
+ */
+public class GLES20 {
+    public static final int GL_DEPTH_BUFFER_BIT = 0x00000100;
+    public static final int GL_COLOR_BUFFER_BIT = 0x00004000;
+    public static final int GL_FALSE = 0;
+    public static final int GL_TRUE = 1;
+    public static final int GL_TRIANGLES = 0x0004;
+    public static final int GL_DEPTH_TEST = 0x0B71;
+    public static final int GL_UNPACK_ALIGNMENT = 0x0CF5;
+    public static final int GL_MAX_TEXTURE_SIZE = 0x0D33;
+    public static final int GL_TEXTURE_2D = 0x0DE1;
+    public static final int GL_NO_ERROR = 0;
+    public static final int GL_INVALID_ENUM = 0x0500;
+    public static final int GL_INVALID_VALUE = 0x0501;
+    public static final int GL_INVALID_OPERATION = 0x0502;
+    public static final int GL_UNSIGNED_BYTE = 0x1401;
+    public static final int GL_UNSIGNED_SHORT = 0x1403;
+    public static final int GL_INT = 0x1404;
+    public static final int GL_UNSIGNED_INT = 0x1405;
+    public static final int GL_FLOAT = 0x1406;
+    public static final int GL_ALPHA = 0x1906;
+    public static final int GL_RGB = 0x1907;
+    public static final int GL_RGBA = 0x1908;
+    public static final int GL_LUMINANCE = 0x1909;
+    public static final int GL_LUMINANCE_ALPHA = 0x190A;
+    public static final int GL_VENDOR = 0x1F00;
+    public static final int GL_RENDERER = 0x1F01;
+    public static final int GL_VERSION = 0x1F02;
+    public static final int GL_EXTENSIONS = 0x1F03;
+    public static final int GL_NEAREST = 0x2600;
+    public static final int GL_LINEAR = 0x2601;
+    public static final int GL_LINEAR_MIPMAP_LINEAR = 0x2703;
+    public static final int GL_TEXTURE_MAG_FILTER = 0x2800;
+    public static final int GL_TEXTURE_MIN_FILTER = 0x2801;
+    public static final int GL_TEXTURE_WRAP_S = 0x2802;
+    public static final int GL_TEXTURE_WRAP_T = 0x2803;
+    public static final int GL_REPEAT = 0x2901;
+    public static final int GL_CLAMP_TO_EDGE = 0x812F;
+    public static final int GL_TEXTURE0 = 0x84C0;
+    public static final int GL_MAX_VERTEX_ATTRIBS = 0x8869;
+    public static final int GL_ARRAY_BUFFER = 0x8892;
+    public static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    public static final int GL_STATIC_DRAW = 0x88E4;
+    public static final int GL_DYNAMIC_DRAW = 0x88E8;
+    public static final int GL_FRAGMENT_SHADER = 0x8B30;
+    public static final int GL_VERTEX_SHADER = 0x8B31;
+    public static final int GL_FLOAT_VEC2 = 0x8B50;
+    public static final int GL_FLOAT_VEC3 = 0x8B51;
+    public static final int GL_FLOAT_VEC4 = 0x8B52;
+    public static final int GL_INT_VEC2 = 0x8B53;
+    public static final int GL_INT_VEC3 = 0x8B54;
+    public static final int GL_INT_VEC4 = 0x8B55;
+    public static final int GL_BOOL = 0x8B56;
+    public static final int GL_FLOAT_MAT2 = 0x8B5A;
+    public static final int GL_FLOAT_MAT3 = 0x8B5B;
+    public static final int GL_FLOAT_MAT4 = 0x8B5C;
+    public static final int GL_SAMPLER_2D = 0x8B5E;
+    public static final int GL_SAMPLER_CUBE = 0x8B60;
+    public static final int GL_COMPILE_STATUS = 0x8B81;
+    public static final int GL_LINK_STATUS = 0x8B82;
+    public static final int GL_ACTIVE_UNIFORMS = 0x8B86;
+    public static final int GL_ACTIVE_ATTRIBUTES = 0x8B89;
+}
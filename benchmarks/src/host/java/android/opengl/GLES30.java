@@ -0,0 +1,21 @@
+/*
+ * GLES30.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package android.opengl;
+
+/**
+ * Host version of the OpenGL ES 3 bindings, with the enums the renderer uses.
+ */
+public class GLES30 extends GLES20 {
+    public static final int GL_PROGRAM_BINARY_RETRIEVABLE_HINT = 0x8257;
+    public static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+    public static final int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
+    public static final int GL_QUERY_RESULT = 0x8866;
+    public static final int GL_QUERY_RESULT_AVAILABLE = 0x8867;
+    public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+}
@@ -0,0 +1,40 @@
+/*
+ * Matrix.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package android.opengl;
+
+/**
+ * Host version of the Android matrix math, with the methods the Cardboard SDK's head and eye
+ * classes call. Matrices are column-major, as on Android.
+ */
+public final class Matrix {
+    private Matrix() {
+    }
+
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; i++) {
+            sm[smOffset + i] = i % 5 == 0 ? 1.0f : 0.0f;
+        }
+    }
+
+    public static void frustumM(float[] m, int offset, float left, float right, float bottom,
+            float top, float near, float far) {
+        float width = 1.0f / (right - left);
+        float height = 1.0f / (top - bottom);
+        float depth = 1.0f / (near - far);
+        for (int i = 0; i < 16; i++) {
+            m[offset + i] = 0.0f;
+        }
+        m[offset] = 2.0f * near * width;
+        m[offset + 5] = 2.0f * near * height;
+        m[offset + 8] = (right + left) * width;
+        m[offset + 9] = (top + bottom) * height;
+        m[offset + 10] = (far + near) * depth;
+        m[offset + 11] = -1.0f;
+        m[offset + 14] = 2.0f * far * near * depth;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Build.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package android.os;
+
+/**
+ * Host version of the build information. The host claims the SDK version the app compiles
+ * against; whether OpenGL ES 3 paths run is up to the version string of the GL.
+ */
+public final class Build {
+    private Build() {
+    }
+
+    public static class VERSION {
+        public static final int SDK_INT = VERSION_CODES.KITKAT;
+    }
+
+    public static class VERSION_CODES {
+        public static final int JELLY_BEAN_MR2 = 18;
+        public static final int KITKAT = 19;
+    }
+}
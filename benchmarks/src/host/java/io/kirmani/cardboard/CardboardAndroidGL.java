@@ -0,0 +1,15 @@
+/*
+ * CardboardAndroidGL.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+/**
+ * Host version of the driver-backed GL. There is no driver on the host, so the default GL of
+ * {@link CardboardGLContext} records instead.
+ */
+public class CardboardAndroidGL extends CardboardRecordingGL {
+}
@@ -0,0 +1,14 @@
+/*
+ * EGLConfig.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package javax.microedition.khronos.egl;
+
+/**
+ * Host version of the EGL config handle that the renderer callbacks pass around.
+ */
+public abstract class EGLConfig {
+}
@@ -0,0 +1,182 @@
+/*
+ * BenchmarkScene.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import android.content.Context;
+
+import com.google.vrtoolkit.cardboard.Eye;
+import com.google.vrtoolkit.cardboard.HeadTransform;
+
+import io.kirmani.cardboard.CardboardCamera;
+import io.kirmani.cardboard.CardboardGLContext;
+import io.kirmani.cardboard.CardboardMesh;
+import io.kirmani.cardboard.CardboardMeshBuilder;
+import io.kirmani.cardboard.CardboardObject;
+import io.kirmani.cardboard.CardboardRecordingGL;
+import io.kirmani.cardboard.CardboardScene;
+import io.kirmani.cardboard.R;
+import io.kirmani.cardboard.math.Mat4;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.microedition.khronos.egl.EGLConfig;
+
+/**
+ * A scene of spinning lit boxes scattered around the viewer, set up like the renderer is after
+ * onSurfaceCreated and onSurfaceChanged, and drawn into a {@link CardboardRecordingGL}.
+ */
+final class BenchmarkScene {
+    static final int WIDTH = 1920;
+    static final int HEIGHT = 1080;
+
+    // Boxes are spread over a square this many meters across, which puts about a quarter of them
+    // in front of the viewer.
+    private static final float SPREAD = 200.0f;
+    private static final float HEIGHT_SPREAD = 20.0f;
+    private static final float FIELD_OF_VIEW = 40.0f;
+    private static final float INTERPUPILLARY_DISTANCE = 0.064f;
+    // In degrees per frame, and per second when simulated.
+    private static final float SPIN = 0.3f;
+    private static final float SIMULATED_SPIN = SPIN * 60.0f;
+
+    final CardboardRecordingGL gl = new CardboardRecordingGL();
+    final Context context = new HostContext();
+    final CardboardScene scene;
+    final HeadTransform head = new HeadTransform();
+    final Eye leftEye = createEye(Eye.Type.LEFT, -INTERPUPILLARY_DISTANCE / 2);
+    final Eye rightEye = createEye(Eye.Type.RIGHT, INTERPUPILLARY_DISTANCE / 2);
+
+    BenchmarkScene(int count, long seed) {
+        this(count, seed, false);
+    }
+
+    /**
+     * @param count The number of boxes.
+     * @param seed Seeds the placement, so that every run draws the same scene.
+     * @param simulated Whether the boxes spin in the scene's simulation rather than on the GL
+     *     thread. The simulation isn't started.
+     */
+    BenchmarkScene(int count, long seed, boolean simulated) {
+        this(scatter(count, seed), simulated);
+    }
+
+    /**
+     * @param positions The x, y and z of each box.
+     * @param simulated Whether the boxes spin in the scene's simulation.
+     */
+    BenchmarkScene(float[] positions, boolean simulated) {
+        CardboardGLContext.set(gl);
+        scene = new CardboardScene(context);
+        scene.setCamera(new CardboardCamera(context, scene));
+
+        CardboardMesh mesh = createBoxMesh();
+        mesh.upload();
+        for (int i = 0; i < positions.length; i += 3) {
+            Box box = new Box(context, scene, mesh);
+            box.place(positions[i], positions[i + 1], positions[i + 2]);
+            box.setSimulated(simulated);
+            scene.addObject(box);
+        }
+        scene.onSurfaceCreated(null);
+        scene.onSurfaceChanged(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Runs the scene's part of one frame: the update and both eyes.
+     */
+    void drawFrame() {
+        scene.onNewFrame(head);
+        scene.onDrawEye(leftEye);
+        scene.onDrawEye(rightEye);
+    }
+
+    private static float[] scatter(int count, long seed) {
+        float[] positions = new float[count * 3];
+        Random random = new Random(seed);
+        for (int i = 0; i < positions.length; i += 3) {
+            positions[i] = (random.nextFloat() - 0.5f) * SPREAD;
+            positions[i + 1] = (random.nextFloat() - 0.5f) * HEIGHT_SPREAD;
+            positions[i + 2] = (random.nextFloat() - 0.5f) * SPREAD;
+        }
+        return positions;
+    }
+
+    /**
+     * Returns a unit box, with a different color per face.
+     */
+    static CardboardMesh createBoxMesh() {
+        // Each face is two triangles in the plane of the face's two other axes.
+        final float[][] corners = { { -1, -1 }, { 1, -1 }, { 1, 1 }, { -1, -1 }, { 1, 1 },
+            { -1, 1 } };
+        float[] coords = new float[6 * 6 * 3];
+        float[] normals = new float[6 * 6 * 3];
+        float[] colors = new float[6 * 6 * 4];
+        for (int face = 0; face < 6; face++) {
+            int axis = face / 2;
+            float sign = face % 2 == 0 ? 1.0f : -1.0f;
+            for (int corner = 0; corner < 6; corner++) {
+                int vertex = face * 6 + corner;
+                coords[vertex * 3 + axis] = sign;
+                coords[vertex * 3 + (axis + 1) % 3] = corners[corner][0] * sign;
+                coords[vertex * 3 + (axis + 2) % 3] = corners[corner][1];
+                normals[vertex * 3 + axis] = sign;
+                colors[vertex * 4 + axis] = 1.0f;
+                colors[vertex * 4 + 3] = 1.0f;
+            }
+        }
+        return new CardboardMeshBuilder().addTriangles(coords, normals, colors).build(true);
+    }
+
+    private static Eye createEye(int type, float offset) {
+        Eye eye = new Eye(type);
+        eye.getViewport().setViewport(type == Eye.Type.LEFT ? 0 : WIDTH / 2, 0, WIDTH / 2,
+                HEIGHT);
+        eye.getFov().setAngles(FIELD_OF_VIEW, FIELD_OF_VIEW, FIELD_OF_VIEW, FIELD_OF_VIEW);
+        float[] view = eye.getEyeView();
+        Arrays.fill(view, 0.0f);
+        view[0] = view[5] = view[10] = view[15] = 1.0f;
+        view[12] = -offset;
+        return eye;
+    }
+
+    /**
+     * A spinning box. The mesh is shared, and uploaded once by the scene. It spins on the GL
+     * thread, or in the simulation when simulated.
+     */
+    static class Box extends CardboardObject {
+        Box(Context context, CardboardScene scene, CardboardMesh mesh) {
+            super(context, scene);
+            setMesh(mesh);
+            setPickable(true);
+        }
+
+        void place(float x, float y, float z) {
+            getModel().setTranslation(x, y, z);
+            invalidateModel();
+        }
+
+        @Override
+        public void onSurfaceCreated(EGLConfig config) {
+            setProgram(loadProgram(R.raw.light_vertex, R.raw.passthrough_fragment));
+        }
+
+        @Override
+        public void onNewFrame(Mat4 headView) {
+            if (!isSimulated()) {
+                getModel().rotate(SPIN, 0.5f, 0.5f, 1.0f);
+                invalidateModel();
+            }
+        }
+
+        @Override
+        protected void onSimulate(Mat4 model, float deltaSeconds) {
+            model.rotate(SIMULATED_SPIN * deltaSeconds, 0.5f, 0.5f, 1.0f);
+        }
+    }
+}
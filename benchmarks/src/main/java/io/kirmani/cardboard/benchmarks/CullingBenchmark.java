@@ -0,0 +1,96 @@
+/*
+ * CullingBenchmark.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import io.kirmani.cardboard.CardboardObject;
+import io.kirmani.cardboard.math.BoundingBox;
+import io.kirmani.cardboard.math.Frustum;
+import io.kirmani.cardboard.math.Mat4;
+import io.kirmani.cardboard.math.Vec3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Testing the world bounds of every object in a scene against one eye's frustum.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CullingBenchmark {
+    @Param({ "1", "100", "10000", "100000" })
+    public int objects;
+
+    private final Frustum mFrustum = new Frustum();
+    private final Mat4 mProjection = new Mat4();
+    private BoundingBox[] mBoxes;
+    private Vec3[] mCenters;
+    private float[] mRadii;
+
+    @Setup
+    public void setUp() {
+        BenchmarkScene scene = new BenchmarkScene(objects, 42);
+        scene.drawFrame();
+        List<CardboardObject> sceneObjects = scene.scene.getObjects();
+        mBoxes = new BoundingBox[objects];
+        mCenters = new Vec3[objects];
+        mRadii = new float[objects];
+        for (int i = 0; i < objects; i++) {
+            CardboardObject object = sceneObjects.get(i);
+            mBoxes[i] = new BoundingBox().set(object.getWorldBounds());
+            mCenters[i] = new Vec3().set(object.getWorldCenter());
+            mRadii[i] = object.getWorldRadius();
+        }
+        // The viewer stands at the origin, looking down -z.
+        mProjection.set(scene.leftEye.getPerspective(0.1f, 100.0f), 0);
+    }
+
+    @Benchmark
+    public Frustum extractPlanes() {
+        return mFrustum.set(mProjection);
+    }
+
+    @Benchmark
+    public int boxes() {
+        mFrustum.set(mProjection);
+        int visible = 0;
+        for (int i = 0; i < mBoxes.length; i++) {
+            if (mFrustum.intersectsBox(mBoxes[i])) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    @Benchmark
+    public int spheres() {
+        mFrustum.set(mProjection);
+        int visible = 0;
+        for (int i = 0; i < mCenters.length; i++) {
+            if (mFrustum.intersectsSphere(mCenters[i], mRadii[i])) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * FrameBenchmark.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import io.kirmani.cardboard.CardboardScene;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scene's whole CPU side of a frame: updating every object, picking the gaze target, and
+ * culling, sorting and drawing for both eyes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FrameBenchmark {
+    @Param({ "1", "100", "10000", "100000" })
+    public int objects;
+
+    @Param({ "" + CardboardScene.CULL_PER_EYE, "" + CardboardScene.CULL_PER_FRAME })
+    public int culling;
+
+    private BenchmarkScene mScene;
+
+    @Setup
+    public void setUp() {
+        mScene = new BenchmarkScene(objects, 42);
+        mScene.scene.setCullingMode(culling);
+        // The first frame builds the BVH and the world bounds from scratch.
+        mScene.drawFrame();
+    }
+
+    @Benchmark
+    public long frame() {
+        // The draw count is returned so the frame can't be optimized away. Counters aren't reset,
+        // since that would show up in the allocation rate.
+        long drawCalls = mScene.gl.getDrawCalls();
+        mScene.drawFrame();
+        return mScene.gl.getDrawCalls() - drawCalls;
+    }
+}
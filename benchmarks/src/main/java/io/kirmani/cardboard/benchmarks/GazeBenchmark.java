@@ -0,0 +1,90 @@
+/*
+ * GazeBenchmark.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import io.kirmani.cardboard.CardboardBvh;
+import io.kirmani.cardboard.CardboardObject;
+import io.kirmani.cardboard.math.Vec3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the object the viewer looks at, through the scene's BVH and, for comparison, by
+ * testing every object like the original per-object isLookingAtObject check did.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GazeBenchmark {
+    private static final int DIRECTIONS = 256;
+    private static final float MAX_DISTANCE = 1000.0f;
+
+    @Param({ "1", "100", "10000", "100000" })
+    public int objects;
+
+    private CardboardBvh mBvh;
+    private List<CardboardObject> mObjects;
+    private final Vec3 mOrigin = new Vec3();
+    private final Vec3[] mDirections = new Vec3[DIRECTIONS];
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        BenchmarkScene scene = new BenchmarkScene(objects, 42);
+        scene.drawFrame();
+        mBvh = scene.scene.getBvh();
+        mObjects = scene.scene.getObjects();
+
+        // Directions around the horizon, where the boxes are.
+        Random random = new Random(7);
+        for (int i = 0; i < DIRECTIONS; i++) {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            mDirections[i] = new Vec3((float) Math.sin(angle), (random.nextFloat() - 0.5f) * 0.2f,
+                    (float) -Math.cos(angle)).normalize();
+        }
+    }
+
+    @Benchmark
+    public CardboardObject bvh() {
+        Vec3 direction = mDirections[mNext++ & (DIRECTIONS - 1)];
+        return mBvh.raycast(mOrigin, direction, MAX_DISTANCE);
+    }
+
+    @Benchmark
+    public CardboardObject linear() {
+        Vec3 direction = mDirections[mNext++ & (DIRECTIONS - 1)];
+        CardboardObject hit = null;
+        float hitDistance = MAX_DISTANCE;
+        for (int i = 0; i < mObjects.size(); i++) {
+            CardboardObject object = mObjects.get(i);
+            float distance = object.getWorldBounds().intersectRay(mOrigin, direction);
+            if (distance >= 0.0f && distance < hitDistance) {
+                hit = object;
+                hitDistance = distance;
+            }
+        }
+        return hit;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * HostContext.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+
+import io.kirmani.cardboard.R;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+
+/**
+ * A context for running the renderer on the host. Raw resources are read from the classpath,
+ * where the build puts them under res/raw without their extension.
+ */
+public final class HostContext extends Context {
+    private final Resources mResources = new Resources() {
+        @Override
+        public InputStream openRawResource(int id) {
+            String name = findRawName(id);
+            InputStream in = name != null
+                    ? HostContext.class.getResourceAsStream("/res/raw/" + name) : null;
+            if (in == null) {
+                throw new Resources.NotFoundException("Resource ID #0x"
+                        + Integer.toHexString(id));
+            }
+            return in;
+        }
+    };
+
+    private final AssetManager mAssets = new AssetManager();
+    private final File mCacheDir =
+            new File(System.getProperty("java.io.tmpdir"), "cardboard-benchmarks");
+
+    @Override
+    public Resources getResources() {
+        return mResources;
+    }
+
+    @Override
+    public AssetManager getAssets() {
+        return mAssets;
+    }
+
+    @Override
+    public File getCacheDir() {
+        return mCacheDir;
+    }
+
+    private static String findRawName(int id) {
+        for (Field field : R.raw.class.getFields()) {
+            try {
+                if (field.getInt(null) == id) {
+                    return field.getName();
+                }
+            } catch (IllegalAccessException e) {
+                // R's fields are all public.
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * MatrixBenchmark.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import io.kirmani.cardboard.math.BoundingBox;
+import io.kirmani.cardboard.math.Mat4;
+import io.kirmani.cardboard.math.Quat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The matrix work done per object and per eye: composing transforms, inverting the head
+ * transform and transforming bounds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MatrixBenchmark {
+    private final Mat4 mModel = new Mat4();
+    private final Mat4 mParent = new Mat4();
+    private final Mat4 mWorld = new Mat4();
+    private final Mat4 mViewProjection = new Mat4();
+    private final Mat4 mModelViewProjection = new Mat4();
+    private final Mat4 mHeadView = new Mat4();
+    private final Mat4 mHeadInverse = new Mat4();
+    private final Quat mOrientation = new Quat();
+    private final BoundingBox mLocalBounds = new BoundingBox();
+    private final BoundingBox mWorldBounds = new BoundingBox();
+
+    @Setup
+    public void setUp() {
+        mModel.setRotation(30.0f, 0.5f, 0.5f, 1.0f).translate(1.0f, 2.0f, -12.0f);
+        mParent.setTranslation(0.0f, -1.0f, 0.0f);
+        mViewProjection.setLookAt(0.0f, 0.0f, 0.01f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        mHeadView.setRotation(20.0f, 0.0f, 1.0f, 0.0f).translate(0.0f, 0.0f, 0.1f);
+        mOrientation.setAxisAngle(20.0f, 0.0f, 1.0f, 0.0f);
+        mLocalBounds.set(-1.0f, -1.0f, -1.0f, 1.0f, 1.0f, 1.0f);
+    }
+
+    /**
+     * What every drawn object does per eye.
+     */
+    @Benchmark
+    public Mat4 modelViewProjection() {
+        return mModelViewProjection.multiply(mViewProjection, mWorld);
+    }
+
+    /**
+     * What every moving object does per frame.
+     */
+    @Benchmark
+    public BoundingBox worldTransform() {
+        mModel.rotate(0.3f, 0.5f, 0.5f, 1.0f);
+        mWorld.multiply(mParent, mModel);
+        return mLocalBounds.transform(mWorld, mWorldBounds);
+    }
+
+    @Benchmark
+    public Mat4 invertRigid() {
+        return mHeadInverse.invertRigid(mHeadView);
+    }
+
+    @Benchmark
+    public Mat4 rotationFromQuaternion() {
+        return mHeadView.setRotation(mOrientation);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * RenderQueueBenchmark.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import android.content.Context;
+
+import io.kirmani.cardboard.CardboardMesh;
+import io.kirmani.cardboard.CardboardObject;
+import io.kirmani.cardboard.CardboardProgram;
+import io.kirmani.cardboard.CardboardRenderQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submitting an eye's worth of objects to the render queue and sorting them, with drawing left
+ * out. Objects use a few programs and meshes, and are a mix of opaque and transparent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenderQueueBenchmark {
+    private static final int PROGRAMS = 8;
+    private static final int MESHES = 4;
+    private static final float TRANSPARENT_FRACTION = 0.1f;
+
+    @Param({ "1", "100", "10000", "100000" })
+    public int objects;
+
+    private final CardboardRenderQueue mQueue = new CardboardRenderQueue();
+    private CardboardObject[] mObjects;
+    private int[] mPasses;
+    private CardboardProgram[] mPrograms;
+    private CardboardMesh[] mMeshes;
+    private float[] mDepths;
+
+    @Setup
+    public void setUp() {
+        BenchmarkScene scene = new BenchmarkScene(0, 42);
+        CardboardProgram[] programs = new CardboardProgram[PROGRAMS];
+        for (int i = 0; i < PROGRAMS; i++) {
+            int handle = scene.gl.glCreateProgram();
+            scene.gl.glLinkProgram(handle);
+            programs[i] = new CardboardProgram(handle);
+        }
+        CardboardMesh[] meshes = new CardboardMesh[MESHES];
+        for (int i = 0; i < MESHES; i++) {
+            meshes[i] = BenchmarkScene.createBoxMesh();
+            meshes[i].upload();
+        }
+
+        Random random = new Random(42);
+        mObjects = new CardboardObject[objects];
+        mPasses = new int[objects];
+        mPrograms = new CardboardProgram[objects];
+        mMeshes = new CardboardMesh[objects];
+        mDepths = new float[objects];
+        for (int i = 0; i < objects; i++) {
+            mObjects[i] = new NoDrawObject(scene.context);
+            mPasses[i] = random.nextFloat() < TRANSPARENT_FRACTION
+                    ? CardboardRenderQueue.PASS_TRANSPARENT : CardboardRenderQueue.PASS_OPAQUE;
+            mPrograms[i] = programs[random.nextInt(PROGRAMS)];
+            mMeshes[i] = meshes[random.nextInt(MESHES)];
+            mDepths[i] = random.nextFloat() * 100.0f;
+        }
+    }
+
+    @Benchmark
+    public int submitAndSort() {
+        for (int i = 0; i < mObjects.length; i++) {
+            mQueue.submit(mObjects[i], mPasses[i], mPrograms[i], mMeshes[i], mDepths[i]);
+        }
+        mQueue.flush();
+        return mQueue.getDrawCalls();
+    }
+
+    private static class NoDrawObject extends CardboardObject {
+        NoDrawObject(Context context) {
+            super(context, null);
+        }
+
+        @Override
+        public void draw() {
+        }
+    }
+}
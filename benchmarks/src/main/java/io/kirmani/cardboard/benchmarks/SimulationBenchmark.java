@@ -0,0 +1,79 @@
+/*
+ * SimulationBenchmark.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import io.kirmani.cardboard.CardboardSimulation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One step of the scene's simulation, split between a varying number of threads, and the frame
+ * the GL thread draws from its result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SimulationBenchmark {
+    private static final float STEP_SECONDS = 1.0f / 60.0f;
+
+    @Param({ "1", "100", "10000", "100000" })
+    public int objects;
+
+    @Param({ "1", "2", "4" })
+    public int threads;
+
+    private BenchmarkScene mScene;
+    private CardboardSimulation mSimulation;
+
+    @Setup
+    public void setUp() {
+        mScene = new BenchmarkScene(objects, 42, true);
+        mSimulation = mScene.scene.getSimulation();
+        mSimulation.setThreadCount(threads);
+        mSimulation.step(STEP_SECONDS);
+        mScene.drawFrame();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSimulation.stop();
+    }
+
+    @Benchmark
+    public void step() {
+        mSimulation.step(STEP_SECONDS);
+    }
+
+    /**
+     * A step followed by the frame that picks it up, as if the simulation kept exactly one step
+     * ahead of the renderer.
+     */
+    @Benchmark
+    public long stepAndFrame() {
+        long drawCalls = mScene.gl.getDrawCalls();
+        mSimulation.step(STEP_SECONDS);
+        mScene.drawFrame();
+        return mScene.gl.getDrawCalls() - drawCalls;
+    }
+}
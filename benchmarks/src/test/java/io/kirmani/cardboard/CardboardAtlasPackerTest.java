@@ -0,0 +1,92 @@
+/*
+ * CardboardAtlasPackerTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks where the skyline packer puts rectangles.
+ */
+public class CardboardAtlasPackerTest {
+    private static final int SIZE = 256;
+
+    @Test
+    public void testPackedRectanglesDontOverlap() {
+        CardboardAtlasPacker packer = new CardboardAtlasPacker(SIZE, SIZE);
+        Random random = new Random(42);
+        List<int[]> packed = new ArrayList<int[]>();
+        long area = 0;
+        int[] position = new int[2];
+        // Mostly similar heights, like the images of an atlas, until one no longer fits.
+        while (true) {
+            int width = 8 + random.nextInt(40);
+            int height = 16 + random.nextInt(8);
+            if (!packer.pack(width, height, position)) {
+                break;
+            }
+            packed.add(new int[] { position[0], position[1], width, height });
+            area += width * height;
+        }
+        assertTrue(packed.size() > 50);
+
+        for (int i = 0; i < packed.size(); i++) {
+            int[] a = packed.get(i);
+            assertTrue(a[0] >= 0 && a[1] >= 0);
+            assertTrue(a[0] + a[2] <= SIZE && a[1] + a[3] <= SIZE);
+            for (int j = i + 1; j < packed.size(); j++) {
+                assertFalse("Rectangles " + i + " and " + j + " overlap",
+                        overlap(a, packed.get(j)));
+            }
+        }
+        assertEquals((float) area / (SIZE * SIZE), packer.getOccupancy(), 1e-6f);
+    }
+
+    @Test
+    public void testFullPackerRejects() {
+        CardboardAtlasPacker packer = new CardboardAtlasPacker(SIZE, SIZE);
+        int[] position = new int[2];
+        boolean[] corners = new boolean[4];
+        for (int i = 0; i < 4; i++) {
+            assertTrue(packer.pack(SIZE / 2, SIZE / 2, position));
+            corners[position[0] / (SIZE / 2) + 2 * (position[1] / (SIZE / 2))] = true;
+        }
+        for (int i = 0; i < 4; i++) {
+            assertTrue(corners[i]);
+        }
+        assertEquals(1.0f, packer.getOccupancy(), 0.0f);
+        assertFalse(packer.pack(1, 1, position));
+
+        packer.reset();
+        assertEquals(0.0f, packer.getOccupancy(), 0.0f);
+        assertTrue(packer.pack(1, 1, position));
+    }
+
+    @Test
+    public void testOversizedRectangleIsRejected() {
+        CardboardAtlasPacker packer = new CardboardAtlasPacker(SIZE, SIZE);
+        int[] position = new int[2];
+        assertFalse(packer.pack(SIZE + 1, 1, position));
+        assertFalse(packer.pack(1, SIZE + 1, position));
+        assertFalse(packer.pack(0, 1, position));
+        // Rejected rectangles take no room.
+        assertTrue(packer.pack(SIZE, SIZE, position));
+    }
+
+    private static boolean overlap(int[] a, int[] b) {
+        return a[0] < b[0] + b[2] && b[0] < a[0] + a[2] && a[1] < b[1] + b[3]
+                && b[1] < a[1] + a[3];
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * CardboardGLStateTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import static org.junit.Assert.assertEquals;
+
+import android.opengl.GLES20;
+
+import io.kirmani.cardboard.benchmarks.HostContext;
+import io.kirmani.cardboard.math.Mat4;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the state cache issues the first call of each kind and skips the redundant ones.
+ */
+public class CardboardGLStateTest {
+    private CardboardRecordingGL mGL;
+    private CardboardGLState mState;
+    private CardboardProgram mProgram;
+    private int mLightPos;
+    private int mModel;
+
+    @Before
+    public void setUp() {
+        mGL = new CardboardRecordingGL();
+        CardboardGLContext.set(mGL);
+        mProgram = new CardboardProgramCache(new HostContext())
+                .getProgram(R.raw.light_vertex, R.raw.passthrough_fragment);
+        mLightPos = mProgram.getUniformLocation("u_LightPos");
+        mModel = mProgram.getUniformLocation("u_Model");
+        mState = new CardboardGLState();
+        mGL.resetCounters();
+    }
+
+    @Test
+    public void testRedundantProgramIsSkipped() {
+        mState.useProgram(mProgram);
+        mState.useProgram(mProgram);
+        assertEquals(1, mGL.getCallCount("glUseProgram"));
+        assertEquals(1, mState.getIssuedCalls());
+        assertEquals(1, mState.getSkippedCalls());
+
+        mState.invalidate();
+        mState.useProgram(mProgram);
+        assertEquals(2, mGL.getCallCount("glUseProgram"));
+    }
+
+    @Test
+    public void testCapabilitiesAndBuffers() {
+        mState.enable(GLES20.GL_DEPTH_TEST);
+        mState.enable(GLES20.GL_DEPTH_TEST);
+        mState.disable(GLES20.GL_DEPTH_TEST);
+        mState.bindBuffer(GLES20.GL_ARRAY_BUFFER, 7);
+        mState.bindBuffer(GLES20.GL_ARRAY_BUFFER, 7);
+        mState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 7);
+        assertEquals(1, mGL.getCallCount("glEnable"));
+        assertEquals(1, mGL.getCallCount("glDisable"));
+        assertEquals(2, mGL.getCallCount("glBindBuffer"));
+        assertEquals(4, mState.getIssuedCalls());
+        assertEquals(2, mState.getSkippedCalls());
+    }
+
+    @Test
+    public void testUniformValuesSurviveInvalidation() {
+        float[] light = { 0.0f, 2.0f, 0.0f };
+        mState.useProgram(mProgram);
+        mState.uniform3fv(mLightPos, light, 0);
+        mState.uniform3fv(mLightPos, light, 0);
+        assertEquals(1, mGL.getCallCount("glUniform3fv"));
+
+        // Uniform values live in the program, which the distortion pass doesn't touch.
+        mState.invalidate();
+        mState.useProgram(mProgram);
+        mState.uniform3fv(mLightPos, light, 0);
+        assertEquals(1, mGL.getCallCount("glUniform3fv"));
+
+        light[1] = 3.0f;
+        mState.uniform3fv(mLightPos, light, 0);
+        assertEquals(2, mGL.getCallCount("glUniform3fv"));
+    }
+
+    @Test
+    public void testVersionedMatrixIsSkippedUntilItChanges() {
+        Object source = new Object();
+        float[] model = new Mat4().m;
+        mState.useProgram(mProgram);
+        mState.uniformMatrix4fv(mModel, model, 0, source, 1);
+        mState.uniformMatrix4fv(mModel, model, 0, source, 1);
+        assertEquals(1, mGL.getCallCount("glUniformMatrix4fv"));
+
+        // A new version with the same values is still caught by the comparison.
+        mState.uniformMatrix4fv(mModel, model, 0, source, 2);
+        assertEquals(1, mGL.getCallCount("glUniformMatrix4fv"));
+
+        model[12] = 1.0f;
+        mState.uniformMatrix4fv(mModel, model, 0, source, 3);
+        assertEquals(2, mGL.getCallCount("glUniformMatrix4fv"));
+
+        // Another source uploading other values makes the first one stale.
+        float[] other = model.clone();
+        other[13] = 1.0f;
+        mState.uniformMatrix4fv(mModel, other, 0, new Object(), 1);
+        mState.uniformMatrix4fv(mModel, model, 0, source, 3);
+        assertEquals(4, mGL.getCallCount("glUniformMatrix4fv"));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * CardboardHeadTraceTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Checks that traces survive a round trip through a stream, and that broken ones are rejected.
+ */
+public class CardboardHeadTraceTest {
+    private static final int FRAMES = 1000;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        CardboardHeadTrace trace = new CardboardHeadTrace(1);
+        float[] headView = new float[16];
+        for (int i = 0; i < FRAMES; i++) {
+            Arrays.fill(headView, i);
+            trace.add(5000 + i * 16000000L, headView, 0);
+        }
+
+        CardboardHeadTrace read = CardboardHeadTrace.read(new ByteArrayInputStream(write(trace)));
+        assertEquals(FRAMES, read.getFrameCount());
+        float[] readView = new float[16];
+        for (int i = 0; i < FRAMES; i++) {
+            // Times are kept from the first frame.
+            assertEquals(i * 16000000L, read.getFrameNanos(i));
+            trace.getHeadView(i, headView, 0);
+            read.getHeadView(i, readView, 0);
+            assertArrayEquals(headView, readView, 0.0f);
+        }
+    }
+
+    @Test
+    public void testTruncatedTraceIsRejected() throws IOException {
+        CardboardHeadTrace trace = new CardboardHeadTrace();
+        trace.add(0, new float[16], 0);
+        trace.add(1, new float[16], 0);
+        byte[] bytes = write(trace);
+        assertRejected(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test
+    public void testCorruptFrameCountIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0x43424854);
+        data.writeInt(1);
+        // Far more frames than the heap could hold, followed by a single one.
+        data.writeInt(Integer.MAX_VALUE);
+        data.writeLong(0);
+        for (int i = 0; i < 16; i++) {
+            data.writeFloat(0.0f);
+        }
+        assertRejected(bytes.toByteArray());
+    }
+
+    private static byte[] write(CardboardHeadTrace trace) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+        return out.toByteArray();
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            CardboardHeadTrace.read(new ByteArrayInputStream(bytes));
+            fail("The trace should have been rejected");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
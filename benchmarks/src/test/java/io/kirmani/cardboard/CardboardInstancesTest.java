@@ -0,0 +1,63 @@
+/*
+ * CardboardInstancesTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import android.content.Context;
+
+import com.google.vrtoolkit.cardboard.HeadTransform;
+
+import io.kirmani.cardboard.benchmarks.HostContext;
+import io.kirmani.cardboard.math.Mat4;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Checks the instances that the headless GL draws on the CPU.
+ */
+public class CardboardInstancesTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void testNormalsUseTheNormalMatrix() {
+        CardboardGLContext.set(new CardboardRecordingGL());
+        Context context = new HostContext();
+        CardboardScene scene = new CardboardScene(context);
+        float n = (float) Math.sqrt(0.5);
+        // A triangle whose normal points along (1, 1, 0).
+        CardboardMesh triangle = new CardboardMesh(new float[] {
+            0, 0, 0, n, n, 0, 1, 1, 1, 1,
+            1, 0, 0, n, n, 0, 1, 1, 1, 1,
+            0, 1, 0, n, n, 0, 1, 1, 1, 1 });
+        CardboardInstances instances = new CardboardInstances(context, scene, triangle, 2);
+        instances.addInstance(new Mat4().scale(2.0f, 1.0f, 1.0f), 1, 1, 1, 1);
+        instances.addInstance(new Mat4().scale(3.0f, 3.0f, 3.0f), 1, 1, 1, 1);
+        scene.addObject(instances);
+        scene.onSurfaceCreated(null);
+        assertFalse(instances.isHardwareInstanced());
+        scene.onNewFrame(new HeadTransform());
+
+        FloatBuffer vertices = instances.getMesh().getVertexFloats();
+        // The first instance is stretched along x, so its normal leans further towards y.
+        float length = (float) Math.sqrt(0.25f + 1.0f);
+        assertNormal(vertices, 0, 0.5f / length, 1.0f / length, 0.0f);
+        // Scaling evenly only changes the length, which is normalized away.
+        assertNormal(vertices, 3, n, n, 0.0f);
+    }
+
+    private static void assertNormal(FloatBuffer vertices, int vertex, float x, float y, float z) {
+        int normal = vertex * CardboardMesh.FLOATS_PER_VERTEX + CardboardMesh.POSITION_SIZE;
+        assertEquals(x, vertices.get(normal), EPSILON);
+        assertEquals(y, vertices.get(normal + 1), EPSILON);
+        assertEquals(z, vertices.get(normal + 2), EPSILON);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * CardboardProgramCacheTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import io.kirmani.cardboard.benchmarks.HostContext;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks where defines go in a shader and that the order they are given in doesn't matter.
+ */
+public class CardboardProgramCacheTest {
+    private CardboardRecordingGL mGL;
+    private CardboardProgramCache mCache;
+
+    @Before
+    public void setUp() {
+        mGL = new CardboardRecordingGL();
+        CardboardGLContext.set(mGL);
+        mCache = new CardboardProgramCache(new HostContext());
+    }
+
+    @Test
+    public void testDefinesGoAfterVersion() {
+        assertEquals(0, CardboardProgramCache.findVersionEnd("precision mediump float;\n"));
+        String source = "// An ES 3 shader.\n/* Still a comment. */\n#version 300 es\nin vec4 a;\n";
+        assertEquals(source.indexOf("in vec4"), CardboardProgramCache.findVersionEnd(source));
+        assertEquals(15, CardboardProgramCache.findVersionEnd("#version 300 es"));
+        // Only comments and whitespace may come before the directive.
+        assertEquals(0, CardboardProgramCache.findVersionEnd("#define A\n#version 300 es\n"));
+    }
+
+    @Test
+    public void testDefinesAreSortedAndDeduplicated() {
+        assertArrayEquals(new String[] { "A", "B" },
+                CardboardProgramCache.normalizeDefines(new String[] { "B", "A", "B" }));
+    }
+
+    @Test
+    public void testDefineOrderSharesAProgram() {
+        CardboardProgram ab = mCache.getProgram(R.raw.light_vertex, R.raw.passthrough_fragment,
+                "HIGHLIGHT", "INSTANCED");
+        CardboardProgram ba = mCache.getProgram(R.raw.light_vertex, R.raw.passthrough_fragment,
+                "INSTANCED", "HIGHLIGHT");
+        CardboardProgram none = mCache.getProgram(R.raw.light_vertex,
+                R.raw.passthrough_fragment);
+        assertSame(ab, ba);
+        assertNotSame(ab, none);
+        assertEquals(2, mGL.getCallCount("glLinkProgram"));
+    }
+}
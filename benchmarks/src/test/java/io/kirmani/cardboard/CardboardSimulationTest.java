@@ -0,0 +1,187 @@
+/*
+ * CardboardSimulationTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.kirmani.cardboard.math.Mat4;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks how the simulation interpolates its snapshots, and that a step that fails on any of its
+ * threads leaves the simulation usable.
+ */
+public class CardboardSimulationTest {
+    private static final float EPSILON = 1e-5f;
+    private static final float STEP_SECONDS = 1.0f / 60.0f;
+    // Enough objects for a step to be split between two threads.
+    private static final int PARALLEL_OBJECTS = 300;
+
+    @Test
+    public void testInterpolatesBetweenPoses() {
+        CardboardSimulation simulation = new CardboardSimulation(1);
+        CardboardSimulation.Transform transform = simulation.add(new Mover(), new Mat4());
+        long stepNanos = simulation.getClock().getStepNanos();
+        simulation.resetClock(0);
+        assertEquals(1, simulation.advance(stepNanos));
+
+        // Halfway into the next step, the object is halfway through its first.
+        Mat4 model = new Mat4();
+        simulation.acquire(stepNanos + stepNanos / 2);
+        assertTrue(simulation.read(transform, model));
+        Mat4 expected = new Mat4().setRotation(45.0f, 0.0f, 0.0f, 1.0f);
+        expected.m[12] = 0.5f;
+        assertArrayEquals(expected.m, model.m, EPSILON);
+
+        simulation.acquire(2 * stepNanos);
+        assertTrue(simulation.read(transform, model));
+        expected.setRotation(90.0f, 0.0f, 0.0f, 1.0f);
+        expected.m[12] = 1.0f;
+        assertArrayEquals(expected.m, model.m, EPSILON);
+    }
+
+    @Test(timeout = 10000)
+    public void testWorkerErrorIsRethrown() {
+        // The second half of the objects is stepped by the worker.
+        Throwable error = new SimulationError();
+        Throwable thrown = assertStepRecovers(error, PARALLEL_OBJECTS - 1);
+        assertSame(IllegalStateException.class, thrown.getClass());
+        assertSame(error, thrown.getCause());
+    }
+
+    @Test(timeout = 10000)
+    public void testWorkerCheckedExceptionIsRethrown() {
+        Throwable error = new IOException();
+        Throwable thrown = assertStepRecovers(error, PARALLEL_OBJECTS - 1);
+        assertSame(IllegalStateException.class, thrown.getClass());
+        assertSame(error, thrown.getCause());
+    }
+
+    @Test(timeout = 10000)
+    public void testSteppingThreadErrorReleasesWorkers() {
+        Throwable error = new IllegalStateException();
+        assertSame(error, assertStepRecovers(error, 0));
+    }
+
+    @Test(timeout = 10000)
+    public void testInterruptedStepIsNotSeen() {
+        CardboardSimulation simulation = new CardboardSimulation(2);
+        simulation.setInterpolating(false);
+        List<Mover> movers = new ArrayList<Mover>();
+        List<CardboardSimulation.Transform> transforms =
+                new ArrayList<CardboardSimulation.Transform>();
+        for (int i = 0; i < PARALLEL_OBJECTS; i++) {
+            Mover mover = new Mover();
+            transforms.add(simulation.add(mover, new Mat4()));
+            movers.add(mover);
+        }
+        simulation.step(STEP_SECONDS);
+
+        // The first object is stepped by this thread, which is then interrupted at the end of
+        // the step, after the objects have been advanced.
+        movers.get(0).interrupt = true;
+        simulation.step(STEP_SECONDS);
+        assertTrue(Thread.interrupted());
+        movers.get(0).interrupt = false;
+
+        simulation.step(STEP_SECONDS);
+        Mat4 model = new Mat4();
+        simulation.acquire();
+        for (int i = 0; i < PARALLEL_OBJECTS; i++) {
+            assertTrue(simulation.read(transforms.get(i), model));
+            assertEquals("Object " + i, 2.0f, model.m[12], EPSILON);
+        }
+        simulation.stop();
+        assertFalse(Thread.interrupted());
+    }
+
+    /**
+     * Makes one object fail a step, and checks that the next step runs every object.
+     *
+     * @return What the failed step threw.
+     */
+    private static Throwable assertStepRecovers(Throwable error, int failing) {
+        CardboardSimulation simulation = new CardboardSimulation(2);
+        List<Mover> movers = new ArrayList<Mover>();
+        for (int i = 0; i < PARALLEL_OBJECTS; i++) {
+            Mover mover = new Mover();
+            simulation.add(mover, new Mat4());
+            movers.add(mover);
+        }
+        simulation.step(STEP_SECONDS);
+
+        Mover mover = movers.get(failing);
+        mover.error = error;
+        Throwable thrown = null;
+        try {
+            simulation.step(STEP_SECONDS);
+            fail("The step should have failed");
+        } catch (Throwable e) {
+            thrown = e;
+        }
+
+        // The workers are started again, and every object is stepped.
+        mover.error = null;
+        Mover other = movers.get(PARALLEL_OBJECTS - 1 - failing);
+        int steps = mover.steps;
+        int otherSteps = other.steps;
+        simulation.step(STEP_SECONDS);
+        assertEquals(steps + 1, mover.steps);
+        assertEquals(otherSteps + 1, other.steps);
+        simulation.stop();
+        return thrown;
+    }
+
+    private static final class SimulationError extends Error {
+    }
+
+    /**
+     * Moves one meter along x and turns a quarter around z per step.
+     */
+    private static final class Mover extends CardboardObject {
+        Throwable error;
+        boolean interrupt;
+        int steps;
+
+        Mover() {
+            super(null, null);
+        }
+
+        @Override
+        protected void onSimulate(Mat4 model, float deltaSeconds) {
+            if (error != null) {
+                Mover.<RuntimeException>sneakyThrow(error);
+            }
+            model.rotate(90.0f, 0.0f, 0.0f, 1.0f);
+            model.m[12] += 1.0f;
+            steps++;
+            if (interrupt) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Throws any throwable, checked or not, the way code compiled against other signatures
+         * can.
+         */
+        @SuppressWarnings("unchecked")
+        private static <T extends Throwable> void sneakyThrow(Throwable error) throws T {
+            throw (T) error;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * CardboardStaticBatchTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+
+import com.google.vrtoolkit.cardboard.Eye;
+import com.google.vrtoolkit.cardboard.HeadTransform;
+
+import io.kirmani.cardboard.benchmarks.HostContext;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.microedition.khronos.egl.EGLConfig;
+
+/**
+ * Checks how static objects are merged into batches.
+ */
+public class CardboardStaticBatchTest {
+    private static final float EPSILON = 1e-5f;
+
+    private final Context mContext = new HostContext();
+    private final HeadTransform mHead = new HeadTransform();
+    private final Eye mEye = new Eye(Eye.Type.LEFT);
+    private CardboardRecordingGL mGL;
+    private CardboardScene mScene;
+    private Triangle mFirst;
+    private Triangle mSecond;
+
+    @Before
+    public void setUp() {
+        mGL = new CardboardRecordingGL();
+        CardboardGLContext.set(mGL);
+        mScene = new CardboardScene(mContext);
+        mScene.setCullingMode(CardboardScene.CULL_NONE);
+        mFirst = new Triangle(mContext, mScene);
+        mSecond = new Triangle(mContext, mScene);
+        mScene.addObject(mFirst);
+        mScene.addObject(mSecond);
+        mScene.onSurfaceCreated(null);
+    }
+
+    @Test
+    public void testNormalsUseTheNormalMatrix() {
+        mFirst.getModel().scale(2.0f, 1.0f, 1.0f);
+        mFirst.invalidateModel();
+        mScene.onNewFrame(mHead);
+
+        List<CardboardStaticBatch> batches = CardboardStaticBatch.build(mContext, mScene,
+                Arrays.<CardboardObject>asList(mFirst));
+        FloatBuffer vertices = batches.get(0).getMesh().getVertexFloats();
+        // The surface is stretched along x, so its normal leans further towards y, and stays
+        // unit length.
+        float length = (float) Math.sqrt(0.25f + 1.0f);
+        assertEquals(0.5f / length, vertices.get(CardboardMesh.POSITION_SIZE), EPSILON);
+        assertEquals(1.0f / length, vertices.get(CardboardMesh.POSITION_SIZE + 1), EPSILON);
+        assertEquals(0.0f, vertices.get(CardboardMesh.POSITION_SIZE + 2), EPSILON);
+    }
+
+    @Test
+    public void testStaticObjectsShareADrawCall() {
+        assertEquals(1, drawFrame());
+        assertEquals(2, mGL.getTriangles());
+    }
+
+    @Test
+    public void testHiddenObjectLeavesTheBatch() {
+        drawFrame();
+        mFirst.setVisible(false);
+        assertEquals(1, drawFrame());
+        assertEquals(1, mGL.getTriangles());
+    }
+
+    @Test
+    public void testHighlightedObjectDrawsItself() {
+        drawFrame();
+        mFirst.setHighlight(1.0f);
+        // The batch of the other object, and the highlighted one.
+        assertEquals(2, drawFrame());
+        mFirst.setHighlight(0.0f);
+        assertEquals(1, drawFrame());
+    }
+
+    @Test
+    public void testTransparentObjectDrawsItself() {
+        drawFrame();
+        mFirst.setTransparent(true);
+        // The batch of the other object, and the transparent one in its own pass.
+        assertEquals(2, drawFrame());
+        mFirst.setTransparent(false);
+        assertEquals(1, drawFrame());
+    }
+
+    /**
+     * Draws a frame with one eye and returns its draw calls.
+     */
+    private long drawFrame() {
+        mScene.onNewFrame(mHead);
+        mGL.resetCounters();
+        mScene.onDrawEye(mEye);
+        return mGL.getDrawCalls();
+    }
+
+    /**
+     * A static triangle whose normal points along (1, 1, 0).
+     */
+    private static class Triangle extends CardboardObject {
+        Triangle(Context context, CardboardScene scene) {
+            super(context, scene);
+            float n = (float) Math.sqrt(0.5);
+            setMesh(new CardboardMesh(new float[] {
+                0, 0, 0, n, n, 0, 1, 1, 1, 1,
+                1, 0, 0, n, n, 0, 1, 1, 1, 1,
+                0, 1, 0, n, n, 0, 1, 1, 1, 1 }));
+            setStatic(true);
+        }
+
+        @Override
+        public void onSurfaceCreated(EGLConfig config) {
+            getMesh().upload();
+            setProgram(loadProgram(R.raw.light_vertex, R.raw.passthrough_fragment, "HIGHLIGHT"));
+        }
+    }
+}
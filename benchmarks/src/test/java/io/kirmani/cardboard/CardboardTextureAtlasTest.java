@@ -0,0 +1,101 @@
+/*
+ * CardboardTextureAtlasTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Checks that images packed into an atlas keep their padding, in placement and in pixels.
+ */
+public class CardboardTextureAtlasTest {
+    private static final int SIZE = 64;
+    private static final int PADDING = 2;
+
+    @Test
+    public void testPaddingSurroundsEveryImage() throws IOException {
+        CardboardTextureAtlas atlas = new CardboardTextureAtlas(SIZE, PADDING);
+        int count = 0;
+        // Sizes that don't line up, so that the padding decides where images go.
+        while (add(atlas, 5 + count % 4, 7 + count % 3, count + 1) != null) {
+            count++;
+        }
+        List<CardboardTextureAtlas.Region> regions = atlas.getRegions();
+        assertEquals(count, regions.size());
+
+        ByteBuffer pixels = atlas.load().getLevel(0);
+        for (int i = 0; i < regions.size(); i++) {
+            CardboardTextureAtlas.Region region = regions.get(i);
+            int left = region.getX() - PADDING;
+            int top = region.getY() - PADDING;
+            int right = region.getX() + region.getWidth() + PADDING;
+            int bottom = region.getY() + region.getHeight() + PADDING;
+            assertTrue(left >= 0 && top >= 0 && right <= SIZE && bottom <= SIZE);
+            assertEquals((float) region.getX() / SIZE, region.getU0(), 0.0f);
+            assertEquals((float) right - PADDING, region.getU1() * SIZE, 1e-4f);
+            // The image and its border hold only the image's edge color, so no neighbour reaches
+            // into either.
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    assertEquals("Pixel " + x + ", " + y, i + 1, pixels.get((y * SIZE + x) * 4));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFullAtlasRejectsImages() {
+        CardboardTextureAtlas atlas = new CardboardTextureAtlas(SIZE, PADDING);
+        int half = SIZE / 2 - 2 * PADDING;
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(add(atlas, half, half, 1));
+        }
+        assertNull(add(atlas, 1, 1, 1));
+        // Without its padding the image would have fit.
+        CardboardTextureAtlas tight = new CardboardTextureAtlas(SIZE, PADDING);
+        assertNull(add(tight, SIZE - 1, SIZE - 1, 1));
+    }
+
+    private static CardboardTextureAtlas.Region add(CardboardTextureAtlas atlas, int width,
+            int height, int id) {
+        return atlas.add(width, height, new SolidImage(width, height, id));
+    }
+
+    /**
+     * An image of one color, whose red channel identifies it.
+     */
+    private static final class SolidImage implements CardboardTexture.Source {
+        private final int mWidth;
+        private final int mHeight;
+        private final int mId;
+
+        SolidImage(int width, int height, int id) {
+            mWidth = width;
+            mHeight = height;
+            mId = id;
+        }
+
+        @Override
+        public CardboardTextureData load() {
+            ByteBuffer pixels = ByteBuffer.allocateDirect(mWidth * mHeight * 4);
+            for (int i = 0; i < mWidth * mHeight; i++) {
+                pixels.put((byte) mId).put((byte) 0).put((byte) 0).put((byte) 0xff);
+            }
+            pixels.position(0);
+            return CardboardTextureData.fromRgba(mWidth, mHeight, pixels);
+        }
+    }
+}
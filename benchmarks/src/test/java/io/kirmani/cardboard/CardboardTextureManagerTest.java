@@ -0,0 +1,193 @@
+/*
+ * CardboardTextureManagerTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Checks which textures the manager evicts, and how it accounts for their memory, against the
+ * headless GL.
+ */
+public class CardboardTextureManagerTest {
+    private static final int TEXTURE_SIZE = 16;
+    private static final long TEXTURE_BYTES = TEXTURE_SIZE * TEXTURE_SIZE * 4;
+    private static final long MIPMAPPED_BYTES = (16 * 16 + 8 * 8 + 4 * 4 + 2 * 2 + 1) * 4;
+    private static final long LOAD_TIMEOUT_MILLIS = 10000;
+
+    private CardboardRecordingGL mGL;
+    private CardboardGLState mState;
+    private CardboardAssetLoader mLoader;
+    private CardboardTextureManager mManager;
+
+    @Before
+    public void setUp() {
+        mGL = new CardboardRecordingGL();
+        CardboardGLContext.set(mGL);
+        mState = new CardboardGLState();
+        mLoader = new CardboardAssetLoader();
+        mManager = new CardboardTextureManager(mLoader);
+        mManager.onSurfaceCreated();
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.shutdown();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvictedFirst() {
+        mManager.setMemoryCap(3 * TEXTURE_BYTES);
+        CardboardTexture a = acquire("a");
+        CardboardTexture b = acquire("b");
+        CardboardTexture c = acquire("c");
+        CardboardTexture d = acquire("d");
+        drawFrame(a);
+        drawFrame(b);
+        drawFrame(c);
+        drawFrame(d);
+        assertEquals(4 * TEXTURE_BYTES, mManager.getResidentBytes());
+
+        mManager.onNewFrame();
+        assertFalse(a.isResident());
+        assertTrue(b.isResident() && c.isResident() && d.isResident());
+        assertEquals(3 * TEXTURE_BYTES, mManager.getResidentBytes());
+        // Still referenced, so it is only unloaded.
+        assertEquals(4, mManager.getTextureCount());
+    }
+
+    @Test
+    public void testUnreferencedIsEvictedFirst() {
+        mManager.setMemoryCap(3 * TEXTURE_BYTES);
+        CardboardTexture a = acquire("a");
+        CardboardTexture b = acquire("b");
+        CardboardTexture c = acquire("c");
+        CardboardTexture d = acquire("d");
+        drawFrame(a);
+        drawFrame(b);
+        drawFrame(c);
+        drawFrame(d);
+        b.release();
+
+        mManager.onNewFrame();
+        // Used more recently than a, but nobody holds it any more.
+        assertFalse(b.isResident());
+        assertTrue(a.isResident());
+        assertEquals(3, mManager.getTextureCount());
+        assertEquals(3 * TEXTURE_BYTES, mManager.getResidentBytes());
+    }
+
+    @Test
+    public void testPreviousFrameIsNeverEvicted() {
+        mManager.setMemoryCap(TEXTURE_BYTES);
+        CardboardTexture a = acquire("a");
+        CardboardTexture b = acquire("b");
+        drawFrame(a, b);
+
+        // Both were bound in the frame before, so the cap is exceeded rather than thrashing.
+        mManager.onNewFrame();
+        assertTrue(a.isResident() && b.isResident());
+        assertEquals(2 * TEXTURE_BYTES, mManager.getResidentBytes());
+
+        drawFrame(b);
+        mManager.onNewFrame();
+        assertFalse(a.isResident());
+        assertTrue(b.isResident());
+        assertEquals(TEXTURE_BYTES, mManager.getResidentBytes());
+    }
+
+    @Test
+    public void testResidentBytesFollowEvictionAndReload() {
+        mManager.setMemoryCap(TEXTURE_BYTES);
+        CardboardTexture a = acquire("a");
+        CardboardTexture b = acquire("b");
+        CardboardTexture mipmapped = mManager.acquire("mipmapped", new Image(), true);
+        drawFrame(a);
+        assertEquals(TEXTURE_BYTES, a.getSizeInBytes());
+        drawFrame(mipmapped);
+        // Every level down to 1x1.
+        assertEquals(MIPMAPPED_BYTES, mipmapped.getSizeInBytes());
+        drawFrame(b);
+        mManager.onNewFrame();
+        assertEquals(TEXTURE_BYTES, mManager.getResidentBytes());
+        assertEquals(mManager.getResidentBytes(), residentGLBytes());
+
+        // Evicted textures that are still referenced load again when bound.
+        mManager.setMemoryCap(CardboardTextureManager.DEFAULT_MEMORY_CAP);
+        drawFrame(a, mipmapped);
+        assertTrue(a.isResident() && mipmapped.isResident());
+        assertEquals(2 * TEXTURE_BYTES + MIPMAPPED_BYTES, mManager.getResidentBytes());
+        assertEquals(mManager.getResidentBytes(), residentGLBytes());
+    }
+
+    @Test
+    public void testSurfaceCreatedForgetsResidency() {
+        CardboardTexture a = acquire("a");
+        drawFrame(a);
+        assertEquals(TEXTURE_BYTES, mManager.getResidentBytes());
+
+        // The texture objects died with the old context.
+        mGL = new CardboardRecordingGL();
+        CardboardGLContext.set(mGL);
+        mState = new CardboardGLState();
+        mManager.onSurfaceCreated();
+        assertFalse(a.isResident());
+        assertEquals(0, mManager.getResidentBytes());
+
+        drawFrame(a);
+        assertTrue(a.isResident());
+        assertEquals(TEXTURE_BYTES, mManager.getResidentBytes());
+        assertEquals(mManager.getResidentBytes(), residentGLBytes());
+    }
+
+    private CardboardTexture acquire(String key) {
+        return mManager.acquire(key, new Image(), false);
+    }
+
+    /**
+     * Starts a frame that binds the given textures, and waits for those that aren't resident to
+     * be loaded and uploaded.
+     */
+    private void drawFrame(CardboardTexture... textures) {
+        mManager.onNewFrame();
+        for (CardboardTexture texture : textures) {
+            texture.bind(mState, 0);
+        }
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (mLoader.getPendingCount() > 0) {
+            assertTrue("Textures took too long to load", System.currentTimeMillis() < deadline);
+            mLoader.onNewFrame();
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Returns the memory of the textures on the GL side, less the manager's fallback pixel.
+     */
+    private long residentGLBytes() {
+        return mGL.getTextureMemory() - 4;
+    }
+
+    /**
+     * A blank power-of-two image, so that OpenGL ES 2 can generate its mipmaps.
+     */
+    private static final class Image implements CardboardTexture.Source {
+        @Override
+        public CardboardTextureData load() {
+            return CardboardTextureData.fromRgba(TEXTURE_SIZE, TEXTURE_SIZE,
+                    ByteBuffer.allocateDirect((int) TEXTURE_BYTES));
+        }
+    }
+}
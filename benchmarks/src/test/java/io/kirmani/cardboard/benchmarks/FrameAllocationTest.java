@@ -0,0 +1,61 @@
+/*
+ * FrameAllocationTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import static org.junit.Assert.assertTrue;
+
+import io.kirmani.cardboard.CardboardGLContext;
+import io.kirmani.cardboard.CardboardScene;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that the frame loop allocates nothing once it has warmed up, since on the device every
+ * allocation brings the next garbage collection pause closer.
+ */
+public class FrameAllocationTest {
+    // Lazily grown buffers, such as the render queue's, reach their final size within this.
+    private static final int WARM_UP_FRAMES = 120;
+    private static final int FRAMES = 600;
+
+    @Test
+    public void testCullingPerEyeDoesNotAllocate() {
+        assertNoAllocation(CardboardScene.CULL_PER_EYE);
+    }
+
+    @Test
+    public void testCullingPerFrameDoesNotAllocate() {
+        assertNoAllocation(CardboardScene.CULL_PER_FRAME);
+    }
+
+    private static void assertNoAllocation(int culling) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        BenchmarkScene scene = new BenchmarkScene(1000, 42);
+        scene.scene.setCullingMode(culling);
+        CardboardGLContext.set(scene.gl);
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            scene.drawFrame();
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < FRAMES; i++) {
+            scene.drawFrame();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // The VM allocates a few objects of its own the first time code is compiled, but anything
+        // the frame allocates every time costs at least an object header per frame.
+        assertTrue(allocated + " bytes allocated over " + FRAMES + " frames", allocated < FRAMES);
+    }
+}
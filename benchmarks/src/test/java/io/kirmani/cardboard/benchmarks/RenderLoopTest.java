@@ -0,0 +1,191 @@
+/*
+ * RenderLoopTest.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.kirmani.cardboard.CardboardGLContext;
+import io.kirmani.cardboard.CardboardHeadTrace;
+import io.kirmani.cardboard.CardboardScene;
+import io.kirmani.cardboard.math.Mat4;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs whole frames of a scene against the headless GL and checks the calls they make.
+ */
+public class RenderLoopTest {
+    // In front of the viewer, behind the viewer, and far off to the side.
+    private static final float[] THREE_BOXES = { 0, 0, -5, 0, 0, 5, 50, 0, -5 };
+    // Behind the viewer, until the head turns around.
+    private static final float[] TWO_BOXES_BEHIND = { 0, 0, 5, 1, 0, 5 };
+    private static final long FRAME_NANOS = 16666667L;
+
+    @Test
+    public void testGlobalsAreUploadedOncePerEye() {
+        BenchmarkScene scene = new BenchmarkScene(300, 42);
+        List<String> log = drawFrames(scene, 1);
+        long draws = scene.gl.getDrawCalls();
+        // Every box spins, so each draw uploads its model. The ViewProjection matrix is uploaded
+        // once per eye, and the light and highlight don't change, so they aren't uploaded again.
+        assertEquals(draws + 2, scene.gl.getCallCount("glUniformMatrix4fv"));
+        assertEquals(0, scene.gl.getCallCount("glUniform3fv"));
+        assertEquals(0, scene.gl.getCallCount("glUniform4fv"));
+        // The boxes share a program and a mesh, which stay bound across both eyes.
+        assertEquals(1, scene.gl.getCallCount("glUseProgram"));
+        assertEquals(2, scene.gl.getCallCount("glBindBuffer"));
+        // Besides a model and a draw per box, only the clears and the state set up by the first
+        // draw remain: 290 calls for the 138 boxes in view.
+        assertEquals(2 * draws + 14, log.size());
+        assertEquals(290, log.size());
+    }
+
+    @Test
+    public void testUnchangedModelIsNotUploaded() {
+        // The simulation is never stepped, so the boxes don't move.
+        BenchmarkScene scene = new BenchmarkScene(THREE_BOXES, true);
+        drawFrames(scene, 1);
+        assertEquals(2, scene.gl.getDrawCalls());
+        // Only the ViewProjection matrix of each eye.
+        assertEquals(2, scene.gl.getCallCount("glUniformMatrix4fv"));
+    }
+
+    @Test
+    public void testCullingCountsPerEye() {
+        assertCulling(CardboardScene.CULL_PER_EYE, 2, 4);
+    }
+
+    @Test
+    public void testCullingCountsPerFrame() {
+        assertCulling(CardboardScene.CULL_PER_FRAME, 2, 4);
+    }
+
+    @Test
+    public void testNoCulling() {
+        assertCulling(CardboardScene.CULL_NONE, 6, 0);
+    }
+
+    @Test
+    public void testReplaysDrawTheSameCalls() {
+        // Turning half way around over the replay, at an uneven frame rate.
+        CardboardHeadTrace trace = createTrace(61, 0.0f, 3.0f);
+        List<String> first = replay(trace, 60);
+        List<String> second = replay(trace, 60);
+        assertTrue(first.size() > 0);
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void testReplayedHeadIsDrawnPerEye() {
+        assertReplayedHeadIsDrawn(CardboardScene.CULL_PER_EYE);
+    }
+
+    @Test
+    public void testReplayedHeadIsDrawnPerFrame() {
+        assertReplayedHeadIsDrawn(CardboardScene.CULL_PER_FRAME);
+    }
+
+    @Test
+    public void testResumeDuringReplayWaitsForTheEnd() {
+        BenchmarkScene scene = new BenchmarkScene(THREE_BOXES, true);
+        scene.scene.startReplay(createTrace(3, 0.0f, 0.0f));
+        scene.drawFrame();
+        scene.scene.onResume();
+        // The replay steps the simulation itself.
+        assertFalse(scene.scene.getSimulation().isRunning());
+        scene.drawFrame();
+        scene.drawFrame();
+        assertTrue(scene.scene.isReplaying());
+        scene.drawFrame();
+        assertFalse(scene.scene.isReplaying());
+        assertTrue(scene.scene.getSimulation().isRunning());
+        scene.scene.onPause();
+        assertFalse(scene.scene.getSimulation().isRunning());
+    }
+
+    private static void assertReplayedHeadIsDrawn(int mode) {
+        BenchmarkScene scene = new BenchmarkScene(TWO_BOXES_BEHIND, false);
+        scene.scene.setCullingMode(mode);
+        drawFrames(scene, 1);
+        assertEquals(0, scene.gl.getDrawCalls());
+
+        // The warm-up frame and two more, looking back.
+        scene.scene.startReplay(createTrace(3, 180.0f, 0.0f));
+        drawFrames(scene, 2);
+        assertEquals(2 * 2 * 2, scene.gl.getDrawCalls());
+
+        // The trace is over, so the live head is back.
+        drawFrames(scene, 1);
+        assertEquals(0, scene.gl.getDrawCalls());
+    }
+
+    /**
+     * Returns the calls made by a fresh scene of simulated boxes replaying a trace.
+     */
+    private static List<String> replay(CardboardHeadTrace trace, int frames) {
+        BenchmarkScene scene = new BenchmarkScene(300, 42, true);
+        scene.scene.startReplay(trace);
+        try {
+            return drawFrames(scene, frames);
+        } finally {
+            // Stops the workers that stepped the simulation.
+            scene.scene.onPause();
+        }
+    }
+
+    /**
+     * Returns a trace of the head turning around the y axis.
+     */
+    private static CardboardHeadTrace createTrace(int frames, float yaw, float yawPerFrame) {
+        CardboardHeadTrace trace = new CardboardHeadTrace(frames);
+        Mat4 headView = new Mat4();
+        long frameNanos = 0;
+        for (int i = 0; i < frames; i++) {
+            headView.setRotation(yaw + i * yawPerFrame, 0.0f, 1.0f, 0.0f);
+            trace.add(frameNanos, headView.m, 0);
+            frameNanos += FRAME_NANOS + (i % 3) * FRAME_NANOS / 4;
+        }
+        return trace;
+    }
+
+    private static void assertCulling(int mode, int drawn, int culled) {
+        BenchmarkScene scene = new BenchmarkScene(THREE_BOXES, false);
+        scene.scene.setCullingMode(mode);
+        // Culling once per frame only starts once both eyes have been seen.
+        scene.drawFrame();
+        scene.gl.resetCounters();
+        scene.drawFrame();
+        assertEquals(drawn, scene.gl.getDrawCalls());
+        // The counts of a frame are published when the next one starts.
+        scene.scene.onNewFrame(scene.head);
+        assertEquals(drawn, scene.scene.getDrawnCount());
+        assertEquals(culled, scene.scene.getCulledCount());
+    }
+
+    /**
+     * Returns the calls made by the given number of frames, after a first frame that uploads
+     * everything.
+     */
+    static List<String> drawFrames(BenchmarkScene scene, int frames) {
+        // Every scene makes its own GL current when it is created.
+        CardboardGLContext.set(scene.gl);
+        scene.drawFrame();
+        scene.gl.resetCounters();
+        scene.gl.setRecording(true);
+        for (int i = 0; i < frames; i++) {
+            scene.drawFrame();
+        }
+        scene.gl.setRecording(false);
+        return new ArrayList<String>(scene.gl.getLog());
+    }
+}
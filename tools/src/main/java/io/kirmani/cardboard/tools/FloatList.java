@@ -0,0 +1,37 @@
+/*
+ * FloatList.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.tools;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of floats, to avoid boxing every coordinate.
+ */
+final class FloatList {
+    private float[] mData = new float[1024];
+    private int mSize;
+
+    void add(float value) {
+        if (mSize == mData.length) {
+            mData = Arrays.copyOf(mData, mSize * 2);
+        }
+        mData[mSize++] = value;
+    }
+
+    float get(int index) {
+        return mData[index];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    float[] toArray() {
+        return Arrays.copyOf(mData, mSize);
+    }
+}
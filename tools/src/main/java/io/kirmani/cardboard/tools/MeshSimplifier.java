@@ -0,0 +1,516 @@
+/*
+ * MeshSimplifier.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.tools;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Generates lower levels of detail of a mesh by quadric error edge collapse (Garland and
+ * Heckbert).
+ *
+ * <p>Vertices are grouped by position before simplifying, so that vertices which only differ in
+ * their normal or color, along a hard edge or a color seam, move together and don't tear the
+ * surface apart. Each remaining corner keeps the normal and color of its original vertex. Collapses
+ * that would flip a triangle are skipped, and open boundaries are held in place by extra planes
+ * perpendicular to them.
+ *
+ * <p>The error of a level is the largest square root of the quadric error of any collapse so far,
+ * which bounds the distance of each vertex from the planes of the triangles it replaced. That is
+ * the geometric error CardboardLodGroup expects in its screen-space error mode.
+ *
+ * <pre>
+ * MeshSimplifier [-color r,g,b,a] input.obj output ratio...
+ * </pre>
+ *
+ * writes output_lod0.cbm with the full mesh, and output_lodN.cbm with the given ratio of its
+ * triangles for each further level.
+ */
+public class MeshSimplifier {
+    private static final int FLOATS_PER_VERTEX = MeshWriter.FLOATS_PER_VERTEX;
+
+    // Below this, the quadric of an edge is treated as singular and the best endpoint is used.
+    private static final double SINGULAR_EPSILON = 1e-12;
+
+    private final float[] mVertices;
+    private final int[] mCorners;
+    private final boolean[] mLive;
+    private int mLiveCount;
+
+    // Vertices grouped by position. A collapsed node points at the node it was merged into.
+    private final int[] mNodeOfVertex;
+    private final int[] mParent;
+    private final double[] mPositions;
+    private final double[] mQuadrics;
+    private final int[] mVersions;
+    private final int[][] mNodeTriangles;
+    private final int[] mNodeTriangleCounts;
+
+    private final PriorityQueue<Collapse> mQueue = new PriorityQueue<Collapse>();
+    private double mError;
+
+    /** A candidate edge collapse, valid as long as neither node changed since it was queued. */
+    private static final class Collapse implements Comparable<Collapse> {
+        final int mA;
+        final int mB;
+        final int mVersionA;
+        final int mVersionB;
+        final double mCost;
+        final double[] mTarget;
+
+        Collapse(int a, int b, int versionA, int versionB, double cost, double[] target) {
+            mA = a;
+            mB = b;
+            mVersionA = versionA;
+            mVersionB = versionB;
+            mCost = cost;
+            mTarget = target;
+        }
+
+        @Override
+        public int compareTo(Collapse other) {
+            return Double.compare(mCost, other.mCost);
+        }
+    }
+
+    /**
+     * @param vertices The interleaved vertices, in the layout of MeshWriter.
+     * @param indices The triangles.
+     */
+    public MeshSimplifier(float[] vertices, int[] indices) {
+        mVertices = vertices;
+        mCorners = indices.clone();
+        int triangleCount = indices.length / 3;
+        mLive = new boolean[triangleCount];
+
+        int vertexCount = vertices.length / FLOATS_PER_VERTEX;
+        mNodeOfVertex = new int[vertexCount];
+        Map<String, Integer> nodes = new HashMap<String, Integer>();
+        double[] positions = new double[vertexCount * 3];
+        for (int v = 0; v < vertexCount; v++) {
+            int offset = v * FLOATS_PER_VERTEX;
+            String key = vertices[offset] + " " + vertices[offset + 1] + " " + vertices[offset + 2];
+            Integer node = nodes.get(key);
+            if (node == null) {
+                node = nodes.size();
+                nodes.put(key, node);
+                for (int i = 0; i < 3; i++) {
+                    positions[node * 3 + i] = vertices[offset + i];
+                }
+            }
+            mNodeOfVertex[v] = node;
+        }
+        int nodeCount = nodes.size();
+        mPositions = Arrays.copyOf(positions, nodeCount * 3);
+        mParent = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            mParent[i] = i;
+        }
+        mQuadrics = new double[nodeCount * 10];
+        mVersions = new int[nodeCount];
+        mNodeTriangles = new int[nodeCount][];
+        mNodeTriangleCounts = new int[nodeCount];
+
+        Map<Long, Integer> edgeUses = new HashMap<Long, Integer>();
+        for (int t = 0; t < triangleCount; t++) {
+            int a = node(t, 0);
+            int b = node(t, 1);
+            int c = node(t, 2);
+            if (a == b || b == c || c == a) {
+                continue;
+            }
+            mLive[t] = true;
+            mLiveCount++;
+            // A sliver without area has no plane, but still connects its nodes.
+            double[] plane = plane(a, b, c);
+            for (int corner = 0; corner < 3; corner++) {
+                int n = node(t, corner);
+                if (plane != null) {
+                    addQuadric(n, plane, 1.0);
+                }
+                addTriangle(n, t);
+                Long edge = edgeKey(n, node(t, (corner + 1) % 3));
+                Integer uses = edgeUses.get(edge);
+                edgeUses.put(edge, uses == null ? 1 : uses + 1);
+            }
+        }
+        addBoundaryPlanes(edgeUses);
+        for (Long edge : edgeUses.keySet()) {
+            queue((int) (edge >>> 32), (int) (long) edge);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        float[] color = { 1.0f, 1.0f, 1.0f, 1.0f };
+        int arg = 0;
+        if (args.length >= 5 && args[0].equals("-color")) {
+            String[] parts = args[1].split(",");
+            for (int i = 0; i < parts.length && i < 4; i++) {
+                color[i] = Float.parseFloat(parts[i]);
+            }
+            arg = 2;
+        }
+        if (args.length - arg < 3) {
+            System.err.println("Usage: MeshSimplifier [-color r,g,b,a] input.obj output ratio...");
+            System.exit(1);
+        }
+
+        ObjConverter converter = new ObjConverter(color);
+        Reader reader = new InputStreamReader(new FileInputStream(args[arg]), "UTF-8");
+        try {
+            converter.parse(reader);
+        } finally {
+            reader.close();
+        }
+        float[] vertices = converter.getVertices();
+        int[] indices = converter.getIndices();
+        String output = args[arg + 1];
+        MeshWriter.write(vertices, indices, output + "_lod0.cbm");
+        System.out.println("lod0: " + indices.length / 3 + " triangles, error 0");
+
+        MeshSimplifier simplifier = new MeshSimplifier(vertices, indices);
+        for (int level = 1; arg + 1 + level < args.length; level++) {
+            float ratio = Float.parseFloat(args[arg + 1 + level]);
+            simplifier.simplify(Math.round(indices.length / 3 * ratio));
+            VertexWelder welder = new VertexWelder(FLOATS_PER_VERTEX);
+            int[] simplified = simplifier.getIndices(welder);
+            MeshWriter.write(welder.toArray(), simplified, output + "_lod" + level + ".cbm");
+            System.out.println("lod" + level + ": " + simplified.length / 3 + " triangles, error "
+                    + (float) simplifier.getError());
+        }
+    }
+
+    /**
+     * Collapses edges until at most the given number of triangles is left, or no edge can be
+     * collapsed. Can be called again with a smaller target to continue.
+     */
+    public void simplify(int targetTriangles) {
+        Collapse collapse;
+        while (mLiveCount > targetTriangles && (collapse = mQueue.poll()) != null) {
+            if (collapse.mVersionA != mVersions[collapse.mA]
+                    || collapse.mVersionB != mVersions[collapse.mB]
+                    || mParent[collapse.mA] != collapse.mA || mParent[collapse.mB] != collapse.mB) {
+                continue; // Stale.
+            }
+            if (flips(collapse.mA, collapse.mB, collapse.mTarget)
+                    || flips(collapse.mB, collapse.mA, collapse.mTarget)) {
+                continue;
+            }
+            collapse(collapse);
+        }
+    }
+
+    /**
+     * Returns the error of the current level, see the class comment.
+     */
+    public double getError() {
+        return mError;
+    }
+
+    /**
+     * Returns the remaining triangles, adding their vertices to a welder.
+     */
+    public int[] getIndices(VertexWelder welder) {
+        int[] indices = new int[mLiveCount * 3];
+        int index = 0;
+        float[] vertex = new float[FLOATS_PER_VERTEX];
+        for (int t = 0; t < mLive.length; t++) {
+            if (!mLive[t]) {
+                continue;
+            }
+            for (int corner = 0; corner < 3; corner++) {
+                int v = mCorners[t * 3 + corner];
+                System.arraycopy(mVertices, v * FLOATS_PER_VERTEX, vertex, 0, FLOATS_PER_VERTEX);
+                int n = node(t, corner);
+                for (int i = 0; i < 3; i++) {
+                    vertex[i] = (float) mPositions[n * 3 + i];
+                }
+                indices[index++] = welder.add(vertex);
+            }
+        }
+        return indices;
+    }
+
+    private void collapse(Collapse collapse) {
+        int a = collapse.mA;
+        int b = collapse.mB;
+        mParent[b] = a;
+        System.arraycopy(collapse.mTarget, 0, mPositions, a * 3, 3);
+        for (int i = 0; i < 10; i++) {
+            mQuadrics[a * 10 + i] += mQuadrics[b * 10 + i];
+        }
+        mVersions[a]++;
+        mVersions[b]++;
+        mError = Math.max(mError, Math.sqrt(Math.max(collapse.mCost, 0.0)));
+
+        for (int i = 0; i < mNodeTriangleCounts[b]; i++) {
+            addTriangle(a, mNodeTriangles[b][i]);
+        }
+        mNodeTriangles[b] = null;
+        mNodeTriangleCounts[b] = 0;
+
+        // Drops the triangles that collapsed along with the edge, and the dead ones from the list.
+        Set<Integer> neighbors = new HashSet<Integer>();
+        int count = 0;
+        int[] triangles = mNodeTriangles[a];
+        for (int i = 0; i < mNodeTriangleCounts[a]; i++) {
+            int t = triangles[i];
+            if (!mLive[t]) {
+                continue;
+            }
+            int n0 = node(t, 0);
+            int n1 = node(t, 1);
+            int n2 = node(t, 2);
+            if (n0 == n1 || n1 == n2 || n2 == n0) {
+                mLive[t] = false;
+                mLiveCount--;
+                continue;
+            }
+            // A triangle shared by a and b would otherwise be listed twice.
+            boolean duplicate = false;
+            for (int j = 0; j < count; j++) {
+                duplicate |= triangles[j] == t;
+            }
+            if (duplicate) {
+                continue;
+            }
+            triangles[count++] = t;
+            neighbors.add(n0);
+            neighbors.add(n1);
+            neighbors.add(n2);
+        }
+        mNodeTriangleCounts[a] = count;
+        neighbors.remove(a);
+        for (int n : neighbors) {
+            queue(a, n);
+        }
+    }
+
+    /**
+     * Returns whether moving node a to the target would flip one of its triangles that doesn't
+     * also contain b.
+     */
+    private boolean flips(int a, int b, double[] target) {
+        for (int i = 0; i < mNodeTriangleCounts[a]; i++) {
+            int t = mNodeTriangles[a][i];
+            if (!mLive[t]) {
+                continue;
+            }
+            int[] nodes = { node(t, 0), node(t, 1), node(t, 2) };
+            if (nodes[0] == b || nodes[1] == b || nodes[2] == b) {
+                continue;
+            }
+            double[] before = normal(position(nodes[0]), position(nodes[1]), position(nodes[2]));
+            double[][] moved = new double[3][];
+            for (int corner = 0; corner < 3; corner++) {
+                moved[corner] = nodes[corner] == a ? target : position(nodes[corner]);
+            }
+            double[] after = normal(moved[0], moved[1], moved[2]);
+            if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] <= 0.0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void queue(int a, int b) {
+        double[] q = new double[10];
+        for (int i = 0; i < 10; i++) {
+            q[i] = mQuadrics[a * 10 + i] + mQuadrics[b * 10 + i];
+        }
+        double[] target = solve(q);
+        double cost;
+        if (target != null) {
+            cost = evaluate(q, target);
+        } else {
+            // Fall back to the best of the endpoints and the midpoint.
+            double[] pa = position(a);
+            double[] pb = position(b);
+            double[] mid = {
+                (pa[0] + pb[0]) * 0.5, (pa[1] + pb[1]) * 0.5, (pa[2] + pb[2]) * 0.5,
+            };
+            target = pa;
+            cost = evaluate(q, pa);
+            for (double[] candidate : new double[][] { pb, mid }) {
+                double candidateCost = evaluate(q, candidate);
+                if (candidateCost < cost) {
+                    target = candidate;
+                    cost = candidateCost;
+                }
+            }
+        }
+        mQueue.add(new Collapse(a, b, mVersions[a], mVersions[b], cost, target));
+    }
+
+    /**
+     * Holds open edges in place with a plane through the edge, perpendicular to its triangle.
+     */
+    private void addBoundaryPlanes(Map<Long, Integer> edgeUses) {
+        for (int t = 0; t < mLive.length; t++) {
+            if (!mLive[t]) {
+                continue;
+            }
+            double[] face = normal(position(node(t, 0)), position(node(t, 1)),
+                    position(node(t, 2)));
+            for (int corner = 0; corner < 3; corner++) {
+                int a = node(t, corner);
+                int b = node(t, (corner + 1) % 3);
+                if (edgeUses.get(edgeKey(a, b)) != 1) {
+                    continue;
+                }
+                double[] pa = position(a);
+                double[] pb = position(b);
+                double[] edge = { pb[0] - pa[0], pb[1] - pa[1], pb[2] - pa[2] };
+                double[] n = {
+                    edge[1] * face[2] - edge[2] * face[1],
+                    edge[2] * face[0] - edge[0] * face[2],
+                    edge[0] * face[1] - edge[1] * face[0],
+                };
+                double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+                if (length == 0.0) {
+                    continue;
+                }
+                double[] plane = {
+                    n[0] / length, n[1] / length, n[2] / length, 0.0,
+                };
+                plane[3] = -(plane[0] * pa[0] + plane[1] * pa[1] + plane[2] * pa[2]);
+                addQuadric(a, plane, 1.0);
+                addQuadric(b, plane, 1.0);
+            }
+        }
+    }
+
+    private int node(int triangle, int corner) {
+        return find(mNodeOfVertex[mCorners[triangle * 3 + corner]]);
+    }
+
+    private int find(int node) {
+        while (mParent[node] != node) {
+            mParent[node] = mParent[mParent[node]];
+            node = mParent[node];
+        }
+        return node;
+    }
+
+    private double[] position(int node) {
+        return new double[] {
+            mPositions[node * 3], mPositions[node * 3 + 1], mPositions[node * 3 + 2],
+        };
+    }
+
+    private void addTriangle(int node, int triangle) {
+        int[] triangles = mNodeTriangles[node];
+        if (triangles == null) {
+            triangles = new int[8];
+        } else if (mNodeTriangleCounts[node] == triangles.length) {
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
+        }
+        triangles[mNodeTriangleCounts[node]++] = triangle;
+        mNodeTriangles[node] = triangles;
+    }
+
+    /**
+     * Returns the plane of a triangle as a, b, c, d with a unit normal, or null if it is
+     * degenerate.
+     */
+    private double[] plane(int a, int b, int c) {
+        double[] pa = position(a);
+        double[] n = normal(pa, position(b), position(c));
+        double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+        if (length == 0.0) {
+            return null;
+        }
+        double[] plane = { n[0] / length, n[1] / length, n[2] / length, 0.0 };
+        plane[3] = -(plane[0] * pa[0] + plane[1] * pa[1] + plane[2] * pa[2]);
+        return plane;
+    }
+
+    /**
+     * Returns the unnormalized normal of a triangle.
+     */
+    private static double[] normal(double[] a, double[] b, double[] c) {
+        double ux = b[0] - a[0];
+        double uy = b[1] - a[1];
+        double uz = b[2] - a[2];
+        double vx = c[0] - a[0];
+        double vy = c[1] - a[1];
+        double vz = c[2] - a[2];
+        return new double[] { uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx };
+    }
+
+    /**
+     * Adds the squared distance to a plane to a node's quadric, stored as the upper triangle of
+     * the symmetric 4x4 matrix: aa ab ac ad bb bc bd cc cd dd.
+     */
+    private void addQuadric(int node, double[] p, double weight) {
+        int q = node * 10;
+        mQuadrics[q] += weight * p[0] * p[0];
+        mQuadrics[q + 1] += weight * p[0] * p[1];
+        mQuadrics[q + 2] += weight * p[0] * p[2];
+        mQuadrics[q + 3] += weight * p[0] * p[3];
+        mQuadrics[q + 4] += weight * p[1] * p[1];
+        mQuadrics[q + 5] += weight * p[1] * p[2];
+        mQuadrics[q + 6] += weight * p[1] * p[3];
+        mQuadrics[q + 7] += weight * p[2] * p[2];
+        mQuadrics[q + 8] += weight * p[2] * p[3];
+        mQuadrics[q + 9] += weight * p[3] * p[3];
+    }
+
+    private static double evaluate(double[] q, double[] v) {
+        double x = v[0];
+        double y = v[1];
+        double z = v[2];
+        return q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x
+                + q[4] * y * y + 2 * q[5] * y * z + 2 * q[6] * y
+                + q[7] * z * z + 2 * q[8] * z
+                + q[9];
+    }
+
+    /**
+     * Returns the position that minimizes a quadric, or null if it isn't unique.
+     */
+    private static double[] solve(double[] q) {
+        // Cramer's rule on A v = -b, with A the upper-left 3x3 block and b the last column.
+        double a00 = q[0];
+        double a01 = q[1];
+        double a02 = q[2];
+        double a11 = q[4];
+        double a12 = q[5];
+        double a22 = q[7];
+        double b0 = -q[3];
+        double b1 = -q[6];
+        double b2 = -q[8];
+        double c00 = a11 * a22 - a12 * a12;
+        double c01 = a02 * a12 - a01 * a22;
+        double c02 = a01 * a12 - a02 * a11;
+        double det = a00 * c00 + a01 * c01 + a02 * c02;
+        if (Math.abs(det) < SINGULAR_EPSILON) {
+            return null;
+        }
+        double c11 = a00 * a22 - a02 * a02;
+        double c12 = a01 * a02 - a00 * a12;
+        double c22 = a00 * a11 - a01 * a01;
+        return new double[] {
+            (c00 * b0 + c01 * b1 + c02 * b2) / det,
+            (c01 * b0 + c11 * b1 + c12 * b2) / det,
+            (c02 * b0 + c12 * b1 + c22 * b2) / det,
+        };
+    }
+
+    private static Long edgeKey(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MeshWriter.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.tools;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes meshes in the binary mesh format read by io.kirmani.cardboard.CardboardMeshLoader, which
+ * documents the layout. The constants below must match the loader's; they are repeated here because
+ * the tools do not depend on the Android module.
+ */
+public class MeshWriter {
+    public static final int MAGIC = 0x464d4243; // "CBMF" read as a little-endian int.
+    public static final int VERSION = 1;
+
+    public static final int ATTRIBUTE_POSITION = 0;
+    public static final int ATTRIBUTE_NORMAL = 1;
+    public static final int ATTRIBUTE_COLOR = 2;
+
+    public static final int GL_FLOAT = 0x1406;
+    public static final int GL_UNSIGNED_SHORT = 0x1403;
+    public static final int GL_UNSIGNED_INT = 0x1405;
+
+    /** Position (3 floats), normal (3 floats) and color (4 floats), as in CardboardMesh. */
+    public static final int FLOATS_PER_VERTEX = 10;
+    public static final int STRIDE = FLOATS_PER_VERTEX * 4;
+
+    private static final int[][] ATTRIBUTES = {
+        { ATTRIBUTE_POSITION, 3, GL_FLOAT, 0 },
+        { ATTRIBUTE_NORMAL, 3, GL_FLOAT, 12 },
+        { ATTRIBUTE_COLOR, 4, GL_FLOAT, 24 },
+    };
+
+    private MeshWriter() {
+    }
+
+    /**
+     * Encodes a mesh.
+     *
+     * @param vertices The interleaved vertices, FLOATS_PER_VERTEX floats each.
+     * @param indices The indices, or null for a non-indexed mesh.
+     */
+    public static ByteBuffer encode(float[] vertices, int[] indices) {
+        int vertexCount = vertices.length / FLOATS_PER_VERTEX;
+        int indexCount = indices != null ? indices.length : 0;
+        int indexType = 0;
+        int indexSize = 0;
+        if (indexCount > 0) {
+            boolean small = vertexCount <= 0x10000;
+            indexType = small ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+            indexSize = small ? 2 : 4;
+        }
+
+        int headerSize = 28 + ATTRIBUTES.length * 16 + 6 * 4 + 2 * 4;
+        int vertexOffset = headerSize;
+        int indexOffset = vertexOffset + vertexCount * STRIDE;
+        int size = indexOffset + align4(indexCount * indexSize);
+
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(vertexCount);
+        out.putInt(indexCount);
+        out.putInt(indexType);
+        out.putInt(STRIDE);
+        out.putInt(ATTRIBUTES.length);
+        for (int[] attribute : ATTRIBUTES) {
+            for (int value : attribute) {
+                out.putInt(value);
+            }
+        }
+        for (float value : computeBounds(vertices)) {
+            out.putFloat(value);
+        }
+        out.putInt(vertexOffset);
+        out.putInt(indexCount > 0 ? indexOffset : 0);
+
+        for (float value : vertices) {
+            out.putFloat(value);
+        }
+        for (int i = 0; i < indexCount; i++) {
+            if (indexSize == 2) {
+                out.putShort((short) indices[i]);
+            } else {
+                out.putInt(indices[i]);
+            }
+        }
+        out.position(0);
+        return out;
+    }
+
+    public static void write(float[] vertices, int[] indices, String path) throws IOException {
+        ByteBuffer data = encode(vertices, indices);
+        OutputStream out = new FileOutputStream(path);
+        try {
+            out.write(data.array(), 0, data.limit());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static float[] computeBounds(float[] vertices) {
+        float[] bounds = {
+            Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+        };
+        for (int i = 0; i < vertices.length; i += FLOATS_PER_VERTEX) {
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[axis] = Math.min(bounds[axis], vertices[i + axis]);
+                bounds[axis + 3] = Math.max(bounds[axis + 3], vertices[i + axis]);
+            }
+        }
+        return bounds;
+    }
+
+    private static int align4(int size) {
+        return (size + 3) & ~3;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * ObjConverter.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.tools;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts Wavefront OBJ files to the binary mesh format.
+ *
+ * <p>Supports positions ("v", including the common "v x y z r g b" vertex color extension),
+ * normals ("vn") and polygonal faces ("f") in all four index forms, with negative indices counting
+ * back from the end. Texture coordinates are skipped, since the mesh layout has none, and so are
+ * groups, materials and smoothing groups. Polygons are triangulated as fans. A face without normals
+ * gets its flat face normal. Identical vertices are welded so the mesh can be indexed.
+ *
+ * <pre>
+ * ObjConverter [-color r,g,b,a] input.obj output.cbm
+ * </pre>
+ */
+public class ObjConverter {
+    private static final int FLOATS_PER_VERTEX = MeshWriter.FLOATS_PER_VERTEX;
+
+    private final float[] mDefaultColor;
+
+    private final FloatList mPositions = new FloatList();
+    private final FloatList mPositionColors = new FloatList();
+    private final FloatList mNormals = new FloatList();
+
+    private final VertexWelder mVertices = new VertexWelder(FLOATS_PER_VERTEX);
+    private final List<Integer> mIndices = new ArrayList<Integer>();
+
+    /**
+     * @param defaultColor The RGBA color of vertices without a color of their own.
+     */
+    public ObjConverter(float[] defaultColor) {
+        mDefaultColor = defaultColor.clone();
+    }
+
+    public static void main(String[] args) throws IOException {
+        float[] color = { 1.0f, 1.0f, 1.0f, 1.0f };
+        int arg = 0;
+        if (args.length == 4 && args[0].equals("-color")) {
+            String[] parts = args[1].split(",");
+            for (int i = 0; i < parts.length && i < 4; i++) {
+                color[i] = Float.parseFloat(parts[i]);
+            }
+            arg = 2;
+        } else if (args.length != 2) {
+            System.err.println("Usage: ObjConverter [-color r,g,b,a] input.obj output.cbm");
+            System.exit(1);
+        }
+
+        ObjConverter converter = new ObjConverter(color);
+        Reader reader = new InputStreamReader(new FileInputStream(args[arg]), "UTF-8");
+        try {
+            converter.parse(reader);
+        } finally {
+            reader.close();
+        }
+        MeshWriter.write(converter.getVertices(), converter.getIndices(), args[arg + 1]);
+        System.out.println(args[arg + 1] + ": " + converter.getVertices().length
+                / FLOATS_PER_VERTEX + " vertices, " + converter.getIndices().length / 3
+                + " triangles");
+    }
+
+    public void parse(Reader input) throws IOException {
+        BufferedReader reader = new BufferedReader(input);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            String[] tokens = line.trim().split("\\s+");
+            try {
+                if (tokens[0].equals("v")) {
+                    parsePosition(tokens);
+                } else if (tokens[0].equals("vn")) {
+                    mNormals.add(Float.parseFloat(tokens[1]));
+                    mNormals.add(Float.parseFloat(tokens[2]));
+                    mNormals.add(Float.parseFloat(tokens[3]));
+                } else if (tokens[0].equals("f")) {
+                    parseFace(tokens);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Line " + lineNumber + ": cannot parse \"" + line + "\"", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the welded, interleaved vertices.
+     */
+    public float[] getVertices() {
+        return mVertices.toArray();
+    }
+
+    public int[] getIndices() {
+        int[] indices = new int[mIndices.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = mIndices.get(i);
+        }
+        return indices;
+    }
+
+    private void parsePosition(String[] tokens) {
+        mPositions.add(Float.parseFloat(tokens[1]));
+        mPositions.add(Float.parseFloat(tokens[2]));
+        mPositions.add(Float.parseFloat(tokens[3]));
+        if (tokens.length >= 7) {
+            mPositionColors.add(Float.parseFloat(tokens[4]));
+            mPositionColors.add(Float.parseFloat(tokens[5]));
+            mPositionColors.add(Float.parseFloat(tokens[6]));
+            mPositionColors.add(1.0f);
+        } else {
+            for (float value : mDefaultColor) {
+                mPositionColors.add(value);
+            }
+        }
+    }
+
+    private void parseFace(String[] tokens) {
+        int corners = tokens.length - 1;
+        if (corners < 3) {
+            throw new IllegalArgumentException("Face with fewer than three corners");
+        }
+        int[] positions = new int[corners];
+        int[] normals = new int[corners];
+        boolean hasNormals = true;
+        for (int i = 0; i < corners; i++) {
+            // v, v/vt, v//vn or v/vt/vn.
+            String[] parts = tokens[i + 1].split("/");
+            positions[i] = resolve(Integer.parseInt(parts[0]), mPositions.size() / 3);
+            if (parts.length >= 3 && !parts[2].isEmpty()) {
+                normals[i] = resolve(Integer.parseInt(parts[2]), mNormals.size() / 3);
+            } else {
+                hasNormals = false;
+            }
+        }
+        for (int i = 1; i + 1 < corners; i++) {
+            emitTriangle(positions, normals, hasNormals, 0, i, i + 1);
+        }
+    }
+
+    /**
+     * Converts a one-based or negative OBJ index to a zero-based one.
+     */
+    private static int resolve(int index, int count) {
+        int resolved = index > 0 ? index - 1 : count + index;
+        if (resolved < 0 || resolved >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + count);
+        }
+        return resolved;
+    }
+
+    private void emitTriangle(int[] positions, int[] normals, boolean hasNormals, int a, int b,
+            int c) {
+        float[] faceNormal = null;
+        if (!hasNormals) {
+            faceNormal = faceNormal(positions[a], positions[b], positions[c]);
+        }
+        for (int corner : new int[] { a, b, c }) {
+            float[] vertex = new float[FLOATS_PER_VERTEX];
+            int position = positions[corner];
+            for (int i = 0; i < 3; i++) {
+                vertex[i] = mPositions.get(position * 3 + i);
+                vertex[i + 3] = hasNormals ? mNormals.get(normals[corner] * 3 + i) : faceNormal[i];
+            }
+            for (int i = 0; i < 4; i++) {
+                vertex[i + 6] = mPositionColors.get(position * 4 + i);
+            }
+            mIndices.add(mVertices.add(vertex));
+        }
+    }
+
+    private float[] faceNormal(int a, int b, int c) {
+        float ux = mPositions.get(b * 3) - mPositions.get(a * 3);
+        float uy = mPositions.get(b * 3 + 1) - mPositions.get(a * 3 + 1);
+        float uz = mPositions.get(b * 3 + 2) - mPositions.get(a * 3 + 2);
+        float vx = mPositions.get(c * 3) - mPositions.get(a * 3);
+        float vy = mPositions.get(c * 3 + 1) - mPositions.get(a * 3 + 1);
+        float vz = mPositions.get(c * 3 + 2) - mPositions.get(a * 3 + 2);
+        float nx = uy * vz - uz * vy;
+        float ny = uz * vx - ux * vz;
+        float nz = ux * vy - uy * vx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0.0f) {
+            return new float[] { 0.0f, 1.0f, 0.0f };
+        }
+        return new float[] { nx / length, ny / length, nz / length };
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * VertexWelder.java
+ * Copyright (C) 2015 sean <sean@wireless-10-147-155-193.public.utexas.edu>
+ *
+ * Distributed under terms of the MIT license.
+ */
+
+package io.kirmani.cardboard.tools;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects vertices, storing each distinct one only once, so that a mesh can be indexed.
+ */
+final class VertexWelder {
+    private final int mFloatsPerVertex;
+    private final FloatList mVertices = new FloatList();
+    private final Map<Key, Integer> mIndices = new HashMap<Key, Integer>();
+
+    VertexWelder(int floatsPerVertex) {
+        mFloatsPerVertex = floatsPerVertex;
+    }
+
+    /**
+     * Returns the index of a vertex, adding it if no identical vertex was added before.
+     */
+    int add(float[] vertex) {
+        Key key = new Key(vertex.clone());
+        Integer index = mIndices.get(key);
+        if (index == null) {
+            index = mVertices.size() / mFloatsPerVertex;
+            mIndices.put(key, index);
+            for (float value : vertex) {
+                mVertices.add(value);
+            }
+        }
+        return index;
+    }
+
+    float[] toArray() {
+        return mVertices.toArray();
+    }
+
+    /** A vertex compared by value. */
+    private static final class Key {
+        private final float[] mValues;
+        private final int mHash;
+
+        Key(float[] values) {
+            mValues = values;
+            mHash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(mValues, ((Key) other).mValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}